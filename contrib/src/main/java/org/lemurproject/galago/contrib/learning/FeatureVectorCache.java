@@ -0,0 +1,256 @@
+/*
+ *  BSD License (http://www.galagosearch.org/license)
+ */
+package org.lemurproject.galago.contrib.learning;
+
+import org.lemurproject.galago.core.retrieval.Retrieval;
+import org.lemurproject.galago.core.retrieval.ScoredDocument;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.NodeParameters;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Re-scores queries for new parameter settings without running them again.
+ *
+ * Most learnt parameters are the weights of a #combine at the root of the
+ * transformed query (e.g. uniw, odw and uww of #sdm). Such a query scores a
+ * document as a weighted sum of the scores of the root's children. The cache
+ * runs the query once to get a pool of candidate documents, scores every
+ * child over the pool (a working set query per child), and stores the scores
+ * in a documents x features matrix. Rankings for other weights are computed
+ * from the matrix.
+ *
+ * The cached features are valid as long as the children of the root do not
+ * change. Parameters that change them, such as smoothing parameters, produce a
+ * different 'skeleton' of the transformed query; rank then returns null and
+ * the learner executes the query as usual. A skeleton is only materialized
+ * the second time it is seen, so a learner that varies a non-linear parameter
+ * every step does not pay for feature extraction.
+ *
+ * Documents that were not in the pool are never ranked, so rankings are exact
+ * when the pool holds every document any setting could rank (as with
+ * term-matching queries and a large enough pool), and approximate otherwise.
+ *
+ * The cache is safe to share between threads (Learner "threading"). Calls for
+ * the same query take turns, so its features are only extracted once.
+ *
+ * Parameters: featureCachePool [default = requested, or 1000]
+ */
+public class FeatureVectorCache {
+
+  private final Retrieval retrieval;
+  private final int poolSize;
+  private final Map<String, QueryState> queries;
+  private final LongAdder rescored = new LongAdder();
+  private final LongAdder executed = new LongAdder();
+
+  public FeatureVectorCache(Retrieval retrieval, Parameters p) {
+    this.retrieval = retrieval;
+    this.poolSize = (int) p.get("featureCachePool", p.get("requested", 1000));
+    this.queries = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Ranks the pool of a transformed query for the weights in its root, or
+   * returns null if the query has to be executed.
+   */
+  public List<ScoredDocument> rank(String number, Node root, Parameters settings) throws Exception {
+    if (!root.getOperator().equals("combine") || root.numChildren() == 0) {
+      executed.increment();
+      return null;
+    }
+
+    String skeleton = getSkeleton(root);
+    QueryState state = queries.computeIfAbsent(number, k -> new QueryState());
+    QueryFeatures cached;
+    synchronized (state) {
+      cached = state.features;
+      if (cached == null || !cached.skeleton.equals(skeleton)) {
+        String last = state.lastSkeleton;
+        state.lastSkeleton = skeleton;
+        if (!skeleton.equals(last)) {
+          executed.increment();
+          return null;
+        }
+        cached = extract(root, skeleton, settings);
+        if (cached == null) {
+          executed.increment();
+          return null;
+        }
+        state.features = cached;
+      }
+    }
+
+    rescored.increment();
+    return cached.rank(root.getNodeParameters(), (int) settings.get("requested", 1000));
+  }
+
+  /**
+   * Number of rankings computed from cached features, and the number of
+   * queries left to the retrieval.
+   */
+  public long getRescoredCount() {
+    return rescored.sum();
+  }
+
+  public long getExecutedCount() {
+    return executed.sum();
+  }
+
+  /**
+   * The parts of a #combine root that the weights do not touch: its other
+   * parameters and its children. The delta scoring weights ("w", see
+   * DeltaCheckTraversal) are derived from the root weights and do not change
+   * scores, so they are left out.
+   */
+  static String getSkeleton(Node root) {
+    NodeParameters np = root.getNodeParameters();
+    StringBuilder skeleton = new StringBuilder(root.getOperator());
+    for (String key : new TreeSet<>(np.getKeySet())) {
+      if (!key.equals("norm") && !key.equals("w") && !isWeightKey(key)) {
+        skeleton.append(':').append(key).append('=').append(np.getAsString(key));
+      }
+    }
+    for (Node child : root.getInternalNodes()) {
+      Node stripped = child.clone();
+      removeDeltaWeights(stripped);
+      skeleton.append('\n').append(stripped.toString());
+    }
+    return skeleton.toString();
+  }
+
+  private static void removeDeltaWeights(Node node) {
+    node.getNodeParameters().remove("w");
+    for (Node child : node.getInternalNodes()) {
+      removeDeltaWeights(child);
+    }
+  }
+
+  private static boolean isWeightKey(String key) {
+    if (key.isEmpty()) {
+      return false;
+    }
+    for (int i = 0; i < key.length(); i++) {
+      if (!Character.isDigit(key.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private QueryFeatures extract(Node root, String skeleton, Parameters settings) throws Exception {
+    Parameters poolParams = Parameters.create();
+    poolParams.setBackoff(settings);
+    poolParams.set("requested", poolSize);
+    List<ScoredDocument> pool = retrieval.executeQuery(root, poolParams).scoredDocuments;
+    if (pool == null || pool.isEmpty()) {
+      return null;
+    }
+
+    List<String> names = new ArrayList<>(pool.size());
+    Map<String, Integer> positions = new HashMap<>();
+    for (ScoredDocument doc : pool) {
+      positions.put(doc.documentName, names.size());
+      names.add(doc.documentName);
+    }
+
+    List<Node> children = root.getInternalNodes();
+    int featureCount = children.size();
+    double[] matrix = new double[names.size() * featureCount];
+    for (int f = 0; f < featureCount; f++) {
+      Parameters featureParams = Parameters.create();
+      featureParams.setBackoff(settings);
+      featureParams.set("working", names);
+      featureParams.set("requested", names.size());
+      List<ScoredDocument> scored = retrieval.executeQuery(children.get(f), featureParams).scoredDocuments;
+      if (scored == null || scored.size() != names.size()) {
+        // the working set was not honored (e.g. a fixed processingModel)
+        return null;
+      }
+      for (ScoredDocument doc : scored) {
+        matrix[positions.get(doc.documentName) * featureCount + f] = doc.score;
+      }
+    }
+
+    long[] ids = new long[names.size()];
+    for (int d = 0; d < ids.length; d++) {
+      ids[d] = pool.get(d).document;
+    }
+    return new QueryFeatures(skeleton, names.toArray(new String[names.size()]), ids, featureCount, matrix);
+  }
+
+  private static class QueryState {
+
+    String lastSkeleton;
+    QueryFeatures features;
+  }
+
+  private static class QueryFeatures {
+
+    final String skeleton;
+    final String[] names;
+    final long[] ids;
+    final int featureCount;
+    // row-major: the features of document d start at d * featureCount
+    final double[] matrix;
+
+    QueryFeatures(String skeleton, String[] names, long[] ids, int featureCount, double[] matrix) {
+      this.skeleton = skeleton;
+      this.names = names;
+      this.ids = ids;
+      this.featureCount = featureCount;
+      this.matrix = matrix;
+    }
+
+    List<ScoredDocument> rank(NodeParameters np, int requested) {
+      // the same weights as ScoreCombinationIterator
+      double[] weights = new double[featureCount];
+      double weightSum = 0.0;
+      for (int f = 0; f < featureCount; f++) {
+        weights[f] = np.get(Integer.toString(f), 1.0);
+        weightSum += weights[f];
+      }
+      if (np.get("norm", true) && weightSum > 0.0) {
+        for (int f = 0; f < featureCount; f++) {
+          weights[f] = weights[f] / weightSum;
+        }
+      }
+
+      final double[] scores = new double[names.length];
+      Integer[] order = new Integer[names.length];
+      for (int d = 0; d < names.length; d++) {
+        double total = 0;
+        for (int f = 0; f < featureCount; f++) {
+          total += weights[f] * matrix[d * featureCount + f];
+        }
+        scores[d] = total;
+        order[d] = d;
+      }
+
+      // best score first, ties go to the lower document id
+      Arrays.sort(order, (a, b) -> {
+        int cmp = Double.compare(scores[b], scores[a]);
+        return (cmp != 0) ? cmp : Long.compare(ids[a], ids[b]);
+      });
+
+      int count = (requested < 0) ? names.length : Math.min(requested, names.length);
+      List<ScoredDocument> ranked = new ArrayList<>(count);
+      for (int r = 0; r < count; r++) {
+        int d = order[r];
+        ScoredDocument doc = new ScoredDocument(names[d], r + 1, scores[d]);
+        doc.document = ids[d];
+        ranked.add(doc);
+      }
+      return ranked;
+    }
+  }
+}
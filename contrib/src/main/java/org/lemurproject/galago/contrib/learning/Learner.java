@@ -30,7 +30,9 @@ import java.util.logging.Logger;
  * e.g. [ { "name" : "mu", "max" : 10000, "min" : 1, "isInteger": true}, <- this
  * parameter is optional. -> ... ]
  *
- * Optional Parameters: 1. metric [default = map] -> see eval
+ * Optional Parameters: 1. metric [default = map] -> see eval 2. featureCache
+ * [default = false] -> re-rank queries from cached feature scores when only
+ * root #combine weights change, see FeatureVectorCache
  *
  * @author sjh
  */
@@ -48,6 +50,8 @@ public abstract class Learner {
   protected List<RetrievalModelInstance> initialSettings;
   // evaluation cache to avoid recalculating scores for known settings
   protected Map<String, Double> testedParameters;
+  // cached feature scores to re-rank queries without executing them (optional)
+  protected FeatureVectorCache featureCache;
   // execution
   protected int restarts;
   protected boolean threading;
@@ -152,6 +156,10 @@ public abstract class Learner {
 
     testedParameters = new HashMap<>();
 
+    if (p.get("featureCache", false)) {
+      featureCache = new FeatureVectorCache(r, p);
+    }
+
     // caching system
     if (retrieval.getGlobalParameters().get("cache", false)) {
       outputTraceStream.println("Starting. Caching query nodes");
@@ -223,8 +231,16 @@ public abstract class Learner {
       root = this.ensureSettings(root, settings);
       root = this.retrieval.transformQuery(root, settings);
 
+      // linear weight changes can be re-scored from cached features
+      List<? extends EvalDoc> scoredDocs = null;
+      if (featureCache != null) {
+        scoredDocs = featureCache.rank(number, root, settings);
+      }
+
       //  need to add queryProcessing params some extra stuff to 'settings'
-      List<? extends EvalDoc> scoredDocs = this.retrieval.executeQuery(root, settings).scoredDocuments;
+      if (scoredDocs == null) {
+        scoredDocs = this.retrieval.executeQuery(root, settings).scoredDocuments;
+      }
 
       // now unset the backoff (next query will have different backoffs)
       settings.setBackoff(null);
@@ -13,7 +13,7 @@ import org.lemurproject.galago.core.retrieval.processing.ProcessingModel;
 import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
 import org.lemurproject.galago.core.retrieval.query.Node;
 import org.lemurproject.galago.core.retrieval.query.NodeType;
-import org.lemurproject.galago.utility.FixedSizeMinHeap;
+import org.lemurproject.galago.utility.FixedSizeScoreHeap;
 import org.lemurproject.galago.utility.CmpUtil;
 import org.lemurproject.galago.utility.Parameters;
 
@@ -57,7 +57,7 @@ public class NodeShareWeakAndDocumentModel extends ProcessingModel {
     DeltaScoringIteratorWrapper[] sortedIterators = createScoringIterators(scoringNodes, retrieval);
     Arrays.sort(sortedIterators);
 
-    FixedSizeMinHeap<ScoredDocument> queue = new FixedSizeMinHeap<ScoredDocument>(ScoredDocument.class, requested, new ScoredDocument.ScoredDocumentComparator());
+    FixedSizeScoreHeap queue = new FixedSizeScoreHeap(requested);
 
     // NOTE that the min scores here are OVER-ESTIMATES of the actual minimum scores
     double minimumPossibleScore = 0.0;
@@ -100,12 +100,11 @@ public class NodeShareWeakAndDocumentModel extends ProcessingModel {
           context.document = pivot;
           double score = score(sortedIterators, context, maximumPossibleScore);
 
-          if (queue.size() < requested || score > queue.peek().score) {
-            ScoredDocument scoredDocument = new ScoredDocument(context.document, score);
-            queue.offer(scoredDocument);
+          if (queue.size() < requested || score > queue.peekScore()) {
+            queue.offer(context.document, score);
 
             if (queue.size() == requested) {
-              minDocScore = factor * queue.peek().score;
+              minDocScore = factor * queue.peekScore();
             }
           }
         } else {
@@ -10,6 +10,7 @@ import org.lemurproject.galago.core.retrieval.Retrieval;
 import org.lemurproject.galago.core.retrieval.ScoredDocument;
 import org.lemurproject.galago.core.retrieval.query.Node;
 import org.lemurproject.galago.core.retrieval.query.NodeParameters;
+import org.lemurproject.galago.core.retrieval.traversal.PerQuery;
 import org.lemurproject.galago.core.retrieval.traversal.Traversal;
 import org.lemurproject.galago.utility.Parameters;
 import org.lemurproject.galago.tupleflow.Utility;
@@ -24,6 +25,7 @@ import java.util.Map;
  *
  * @author irmarc
  */
+@PerQuery
 public class FieldRelevanceModelTraversal extends Traversal {
 
   ArrayList<String> queryTerms;
@@ -0,0 +1,176 @@
+/*
+ *  BSD License (http://www.galagosearch.org/license)
+ */
+package org.lemurproject.galago.contrib.learning;
+
+import org.junit.Test;
+import org.lemurproject.galago.contrib.util.TestingUtils;
+import org.lemurproject.galago.core.retrieval.Retrieval;
+import org.lemurproject.galago.core.retrieval.RetrievalFactory;
+import org.lemurproject.galago.core.retrieval.ScoredDocument;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.StructuredQuery;
+import org.lemurproject.galago.tupleflow.FileUtility;
+import org.lemurproject.galago.utility.FSUtil;
+import org.lemurproject.galago.utility.Parameters;
+import org.lemurproject.galago.utility.StreamUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FeatureVectorCacheTest {
+
+  private static Node transform(Retrieval ret, String query, Parameters settings) throws Exception {
+    return ret.transformQuery(StructuredQuery.parse(query), settings);
+  }
+
+  @Test
+  public void testRescoringMatchesExecution() throws Exception {
+    File[] files = TestingUtils.make10DocIndex();
+    try {
+      Retrieval ret = RetrievalFactory.instance(files[2].getAbsolutePath());
+      FeatureVectorCache cache = new FeatureVectorCache(ret, Parameters.create());
+      String query = "#sdm( jump moon )";
+
+      // a new skeleton is left to the retrieval once, then materialized
+      Parameters settings = Parameters.parseArray("uniw", 0.8, "odw", 0.15, "uww", 0.05);
+      assertNull(cache.rank("q1", transform(ret, query, settings), settings));
+      assertNotNull(cache.rank("q1", transform(ret, query, settings), settings));
+
+      double[][] weights = {{0.8, 0.15, 0.05}, {0.1, 0.1, 0.8}, {0.3, 0.6, 0.1}, {1.0, 0.0, 0.0}, {0.2, 0.0, 0.8}};
+      for (double[] w : weights) {
+        settings = Parameters.parseArray("uniw", w[0], "odw", w[1], "uww", w[2]);
+        Node root = transform(ret, query, settings);
+        List<ScoredDocument> expected = ret.executeQuery(root, settings).scoredDocuments;
+        List<ScoredDocument> rescored = cache.rank("q1", root, settings);
+
+        assertEquals(expected.size(), rescored.size());
+        for (int i = 0; i < expected.size(); i++) {
+          assertEquals(expected.get(i).documentName, rescored.get(i).documentName);
+          assertEquals(expected.get(i).rank, rescored.get(i).rank);
+          assertEquals(expected.get(i).score, rescored.get(i).score, 1e-9);
+        }
+      }
+      assertEquals(6, cache.getRescoredCount());
+      assertEquals(1, cache.getExecutedCount());
+
+      // smoothing changes the features themselves: the query has to run
+      settings = Parameters.parseArray("uniw", 0.8, "odw", 0.15, "uww", 0.05, "mu", 500.0);
+      assertNull(cache.rank("q1", transform(ret, query, settings), settings));
+
+      // other roots can not be re-scored
+      settings = Parameters.create();
+      assertNull(cache.rank("q2", transform(ret, "#dirichlet( #lengths:document:part=lengths() #counts:moon:part=postings() )", settings), settings));
+    } finally {
+      files[0].delete();
+      FSUtil.deleteDirectory(files[1]);
+      FSUtil.deleteDirectory(files[2]);
+    }
+  }
+
+  @Test
+  public void testConcurrentRescoring() throws Exception {
+    File[] files = TestingUtils.make10DocIndex();
+    ExecutorService threads = Executors.newFixedThreadPool(4);
+    try {
+      final Retrieval ret = RetrievalFactory.instance(files[2].getAbsolutePath());
+      final FeatureVectorCache cache = new FeatureVectorCache(ret, Parameters.create());
+      final String query = "#sdm( jump moon )";
+
+      // every thread ranks both queries for its own weights
+      final double[][] weights = {{0.8, 0.15, 0.05}, {0.1, 0.1, 0.8}, {0.3, 0.6, 0.1}, {1.0, 0.0, 0.0}, {0.2, 0.0, 0.8}};
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int t = 0; t < 40; t++) {
+        final double[] w = weights[t % weights.length];
+        final String number = "q" + (t % 2);
+        futures.add(threads.submit(() -> {
+          Parameters settings = Parameters.parseArray("uniw", w[0], "odw", w[1], "uww", w[2]);
+          Node root = transform(ret, query, settings);
+          List<ScoredDocument> expected = ret.executeQuery(root, settings).scoredDocuments;
+          List<ScoredDocument> rescored = cache.rank(number, root, settings);
+          if (rescored != null) {
+            assertEquals(expected.size(), rescored.size());
+            for (int i = 0; i < expected.size(); i++) {
+              assertEquals(expected.get(i).documentName, rescored.get(i).documentName);
+              assertEquals(expected.get(i).score, rescored.get(i).score, 1e-9);
+            }
+          }
+          return null;
+        }));
+      }
+      for (Future<Void> f : futures) {
+        f.get();
+      }
+
+      // only the first sight of each query is left to the retrieval
+      assertEquals(2, cache.getExecutedCount());
+      assertEquals(38, cache.getRescoredCount());
+    } finally {
+      threads.shutdown();
+      files[0].delete();
+      FSUtil.deleteDirectory(files[1]);
+      FSUtil.deleteDirectory(files[2]);
+    }
+  }
+
+  @Test
+  public void testLearnerWithFeatureCache() throws Exception {
+    checkLearnerWithFeatureCache(false);
+  }
+
+  @Test
+  public void testThreadedLearnerWithFeatureCache() throws Exception {
+    checkLearnerWithFeatureCache(true);
+  }
+
+  private static void checkLearnerWithFeatureCache(boolean threading) throws Exception {
+    File[] files = TestingUtils.make10DocIndex();
+    File qrels = FileUtility.createTemporary();
+    try {
+      StreamUtil.copyStringToFile("q1 x 2 1\nq1 x 5 1\nq1 x 8 1\nq2 x 3 1\nq2 x 7 1\n", qrels);
+
+      List<String> learnt = new ArrayList<>();
+      for (boolean featureCache : new boolean[]{false, true}) {
+        Retrieval ret = RetrievalFactory.instance(files[2].getAbsolutePath());
+        Parameters learnParams = Parameters.parseString("{\"queries\": ["
+                + "{\"number\":\"q1\",\"text\":\"#sdm( jump moon )\"}, "
+                + "{\"number\":\"q2\",\"text\":\"#sdm( everything shoe )\"}]}");
+        learnParams.set("learner", "coord");
+        learnParams.set("qrels", qrels.getAbsolutePath());
+        List<Parameters> learnableParams = new ArrayList<>();
+        learnableParams.add(Parameters.parseArray("name", "uniw", "max", 1.0, "min", 0.0));
+        learnableParams.add(Parameters.parseArray("name", "odw", "max", 1.0, "min", 0.0));
+        learnableParams.add(Parameters.parseArray("name", "uww", "max", 1.0, "min", 0.0));
+        learnParams.set("learnableParameters", learnableParams);
+        learnParams.set("restarts", 1);
+        learnParams.set("initialParameters", new ArrayList());
+        learnParams.getList("initialParameters", Parameters.class).add(Parameters.parseArray("uniw", 0.8, "odw", 0.15, "uww", 0.05));
+        learnParams.set("featureCache", featureCache);
+        learnParams.set("threading", threading);
+        learnParams.set("threadCount", 4);
+
+        Learner learner = LearnerFactory.instance(learnParams, ret);
+        learnt.add(learner.learn().toString());
+        if (featureCache) {
+          assertTrue(learner.featureCache.getRescoredCount() > learner.featureCache.getExecutedCount());
+        }
+        learner.close();
+      }
+      assertEquals(learnt.get(0), learnt.get(1));
+    } finally {
+      qrels.delete();
+      files[0].delete();
+      FSUtil.deleteDirectory(files[1]);
+      FSUtil.deleteDirectory(files[2]);
+    }
+  }
+}
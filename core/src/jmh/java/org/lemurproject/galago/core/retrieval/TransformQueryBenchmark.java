@@ -0,0 +1,125 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.retrieval;
+
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.StructuredQuery;
+import org.lemurproject.galago.core.tools.App;
+import org.lemurproject.galago.core.tools.AppTest;
+import org.lemurproject.galago.tupleflow.FileUtility;
+import org.lemurproject.galago.utility.FSUtil;
+import org.lemurproject.galago.utility.Parameters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of LocalRetrieval.transformQuery for #sdm queries when many
+ * threads transform queries at once, as ThreadedBatchSearch and the web
+ * handler do. The statistics traversal reads the index for every window.
+ *
+ * Run for 1 to 64 threads with:
+ *   mvn -pl core -P jmh test-compile exec:exec -Djmh.main=org.lemurproject.galago.core.retrieval.TransformQueryBenchmark
+ * or for one thread count with -Djmh.args="TransformQueryBenchmark -t 16".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransformQueryBenchmark {
+
+  /** Repeat queries are answered from the transform cache when non-zero. */
+  @Param({"0", "10000"})
+  public long transformCacheSize;
+
+  private static final int DOCUMENTS = 5000;
+  private static final int DOCUMENT_LENGTH = 200;
+  private static final int VOCABULARY = 2000;
+  private static final int QUERIES = 1000;
+
+  private File index;
+  private LocalRetrieval retrieval;
+  private List<String> queries;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    Random random = new Random(42);
+    File trec = FileUtility.createTemporary();
+    BufferedWriter writer = new BufferedWriter(new FileWriter(trec));
+    for (int d = 0; d < DOCUMENTS; d++) {
+      StringBuilder text = new StringBuilder();
+      for (int p = 0; p < DOCUMENT_LENGTH; p++) {
+        // skewed, so some windows are frequent
+        text.append(" t").append((int) (VOCABULARY * Math.pow(random.nextDouble(), 3)));
+      }
+      writer.write(AppTest.trecDocument("doc-" + d, text.toString()));
+    }
+    writer.close();
+
+    index = FileUtility.createTemporaryDirectory();
+    Parameters build = Parameters.create();
+    build.set("inputPath", trec.getAbsolutePath());
+    build.set("indexPath", index.getAbsolutePath());
+    build.set("stemmedPostings", false);
+    build.set("server", false);
+    App.run("build", build, new PrintStream(new ByteArrayOutputStream()));
+    trec.delete();
+
+    Parameters p = Parameters.create();
+    p.set("transformCacheSize", transformCacheSize);
+    // measure the traversals, not the node statistics cache
+    p.set("nodeStatisticsCacheSize", 0L);
+    retrieval = new LocalRetrieval(index.getAbsolutePath(), p);
+
+    queries = new ArrayList<>();
+    for (int q = 0; q < QUERIES; q++) {
+      queries.add("#sdm( t" + random.nextInt(VOCABULARY / 10) + " t" + random.nextInt(VOCABULARY / 10)
+              + " t" + random.nextInt(VOCABULARY / 10) + " )");
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    retrieval.close();
+    FSUtil.deleteDirectory(index);
+  }
+
+  @Benchmark
+  public Node transformQuery() throws Exception {
+    String query = queries.get(ThreadLocalRandom.current().nextInt(queries.size()));
+    return retrieval.transformQuery(StructuredQuery.parse(query), Parameters.create());
+  }
+
+  public static void main(String[] args) throws Exception {
+    for (int threads = 1; threads <= 64; threads *= 2) {
+      new Runner(new OptionsBuilder()
+              .include(TransformQueryBenchmark.class.getSimpleName())
+              .threads(threads)
+              .build()).run();
+    }
+  }
+}
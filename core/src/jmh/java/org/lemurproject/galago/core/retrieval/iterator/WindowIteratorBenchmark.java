@@ -0,0 +1,186 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.retrieval.iterator;
+
+import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
+import org.lemurproject.galago.core.retrieval.query.AnnotatedNode;
+import org.lemurproject.galago.core.retrieval.query.NodeParameters;
+import org.lemurproject.galago.core.util.ExtentArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matches #od and #uw windows over in-memory postings, the work
+ * getNodeStatistics and scoring do for every candidate of an #sdm query.
+ *
+ * Run with: mvn -pl core -P jmh test-compile exec:exec -Djmh.args=WindowIteratorBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WindowIteratorBenchmark {
+
+  @Param({"od", "uw"})
+  public String operator;
+
+  @Param({"1", "4", "8"})
+  public int width;
+
+  @Param({"2", "3"})
+  public int terms;
+
+  private static final int DOCUMENTS = 20000;
+  private static final int DOCUMENT_LENGTH = 500;
+
+  private ExtentConjunctionIterator window;
+  private ScoringContext context;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    Random random = new Random(42);
+    ExtentIterator[] children = new ExtentIterator[terms];
+    for (int t = 0; t < terms; t++) {
+      // one common term, the others rarer
+      children[t] = new ArrayExtentIterator(random, (t == 0) ? 0.02 : 0.005);
+    }
+
+    NodeParameters np = new NodeParameters();
+    np.set("default", width);
+    window = operator.equals("od") ? new OrderedWindowIterator(np, children) : new UnorderedWindowIterator(np, children);
+    context = new ScoringContext();
+  }
+
+  @Benchmark
+  public long countWindows() throws IOException {
+    window.reset();
+    long total = 0;
+    while (!window.isDone()) {
+      context.document = window.currentCandidate();
+      total += window.count(context);
+      window.movePast(context.document);
+    }
+    return total;
+  }
+
+  /**
+   * Postings held as one ExtentArray per document, so the children do not
+   * allocate while the window is matched.
+   */
+  private static class ArrayExtentIterator implements ExtentIterator {
+
+    private final List<ExtentArray> postings;
+    private int index;
+
+    ArrayExtentIterator(Random random, double density) {
+      postings = new ArrayList<>();
+      for (int d = 0; d < DOCUMENTS; d++) {
+        ExtentArray positions = null;
+        for (int p = 0; p < DOCUMENT_LENGTH; p++) {
+          if (random.nextDouble() < density) {
+            if (positions == null) {
+              positions = new ExtentArray();
+              positions.setDocument(d);
+            }
+            positions.add(p);
+          }
+        }
+        if (positions != null) {
+          postings.add(positions);
+        }
+      }
+      index = 0;
+    }
+
+    @Override
+    public boolean isDone() {
+      return index >= postings.size();
+    }
+
+    @Override
+    public long currentCandidate() {
+      return isDone() ? Long.MAX_VALUE : postings.get(index).getDocument();
+    }
+
+    @Override
+    public boolean hasMatch(ScoringContext context) {
+      return !isDone() && currentCandidate() == context.document;
+    }
+
+    @Override
+    public ExtentArray extents(ScoringContext c) {
+      return hasMatch(c) ? postings.get(index) : ExtentArray.EMPTY;
+    }
+
+    @Override
+    public ExtentArray data(ScoringContext c) {
+      return extents(c);
+    }
+
+    @Override
+    public int count(ScoringContext c) {
+      return extents(c).size();
+    }
+
+    @Override
+    public boolean indicator(ScoringContext c) {
+      return count(c) > 0;
+    }
+
+    @Override
+    public void syncTo(long identifier) {
+      while (!isDone() && currentCandidate() < identifier) {
+        index++;
+      }
+    }
+
+    @Override
+    public void movePast(long identifier) {
+      syncTo(identifier + 1);
+    }
+
+    @Override
+    public void reset() {
+      index = 0;
+    }
+
+    @Override
+    public long totalEntries() {
+      return postings.size();
+    }
+
+    @Override
+    public boolean hasAllCandidates() {
+      return false;
+    }
+
+    @Override
+    public String getValueString(ScoringContext c) {
+      return extents(c).toString();
+    }
+
+    @Override
+    public AnnotatedNode getAnnotatedNode(ScoringContext c) {
+      return new AnnotatedNode("extent", getClass().getSimpleName(), "", currentCandidate(), hasMatch(c),
+              extents(c).toString(), Collections.<AnnotatedNode>emptyList());
+    }
+  }
+}
@@ -23,10 +23,23 @@ public class BTreeFactory {
   }
 
   public static GalagoBTreeReader getBTreeReader(File f) throws IOException {
+    return getBTreeReader(f, false);
+  }
+
+  /**
+   * Opens a btree, memory-mapping it if mmap is set, or if the btree itself
+   * asks for it with "mmap" : true in its manifest.
+   */
+  public static GalagoBTreeReader getBTreeReader(File f, boolean mmap) throws IOException {
     if (SplitBTreeReader.isBTree(f)) {
       return new SplitBTreeReader(f);
     } else if (DiskBTreeReader.isBTree(f)) {
-      return new DiskBTreeReader(f);
+      DiskBTreeReader reader = new DiskBTreeReader(f, mmap);
+      if (!mmap && reader.getManifest().get("mmap", false)) {
+        reader.close();
+        reader = new DiskBTreeReader(f, true);
+      }
+      return reader;
     } else {
       return null;
     }
@@ -0,0 +1,427 @@
+package org.lemurproject.galago.core.corpus;
+
+import org.lemurproject.galago.core.parse.Document;
+import org.lemurproject.galago.core.parse.Tag;
+import org.lemurproject.galago.core.tokenize.Tokenizer;
+import org.lemurproject.galago.utility.ByteUtil;
+import org.lemurproject.galago.utility.Parameters;
+import org.lemurproject.galago.utility.compression.VByte;
+import org.xerial.snappy.Snappy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A versioned binary format that stores every part of a Document: name,
+ * metadata, text, terms (with their character offsets) and tags.
+ *
+ * Layout (version 1):
+ * <pre>
+ *   magic "GDC", version byte, flags byte
+ *   identifier (vbyte), name
+ *   section mask (vbyte): metadata, text, terms, tags
+ *   for each present section: stored length, raw length (vbytes)
+ *   the sections, each on its own Snappy-compressed if FLAG_COMPRESSED is set
+ * </pre>
+ * Sections are independent, so a reader only decompresses the parts the
+ * DocumentComponents ask for; a name lookup decompresses nothing. Stored
+ * terms and tags are returned for tokenize requests instead of running the
+ * tokenizer again, which only happens for documents stored without terms.
+ *
+ * Records start with MAGIC, which DocumentSerializer uses to recognize them
+ * inside corpora written with other serializers.
+ *
+ * Options: "compressed" (default true) and "tokenizeMissingTerms" (default
+ * true; false returns documents stored without terms as they are).
+ */
+public class CompactDocumentSerializer extends DocumentSerializer {
+
+  public static final byte[] MAGIC = {'G', 'D', 'C'};
+  public static final int VERSION = 1;
+  public static final int FLAG_COMPRESSED = 1;
+
+  static final int METADATA = 0;
+  static final int TEXT = 1;
+  static final int TERMS = 2;
+  static final int TAGS = 3;
+  static final int SECTIONS = 4;
+
+  private final boolean compressed;
+  private final boolean tokenizeMissingTerms;
+
+  public CompactDocumentSerializer(Parameters opts) {
+    super(opts);
+    compressed = opts.get("compressed", true);
+    tokenizeMissingTerms = opts.get("tokenizeMissingTerms", true);
+  }
+
+  /**
+   * True if data (at least four bytes) starts a record in this format.
+   */
+  public static boolean isCompact(byte[] data) {
+    return data.length >= MAGIC.length + 1
+            && data[0] == MAGIC[0] && data[1] == MAGIC[1] && data[2] == MAGIC[2];
+  }
+
+  @Override
+  public byte[] toBytes(Document doc) throws IOException {
+    byte[][] sections = new byte[SECTIONS][];
+    if (doc.metadata != null) {
+      sections[METADATA] = writeMetadata(doc.metadata);
+    }
+    if (doc.text != null) {
+      sections[TEXT] = ByteUtil.fromString(doc.text);
+    }
+    if (doc.terms != null) {
+      sections[TERMS] = writeTerms(doc);
+    }
+    if (doc.tags != null) {
+      sections[TAGS] = writeTags(doc.tags);
+    }
+
+    ByteArrayOutputStream array = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(array);
+    output.write(MAGIC);
+    output.writeByte(VERSION);
+    output.writeByte(compressed ? FLAG_COMPRESSED : 0);
+    VByte.compressLong(output, doc.identifier + 1);
+    writeString(output, doc.name);
+
+    int mask = 0;
+    byte[][] stored = new byte[SECTIONS][];
+    for (int i = 0; i < SECTIONS; i++) {
+      if (sections[i] != null) {
+        mask |= 1 << i;
+        stored[i] = compressed ? Snappy.compress(sections[i]) : sections[i];
+      }
+    }
+    VByte.compressInt(output, mask);
+    for (int i = 0; i < SECTIONS; i++) {
+      if (stored[i] != null) {
+        VByte.compressInt(output, stored[i].length);
+        if (compressed) {
+          VByte.compressInt(output, sections[i].length);
+        }
+      }
+    }
+    for (byte[] section : stored) {
+      if (section != null) {
+        output.write(section);
+      }
+    }
+    output.close();
+    return array.toByteArray();
+  }
+
+  @Override
+  public Document fromStream(DataInputStream input, Document.DocumentComponents selection) throws IOException {
+    byte[] head = new byte[MAGIC.length + 2];
+    input.readFully(head);
+    if (!isCompact(head)) {
+      throw new IOException("Not a compact document record.");
+    }
+    int version = head[MAGIC.length];
+    if (version != VERSION) {
+      throw new IOException("Unsupported compact document version: " + version);
+    }
+    boolean sectionsCompressed = (head[MAGIC.length + 1] & FLAG_COMPRESSED) != 0;
+
+    Document d = new Document();
+    d.identifier = VByte.uncompressLong(input) - 1;
+    d.name = readString(input);
+
+    int mask = VByte.uncompressInt(input);
+    int[] storedLengths = new int[SECTIONS];
+    int[] rawLengths = new int[SECTIONS];
+    for (int i = 0; i < SECTIONS; i++) {
+      if ((mask & (1 << i)) != 0) {
+        storedLengths[i] = VByte.uncompressInt(input);
+        rawLengths[i] = sectionsCompressed ? VByte.uncompressInt(input) : storedLengths[i];
+      } else {
+        storedLengths[i] = -1;
+      }
+    }
+
+    boolean storedTerms = storedLengths[TERMS] >= 0;
+    // documents stored without terms have to be tokenized from the text
+    boolean retokenize = selection.tokenize && !storedTerms && tokenizeMissingTerms;
+    boolean needText = selection.text || retokenize;
+    boolean[] wanted = new boolean[SECTIONS];
+    wanted[METADATA] = selection.metadata;
+    wanted[TEXT] = needText;
+    wanted[TERMS] = selection.tokenize;
+    wanted[TAGS] = selection.tokenize;
+
+    for (int i = 0; i < SECTIONS; i++) {
+      if (storedLengths[i] < 0) {
+        continue;
+      }
+      if (!wanted[i]) {
+        skipFully(input, storedLengths[i]);
+        continue;
+      }
+      if (i == TEXT && !sectionsCompressed) {
+        d.text = readText(input, storedLengths[i], selection);
+        continue;
+      }
+      byte[] section = new byte[storedLengths[i]];
+      input.readFully(section);
+      if (sectionsCompressed) {
+        section = Snappy.uncompress(section);
+        if (section.length != rawLengths[i]) {
+          throw new IOException("Corrupt section in compact document record: " + d.identifier);
+        }
+      }
+      switch (i) {
+        case METADATA:
+          d.metadata = readMetadata(section);
+          break;
+        case TEXT:
+          d.text = sliceText(section, selection);
+          break;
+        case TERMS:
+          readTerms(section, d);
+          break;
+        case TAGS:
+          d.tags = readTags(section);
+          break;
+      }
+    }
+
+    if (retokenize && d.text != null) {
+      Tokenizer tokenizer = getTokenizer();
+      tokenizer.tokenize(d);
+    } else if (selection.tokenize && storedTerms && d.tags == null) {
+      d.tags = new ArrayList<>();
+    }
+    return d;
+  }
+
+  private static String readText(DataInputStream input, int length, Document.DocumentComponents selection) throws IOException {
+    final int start = Math.max(0, selection.subTextStart);
+    if (start > length) {
+      skipFully(input, length);
+      return "";
+    }
+    int len = length - start;
+    if (selection.subTextLen > 0) {
+      len = Math.min(len, selection.subTextLen);
+    }
+    skipFully(input, start);
+    byte[] data = new byte[len];
+    input.readFully(data);
+    skipFully(input, length - start - len);
+    return ByteUtil.toString(data, len);
+  }
+
+  private static String sliceText(byte[] section, Document.DocumentComponents selection) {
+    final int start = Math.max(0, selection.subTextStart);
+    if (start > section.length) {
+      return "";
+    }
+    int len = section.length - start;
+    if (selection.subTextLen > 0) {
+      len = Math.min(len, selection.subTextLen);
+    }
+    return ByteUtil.toString(section, start, len);
+  }
+
+  private static byte[] writeMetadata(Map<String, String> metadata) throws IOException {
+    ByteArrayOutputStream array = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(array);
+    VByte.compressInt(output, metadata.size());
+    for (Map.Entry<String, String> entry : metadata.entrySet()) {
+      writeString(output, entry.getKey());
+      writeString(output, entry.getValue());
+    }
+    output.close();
+    return array.toByteArray();
+  }
+
+  private static Map<String, String> readMetadata(byte[] section) throws IOException {
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(section));
+    int count = VByte.uncompressInt(input);
+    Map<String, String> metadata = new HashMap<>(count);
+    for (int i = 0; i < count; i++) {
+      String key = readString(input);
+      metadata.put(key, readString(input));
+    }
+    return metadata;
+  }
+
+  /**
+   * Terms are stored as a per-document vocabulary followed by one vocabulary
+   * index per position, then the character offsets as deltas.
+   */
+  private static byte[] writeTerms(Document doc) throws IOException {
+    ByteArrayOutputStream array = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(array);
+
+    HashMap<String, Integer> ids = new HashMap<>();
+    List<String> vocabulary = new ArrayList<>();
+    int[] positions = new int[doc.terms.size()];
+    for (int i = 0; i < positions.length; i++) {
+      String term = doc.terms.get(i);
+      Integer id = ids.get(term);
+      if (id == null) {
+        id = vocabulary.size();
+        ids.put(term, id);
+        vocabulary.add(term);
+      }
+      positions[i] = id;
+    }
+    VByte.compressInt(output, vocabulary.size());
+    for (String term : vocabulary) {
+      writeString(output, term);
+    }
+    VByte.compressInt(output, positions.length);
+    for (int id : positions) {
+      VByte.compressInt(output, id);
+    }
+
+    int offsets = (doc.termCharBegin == null || doc.termCharEnd == null) ? 0
+            : Math.min(doc.termCharBegin.size(), doc.termCharEnd.size());
+    VByte.compressInt(output, offsets);
+    int previous = 0;
+    for (int i = 0; i < offsets; i++) {
+      int begin = doc.termCharBegin.get(i);
+      int end = doc.termCharEnd.get(i);
+      writeSigned(output, begin - previous);
+      writeSigned(output, end - begin);
+      previous = begin;
+    }
+    output.close();
+    return array.toByteArray();
+  }
+
+  private static void readTerms(byte[] section, Document d) throws IOException {
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(section));
+    int vocabularySize = VByte.uncompressInt(input);
+    String[] vocabulary = new String[vocabularySize];
+    for (int i = 0; i < vocabularySize; i++) {
+      vocabulary[i] = readString(input);
+    }
+    int count = VByte.uncompressInt(input);
+    List<String> terms = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      terms.add(vocabulary[VByte.uncompressInt(input)]);
+    }
+    d.terms = terms;
+
+    int offsets = VByte.uncompressInt(input);
+    d.termCharBegin = new ArrayList<>(offsets);
+    d.termCharEnd = new ArrayList<>(offsets);
+    int previous = 0;
+    for (int i = 0; i < offsets; i++) {
+      int begin = previous + readSigned(input);
+      d.termCharBegin.add(begin);
+      d.termCharEnd.add(begin + readSigned(input));
+      previous = begin;
+    }
+  }
+
+  private static byte[] writeTags(List<Tag> tags) throws IOException {
+    ByteArrayOutputStream array = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(array);
+    VByte.compressInt(output, tags.size());
+    for (Tag tag : tags) {
+      writeString(output, tag.name);
+      if (tag.attributes == null) {
+        VByte.compressInt(output, 0);
+      } else {
+        VByte.compressInt(output, tag.attributes.size() + 1);
+        for (Map.Entry<String, String> entry : tag.attributes.entrySet()) {
+          writeString(output, entry.getKey());
+          writeString(output, entry.getValue());
+        }
+      }
+      writeSigned(output, tag.begin);
+      writeSigned(output, tag.end - tag.begin);
+      writeSigned(output, tag.charBegin);
+      writeSigned(output, tag.charEnd - tag.charBegin);
+    }
+    output.close();
+    return array.toByteArray();
+  }
+
+  private static List<Tag> readTags(byte[] section) throws IOException {
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(section));
+    int count = VByte.uncompressInt(input);
+    List<Tag> tags = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      String name = readString(input);
+      int attributeCount = VByte.uncompressInt(input) - 1;
+      Map<String, String> attributes = null;
+      if (attributeCount >= 0) {
+        attributes = new HashMap<>(attributeCount);
+        for (int j = 0; j < attributeCount; j++) {
+          String key = readString(input);
+          attributes.put(key, readString(input));
+        }
+      }
+      int begin = readSigned(input);
+      int end = begin + readSigned(input);
+      int charBegin = readSigned(input);
+      int charEnd = charBegin + readSigned(input);
+      tags.add(new Tag(name, attributes, begin, end, charBegin, charEnd));
+    }
+    return tags;
+  }
+
+  /**
+   * Strings are a vbyte of the UTF-8 length plus one (zero for null) and the
+   * UTF-8 bytes.
+   */
+  private static void writeString(DataOutput output, String text) throws IOException {
+    if (text == null) {
+      VByte.compressInt(output, 0);
+      return;
+    }
+    byte[] bytes = ByteUtil.fromString(text);
+    VByte.compressInt(output, bytes.length + 1);
+    output.write(bytes);
+  }
+
+  private static String readString(DataInputStream input) throws IOException {
+    int length = VByte.uncompressInt(input) - 1;
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    input.readFully(bytes);
+    return ByteUtil.toString(bytes, length);
+  }
+
+  /**
+   * Zig-zag coded, so small negative values stay short.
+   */
+  private static void writeSigned(DataOutput output, int value) throws IOException {
+    long v = value;
+    VByte.compressLong(output, (v << 1) ^ (v >> 63));
+  }
+
+  private static int readSigned(DataInput input) throws IOException {
+    long v = VByte.uncompressLong(input);
+    return (int) ((v >>> 1) ^ -(v & 1));
+  }
+
+  private static void skipFully(DataInputStream input, int length) throws IOException {
+    int remaining = length;
+    while (remaining > 0) {
+      int skipped = input.skipBytes(remaining);
+      if (skipped <= 0) {
+        throw new IOException("Compact document record is truncated.");
+      }
+      remaining -= skipped;
+    }
+  }
+}
@@ -8,6 +8,7 @@ import org.lemurproject.galago.utility.Parameters;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.PushbackInputStream;
 import java.lang.reflect.Constructor;
 
 /**
@@ -15,6 +16,7 @@ import java.lang.reflect.Constructor;
  */
 public abstract class DocumentSerializer {
   public Parameters opts;
+  private volatile DocumentSerializer compact = null;
   public DocumentSerializer(Parameters opts) {
     this.opts = opts;
   }
@@ -45,11 +47,30 @@ public abstract class DocumentSerializer {
   public abstract Document fromStream(DataInputStream stream, Document.DocumentComponents components) throws IOException;
 
   /**
-   * Convert a galago DataStream into a Document
+   * Convert a galago DataStream into a Document. Records in the compact format are recognized and read as such,
+   * whatever serializer the corpus manifest names, so migrated and merged corpora can mix formats.
    * @throws IOException
    */
   public Document fromStream(DataStream stream, Document.DocumentComponents components) throws IOException {
-    return fromStream(new DataInputStream(stream), components);
+    if (this instanceof CompactDocumentSerializer) {
+      return fromStream(new DataInputStream(stream), components);
+    }
+    // DataStreams can't seek backwards, so peek through a pushback buffer
+    byte[] head = new byte[CompactDocumentSerializer.MAGIC.length + 1];
+    PushbackInputStream input = new PushbackInputStream(stream, head.length);
+    int read = 0;
+    while (read < head.length) {
+      int count = input.read(head, read, head.length - read);
+      if (count <= 0) {
+        break;
+      }
+      read += count;
+    }
+    input.unread(head, 0, read);
+    if (read == head.length && CompactDocumentSerializer.isCompact(head)) {
+      return getCompactSerializer().fromStream(new DataInputStream(input), components);
+    }
+    return fromStream(new DataInputStream(input), components);
   }
 
   /**
@@ -58,9 +79,19 @@ public abstract class DocumentSerializer {
    */
   public Document fromBytes(byte[] data, Document.DocumentComponents selection) throws IOException {
     ByteArrayInputStream stream = new ByteArrayInputStream(data);
+    if (!(this instanceof CompactDocumentSerializer) && CompactDocumentSerializer.isCompact(data)) {
+      return getCompactSerializer().fromStream(new DataInputStream(stream), selection);
+    }
     return fromStream(new DataInputStream(stream), selection);
   }
 
+  private DocumentSerializer getCompactSerializer() {
+    if (compact == null) {
+      compact = new CompactDocumentSerializer(opts);
+    }
+    return compact;
+  }
+
   /** @deprecated use create instead! */
   @Deprecated
   public static DocumentSerializer instance(Parameters opts) throws IOException {
@@ -11,5 +11,10 @@ import org.lemurproject.galago.tupleflow.Processor;
  * @author sjh
  */
 public interface DynamicIndex extends Processor<Document> {
-  
+
+  /**
+   * Returns a counter that changes whenever the searchable contents of this
+   * index change, so that readers can tell when cached results are stale.
+   */
+  public long getModificationCount();
 }
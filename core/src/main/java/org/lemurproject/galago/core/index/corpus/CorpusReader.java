@@ -9,12 +9,19 @@ import org.lemurproject.galago.core.parse.Document.DocumentComponents;
 import org.lemurproject.galago.core.retrieval.iterator.disk.DiskDataIterator;
 import org.lemurproject.galago.core.retrieval.query.Node;
 import org.lemurproject.galago.core.retrieval.query.NodeType;
+import org.lemurproject.galago.utility.CmpUtil;
 import org.lemurproject.galago.utility.Parameters;
 import org.lemurproject.galago.tupleflow.Utility;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
 /**
  *
@@ -69,6 +76,53 @@ public class CorpusReader extends KeyValueReader implements DocumentReader {
     }
   }
 
+  /**
+   * Fetches a batch of documents in two passes. The identifiers are sorted
+   * and the raw values are read through a single iterator that only moves
+   * forward, so each B-tree block is located and read once and the file is
+   * read in order. The values are then decoded in parallel, and only the
+   * requested components are decoded. A document that fails to decode is
+   * logged and left out, like an identifier that is not in the corpus.
+   */
+  @Override
+  public Map<Long, Document> getDocuments(List<Long> keys, DocumentComponents p) throws IOException {
+    final List<Long> found = new ArrayList<>();
+    final List<byte[]> values = new ArrayList<>();
+    KeyIterator iterator = getIterator();
+    for (long id : new TreeSet<>(keys)) {
+      byte[] key = Utility.fromLong(id);
+      if (!iterator.skipToKey(key)) {
+        break;
+      }
+      if (CmpUtil.equals(key, iterator.getKey())) {
+        found.add(id);
+        values.add(iterator.getValueBytes());
+      }
+    }
+
+    final Document[] documents = new Document[values.size()];
+    IntStream range = IntStream.range(0, documents.length);
+    if (documents.length > 1) {
+      range = range.parallel();
+    }
+    range.forEach(i -> {
+      try {
+        documents[i] = serializer.fromBytes(values.get(i), p);
+      } catch (IOException e) {
+        // one bad document should not cost the caller the rest of the batch
+        Logger.getLogger(CorpusReader.class.getName()).log(Level.SEVERE, "Failed to get document " + found.get(i), e);
+      }
+    });
+
+    HashMap<Long, Document> results = new HashMap<>();
+    for (int i = 0; i < documents.length; i++) {
+      if (documents[i] != null) {
+        results.put(found.get(i), documents[i]);
+      }
+    }
+    return results;
+  }
+
   @Override
   public Map<String, NodeType> getNodeTypes() {
     HashMap<String, NodeType> types = new HashMap<String, NodeType>();
@@ -2,6 +2,9 @@
 package org.lemurproject.galago.core.index.corpus;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import org.lemurproject.galago.core.index.KeyIterator;
 import org.lemurproject.galago.core.index.IndexPartReader;
 import org.lemurproject.galago.core.parse.Document;
@@ -19,6 +22,22 @@ public interface DocumentReader extends IndexPartReader {
 
   public abstract Document getDocument(long key, DocumentComponents p) throws IOException;
 
+  /**
+   * Fetches a batch of documents by identifier. Identifiers that are not in
+   * the corpus are left out of the result. Readers that can do better than
+   * one lookup per document (see CorpusReader) override this.
+   */
+  public default Map<Long, Document> getDocuments(List<Long> keys, DocumentComponents p) throws IOException {
+    Map<Long, Document> results = new HashMap<>();
+    for (long key : keys) {
+      Document document = getDocument(key, p);
+      if (document != null) {
+        results.put(key, document);
+      }
+    }
+    return results;
+  }
+
   public interface DocumentIterator extends KeyIterator {
 
     public abstract Document getDocument(DocumentComponents p) throws IOException;
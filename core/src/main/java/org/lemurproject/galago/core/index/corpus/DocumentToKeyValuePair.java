@@ -1,9 +1,8 @@
 // BSD License (http://lemurproject.org/galago-license)
 package org.lemurproject.galago.core.index.corpus;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
+import org.lemurproject.galago.core.corpus.CompactDocumentSerializer;
 import org.lemurproject.galago.core.parse.Document;
 
 import org.lemurproject.galago.core.types.KeyValuePair;
@@ -13,13 +12,16 @@ import org.lemurproject.galago.tupleflow.StandardStep;
 import org.lemurproject.galago.tupleflow.TupleFlowParameters;
 import org.lemurproject.galago.tupleflow.Utility;
 import org.lemurproject.galago.tupleflow.execution.Verified;
-import org.xerial.snappy.SnappyOutputStream;
+import org.lemurproject.galago.utility.Parameters;
 
 /**
  * Writes documents to a file - new output file is created in the folder
  * specified by "filename" - document.name -> output-file, byte-offset is passed
  * on
  *
+ * Documents are stored with CompactDocumentSerializer, which keeps terms and
+ * tags, so KeyValuePairToDocument does not need to tokenize again.
+ *
  * @author sjh
  */
 @Verified
@@ -27,31 +29,26 @@ import org.xerial.snappy.SnappyOutputStream;
 @OutputClass(className = "org.lemurproject.galago.core.types.KeyValuePair")
 public class DocumentToKeyValuePair extends StandardStep<Document, KeyValuePair> implements KeyValuePair.Source {
 
-  boolean compressed;
+  final CompactDocumentSerializer serializer;
 
   public DocumentToKeyValuePair() {
-    compressed = false; // used for testing
+    this(false); // used for testing
   }
 
   public DocumentToKeyValuePair(TupleFlowParameters parameters) {
-    compressed = parameters.getJSON().get("compressed", true);
+    this(parameters.getJSON().get("compressed", true));
+  }
+
+  private DocumentToKeyValuePair(boolean compressed) {
+    Parameters options = Parameters.create();
+    options.set("compressed", compressed);
+    serializer = new CompactDocumentSerializer(options);
   }
 
   @Override
   public void process(Document document) throws IOException {
-    ByteArrayOutputStream array = new ByteArrayOutputStream();
-    ObjectOutputStream output;
-    if (compressed) {
-      output = new ObjectOutputStream(new SnappyOutputStream(array));
-    } else {
-      output = new ObjectOutputStream(array);
-    }
-
-    output.writeObject(document);
-    output.close();
-
     byte[] key = Utility.fromLong(document.identifier);
-    byte[] value = array.toByteArray();
+    byte[] value = serializer.toBytes(document);
     KeyValuePair pair = new KeyValuePair(key, value);
     processor.process(pair);
 
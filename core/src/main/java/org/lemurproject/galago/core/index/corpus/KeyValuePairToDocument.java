@@ -4,6 +4,7 @@ package org.lemurproject.galago.core.index.corpus;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import org.lemurproject.galago.core.corpus.CompactDocumentSerializer;
 import org.lemurproject.galago.core.parse.Document;
 import org.lemurproject.galago.core.types.KeyValuePair;
 import org.lemurproject.galago.tupleflow.InputClass;
@@ -11,12 +12,17 @@ import org.lemurproject.galago.tupleflow.OutputClass;
 import org.lemurproject.galago.tupleflow.StandardStep;
 import org.lemurproject.galago.tupleflow.TupleFlowParameters;
 import org.lemurproject.galago.tupleflow.execution.Verified;
+import org.lemurproject.galago.utility.Parameters;
 import org.xerial.snappy.SnappyInputStream;
 
 /**
  * <p>This is used in conjunction with DocumentToKeyValuePair.  Since Document
  * is not a real Galago type, it needs to be converted to a KeyValuePair in order
  * to be passed between stages (or to a Sorter).</p>
+ *
+ * <p>Values written by CompactDocumentSerializer are recognized by their
+ * header; anything else is read with Java serialization, as older versions of
+ * DocumentToKeyValuePair wrote it.</p>
  * 
  * @author trevor
  */
@@ -26,16 +32,29 @@ import org.xerial.snappy.SnappyInputStream;
 public class KeyValuePairToDocument extends StandardStep<KeyValuePair, Document> {
 
   boolean compressed;
+  final CompactDocumentSerializer serializer;
 
   public KeyValuePairToDocument() {
-    compressed = false; // used for testing
+    this(false); // used for testing
   }
 
   public KeyValuePairToDocument(TupleFlowParameters parameters) {
-    compressed = parameters.getJSON().get("compressed", true);
+    this(parameters.getJSON().get("compressed", true));
+  }
+
+  private KeyValuePairToDocument(boolean compressed) {
+    this.compressed = compressed;
+    Parameters options = Parameters.create();
+    options.set("tokenizeMissingTerms", false);
+    serializer = new CompactDocumentSerializer(options);
   }
 
   public void process(KeyValuePair object) throws IOException {
+    if (CompactDocumentSerializer.isCompact(object.value)) {
+      processor.process(serializer.fromBytes(object.value, Document.DocumentComponents.All));
+      return;
+    }
+
     ByteArrayInputStream stream = new ByteArrayInputStream(object.value);
     Document document;
 
@@ -0,0 +1,61 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.index.disk;
+
+import java.io.DataInput;
+import java.io.IOException;
+
+/**
+ * The decoded block-max stream of a posting list, see PositionIndexWriter
+ * (or the block table of a BlockPostingsList).
+ *
+ * Each block covers (blockEnds[i-1], blockEnds[i]]; the table is small (one
+ * entry per skipDistance documents), so it is read in one go on first use.
+ */
+class BlockMaxTable {
+
+  private final long[] blockEnds;
+  private final int[] maximumCounts;
+  private final int[] minimumLengths;
+  private int current;
+
+  BlockMaxTable(DataInput input, int numBlocks) throws IOException {
+    blockEnds = new long[numBlocks];
+    maximumCounts = new int[numBlocks];
+    minimumLengths = new int[numBlocks];
+
+    long document = 0;
+    for (int i = 0; i < numBlocks; i++) {
+      document += input.readLong();
+      blockEnds[i] = document;
+      maximumCounts[i] = input.readInt();
+      minimumLengths[i] = input.readInt();
+    }
+    current = 0;
+  }
+
+  BlockMaxTable(long[] blockEnds, int[] maximumCounts, int[] minimumLengths) {
+    this.blockEnds = blockEnds;
+    this.maximumCounts = maximumCounts;
+    this.minimumLengths = minimumLengths;
+    current = 0;
+  }
+
+  long blockEnd(long document) {
+    // the cursor normally only moves forward
+    while (current > 0 && blockEnds[current - 1] >= document) {
+      current--;
+    }
+    while (current < blockEnds.length && blockEnds[current] < document) {
+      current++;
+    }
+    return (current < blockEnds.length) ? blockEnds[current] : Long.MAX_VALUE;
+  }
+
+  int maximumCount() {
+    return (current < blockEnds.length) ? maximumCounts[current] : 0;
+  }
+
+  int minimumLength() {
+    return (current < blockEnds.length) ? minimumLengths[current] : Integer.MAX_VALUE;
+  }
+}
@@ -0,0 +1,188 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.index.disk;
+
+import org.lemurproject.galago.core.index.BTreeValueIterator;
+import org.lemurproject.galago.tupleflow.buffer.DiskSpillCompressedByteBuffer;
+import org.lemurproject.galago.utility.btree.IndexElement;
+import org.lemurproject.galago.utility.buffer.CompressedByteBuffer;
+import org.lemurproject.galago.utility.compression.PForDelta;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A posting list in the block codec ("codec" : "block" in the part manifest),
+ * written by PositionIndexWriter and CountIndexWriter and read by
+ * BlockPostingsSource.
+ *
+ * Documents are grouped into blocks of PForDelta.BLOCK_SIZE. Each block holds
+ * the PForDelta coded document gaps, then the counts (less one), then, for
+ * positional lists, every position gap of the block in PForDelta chunks of
+ * BLOCK_SIZE. Positions restart from zero in each document.
+ *
+ * Layout:
+ *   header : [options][documentCount][totalPositionCount][maximumPositionCount]
+ *            [numBlocks][block table bytes][block data bytes]
+ *   block table, one entry per block :
+ *            [d-gap last document][max count][min length bound]
+ *            [document+count bytes][position bytes]
+ *   block data
+ *
+ * The block table doubles as a skip list and as the block-max table (see
+ * BlockMaxSource); the length bound is computed as in PositionIndexWriter,
+ * or from the counts alone for lists without positions.
+ */
+class BlockPostingsList implements IndexElement {
+
+  private static final int BLOCK_SIZE = PForDelta.BLOCK_SIZE;
+
+  public final byte[] word;
+  private final boolean hasPositions;
+  long documentCount;
+  long totalPositionCount;
+  long maximumPositionCount;
+  // current block
+  private final int[] documentGaps = new int[BLOCK_SIZE];
+  private final int[] counts = new int[BLOCK_SIZE];
+  private int[] positionGaps;
+  private int blockDocuments;
+  private int blockPositions;
+  private long lastDocument;
+  private int lastPosition;
+  private long lastBlockDocument;
+  private long blockMaximumCount;
+  private long blockMinimumLength;
+  // output
+  private int numBlocks;
+  private final CompressedByteBuffer header;
+  private final CompressedByteBuffer scratch;
+  private final DiskSpillCompressedByteBuffer blockTable;
+  private final DiskSpillCompressedByteBuffer blockData;
+
+  BlockPostingsList(byte[] word, boolean hasPositions) {
+    this.word = word;
+    this.hasPositions = hasPositions;
+    this.positionGaps = hasPositions ? new int[BLOCK_SIZE] : null;
+    this.header = new CompressedByteBuffer();
+    this.scratch = new CompressedByteBuffer();
+    this.blockTable = new DiskSpillCompressedByteBuffer();
+    this.blockData = new DiskSpillCompressedByteBuffer();
+    this.blockMinimumLength = Long.MAX_VALUE;
+  }
+
+  public void addDocument(long document) {
+    if (blockDocuments > 0) {
+      finishDocument();
+    }
+    if (blockDocuments == BLOCK_SIZE) {
+      finishBlock();
+    }
+    assert document - lastDocument <= Integer.MAX_VALUE : "document gap too large for the block codec";
+    documentGaps[blockDocuments] = (int) (document - lastDocument);
+    counts[blockDocuments] = 0;
+    blockDocuments++;
+    lastDocument = document;
+    lastPosition = 0;
+    documentCount++;
+  }
+
+  public void addPosition(int position) {
+    assert hasPositions;
+    counts[blockDocuments - 1]++;
+    totalPositionCount++;
+    if (blockPositions == positionGaps.length) {
+      int[] grown = new int[positionGaps.length * 2];
+      System.arraycopy(positionGaps, 0, grown, 0, blockPositions);
+      positionGaps = grown;
+    }
+    positionGaps[blockPositions++] = position - lastPosition;
+    lastPosition = position;
+  }
+
+  public void addCount(int count) {
+    counts[blockDocuments - 1] += count;
+    totalPositionCount += count;
+  }
+
+  private void finishDocument() {
+    int count = counts[blockDocuments - 1];
+    maximumPositionCount = Math.max(maximumPositionCount, count);
+    blockMaximumCount = Math.max(blockMaximumCount, count);
+    // a document is at least as long as its last position, or its count
+    long length = hasPositions ? lastPosition + 1 : count;
+    blockMinimumLength = Math.min(blockMinimumLength, length);
+  }
+
+  private void finishBlock() {
+    long start = blockData.length();
+
+    scratch.clear();
+    PForDelta.compress(documentGaps, 0, blockDocuments, scratch);
+    // every count is at least one
+    for (int i = 0; i < blockDocuments; i++) {
+      counts[i]--;
+    }
+    PForDelta.compress(counts, 0, blockDocuments, scratch);
+    blockData.add(scratch);
+    long documentBytes = blockData.length() - start;
+
+    if (hasPositions) {
+      for (int offset = 0; offset < blockPositions; offset += BLOCK_SIZE) {
+        scratch.clear();
+        PForDelta.compress(positionGaps, offset, Math.min(BLOCK_SIZE, blockPositions - offset), scratch);
+        blockData.add(scratch);
+      }
+    }
+    long positionBytes = blockData.length() - start - documentBytes;
+
+    blockTable.add(lastDocument - lastBlockDocument);
+    blockTable.add(blockMaximumCount);
+    blockTable.add(blockMinimumLength);
+    blockTable.add(documentBytes);
+    blockTable.add(positionBytes);
+    numBlocks++;
+
+    lastBlockDocument = lastDocument;
+    blockDocuments = 0;
+    blockPositions = 0;
+    blockMaximumCount = 0;
+    blockMinimumLength = Long.MAX_VALUE;
+  }
+
+  public void close() {
+    if (blockDocuments > 0) {
+      finishDocument();
+      finishBlock();
+    }
+
+    header.add(BTreeValueIterator.HAS_MAXTF | BTreeValueIterator.HAS_BLOCKMAX);
+    header.add(documentCount);
+    header.add(totalPositionCount);
+    header.add(maximumPositionCount);
+    header.add(numBlocks);
+    header.add(blockTable.length());
+    header.add(blockData.length());
+  }
+
+  @Override
+  public long dataLength() {
+    return header.length() + blockTable.length() + blockData.length();
+  }
+
+  @Override
+  public void write(OutputStream output) throws IOException {
+    header.write(output);
+    header.clear();
+
+    blockTable.write(output);
+    blockTable.clear();
+
+    blockData.write(output);
+    blockData.clear();
+  }
+
+  @Override
+  public byte[] key() {
+    return word;
+  }
+}
@@ -0,0 +1,268 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.index.disk;
+
+import org.lemurproject.galago.core.index.source.BTreeValueSource;
+import org.lemurproject.galago.core.index.source.BlockMaxSource;
+import org.lemurproject.galago.core.index.source.ExtentSource;
+import org.lemurproject.galago.core.index.stats.NodeStatistics;
+import org.lemurproject.galago.core.util.ExtentArray;
+import org.lemurproject.galago.utility.btree.BTreeIterator;
+import org.lemurproject.galago.utility.buffer.DataStream;
+import org.lemurproject.galago.utility.buffer.VByteInput;
+import org.lemurproject.galago.utility.compression.PForDelta;
+
+import java.io.DataInput;
+import java.io.IOException;
+
+/**
+ * Reads a posting list written by BlockPostingsList.
+ *
+ * The block table is read in one go when the source is created. Moving into
+ * a block decodes all of its documents and counts into int arrays; positions
+ * are only decoded (again a whole block at a time) the first time extents are
+ * asked for in that block. Lists without positions (count indexes) must only
+ * be used as a CountSource.
+ */
+final public class BlockPostingsSource extends BTreeValueSource implements ExtentSource, BlockMaxSource {
+
+  private static final int BLOCK_SIZE = PForDelta.BLOCK_SIZE;
+
+  public long documentCount;
+  public long totalPositionCount;
+  public long maximumPositionCount;
+  // block table
+  private int numBlocks;
+  private long[] blockEnds;
+  private long[] blockStarts;
+  private long[] positionStarts;
+  private BlockMaxTable blockMax;
+  private DataStream data;
+  // current block
+  private int block;
+  private int blockLength;
+  private int index;
+  private final long[] documents = new long[BLOCK_SIZE];
+  private final int[] counts = new int[BLOCK_SIZE];
+  private final int[] positionOffsets = new int[BLOCK_SIZE + 1];
+  private int[] positions = new int[BLOCK_SIZE];
+  private boolean positionsLoaded;
+  private int extentsIndex;
+  private boolean done;
+  // decode buffers
+  private final int[] gaps = new int[BLOCK_SIZE];
+  private final byte[] scratch = new byte[PForDelta.MAX_PACKED_BYTES];
+  // final here to prevent reallocation of this during scoring
+  final private ExtentArray extentArray;
+
+  public BlockPostingsSource(BTreeIterator iter) throws IOException {
+    super(iter);
+    extentArray = new ExtentArray();
+    reset();
+  }
+
+  @Override
+  public void reset() throws IOException {
+    extentArray.reset();
+    done = false;
+    initialize();
+  }
+
+  private void initialize() throws IOException {
+    final DataStream valueStream = btreeIter.getSubValueStream(0, 128);
+    final DataInput stream = new VByteInput(valueStream);
+
+    stream.readInt(); // options
+    documentCount = stream.readLong();
+    totalPositionCount = stream.readLong();
+    maximumPositionCount = stream.readLong();
+    numBlocks = stream.readInt();
+    final long tableByteLength = stream.readLong();
+    final long dataByteLength = stream.readLong();
+
+    final long tableStart = valueStream.getPosition();
+    final DataInput table = new VByteInput(btreeIter.getSubValueStream(tableStart, tableByteLength));
+    blockEnds = new long[numBlocks];
+    blockStarts = new long[numBlocks];
+    positionStarts = new long[numBlocks];
+    int[] maximumCounts = new int[numBlocks];
+    int[] minimumLengths = new int[numBlocks];
+
+    long document = 0;
+    long offset = 0;
+    for (int b = 0; b < numBlocks; b++) {
+      document += table.readLong();
+      blockEnds[b] = document;
+      maximumCounts[b] = table.readInt();
+      minimumLengths[b] = table.readInt();
+      long documentBytes = table.readLong();
+      long positionBytes = table.readLong();
+      blockStarts[b] = offset;
+      positionStarts[b] = offset + documentBytes;
+      offset += documentBytes + positionBytes;
+    }
+    assert tableStart + tableByteLength + dataByteLength == btreeIter.getValueLength();
+
+    blockMax = new BlockMaxTable(blockEnds, maximumCounts, minimumLengths);
+    data = btreeIter.getSubValueStream(tableStart + tableByteLength, dataByteLength);
+    loadBlock(0);
+  }
+
+  /**
+   * Decodes the documents and counts of block b.
+   */
+  private void loadBlock(int b) throws IOException {
+    block = b;
+    index = 0;
+    positionsLoaded = false;
+    extentsIndex = -1;
+    extentArray.reset();
+    if (b >= numBlocks) {
+      done = true;
+      blockLength = 0;
+      return;
+    }
+
+    blockLength = (int) Math.min(BLOCK_SIZE, documentCount - (long) b * BLOCK_SIZE);
+    data.seek(blockStarts[b]);
+    PForDelta.uncompress(data, gaps, 0, blockLength, scratch);
+    long document = (b == 0) ? 0 : blockEnds[b - 1];
+    for (int i = 0; i < blockLength; i++) {
+      document += gaps[i];
+      documents[i] = document;
+    }
+    PForDelta.uncompress(data, counts, 0, blockLength, scratch);
+    for (int i = 0; i < blockLength; i++) {
+      counts[i]++;
+    }
+  }
+
+  /**
+   * Decodes every position gap of the current block.
+   */
+  private void loadPositions() throws IOException {
+    positionOffsets[0] = 0;
+    for (int i = 0; i < blockLength; i++) {
+      positionOffsets[i + 1] = positionOffsets[i] + counts[i];
+    }
+    int total = positionOffsets[blockLength];
+    if (positions.length < total) {
+      positions = new int[Math.max(total, positions.length * 2)];
+    }
+
+    data.seek(positionStarts[block]);
+    for (int offset = 0; offset < total; offset += BLOCK_SIZE) {
+      PForDelta.uncompress(data, positions, offset, Math.min(BLOCK_SIZE, total - offset), scratch);
+    }
+    positionsLoaded = true;
+  }
+
+  @Override
+  public boolean isDone() {
+    return done;
+  }
+
+  @Override
+  public boolean hasAllCandidates() {
+    return false;
+  }
+
+  @Override
+  public long totalEntries() {
+    return documentCount;
+  }
+
+  @Override
+  public long currentCandidate() {
+    return done ? Long.MAX_VALUE : documents[index];
+  }
+
+  @Override
+  public void movePast(long id) throws IOException {
+    syncTo(id + 1);
+  }
+
+  @Override
+  public void syncTo(long document) throws IOException {
+    if (done || document <= documents[index]) {
+      return;
+    }
+    if (document > blockEnds[block]) {
+      // skip whole blocks without decoding them
+      int b = block + 1;
+      while (b < numBlocks && blockEnds[b] < document) {
+        b++;
+      }
+      loadBlock(b);
+      if (done) {
+        return;
+      }
+    }
+    // the block ends at or after document, so this stops inside it
+    while (documents[index] < document) {
+      index++;
+    }
+  }
+
+  @Override
+  public int count(long id) {
+    if (!done && id == documents[index]) {
+      return counts[index];
+    }
+    return 0;
+  }
+
+  @Override
+  public ExtentArray extents(long id) {
+    if (done || id != documents[index]) {
+      return ExtentArray.EMPTY;
+    }
+    if (extentsIndex != index) {
+      try {
+        if (!positionsLoaded) {
+          loadPositions();
+        }
+      } catch (IOException ioe) {
+        throw new RuntimeException(ioe);
+      }
+      extentArray.reset();
+      extentArray.setDocument(id);
+      int position = 0;
+      for (int i = positionOffsets[index]; i < positionOffsets[index + 1]; i++) {
+        position += positions[i];
+        extentArray.add(position);
+      }
+      extentsIndex = index;
+    }
+    return extentArray;
+  }
+
+  @Override
+  public boolean hasBlockMax() {
+    return numBlocks > 0;
+  }
+
+  @Override
+  public long blockEnd(long document) throws IOException {
+    return blockMax.blockEnd(document);
+  }
+
+  @Override
+  public int blockMaximumCount() {
+    return blockMax.maximumCount();
+  }
+
+  @Override
+  public int blockMinimumLength() {
+    return blockMax.minimumLength();
+  }
+
+  @Override
+  public NodeStatistics getStatistics() {
+    NodeStatistics ns = new NodeStatistics();
+    ns.node = this.key();
+    ns.maximumCount = this.maximumPositionCount;
+    ns.nodeFrequency = this.totalPositionCount;
+    ns.nodeDocumentCount = this.documentCount;
+    return ns;
+  }
+}
@@ -4,7 +4,10 @@
 package org.lemurproject.galago.core.index.disk;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.lemurproject.galago.core.btree.format.BTreeFactory;
@@ -44,6 +47,22 @@ public class ConflationIndexReader extends KeyValueReader {
     return new StemIterator(reader);
   }
 
+  /**
+   * Inverts the part into a map from each conflated term to its stem.
+   */
+  public Map<String, String> getStems() throws IOException {
+    Map<String, String> stems = new HashMap<>();
+    StemIterator iterator = new StemIterator(reader);
+    while (!iterator.isDone()) {
+      String stem = iterator.getKeyString();
+      for (String term : iterator.getConflations()) {
+        stems.put(term, stem);
+      }
+      iterator.nextKey();
+    }
+    return stems;
+  }
+
   @Override
   public BaseIterator getIterator(Node node) throws IOException {
     throw new UnsupportedOperationException(
@@ -56,20 +75,27 @@ public class ConflationIndexReader extends KeyValueReader {
       super(reader);
     }
 
+    public List<String> getConflations() throws IOException {
+      DataStream valueStream = this.iterator.getValueStream();
+      int count = valueStream.readInt();
+      List<String> terms = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        byte[] term = new byte[valueStream.readInt()];
+        valueStream.readFully(term);
+        terms.add(ByteUtil.toString(term));
+      }
+      return terms;
+    }
+
     @Override
     public String getValueString() {
       try {
-        DataStream valueStream = this.iterator.getValueStream();
-        int count = valueStream.readInt();
         StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < count; i++) {
-          byte[] term = new byte[valueStream.readInt()];
-          valueStream.readFully(term);
-          if (i > 0) {
-            sb.append(",").append(ByteUtil.toString(term));
-          } else {
-            sb.append(ByteUtil.toString(term));
+        for (String term : getConflations()) {
+          if (sb.length() > 0) {
+            sb.append(",");
           }
+          sb.append(term);
         }
         return sb.toString();
       } catch (IOException e) {
@@ -31,6 +31,9 @@ public class ConflationIndexWriter implements KeyValuePair.KeyValueOrder.Shredde
     writer = new TupleflowDiskBTreeWriter(parameters);
     writer.getManifest().set("readerClass", ConflationIndexReader.class.getName());
     writer.getManifest().set("writerClass", getClass().getName());
+    if (parameters.getJSON().isString("stemmer")) {
+      writer.getManifest().set("stemmer", parameters.getJSON().getString("stemmer"));
+    }
   }
 
   @Override
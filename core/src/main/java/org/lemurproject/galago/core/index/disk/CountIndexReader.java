@@ -4,6 +4,7 @@ package org.lemurproject.galago.core.index.disk;
 import org.lemurproject.galago.utility.btree.BTreeIterator;
 import org.lemurproject.galago.utility.btree.BTreeReader;
 import org.lemurproject.galago.core.index.KeyListReader;
+import org.lemurproject.galago.core.index.source.CountSource;
 import org.lemurproject.galago.core.index.stats.AggregateIndexPart;
 import org.lemurproject.galago.core.index.stats.IndexPartStatistics;
 import org.lemurproject.galago.core.index.stats.NodeStatistics;
@@ -25,23 +26,32 @@ import java.util.Map;
  *
  * Skip lists are supported
  *
+ * Lists written with the block codec are read through BlockPostingsSource.
+ *
  * @author sjh
  */
 public class CountIndexReader extends KeyListReader implements AggregateIndexPart {
 
   public final String operation;
   Stemmer stemmer;
+  boolean blockCodec;
 
   public CountIndexReader(BTreeReader reader) throws Exception {
     super(reader);
     operation = reader.getManifest().get("defaultOperator", "counts");
     stemmer = Stemmer.create(reader.getManifest());
+    blockCodec = PositionIndexWriter.isBlockCodec(reader.getManifest());
   }
 
   public CountIndexReader(String pathname) throws Exception {
     super(pathname);
     operation = reader.getManifest().get("defaultOperator", "counts");
     stemmer = Stemmer.create(reader.getManifest());
+    blockCodec = PositionIndexWriter.isBlockCodec(reader.getManifest());
+  }
+
+  static CountSource countSource(BTreeIterator iterator, boolean blockCodec) throws IOException {
+    return blockCodec ? new BlockPostingsSource(iterator) : new CountIndexCountSource(iterator);
   }
 
   @Override
@@ -57,7 +67,7 @@ public class CountIndexReader extends KeyListReader implements AggregateIndexPar
     BTreeIterator iterator = reader.getIterator(key);
 
     if (iterator != null) {
-      return new DiskCountIterator(new CountIndexCountSource(iterator));
+      return new DiskCountIterator(countSource(iterator, blockCodec));
     }
     return null;
   }
@@ -95,16 +105,19 @@ public class CountIndexReader extends KeyListReader implements AggregateIndexPar
 
   public static class KeyIterator extends KeyListReader.KeyValueIterator {
 
+    private final boolean blockCodec;
+
     public KeyIterator(BTreeReader reader) throws IOException {
       super(reader);
+      blockCodec = PositionIndexWriter.isBlockCodec(reader.getManifest());
     }
 
     @Override
     public String getValueString() {
-      CountIndexCountSource it;
+      CountSource it;
       NodeStatistics ns = null;
       try {
-        it = new CountIndexCountSource(iterator);
+        it = countSource(iterator, blockCodec);
         ns = it.getStatistics();
       } catch (IOException ioe) {
         ioe.printStackTrace();
@@ -121,13 +134,14 @@ public class CountIndexReader extends KeyListReader implements AggregateIndexPar
       return sb.toString();
     }
 
+    /** Only for lists in the vbyte codec. */
     public CountIndexCountSource getStreamValueSource() throws IOException {
       return new CountIndexCountSource(iterator);
     }
     
     @Override
     public BaseIterator getValueIterator() throws IOException {
-      return new DiskCountIterator(new CountIndexCountSource(iterator));
+      return new DiskCountIterator(countSource(iterator, blockCodec));
     }
 
     @Override
@@ -26,6 +26,8 @@ import java.io.OutputStream;
  *
  * Skip lists are supported
  *
+ * With "codec" : "block" the lists are written by BlockPostingsList instead.
+ *
  * @author sjh
  */
 @InputClass(className = "org.lemurproject.galago.core.types.NumberWordCount", order = {"+word", "+document"})
@@ -36,6 +38,7 @@ public class CountIndexWriter implements
   Parameters actualParams;
   TupleflowBTreeWriter writer;
   CountsList invertedList;
+  BlockPostingsList blockList;
   // statistics //
   byte[] lastWord;
   long vocabCount = 0;
@@ -46,6 +49,7 @@ public class CountIndexWriter implements
   int options = 0;
   int skipDistance;
   int skipResetDistance;
+  boolean blockCodec;
 
   /**
    * Creates a new create of CountIndexWriter
@@ -55,6 +59,8 @@ public class CountIndexWriter implements
     this.actualParams.setIfMissing("writerClass", CountIndexWriter.class.getName());
     this.actualParams.setIfMissing("readerClass", CountIndexReader.class.getName());
     this.actualParams.setIfMissing("defaultOperator", "counts");
+    this.actualParams.setIfMissing("codec", "vbyte");
+    this.blockCodec = PositionIndexWriter.isBlockCodec(actualParams);
 
     this.writer = new TupleflowDiskBTreeWriter(parameters);
 
@@ -68,18 +74,14 @@ public class CountIndexWriter implements
 
   @Override
   public void processWord(byte[] wordBytes) throws IOException {
-    if (invertedList != null) {
-      highestDocumentCount = Math.max(highestDocumentCount, invertedList.documentCount);
-      highestFrequency = Math.max(highestFrequency, invertedList.totalInstanceCount);
-      collectionLength += invertedList.totalInstanceCount;
-      invertedList.close();
-      writer.add(invertedList);
+    closeList();
 
-      invertedList = null;
+    if (blockCodec) {
+      blockList = new BlockPostingsList(wordBytes, false);
+    } else {
+      invertedList = new CountsList();
+      invertedList.setWord(wordBytes);
     }
-
-    invertedList = new CountsList();
-    invertedList.setWord(wordBytes);
     assert lastWord == null || !CmpUtil.equals(lastWord, wordBytes) : "Duplicate word";
     lastWord = wordBytes;
 
@@ -88,23 +90,46 @@ public class CountIndexWriter implements
 
   @Override
   public void processDocument(long document) throws IOException {
-    invertedList.addDocument(document);
+    if (blockCodec) {
+      blockList.addDocument(document);
+    } else {
+      invertedList.addDocument(document);
+    }
   }
 
   @Override
   public void processTuple(int count) throws IOException {
-    invertedList.addCount(count);
+    if (blockCodec) {
+      blockList.addCount(count);
+    } else {
+      invertedList.addCount(count);
+    }
   }
 
-  @Override
-  public void close() throws IOException {
+  private void closeList() throws IOException {
     if (invertedList != null) {
       highestDocumentCount = Math.max(highestDocumentCount, invertedList.documentCount);
       highestFrequency = Math.max(highestFrequency, invertedList.totalInstanceCount);
       collectionLength += invertedList.totalInstanceCount;
       invertedList.close();
       writer.add(invertedList);
+
+      invertedList = null;
     }
+    if (blockList != null) {
+      highestDocumentCount = Math.max(highestDocumentCount, blockList.documentCount);
+      highestFrequency = Math.max(highestFrequency, blockList.totalPositionCount);
+      collectionLength += blockList.totalPositionCount;
+      blockList.close();
+      writer.add(blockList);
+
+      blockList = null;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    closeList();
 
     // Add stats to the manifest if needed
     Parameters manifest = writer.getManifest();
@@ -321,6 +346,7 @@ public class CountIndexWriter implements
     p.set("filename", buildParameters.getString("indexPath") + File.separator + indexName);
     p.set("skipping", buildParameters.getBoolean("skipping"));
     p.set("skipDistance", buildParameters.getLong("skipDistance"));
+    p.set("codec", buildParameters.get("codec", "vbyte"));
     if (stemmerName != null) {
       p.set("stemmer", buildParameters.getMap("stemmerClass").getString(stemmerName));
     }
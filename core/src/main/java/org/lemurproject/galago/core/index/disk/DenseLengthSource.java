@@ -0,0 +1,157 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.index.disk;
+
+import org.lemurproject.galago.core.index.source.LengthSource;
+import org.lemurproject.galago.core.index.stats.FieldStatistics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A lengths list held as one int per document, from the first to the last
+ * document of the list. Lookups are array reads and iteration is a cursor;
+ * sources made with copy() share the array.
+ *
+ * @see DiskLengthsReader#loadDense()
+ */
+final public class DenseLengthSource implements LengthSource {
+
+  /** The longest list that fits in an int array. */
+  public static final long MAX_DOCUMENTS = Integer.MAX_VALUE - 8;
+
+  private final String key;
+  private final FieldStatistics stats;
+  private final long firstDocument;
+  private final long lastDocument;
+  private final int[] lengths;
+  // iteration vars
+  private long currDocument;
+  private boolean done;
+
+  private DenseLengthSource(String key, FieldStatistics stats, int[] lengths) {
+    this.key = key;
+    this.stats = stats;
+    this.firstDocument = stats.firstDocId;
+    this.lastDocument = stats.lastDocId;
+    this.lengths = lengths;
+    reset();
+  }
+
+  /**
+   * Reads the whole list behind a disk source, or returns null if it has
+   * more than MAX_DOCUMENTS entries.
+   */
+  public static DenseLengthSource load(DiskLengthSource source) throws IOException {
+    FieldStatistics stats = source.getStatistics();
+    long count = (stats.lastDocId < stats.firstDocId) ? 0 : stats.lastDocId - stats.firstDocId + 1;
+    if (count > MAX_DOCUMENTS) {
+      return null;
+    }
+
+    int[] lengths = new int[(int) count];
+    byte[] buffer = new byte[4 << 14];
+    source.streamBuffer.seek(source.lengthsDataOffset);
+    int read = 0;
+    while (read < lengths.length) {
+      int chunk = Math.min(buffer.length / 4, lengths.length - read);
+      source.streamBuffer.readFully(buffer, 0, chunk * 4);
+      ByteBuffer.wrap(buffer, 0, chunk * 4).asIntBuffer().get(lengths, read, chunk);
+      read += chunk;
+    }
+    return new DenseLengthSource(source.key(), stats, lengths);
+  }
+
+  /**
+   * A new cursor over the same lengths.
+   */
+  public DenseLengthSource copy() {
+    return new DenseLengthSource(key, stats, lengths);
+  }
+
+  /**
+   * The length of any document, without moving the cursor.
+   */
+  public int lengthOf(long document) {
+    if (document < firstDocument || document > lastDocument) {
+      return 0;
+    }
+    return lengths[(int) (document - firstDocument)];
+  }
+
+  @Override
+  public void reset() {
+    this.currDocument = firstDocument;
+    this.done = (currDocument > lastDocument);
+  }
+
+  @Override
+  public boolean isDone() {
+    return done;
+  }
+
+  @Override
+  public long currentCandidate() {
+    return currDocument;
+  }
+
+  @Override
+  public boolean hasMatch(long id) {
+    return !done && currDocument == id;
+  }
+
+  @Override
+  public void movePast(long identifier) {
+    syncTo(identifier + 1);
+  }
+
+  @Override
+  public void syncTo(long identifier) {
+    // it's possible that the first document has zero length, and we may wish to sync to it.
+    if (identifier < firstDocument) {
+      return;
+    }
+    // we can't move past the last document
+    if (identifier > lastDocument) {
+      done = true;
+      identifier = lastDocument;
+    }
+    if (currDocument < identifier) {
+      currDocument = identifier;
+    }
+  }
+
+  @Override
+  public int length(long document) {
+    return (document == currDocument) ? lengthOf(document) : 0;
+  }
+
+  @Override
+  public boolean hasAllCandidates() {
+    return true;
+  }
+
+  @Override
+  public long totalEntries() {
+    return stats.documentCount;
+  }
+
+  @Override
+  public String key() {
+    return key;
+  }
+
+  @Override
+  public FieldStatistics getStatistics() {
+    FieldStatistics fs = new FieldStatistics();
+    fs.fieldName = stats.fieldName;
+    fs.collectionLength = stats.collectionLength;
+    fs.documentCount = stats.documentCount;
+    fs.nonZeroLenDocCount = stats.nonZeroLenDocCount;
+    fs.maxLength = stats.maxLength;
+    fs.minLength = stats.minLength;
+    fs.avgLength = stats.avgLength;
+    fs.firstDocId = stats.firstDocId;
+    fs.lastDocId = stats.lastDocId;
+    return fs;
+  }
+}
@@ -0,0 +1,158 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.index.disk;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.lemurproject.galago.core.btree.format.BTreeFactory;
+import org.lemurproject.galago.core.index.KeyToListIterator;
+import org.lemurproject.galago.core.index.KeyValueReader;
+import org.lemurproject.galago.core.retrieval.iterator.BaseIterator;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.NodeType;
+import org.lemurproject.galago.tupleflow.Utility;
+import org.lemurproject.galago.utility.ByteUtil;
+import org.lemurproject.galago.utility.btree.BTreeReader;
+import org.lemurproject.galago.utility.compression.VByte;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Reads the forward index written by DiskForwardIndexWriter. Documents are
+ * keyed by document number; the vocabulary is keyed by 0xFF followed by the
+ * term id, so it sorts after every document.
+ *
+ * Recently used terms are cached, since feedback documents share most of
+ * their vocabulary.
+ */
+public class DiskForwardIndexReader extends KeyValueReader {
+
+  public static final int DEFAULT_TERM_CACHE_SIZE = 100000;
+  private final Cache<Integer, String> termCache = Caffeine.newBuilder().maximumSize(DEFAULT_TERM_CACHE_SIZE).build();
+
+  public DiskForwardIndexReader(String filename) throws IOException {
+    super(BTreeFactory.getBTreeReader(filename));
+  }
+
+  public DiskForwardIndexReader(BTreeReader r) {
+    super(r);
+  }
+
+  public static byte[] getTermKey(int id) {
+    return new byte[]{(byte) 0xFF, (byte) (id >>> 24), (byte) (id >>> 16), (byte) (id >>> 8), (byte) id};
+  }
+
+  /**
+   * The term counts of a document, or null if it is not in the index.
+   */
+  public TermVector getTermVector(long document) throws IOException {
+    byte[] value = reader.getValueBytes(Utility.fromLong(document));
+    if (value == null) {
+      return null;
+    }
+    return new TermVector(value);
+  }
+
+  /**
+   * The term with this id, or null if there is none.
+   */
+  public String getTerm(int id) throws IOException {
+    String term = termCache.getIfPresent(id);
+    if (term == null) {
+      byte[] value = reader.getValueBytes(getTermKey(id));
+      if (value == null) {
+        return null;
+      }
+      term = ByteUtil.toString(value);
+      termCache.put(id, term);
+    }
+    return term;
+  }
+
+  @Override
+  public Map<String, NodeType> getNodeTypes() {
+    return Collections.emptyMap();
+  }
+
+  @Override
+  public KeyIterator getIterator() throws IOException {
+    return new KeyIterator(reader);
+  }
+
+  @Override
+  public BaseIterator getIterator(Node node) throws IOException {
+    throw new UnsupportedOperationException(
+            "Index doesn't support operator: " + node.getOperator());
+  }
+
+  /**
+   * The length of a document and its term counts, ordered by term id.
+   */
+  public static class TermVector {
+
+    public final int length;
+    public final int[] terms;
+    public final int[] counts;
+
+    public TermVector(byte[] value) throws IOException {
+      DataInputStream input = new DataInputStream(new ByteArrayInputStream(value));
+      length = VByte.uncompressInt(input);
+      int distinct = VByte.uncompressInt(input);
+      terms = new int[distinct];
+      counts = new int[distinct];
+      int id = 0;
+      for (int i = 0; i < distinct; i++) {
+        id += VByte.uncompressInt(input);
+        terms[i] = id;
+        counts[i] = VByte.uncompressInt(input);
+      }
+    }
+  }
+
+  public static class KeyIterator extends KeyValueReader.KeyValueIterator {
+
+    public KeyIterator(BTreeReader reader) throws IOException {
+      super(reader);
+    }
+
+    public boolean isTerm() {
+      return getKey().length != 8;
+    }
+
+    @Override
+    public String getKeyString() {
+      byte[] key = getKey();
+      if (isTerm()) {
+        return "#" + (((key[1] & 0xFF) << 24) | ((key[2] & 0xFF) << 16) | ((key[3] & 0xFF) << 8) | (key[4] & 0xFF));
+      }
+      return Long.toString(Utility.toLong(key));
+    }
+
+    @Override
+    public String getValueString() {
+      try {
+        if (isTerm()) {
+          return ByteUtil.toString(getValueBytes());
+        }
+        TermVector vector = new TermVector(getValueBytes());
+        StringBuilder sb = new StringBuilder();
+        sb.append(vector.length);
+        for (int i = 0; i < vector.terms.length; i++) {
+          byte[] term = reader.getValueBytes(getTermKey(vector.terms[i]));
+          sb.append(",").append(ByteUtil.toString(term)).append(":").append(vector.counts[i]);
+        }
+        return sb.toString();
+      } catch (IOException e) {
+        return "Unknown";
+      }
+    }
+
+    @Override
+    public KeyToListIterator getValueIterator() throws IOException {
+      throw new UnsupportedOperationException("The forward index does not support value iterators.");
+    }
+  }
+}
@@ -0,0 +1,109 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.index.disk;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+import org.lemurproject.galago.core.index.KeyValueWriter;
+import org.lemurproject.galago.core.types.KeyValuePair;
+import org.lemurproject.galago.tupleflow.InputClass;
+import org.lemurproject.galago.tupleflow.TupleFlowParameters;
+import org.lemurproject.galago.tupleflow.execution.ErrorStore;
+import org.lemurproject.galago.tupleflow.execution.Verification;
+import org.lemurproject.galago.utility.ByteUtil;
+import org.lemurproject.galago.utility.Parameters;
+import org.lemurproject.galago.utility.btree.GenericElement;
+import org.lemurproject.galago.utility.compression.VByte;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes the forward index: for each document, its length and the count of
+ * each term it contains, by term id. Term ids are numbered in order of
+ * first appearance, and the vocabulary is written after the last document.
+ *
+ * @see org.lemurproject.galago.core.parse.TermVectorExtractor
+ */
+@InputClass(className = "org.lemurproject.galago.core.types.KeyValuePair", order = {"+key"})
+public class DiskForwardIndexWriter extends KeyValueWriter<KeyValuePair> {
+
+  private final TObjectIntHashMap<String> termIds = new TObjectIntHashMap<>(1024, 0.5f, -1);
+  private final List<byte[]> terms = new ArrayList<>();
+  private long documentCount = 0;
+
+  public DiskForwardIndexWriter(TupleFlowParameters parameters) throws IOException {
+    super(parameters, "Document vectors written");
+    Parameters manifest = writer.getManifest();
+    manifest.set("writerClass", DiskForwardIndexWriter.class.getName());
+    manifest.set("readerClass", DiskForwardIndexReader.class.getName());
+  }
+
+  @Override
+  protected GenericElement prepare(KeyValuePair document) throws IOException {
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(document.value));
+    int length = VByte.uncompressInt(input);
+    int distinct = VByte.uncompressInt(input);
+
+    // (id, count) pairs, packed so that they sort by id
+    long[] entries = new long[distinct];
+    for (int i = 0; i < distinct; i++) {
+      byte[] term = new byte[VByte.uncompressInt(input)];
+      input.readFully(term);
+      int count = VByte.uncompressInt(input);
+      entries[i] = ((long) getTermId(term) << 32) | count;
+    }
+    Arrays.sort(entries);
+
+    ByteArrayOutputStream array = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(array);
+    VByte.compressInt(output, length);
+    VByte.compressInt(output, distinct);
+    int last = 0;
+    for (long entry : entries) {
+      int id = (int) (entry >>> 32);
+      VByte.compressInt(output, id - last);
+      VByte.compressInt(output, (int) entry);
+      last = id;
+    }
+    output.close();
+
+    documentCount++;
+    return new GenericElement(document.key, array.toByteArray());
+  }
+
+  private int getTermId(byte[] term) {
+    String key = ByteUtil.toString(term);
+    int id = termIds.get(key);
+    if (id < 0) {
+      id = terms.size();
+      termIds.put(key, id);
+      terms.add(term);
+    }
+    return id;
+  }
+
+  @Override
+  public void close() throws IOException {
+    // term keys sort after every document key
+    for (int id = 0; id < terms.size(); id++) {
+      writer.add(new GenericElement(DiskForwardIndexReader.getTermKey(id), terms.get(id)));
+    }
+    Parameters manifest = writer.getManifest();
+    manifest.set("documentCount", documentCount);
+    manifest.set("vocabularySize", terms.size());
+    super.close();
+  }
+
+  public static void verify(TupleFlowParameters parameters, ErrorStore store) {
+    if (!parameters.getJSON().isString("filename")) {
+      store.addError("DiskForwardIndexWriter requires a 'filename' parameter.");
+      return;
+    }
+    Verification.requireWriteableFile(parameters.getJSON().getString("filename"), store);
+  }
+}
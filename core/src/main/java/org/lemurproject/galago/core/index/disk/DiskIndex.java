@@ -52,6 +52,9 @@ public class DiskIndex implements Index, Closeable {
   protected Map<String, IndexPartReader> parts = new HashMap<>();
   protected HashMap<String, String> defaultIndexOperators = new HashMap<>();
   protected HashSet<String> knownIndexOperators = new HashSet<>();
+  // open-time options, e.g. {"mmap" : true} or {"mmap" : ["postings.krovetz", "lengths"]}
+  // "dense" loads the lengths and names parts into arrays, e.g. {"dense" : ["lengths", "names"]}
+  protected Parameters options = Parameters.create();
 
   // useful to assemble an index from odd pieces
   public DiskIndex(Collection<String> indexParts) throws IOException {
@@ -67,6 +70,11 @@ public class DiskIndex implements Index, Closeable {
   }
 
   public DiskIndex(String indexPath) throws IOException {
+    this(indexPath, Parameters.create());
+  }
+
+  public DiskIndex(String indexPath, Parameters options) throws IOException {
+    this.options = options;
     // Make sure it's a valid location    
     location = new File(indexPath);
     if (!location.isDirectory()) {
@@ -105,14 +113,36 @@ public class DiskIndex implements Index, Closeable {
       if (part.isDirectory()) {
         openDiskParts(partName, part);
       } else {
-        IndexComponentReader component = openIndexComponent(part.getAbsolutePath());
+        IndexComponentReader component = openIndexComponent(part.getAbsolutePath(), partOption("mmap", partName));
         if (component != null) {
+          if (partOption("dense", partName)) {
+            loadDense(component);
+          }
           initializeComponent(partName, component);
         }
       }
     }
   }
 
+  /**
+   * The "mmap" and "dense" options are either a boolean for every part, or a
+   * list of part names.
+   */
+  private boolean partOption(String option, String partName) {
+    if (options.isList(option, String.class)) {
+      return options.getAsList(option, String.class).contains(partName);
+    }
+    return options.get(option, false);
+  }
+
+  private static void loadDense(IndexComponentReader component) throws IOException {
+    if (component instanceof DiskLengthsReader) {
+      ((DiskLengthsReader) component).loadDense();
+    } else if (component instanceof DiskNameReader) {
+      ((DiskNameReader) component).loadDense();
+    }
+  }
+
   private void initializeComponent(String name, IndexComponentReader component) {
     if (IndexPartReader.class.isAssignableFrom(component.getClass())) {
       parts.put(name, (IndexPartReader) component);
@@ -364,38 +394,22 @@ public class DiskIndex implements Index, Closeable {
 
   @Override
   public Map<String, Document> getDocuments(List<String> documents, DocumentComponents p) throws IOException {
-    HashMap<String, Document> results = new HashMap<>();
-		
-		ArrayList<Long> docIds = new ArrayList<>();
-    // should get a names iterator + sort requested documents
-    for (String name : documents) {
-			docIds.add(getIdentifier(name));
-    }
-		Collections.sort(docIds);
-		
-		CorpusReader corpus = (CorpusReader) parts.get("corpus");
+    CorpusReader corpus = (CorpusReader) parts.get("corpus");
     if(corpus == null) {
       throw new IllegalArgumentException("Attempted to pull documents from index without a corpus");
     }
 
-    // loop over documents and pull them as requested
-    CorpusReader.KeyIterator iter = corpus.getIterator();
-		for (long id : docIds) {
-			if (iter.findKey(Utility.fromLong(id))) {
-				try {
-					Document doc = iter.getDocument(p);
-					if(doc != null) {
-						results.put(doc.name, doc);
-					}
-				} catch (IOException e) {
-					// ignore the exception
-					Logger.getLogger(this.getClass().getName()).log(Level.SEVERE,
-									"Failed to get document: {0}\n{1}",
-									new Object[]{id, e.toString()});
-				}
-			}
-		}
-		
+    ArrayList<Long> docIds = new ArrayList<>();
+    for (String name : documents) {
+      docIds.add(getIdentifier(name));
+    }
+
+    // the corpus sorts the identifiers and reads the documents in one pass;
+    // documents that fail to load are logged and skipped there
+    HashMap<String, Document> results = new HashMap<>();
+    for (Document doc : corpus.getDocuments(docIds, p).values()) {
+      results.put(doc.name, doc);
+    }
     return results;
   }
 
@@ -431,7 +445,11 @@ public class DiskIndex implements Index, Closeable {
 
   /* static functions for opening index component readers */
   public static IndexComponentReader openIndexComponent(String path) throws IOException {
-    BTreeReader reader = BTreeFactory.getBTreeReader(path);
+    return openIndexComponent(path, false);
+  }
+
+  public static IndexComponentReader openIndexComponent(String path, boolean mmap) throws IOException {
+    BTreeReader reader = BTreeFactory.getBTreeReader(new File(path), mmap);
 
     // if it's not an index: return null
     if (reader == null) {
@@ -15,6 +15,7 @@ import org.lemurproject.galago.utility.ByteUtil;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.logging.Logger;
 
 /**
  * Reads documents lengths from a document lengths file. KeyValueIterator
@@ -31,16 +32,23 @@ import java.util.Map;
  *
  * finally: - list of lengths (one per document)
  *
+ * After loadDense() every list is held in memory as an int array, so
+ * getLength is an array read and lengths iterators are array cursors.
+ *
  * @author irmarc
  * @author sjh
  */
 public class DiskLengthsReader extends KeyListReader implements LengthsReader {
 
+  private static final Logger logger = Logger.getLogger("DiskLengthsReader");
   // this is a special memory map for document lengths
   // it is used in the special documentLengths iterator
   private byte[] doc;
 //  private MappedByteBuffer documentLengths;
 //  private MemoryMapLengthsIterator documentLengthsIterator;
+  // lists loaded by loadDense, by field
+  private Map<String, DenseLengthSource> dense = null;
+  private DenseLengthSource documentLengths = null;
 
   public DiskLengthsReader(String filename) throws IOException {
     super(filename);
@@ -60,8 +68,31 @@ public class DiskLengthsReader extends KeyListReader implements LengthsReader {
     }
   }
 
+  /**
+   * Reads every lengths list into memory. A list too long for an array stays
+   * on disk (memory mapped if the index was opened with mmap).
+   */
+  public void loadDense() throws IOException {
+    Map<String, DenseLengthSource> lists = new HashMap<>();
+    KeyIterator keys = getIterator();
+    while (!keys.isDone()) {
+      DenseLengthSource list = DenseLengthSource.load(keys.getStreamValueSource());
+      if (list != null) {
+        lists.put(list.key(), list);
+      } else {
+        logger.warning("Lengths of " + keys.getKeyString() + " are too long to hold in memory, reading them from disk.");
+      }
+      keys.nextKey();
+    }
+    dense = lists;
+    documentLengths = lists.get("document");
+  }
+
   @Override
   public int getLength(long document) throws IOException {
+    if (documentLengths != null) {
+      return documentLengths.lengthOf(document);
+    }
     LengthsIterator i = getLengthsIterator();
     i.syncTo(document);
     // will return either the currect length or a zero if no match.
@@ -75,6 +106,9 @@ public class DiskLengthsReader extends KeyListReader implements LengthsReader {
 
   @Override
   public LengthsIterator getLengthsIterator() throws IOException {
+    if (documentLengths != null) {
+      return new DiskLengthsIterator(documentLengths.copy());
+    }
     return new DiskLengthsIterator(getLengthsSource());
   }
 
@@ -95,6 +129,9 @@ public class DiskLengthsReader extends KeyListReader implements LengthsReader {
     // operator -> lengths
     if (node.getOperator().equals("lengths")) {
       String key = node.getNodeParameters().get("default", "document");
+      if (dense != null && dense.containsKey(key)) {
+        return new DiskLengthsIterator(dense.get(key).copy());
+      }
       byte[] keyBytes = ByteUtil.fromString(key);
       BTreeIterator i = reader.getIterator(keyBytes);
       if(i == null) {
@@ -11,17 +11,32 @@ import org.lemurproject.galago.core.retrieval.query.NodeType;
 import org.lemurproject.galago.tupleflow.Utility;
 import org.lemurproject.galago.utility.ByteUtil;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.logging.Logger;
 
 /**
  * Reads a binary file of document names produced by DiskNameWriter
  *
+ * After loadDense() the names are held in memory as one byte blob and an
+ * offset per document identifier, so getDocumentName does not search the
+ * B-tree.
+ *
  * @author sjh
  */
 public class DiskNameReader extends KeyValueReader implements NamesReader {
 
+  private static final Logger logger = Logger.getLogger("DiskNameReader");
+
+  // names loaded by loadDense: the name of id is blob[offsets[id - firstId], offsets[id - firstId + 1])
+  private long firstId;
+  private int[] offsets = null;
+  private byte[] blob;
+  private BitSet missing;
+
   /**
    * Creates a new create of DiskNameReader
    */
@@ -33,9 +48,59 @@ public class DiskNameReader extends KeyValueReader implements NamesReader {
     super(r);
   }
 
+  /**
+   * Reads every name into memory, unless the names or the identifier range
+   * are too large for arrays.
+   */
+  public void loadDense() throws IOException {
+    KeyIterator names = getIterator();
+    if (names.isDone()) {
+      return;
+    }
+    long first = names.getCurrentIdentifier();
+    ByteArrayOutputStream data = new ByteArrayOutputStream();
+    GrowableOffsets ends = new GrowableOffsets();
+    BitSet absent = new BitSet();
+    long id = first;
+    while (!names.isDone()) {
+      long current = names.getCurrentIdentifier();
+      byte[] name = names.getValueBytes();
+      if (current - first >= DenseLengthSource.MAX_DOCUMENTS || (long) data.size() + name.length > Integer.MAX_VALUE) {
+        logger.warning("Document names are too large to hold in memory, reading them from disk.");
+        return;
+      }
+      if (current - first > 4L * ends.size + 1024) {
+        logger.warning("Document identifiers are too sparse to hold names in an array, reading them from disk.");
+        return;
+      }
+      // identifiers without a name
+      for (; id < current; id++) {
+        absent.set((int) (id - first));
+        ends.add(data.size());
+      }
+      data.write(name, 0, name.length);
+      ends.add(data.size());
+      id = current + 1;
+      names.nextKey();
+    }
+    firstId = first;
+    blob = data.toByteArray();
+    missing = absent.isEmpty() ? null : absent;
+    offsets = ends.toArray();
+  }
+
   // gets the document name of the internal id index.
   @Override
   public String getDocumentName(long index) throws IOException {
+    int[] ends = offsets;
+    if (ends != null) {
+      long i = index - firstId;
+      if (i < 0 || i >= ends.length - 1 || (missing != null && missing.get((int) i))) {
+        return null;
+      }
+      int start = ends[(int) i];
+      return ByteUtil.toString(blob, start, ends[(int) i + 1] - start);
+    }
     byte[] data = reader.getValueBytes(Utility.fromLong(index));
     if (data == null) {
       return null;
@@ -74,6 +139,30 @@ public class DiskNameReader extends KeyValueReader implements NamesReader {
     return new DiskDataIterator<String>(new DiskNameSource(reader));
   }
 
+  /**
+   * Name end offsets, with the leading zero.
+   */
+  private static class GrowableOffsets {
+
+    int[] values = new int[1024];
+    int size = 1;
+
+    void add(int value) {
+      if (size == values.length) {
+        int[] bigger = new int[(int) Math.min((long) values.length * 2, DenseLengthSource.MAX_DOCUMENTS + 1)];
+        System.arraycopy(values, 0, bigger, 0, size);
+        values = bigger;
+      }
+      values[size++] = value;
+    }
+
+    int[] toArray() {
+      int[] exact = new int[size];
+      System.arraycopy(values, 0, exact, 0, size);
+      return exact;
+    }
+  }
+
   public static class KeyIterator extends KeyValueReader.KeyValueIterator {
 
     public KeyIterator(BTreeReader input) throws IOException {
@@ -2,7 +2,7 @@
 package org.lemurproject.galago.core.index.disk;
 
 import org.lemurproject.galago.core.index.source.BTreeValueSource;
-import org.lemurproject.galago.core.index.source.CountSource;
+import org.lemurproject.galago.core.index.source.BlockMaxSource;
 import org.lemurproject.galago.core.index.stats.NodeStatistics;
 import org.lemurproject.galago.utility.btree.BTreeIterator;
 import org.lemurproject.galago.utility.buffer.DataStream;
@@ -20,7 +20,7 @@ import java.io.IOException;
  * @author jfoley
  * @see PositionIndexReader
  */
-final public class PositionIndexCountSource extends BTreeValueSource implements CountSource {
+final public class PositionIndexCountSource extends BTreeValueSource implements BlockMaxSource {
 
   public long documentCount;
   public long collectionCount;
@@ -45,6 +45,10 @@ final public class PositionIndexCountSource extends BTreeValueSource implements
   long lastSkipPosition;
   long documentsByteFloor;
   long countsByteFloor;
+  // to support block-max bounds
+  long blockMaxStart;
+  long blockMaxByteLength;
+  BlockMaxTable blockMax;
 
   public PositionIndexCountSource(BTreeIterator iter) throws IOException {
     super(iter);
@@ -71,14 +75,15 @@ final public class PositionIndexCountSource extends BTreeValueSource implements
    * loaded its easier to do the parts when appropriate
    */
   protected void initialize() throws IOException {
-    // all header information should be in the first 120 bytes
-    DataStream valueStream = btreeIter.getSubValueStream(0, 120);
+    // all header information should be in the first 128 bytes
+    DataStream valueStream = btreeIter.getSubValueStream(0, 128);
     DataInput stream = new VByteInput(valueStream);
     // metadata
     int options = stream.readInt(); // 5 bytes
     final boolean hasInlining = (options & HAS_INLINING) > 0;
     final boolean hasSkips = (options & HAS_SKIPS) > 0;
     final boolean hasMaxTF = (options & HAS_MAXTF) > 0;
+    final boolean hasBlockMax = (options & HAS_BLOCKMAX) > 0;
 
     // Don't need to keep this value as positions are ignored.
     if ((options & HAS_INLINING) == HAS_INLINING) {
@@ -106,8 +111,9 @@ final public class PositionIndexCountSource extends BTreeValueSource implements
       skipsByteLength = stream.readLong(); // 9 bytes
       skipPositionsByteLength = stream.readLong(); // 9 bytes
     }
+    long blockMaxByteLength = hasBlockMax ? stream.readLong() : 0; // 9 bytes
 
-    // done with header (read at most (6 * 9) + (7 * 5) = 107 bytes)
+    // done with header (read at most (7 * 9) + (7 * 5) = 116 bytes)
 
     long documentStart = valueStream.getPosition();
     long countsStart = documentStart + documentByteLength;
@@ -123,7 +129,7 @@ final public class PositionIndexCountSource extends BTreeValueSource implements
       long skipsStart = positionsStart + positionsByteLength;
       long skipPositionsStart = skipsStart + skipsByteLength;
       long skipPositionsEnd = skipPositionsStart + skipPositionsByteLength;
-      assert skipPositionsEnd == btreeIter.getValueLength();
+      assert skipPositionsEnd + blockMaxByteLength == btreeIter.getValueLength();
       skips = new VByteInput(btreeIter.getSubValueStream(skipsStart, skipsByteLength));
       skipPositionsStream = btreeIter.getSubValueStream(skipPositionsStart, skipPositionsByteLength);
       skipPositions = new VByteInput(skipPositionsStream);
@@ -136,6 +142,9 @@ final public class PositionIndexCountSource extends BTreeValueSource implements
       skips = null;
       skipPositions = null;
     }
+    this.blockMax = null;
+    this.blockMaxStart = btreeIter.getValueLength() - blockMaxByteLength;
+    this.blockMaxByteLength = blockMaxByteLength;
     documentIndex = 0;
     load();
   }
@@ -267,6 +276,31 @@ final public class PositionIndexCountSource extends BTreeValueSource implements
     return 0;
   }
 
+  @Override
+  public boolean hasBlockMax() {
+    return blockMaxByteLength > 0;
+  }
+
+  @Override
+  public long blockEnd(long document) throws IOException {
+    if (blockMax == null) {
+      // one entry per skip, plus the final partial block
+      DataInput input = new VByteInput(btreeIter.getSubValueStream(blockMaxStart, blockMaxByteLength));
+      blockMax = new BlockMaxTable(input, (int) numSkips + 1);
+    }
+    return blockMax.blockEnd(document);
+  }
+
+  @Override
+  public int blockMaximumCount() {
+    return blockMax.maximumCount();
+  }
+
+  @Override
+  public int blockMinimumLength() {
+    return blockMax.minimumLength();
+  }
+
   @Override
   public NodeStatistics getStatistics() {
     NodeStatistics ns = new NodeStatistics();
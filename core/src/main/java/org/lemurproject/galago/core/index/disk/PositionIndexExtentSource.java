@@ -3,6 +3,7 @@ package org.lemurproject.galago.core.index.disk;
 
 import org.lemurproject.galago.utility.btree.BTreeIterator;
 import org.lemurproject.galago.core.index.source.BTreeValueSource;
+import org.lemurproject.galago.core.index.source.BlockMaxSource;
 import org.lemurproject.galago.core.index.source.ExtentSource;
 import org.lemurproject.galago.core.index.stats.NodeStatistics;
 import org.lemurproject.galago.core.util.ExtentArray;
@@ -17,7 +18,7 @@ import java.io.IOException;
  *
  * @author trevor, irmarc, sjh, jfoley
  */
-final public class PositionIndexExtentSource extends BTreeValueSource implements ExtentSource {
+final public class PositionIndexExtentSource extends BTreeValueSource implements ExtentSource, BlockMaxSource {
 
     public long documentCount;
     public long totalPositionCount;
@@ -54,6 +55,10 @@ final public class PositionIndexExtentSource extends BTreeValueSource implements
     }
     // to support skipping
     private SkipState skip;
+    // to support block-max bounds
+    private long blockMaxStart;
+    private long blockMaxByteLength;
+    private BlockMaxTable blockMax;
 
     // Supports lazy-loading of extents
     private boolean extentsLoaded;
@@ -90,8 +95,8 @@ final public class PositionIndexExtentSource extends BTreeValueSource implements
      */
     private void initialize() throws IOException {
 
-        // 120 bytes should be enough for the heard items ((11 * 9) + (5 * 2)) //
-        final DataStream valueStream = btreeIter.getSubValueStream(0, 120);
+        // 128 bytes should be enough for the header items ((12 * 9) + (5 * 2)) //
+        final DataStream valueStream = btreeIter.getSubValueStream(0, 128);
         final DataInput stream = new VByteInput(valueStream);
 
         // metadata contained in options bitmap:
@@ -99,6 +104,7 @@ final public class PositionIndexExtentSource extends BTreeValueSource implements
         final boolean hasInlining = (options & HAS_INLINING) > 0;
         final boolean hasSkips = (options & HAS_SKIPS) > 0;
         final boolean hasMaxTF = (options & HAS_MAXTF) > 0;
+        final boolean hasBlockMax = (options & HAS_BLOCKMAX) > 0;
 
         inlineMinimum = (hasInlining) ? stream.readInt() : Integer.MAX_VALUE; // 5 bytes
         documentCount = stream.readLong();// 9 bytes
@@ -117,6 +123,9 @@ final public class PositionIndexExtentSource extends BTreeValueSource implements
         final long positionsByteLength = stream.readLong();// 9 bytes
         final long skipsByteLength = hasSkips ? stream.readLong() : 0; // 9 bytes
         final long skipPositionsByteLength = hasSkips ? stream.readLong() : 0; // 9 bytes
+        blockMaxByteLength = hasBlockMax ? stream.readLong() : 0; // 9 bytes
+        blockMaxStart = btreeIter.getValueLength() - blockMaxByteLength;
+        blockMax = null;
 
         long documentStart = valueStream.getPosition();
         long countsStart = documentStart + documentByteLength;
@@ -132,7 +141,7 @@ final public class PositionIndexExtentSource extends BTreeValueSource implements
             long skipsStart = positionsStart + positionsByteLength;
             long skipPositionsStart = skipsStart + skipsByteLength;
             long skipPositionsEnd = skipPositionsStart + skipPositionsByteLength;
-            assert skipPositionsEnd == btreeIter.getValueLength();
+            assert skipPositionsEnd + blockMaxByteLength == btreeIter.getValueLength();
             skip.data = new VByteInput(btreeIter.getSubValueStream(skipsStart, skipsByteLength));
             skip.positionsStream = btreeIter.getSubValueStream(skipPositionsStart, skipPositionsByteLength);
             skip.positions = new VByteInput(skip.positionsStream);
@@ -337,6 +346,31 @@ final public class PositionIndexExtentSource extends BTreeValueSource implements
         return 0;
     }
 
+    @Override
+    public boolean hasBlockMax() {
+        return blockMaxByteLength > 0;
+    }
+
+    @Override
+    public long blockEnd(long document) throws IOException {
+        if (blockMax == null) {
+            // one entry per skip, plus the final partial block
+            DataInput input = new VByteInput(btreeIter.getSubValueStream(blockMaxStart, blockMaxByteLength));
+            blockMax = new BlockMaxTable(input, (int) skip.total + 1);
+        }
+        return blockMax.blockEnd(document);
+    }
+
+    @Override
+    public int blockMaximumCount() {
+        return blockMax.maximumCount();
+    }
+
+    @Override
+    public int blockMinimumLength() {
+        return blockMax.minimumLength();
+    }
+
     @Override
     public NodeStatistics getStatistics() {
         NodeStatistics ns = new NodeStatistics();
@@ -4,6 +4,8 @@ package org.lemurproject.galago.core.index.disk;
 import org.lemurproject.galago.utility.btree.BTreeIterator;
 import org.lemurproject.galago.utility.btree.BTreeReader;
 import org.lemurproject.galago.core.index.KeyListReader;
+import org.lemurproject.galago.core.index.source.CountSource;
+import org.lemurproject.galago.core.index.source.ExtentSource;
 import org.lemurproject.galago.core.index.stats.AggregateIndexPart;
 import org.lemurproject.galago.core.index.stats.IndexPartStatistics;
 import org.lemurproject.galago.core.parse.stem.Stemmer;
@@ -25,20 +27,34 @@ import java.util.Map;
  * counts data is stored separately from term position information for faster
  * query processing when no positions are needed.
  *
+ * Lists written with the block codec (see BlockPostingsList) are read through
+ * BlockPostingsSource; the codec is taken from the part manifest.
+ *
  * @author trevor, sjh, irmarc
  */
 public class PositionIndexReader extends KeyListReader implements AggregateIndexPart {
 
   Stemmer stemmer;
+  boolean blockCodec;
 
   public PositionIndexReader(BTreeReader reader) throws Exception {
     super(reader);
     stemmer = Stemmer.create(reader.getManifest());
+    blockCodec = PositionIndexWriter.isBlockCodec(reader.getManifest());
   }
 
   public PositionIndexReader(String pathname) throws Exception {
     super(pathname);
     stemmer = Stemmer.create(reader.getManifest());
+    blockCodec = PositionIndexWriter.isBlockCodec(reader.getManifest());
+  }
+
+  static ExtentSource extentSource(BTreeIterator iterator, boolean blockCodec) throws IOException {
+    return blockCodec ? new BlockPostingsSource(iterator) : new PositionIndexExtentSource(iterator);
+  }
+
+  static CountSource countSource(BTreeIterator iterator, boolean blockCodec) throws IOException {
+    return blockCodec ? new BlockPostingsSource(iterator) : new PositionIndexCountSource(iterator);
   }
 
   @Override
@@ -57,7 +73,7 @@ public class PositionIndexReader extends KeyListReader implements AggregateIndex
   public DiskExtentIterator getTermExtents(byte[] term) throws IOException {
     BTreeIterator iterator = reader.getIterator(term);
     if (iterator != null) {
-      return new DiskExtentIterator(new PositionIndexExtentSource(iterator));
+      return new DiskExtentIterator(extentSource(iterator, blockCodec));
     }
     return null;
   }
@@ -69,7 +85,7 @@ public class PositionIndexReader extends KeyListReader implements AggregateIndex
   public DiskCountIterator getTermCounts(byte[] term) throws IOException {
     BTreeIterator iterator = reader.getIterator(term);
     if (iterator != null) {
-      return new DiskCountIterator(new PositionIndexCountSource(iterator));
+      return new DiskCountIterator(countSource(iterator, blockCodec));
     }
     return null;
   }
@@ -106,8 +122,11 @@ public class PositionIndexReader extends KeyListReader implements AggregateIndex
   // subclasses 
   public static class KeyIterator extends KeyListReader.KeyValueIterator {
 
+    private final boolean blockCodec;
+
     public KeyIterator(BTreeReader reader) throws IOException {
       super(reader);
+      blockCodec = PositionIndexWriter.isBlockCodec(reader.getManifest());
     }
 
     @Override
@@ -115,7 +134,7 @@ public class PositionIndexReader extends KeyListReader implements AggregateIndex
       DiskCountIterator it;
       long count = -1;
       try {
-        it = new DiskCountIterator(new PositionIndexCountSource(iterator));
+        it = new DiskCountIterator(countSource(iterator, blockCodec));
         count = it.totalEntries();
       } catch (IOException ioe) {
       }
@@ -132,17 +151,24 @@ public class PositionIndexReader extends KeyListReader implements AggregateIndex
 
     @Override
     public DiskExtentIterator getValueIterator() throws IOException {
-      return new DiskExtentIterator(new PositionIndexExtentSource(iterator));
+      return new DiskExtentIterator(extentSource(iterator, blockCodec));
     }
 
+    /** Only for lists in the vbyte codec. */
     public PositionIndexExtentSource getValueSource() throws IOException {
       return new PositionIndexExtentSource(iterator);
     }
 
+    /** Only for lists in the vbyte codec. */
     public PositionIndexCountSource getValueCountSource() throws IOException {
       return new PositionIndexCountSource(iterator);
     }
 
+    /** The list with positions left encoded, or null for the block codec. */
+    public PositionsListReader getPositionsList() throws IOException {
+      return blockCodec ? null : new PositionsListReader(iterator);
+    }
+
     @Override
     public String getKeyString() throws IOException {
       return ByteUtil.toString(getKey());
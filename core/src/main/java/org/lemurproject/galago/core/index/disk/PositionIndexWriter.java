@@ -43,6 +43,19 @@ import java.io.OutputStream;
  * fast, and we don't need to read them all in order to recover the original
  * values.
  *
+ * Block-max: when skipping is on, each block of skipDistance documents (and the
+ * final partial block) also gets an entry in a third skip stream:
+ * [d-gap last doc id of the block, max count in the block, min length bound].
+ * The length bound is the smallest (last position + 1) in the block, which is
+ * never more than the true length of any document in the block. Together these
+ * bound the score of every document in the block for BM25/Dirichlet style
+ * scorers (see BlockMaxWandDocumentModel).
+ *
+ * Codec: with "codec" : "block", lists are written in blocks of PForDelta
+ * coded integers instead (see BlockPostingsList); the skip parameters are then
+ * ignored. The codec is recorded in the manifest, and PositionIndexReader
+ * picks the matching sources.
+ *
  * @author trevor, irmarc, sjh
  */
 @InputClass(className = "org.lemurproject.galago.core.types.NumberWordPosition", order = {"+word", "+document", "+position"})
@@ -54,6 +67,7 @@ public class PositionIndexWriter implements
   Parameters actualParams;
   TupleflowBTreeWriter writer;
   PositionsList invertedList;
+  BlockPostingsList blockList;
   // statistics //
   byte[] lastWord;
   long vocabCount = 0;
@@ -64,6 +78,8 @@ public class PositionIndexWriter implements
   int options = 0;
   int skipDistance;
   int skipResetDistance;
+  boolean blockMax;
+  boolean blockCodec;
 
   /**
    * Creates a new create of the PositionIndexWriter.
@@ -75,6 +91,8 @@ public class PositionIndexWriter implements
     actualParams.set("mergerClass", PositionIndexMerger.class.getName());
     actualParams.set("memoryClass", MemoryPositionalIndex.class.getName());
     actualParams.set("defaultOperator", "counts");
+    actualParams.set("codec", actualParams.get("codec", "vbyte"));
+    blockCodec = isBlockCodec(actualParams);
 
     writer = new TupleflowDiskBTreeWriter(parameters);
 
@@ -82,7 +100,9 @@ public class PositionIndexWriter implements
     boolean skip = parameters.getJSON().get("skipping", true);
     skipDistance = (int) parameters.getJSON().get("skipDistance", 500);
     skipResetDistance = (int) parameters.getJSON().get("skipResetDistance", 20);
+    blockMax = parameters.getJSON().get("blockMax", true);
     options |= (skip ? BTreeValueIterator.HAS_SKIPS : 0x0);
+    options |= (skip && blockMax ? BTreeValueIterator.HAS_BLOCKMAX : 0x0);
     options |= BTreeValueIterator.HAS_MAXTF;
     options |= BTreeValueIterator.HAS_INLINING;
   }
@@ -97,13 +117,39 @@ public class PositionIndexWriter implements
 
       invertedList = null;
     }
+    if (blockList != null) {
+      highestDocumentCount = Math.max(highestDocumentCount, blockList.documentCount);
+      highestFrequency = Math.max(highestFrequency, blockList.totalPositionCount);
+      collectionLength += blockList.totalPositionCount;
+      blockList.close();
+      writer.add(blockList);
+
+      blockList = null;
+    }
+  }
+
+  /**
+   * True if the part parameters (or manifest) select the block codec.
+   */
+  static boolean isBlockCodec(Parameters p) {
+    String codec = p.get("codec", "vbyte");
+    if (codec.equals("block")) {
+      return true;
+    } else if (codec.equals("vbyte")) {
+      return false;
+    }
+    throw new IllegalArgumentException("Unknown postings codec: " + codec + ", expected vbyte or block.");
   }
   
   @Override
   public void processWord(byte[] wordBytes) throws IOException {
     closeList();
 
-    invertedList = new PositionsList(wordBytes);
+    if (blockCodec) {
+      blockList = new BlockPostingsList(wordBytes, true);
+    } else {
+      invertedList = new PositionsList(wordBytes);
+    }
     assert lastWord == null || !CmpUtil.equals(lastWord, wordBytes) : "Duplicate word";
     lastWord = wordBytes;
     vocabCount++;
@@ -111,12 +157,38 @@ public class PositionIndexWriter implements
 
   @Override
   public void processDocument(long document) throws IOException {
-    invertedList.addDocument(document);
+    if (blockCodec) {
+      blockList.addDocument(document);
+    } else {
+      invertedList.addDocument(document);
+    }
   }
 
   @Override
   public void processPosition(int position) throws IOException {
-    invertedList.addPosition(position);
+    if (blockCodec) {
+      blockList.addPosition(position);
+    } else {
+      invertedList.addPosition(position);
+    }
+  }
+
+  /**
+   * Adds a document whose positions are still encoded, as read by a
+   * PositionsListReader, to the current word. Only for the vbyte codec.
+   */
+  public void processEncodedDocument(long document, PositionsListReader list) throws IOException {
+    if (blockCodec) {
+      throw new UnsupportedOperationException("Encoded documents can only be copied into vbyte lists.");
+    }
+    invertedList.addEncodedDocument(document, list.count, list.lastPosition, list.positionBytes, list.positionLength);
+  }
+
+  /**
+   * True if processEncodedDocument can be used.
+   */
+  public boolean acceptsEncodedDocuments() {
+    return !blockCodec;
   }
 
   @Override
@@ -154,6 +226,8 @@ public class PositionIndexWriter implements
    */
   public class PositionsList implements IndexElement {
 
+    // options for this list; skips are dropped for short lists
+    private int listOptions;
     private long lastDocument;
     private long lastPosition;
     private long lastPositionCount;
@@ -176,6 +250,13 @@ public class PositionIndexWriter implements
     private long docsSinceLastSkip;
     private DiskSpillCompressedByteBuffer skips;
     private DiskSpillCompressedByteBuffer skipPositions;
+    // to support block-max bounds
+    private DiskSpillCompressedByteBuffer blockMaxima;
+    private long lastBlockDocument;
+    private long blockMaximumCount;
+    private long blockMinimumLength;
+    // the last document was added already encoded
+    private boolean encodedDocument;
 
     public PositionsList(byte[] word) {
       documents = new DiskSpillCompressedByteBuffer();
@@ -184,13 +265,19 @@ public class PositionIndexWriter implements
       positionBlock = new CompressedByteBuffer();
       header = new CompressedByteBuffer();
 
-      if ((options & BTreeValueIterator.HAS_SKIPS) == BTreeValueIterator.HAS_SKIPS) {
+      listOptions = options;
+      if ((listOptions & BTreeValueIterator.HAS_SKIPS) == BTreeValueIterator.HAS_SKIPS) {
         skips = new DiskSpillCompressedByteBuffer();
         skipPositions = new DiskSpillCompressedByteBuffer();
       } else {
         skips = null;
       }
-      
+      if ((listOptions & BTreeValueIterator.HAS_BLOCKMAX) == BTreeValueIterator.HAS_BLOCKMAX) {
+        blockMaxima = new DiskSpillCompressedByteBuffer();
+      } else {
+        blockMaxima = null;
+      }
+
       this.word = word;
       this.lastDocument = 0;
       this.lastPosition = 0;
@@ -206,10 +293,13 @@ public class PositionIndexWriter implements
         this.lastPositionSkip = 0;
         this.numSkips = 0;
       }
+      this.lastBlockDocument = 0;
+      this.blockMaximumCount = 0;
+      this.blockMinimumLength = Long.MAX_VALUE;
     }
 
     private void finishDocument() {
-      if (documents.length() > 0) {
+      if (documents.length() > 0 && !encodedDocument) {
         counts.add(lastPositionCount);
 
         // Now conditionally add in the skip marker and the array of position bytes
@@ -217,8 +307,29 @@ public class PositionIndexWriter implements
           positions.add(positionBlock.length());
         }
         positions.add(positionBlock);
-        maximumPositionCount = Math.max(maximumPositionCount, lastPositionCount);
+        updateMaxima();
+      }
+    }
+
+    private void updateMaxima() {
+      maximumPositionCount = Math.max(maximumPositionCount, lastPositionCount);
+
+      blockMaximumCount = Math.max(blockMaximumCount, lastPositionCount);
+      blockMinimumLength = Math.min(blockMinimumLength, lastPosition + 1);
+    }
+
+    /**
+     * Writes the block-max entry for the documents since the last one.
+     */
+    private void finishBlock() {
+      if (blockMaxima != null) {
+        blockMaxima.add(lastDocument - lastBlockDocument);
+        blockMaxima.add(blockMaximumCount);
+        blockMaxima.add(blockMinimumLength);
       }
+      lastBlockDocument = lastDocument;
+      blockMaximumCount = 0;
+      blockMinimumLength = Long.MAX_VALUE;
     }
     
     /**
@@ -232,11 +343,14 @@ public class PositionIndexWriter implements
 
       if (skips != null && skips.length() == 0) {
         // not adding skip information b/c its empty
-        options &= (0xffff - BTreeValueIterator.HAS_SKIPS);
-        header.add(options);
-      } else {
-        header.add(options);
+        listOptions &= (0xffff - BTreeValueIterator.HAS_SKIPS - BTreeValueIterator.HAS_BLOCKMAX);
+        skips = null;
+        blockMaxima = null;
+      } else if (documentCount > 0) {
+        // the final, partial block
+        finishBlock();
       }
+      header.add(listOptions);
 
       // Start with the inline length
       header.add(MARKER_MINIMUM);
@@ -257,6 +371,9 @@ public class PositionIndexWriter implements
         header.add(skips.length());
         header.add(skipPositions.length());
       }
+      if (blockMaxima != null) {
+        header.add(blockMaxima.length());
+      }
     }
 
     /**
@@ -276,6 +393,9 @@ public class PositionIndexWriter implements
         listLength += skips.length();
         listLength += skipPositions.length();
       }
+      if (blockMaxima != null) {
+        listLength += blockMaxima.length();
+      }
 
       return listLength;
     }
@@ -305,6 +425,10 @@ public class PositionIndexWriter implements
         skipPositions.write(output);
         skipPositions.clear();
       }
+      if (blockMaxima != null) {
+        blockMaxima.write(output);
+        blockMaxima.clear();
+      }
     }
 
     /**
@@ -341,9 +465,30 @@ public class PositionIndexWriter implements
       lastPosition = 0;
       lastPositionCount = 0;
       positionBlock.clear();
+      encodedDocument = false;
       documentCount++;
     }
 
+    /**
+     * Adds a document along with its positions, already d-gapped and
+     * compressed in positionBytes (without the length marker). The skip and
+     * block-max entries are updated as if each position had been added.
+     */
+    public void addEncodedDocument(long documentID, int count, int finalPosition, byte[] positionBytes, int length) throws IOException {
+      addDocument(documentID);
+
+      lastPositionCount = count;
+      totalPositionCount += count;
+      lastPosition = finalPosition;
+      counts.add(count);
+      if (count > MARKER_MINIMUM) {
+        positions.add(length);
+      }
+      positions.add(positionBytes, 0, length);
+      updateMaxima();
+      encodedDocument = true;
+    }
+
     /**
      * Adds a single position for the latest document added in the
      * PositionsList.
@@ -365,6 +510,7 @@ public class PositionIndexWriter implements
         skips.add(skipPositions.length() - lastSkipPosition);
         lastDocumentSkipped = lastDocument;
         lastSkipPosition = skipPositions.length();
+        finishBlock();
 
         // Now we decide whether we're storing an abs. value d-gapped value
         if (numSkips % skipResetDistance == 0) {
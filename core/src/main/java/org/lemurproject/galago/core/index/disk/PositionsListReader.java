@@ -0,0 +1,147 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.index.disk;
+
+import org.lemurproject.galago.core.index.BTreeValueIterator;
+import org.lemurproject.galago.utility.btree.BTreeIterator;
+import org.lemurproject.galago.utility.buffer.DataStream;
+import org.lemurproject.galago.utility.buffer.VByteInput;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Reads a vbyte positions list one document at a time, leaving the positions
+ * of each document encoded, so they can be copied into another list with
+ * PositionIndexWriter.processEncodedDocument. The skip and block-max streams
+ * are not read; the writer rebuilds them.
+ *
+ * @see org.lemurproject.galago.core.index.merge.PositionIndexMerger
+ */
+public class PositionsListReader {
+
+  private final BTreeIterator iterator;
+  private final long documentCount;
+  private final int inlineMinimum;
+  private final long documentStart;
+  private final long documentByteLength;
+  private final VByteInput documents;
+  private final VByteInput counts;
+  private final DataStream positionsStream;
+  private final VByteInput positions;
+  private long documentIndex = 0;
+  // the current document
+  public long document = 0;
+  public int count = 0;
+  public int lastPosition = 0;
+  public byte[] positionBytes = new byte[32];
+  public int positionLength = 0;
+
+  public PositionsListReader(BTreeIterator iterator) throws IOException {
+    this.iterator = iterator;
+
+    // same header as PositionIndexExtentSource
+    final DataStream valueStream = iterator.getSubValueStream(0, 128);
+    final DataInput stream = new VByteInput(valueStream);
+    final int options = stream.readInt();
+    final boolean hasSkips = (options & BTreeValueIterator.HAS_SKIPS) > 0;
+    inlineMinimum = ((options & BTreeValueIterator.HAS_INLINING) > 0) ? stream.readInt() : Integer.MAX_VALUE;
+    documentCount = stream.readLong();
+    stream.readLong(); // totalPositionCount
+    if ((options & BTreeValueIterator.HAS_MAXTF) > 0) {
+      stream.readLong();
+    }
+    if (hasSkips) {
+      stream.readLong(); // skipDistance
+      stream.readLong(); // skipResetDistance
+      stream.readLong(); // numSkips
+    }
+    documentByteLength = stream.readLong();
+    final long countsByteLength = stream.readLong();
+    final long positionsByteLength = stream.readLong();
+    if (hasSkips) {
+      stream.readLong(); // skips
+      stream.readLong(); // skip positions
+    }
+    if ((options & BTreeValueIterator.HAS_BLOCKMAX) > 0) {
+      stream.readLong(); // block-max
+    }
+
+    documentStart = valueStream.getPosition();
+    long countsStart = documentStart + documentByteLength;
+    long positionsStart = countsStart + countsByteLength;
+    documents = new VByteInput(iterator.getSubValueStream(documentStart, documentByteLength));
+    counts = new VByteInput(iterator.getSubValueStream(countsStart, countsByteLength));
+    positionsStream = iterator.getSubValueStream(positionsStart, positionsByteLength);
+    positions = new VByteInput(positionsStream);
+  }
+
+  public long documentCount() {
+    return documentCount;
+  }
+
+  /**
+   * Moves to the next document, returning false if there are none left.
+   */
+  public boolean next() throws IOException {
+    if (documentIndex >= documentCount) {
+      return false;
+    }
+    documentIndex++;
+    document += documents.readLong();
+    count = counts.readInt();
+
+    if (count > inlineMinimum) {
+      positionLength = positions.readInt();
+      ensureCapacity(positionLength);
+      positionsStream.readFully(positionBytes, 0, positionLength);
+    } else {
+      // inlined positions have no length; copy their bytes one number at a time
+      positionLength = 0;
+      for (int i = 0; i < count; i++) {
+        int b;
+        do {
+          b = positionsStream.readUnsignedByte();
+          ensureCapacity(positionLength + 1);
+          positionBytes[positionLength++] = (byte) b;
+        } while ((b & 0x80) == 0);
+      }
+    }
+
+    // the positions are d-gapped, so the last one is their sum
+    lastPosition = 0;
+    int value = 0;
+    int shift = 0;
+    for (int i = 0; i < positionLength; i++) {
+      int b = positionBytes[i] & 0xFF;
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) != 0) {
+        lastPosition += value;
+        value = 0;
+        shift = 0;
+      } else {
+        shift += 7;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The last document of the list, read from a separate stream so the
+   * current document is unchanged.
+   */
+  public long lastDocument() throws IOException {
+    VByteInput input = new VByteInput(iterator.getSubValueStream(documentStart, documentByteLength));
+    long last = 0;
+    for (long i = 0; i < documentCount; i++) {
+      last += input.readLong();
+    }
+    return last;
+  }
+
+  private void ensureCapacity(int length) {
+    if (positionBytes.length < length) {
+      positionBytes = Arrays.copyOf(positionBytes, Math.max(length, 2 * positionBytes.length));
+    }
+  }
+}
@@ -141,6 +141,11 @@ public class WindowIndexReader extends KeyListReader implements AggregateIndexPa
       return new WindowIndexCountSource(iterator);
     }
 
+    /** The list with windows left encoded. */
+    public WindowListReader getWindowList() throws IOException {
+      return new WindowListReader(iterator);
+    }
+
     @Override
     public String getKeyString() throws IOException {
       return ByteUtil.toString(iterator.getKey());
@@ -120,6 +120,14 @@ public class WindowIndexWriter implements
     invertedList.addWindow(currentBegin, end);
   }
 
+  /**
+   * Adds a document whose windows are still encoded, as read by a
+   * WindowListReader; the list must not already hold a later document.
+   */
+  public void processEncodedDocument(long document, WindowListReader list) throws IOException {
+    invertedList.addEncodedDocument(document, list.count, list.beginBytes, list.beginLength, list.endBytes, list.endLength);
+  }
+
   @Override
   public void close() throws IOException {
     if (invertedList != null) {
@@ -315,6 +323,15 @@ public class WindowIndexWriter implements
 
     }
 
+    public void addEncodedDocument(long documentID, int count, byte[] beginBytes, int beginLength, byte[] endBytes, int endLength) throws IOException {
+      addDocument(documentID);
+
+      positionCount = count;
+      totalWindowCount += count;
+      begins.add(beginBytes, 0, beginLength);
+      ends.add(endBytes, 0, endLength);
+    }
+
     public void addWindow(int begin, int end) throws IOException {
       positionCount++;
       totalWindowCount++;
@@ -0,0 +1,127 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.index.disk;
+
+import org.lemurproject.galago.core.index.BTreeValueIterator;
+import org.lemurproject.galago.utility.btree.BTreeIterator;
+import org.lemurproject.galago.utility.buffer.DataStream;
+import org.lemurproject.galago.utility.buffer.VByteInput;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Reads a window list one document at a time, leaving the begins and ends of
+ * each document encoded, so they can be copied into another list with
+ * WindowIndexWriter.processEncodedDocument. The skip streams are not read;
+ * the writer rebuilds them.
+ *
+ * @see org.lemurproject.galago.core.index.merge.WindowIndexMerger
+ */
+public class WindowListReader {
+
+  private final BTreeIterator iterator;
+  private final long documentCount;
+  private final long documentStart;
+  private final long documentByteLength;
+  private final VByteInput documents;
+  private final VByteInput counts;
+  private final DataStream beginsStream;
+  private final DataStream endsStream;
+  private long documentIndex = 0;
+  private int copiedLength = 0;
+  // the current document
+  public long document = 0;
+  public int count = 0;
+  public byte[] beginBytes = new byte[32];
+  public int beginLength = 0;
+  public byte[] endBytes = new byte[32];
+  public int endLength = 0;
+
+  public WindowListReader(BTreeIterator iterator) throws IOException {
+    this.iterator = iterator;
+
+    // same header as WindowIndexExtentSource
+    final DataStream valueStream = iterator.getSubValueStream(0, 150);
+    final DataInput stream = new VByteInput(valueStream);
+    final int options = stream.readInt();
+    final boolean hasSkips = (options & BTreeValueIterator.HAS_SKIPS) > 0;
+    documentCount = stream.readLong();
+    stream.readLong(); // totalWindowCount
+    stream.readLong(); // maximumPositionCount
+    if (hasSkips) {
+      stream.readLong(); // skipDistance
+      stream.readLong(); // skipResetDistance
+      stream.readLong(); // numSkips
+    }
+    documentByteLength = stream.readLong();
+    final long countsByteLength = stream.readLong();
+    final long beginsByteLength = stream.readLong();
+    final long endsByteLength = stream.readLong();
+    if (hasSkips) {
+      stream.readLong(); // skips
+      stream.readLong(); // skip positions
+    }
+
+    documentStart = valueStream.getPosition();
+    long countsStart = documentStart + documentByteLength;
+    long beginsStart = countsStart + countsByteLength;
+    long endsStart = beginsStart + beginsByteLength;
+    documents = new VByteInput(iterator.getSubValueStream(documentStart, documentByteLength));
+    counts = new VByteInput(iterator.getSubValueStream(countsStart, countsByteLength));
+    beginsStream = iterator.getSubValueStream(beginsStart, beginsByteLength);
+    endsStream = iterator.getSubValueStream(endsStart, endsByteLength);
+  }
+
+  public long documentCount() {
+    return documentCount;
+  }
+
+  /**
+   * Moves to the next document, returning false if there are none left.
+   */
+  public boolean next() throws IOException {
+    if (documentIndex >= documentCount) {
+      return false;
+    }
+    documentIndex++;
+    document += documents.readLong();
+    count = counts.readInt();
+
+    // begins are d-gapped within the document and ends are relative to their
+    // begin, so both copy unchanged; there is one number per window in each
+    beginBytes = copyNumbers(beginsStream, beginBytes);
+    beginLength = copiedLength;
+    endBytes = copyNumbers(endsStream, endBytes);
+    endLength = copiedLength;
+    return true;
+  }
+
+  /**
+   * The last document of the list, read from a separate stream so the
+   * current document is unchanged.
+   */
+  public long lastDocument() throws IOException {
+    VByteInput input = new VByteInput(iterator.getSubValueStream(documentStart, documentByteLength));
+    long last = 0;
+    for (long i = 0; i < documentCount; i++) {
+      last += input.readLong();
+    }
+    return last;
+  }
+
+  private byte[] copyNumbers(DataStream stream, byte[] bytes) throws IOException {
+    copiedLength = 0;
+    for (int i = 0; i < count; i++) {
+      int b;
+      do {
+        b = stream.readUnsignedByte();
+        if (bytes.length <= copiedLength) {
+          bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+        }
+        bytes[copiedLength++] = (byte) b;
+      } while ((b & 0x80) == 0);
+    }
+    return bytes;
+  }
+}
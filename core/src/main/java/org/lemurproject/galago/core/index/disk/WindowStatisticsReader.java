@@ -0,0 +1,191 @@
+/*
+ *  BSD License (http://www.galagosearch.org/license)
+ */
+package org.lemurproject.galago.core.index.disk;
+
+import org.lemurproject.galago.core.btree.format.BTreeFactory;
+import org.lemurproject.galago.core.index.KeyValueReader;
+import org.lemurproject.galago.core.index.KeyToListIterator;
+import org.lemurproject.galago.core.index.stats.NodeStatistics;
+import org.lemurproject.galago.core.retrieval.iterator.BaseIterator;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.NodeParameters;
+import org.lemurproject.galago.core.retrieval.query.NodeType;
+import org.lemurproject.galago.utility.ByteUtil;
+import org.lemurproject.galago.utility.btree.BTreeReader;
+import org.lemurproject.galago.utility.compression.VByte;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collection statistics of #od and #uw windows, precomputed by
+ * build-window-stats (see BuildWindowStatistics).
+ *
+ * Keys are the terms of a window joined by '~' (as in window indexes). The
+ * value holds the nodeFrequency, nodeDocumentCount and maximumCount of each
+ * window operator listed in the manifest ("operators", e.g. od:1 and uw:8),
+ * over the terms of the postings part named in the manifest ("part").
+ *
+ * The part has no iterators of its own; LocalRetrieval asks it for the
+ * statistics of a window node before running the window over the collection.
+ */
+public class WindowStatisticsReader extends KeyValueReader {
+
+  private final String part;
+  private final List<String> operators;
+
+  public WindowStatisticsReader(String fileName) throws IOException {
+    this(BTreeFactory.getBTreeReader(fileName));
+  }
+
+  public WindowStatisticsReader(BTreeReader r) {
+    super(r);
+    this.part = getManifest().getString("part");
+    this.operators = getManifest().getAsList("operators", String.class);
+  }
+
+  /**
+   * Returns the stored statistics of a window node, or null if the node is
+   * not a window over plain #extents of the statistics part, or if the window
+   * was not frequent enough to be stored.
+   */
+  public NodeStatistics getStatistics(Node node) throws IOException {
+    int operator = operators.indexOf(getOperator(node));
+    if (operator < 0) {
+      return null;
+    }
+    List<String> terms = getTerms(node);
+    if (terms == null) {
+      return null;
+    }
+    byte[] value = reader.getValueBytes(getKey(terms));
+    if (value == null) {
+      return null;
+    }
+    return readStatistics(value).get(operator);
+  }
+
+  /**
+   * Window descriptor of a node, e.g. "od:1", or null for other nodes.
+   */
+  public static String getOperator(Node node) {
+    String operator;
+    switch (node.getOperator()) {
+      case "od":
+      case "ordered":
+        operator = "od";
+        break;
+      case "uw":
+      case "unordered":
+        operator = "uw";
+        break;
+      default:
+        return null;
+    }
+
+    NodeParameters np = node.getNodeParameters();
+    long width = -1;
+    for (String key : np.getKeySet()) {
+      if (!key.equals("default") || !np.isLong(key)) {
+        return null;
+      }
+      width = np.getLong(key);
+    }
+    return operator + ":" + width;
+  }
+
+  public static byte[] getKey(List<String> terms) {
+    return ByteUtil.fromString(String.join("~", terms));
+  }
+
+  private List<String> getTerms(Node node) {
+    if (node.numChildren() < 2) {
+      return null;
+    }
+    List<String> terms = new ArrayList<>(node.numChildren());
+    for (Node child : node.getInternalNodes()) {
+      NodeParameters np = child.getNodeParameters();
+      if (!child.getOperator().equals("extents")
+              || child.numChildren() > 0
+              || !np.isString("default")
+              || !part.equals(np.get("part", ""))
+              || np.getKeySet().size() != 2) {
+        return null;
+      }
+      String term = np.getString("default");
+      if (term.contains("~")) {
+        return null;
+      }
+      terms.add(term);
+    }
+    return terms;
+  }
+
+  private List<NodeStatistics> readStatistics(byte[] value) throws IOException {
+    DataInputStream stream = new DataInputStream(new ByteArrayInputStream(value));
+    List<NodeStatistics> statistics = new ArrayList<>(operators.size());
+    for (int i = 0; i < operators.size(); i++) {
+      NodeStatistics s = new NodeStatistics();
+      s.nodeFrequency = VByte.uncompressLong(stream);
+      s.nodeDocumentCount = VByte.uncompressLong(stream);
+      s.maximumCount = VByte.uncompressLong(stream);
+      statistics.add(s);
+    }
+    return statistics;
+  }
+
+  @Override
+  public Map<String, NodeType> getNodeTypes() {
+    return Collections.EMPTY_MAP;
+  }
+
+  @Override
+  public KeyIterator getIterator() throws IOException {
+    return new KeyIterator(reader);
+  }
+
+  @Override
+  public BaseIterator getIterator(Node node) throws IOException {
+    throw new UnsupportedOperationException(
+            "Index doesn't support operator: " + node.getOperator());
+  }
+
+  public class KeyIterator extends KeyValueReader.KeyValueIterator {
+
+    private KeyIterator(BTreeReader reader) throws IOException {
+      super(reader);
+    }
+
+    @Override
+    public String getKeyString() {
+      return ByteUtil.toString(getKey());
+    }
+
+    @Override
+    public String getValueString() throws IOException {
+      List<NodeStatistics> statistics = readStatistics(iterator.getValueBytes());
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < operators.size(); i++) {
+        NodeStatistics s = statistics.get(i);
+        if (i > 0) {
+          sb.append(",");
+        }
+        sb.append(operators.get(i)).append("=").append(s.nodeFrequency)
+                .append("/").append(s.nodeDocumentCount)
+                .append("/").append(s.maximumCount);
+      }
+      return sb.toString();
+    }
+
+    @Override
+    public KeyToListIterator getValueIterator() throws IOException {
+      throw new UnsupportedOperationException("This index file does not support iterators");
+    }
+  }
+}
@@ -28,6 +28,11 @@ import org.lemurproject.galago.tupleflow.execution.Verified;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -50,12 +55,26 @@ import java.util.logging.Logger;
  *  documents), 50000 documents should use between 
  *  500 and 800MB of RAM. Depending on your collection; 
  *  you will want to change this default.
+ *  With offHeapPostings set, the posting lists of
+ *  the memory index live outside of the java heap
+ *  (see MemoryOffHeapPositionalIndex), so much
+ *  larger blocks fit in the same heap.
  * 
  *  radix is the geometric parameter that determines
  *  the maximum number of index shards of any size.
  *  Once this number is reached, the set of shards 
  *  is merged.
  *  
+ *  backgroundMerge moves flushes and merges off the
+ *  ingestion thread: a full memory index is handed to
+ *  a flush thread (at most maxPendingFlushes wait at
+ *  once), and merges run on up to maxConcurrentMerges
+ *  threads, optionally paced to mergeRateLimit MB/s of
+ *  merged input. Searchers see an immutable ShardSet,
+ *  so a memory index stays searchable until its shard
+ *  is on disk, and merged shards until the merged one
+ *  replaces them.
+ *  
  */
 @Verified
 @InputClass(className = "org.lemurproject.galago.core.parse.Document")
@@ -68,14 +87,31 @@ public class GeometricIndex implements DynamicIndex, Index {
   private String shardDirectory;
   private int indexBlockSize; // measured in documents
   // indexing dynamics
-  private MemoryIndex currentMemoryIndex;
+  private volatile MemoryIndex currentMemoryIndex;
+  private final List<MemoryIndex> flushingIndexes = new ArrayList<>();
   private final GeometricPartitions geometricParts;
   private int indexBlockCount;
   public long globalDocumentCount;
+  // bumped by the ingestion, flush and merge threads
+  private final AtomicLong modificationCount = new AtomicLong();
+  // what searchers see; replaced whole, under the geometricParts lock
+  private volatile ShardSet shards;
+  // background maintenance
+  private final boolean backgroundMerge;
+  private ExecutorService flushExecutor;
+  private ExecutorService mergeExecutor;
+  private Semaphore pendingFlushes;
+  private double mergeBytesPerSecond;
+  private long nextMergeTime;
+  private int outstandingTasks = 0;
+  private final Object maintenanceLock = new Object();
   // checkpoint data
   private CheckPointHandler checkpointer;
   private String lastAddedDocumentIdentifier = "";
   private long lastAddedDocumentNumber = -1;
+  // the last document that is on disk
+  private String lastFlushedDocumentIdentifier = "";
+  private long lastFlushedDocumentNumber = -1;
 
   public GeometricIndex(TupleFlowParameters parameters) throws Exception {
     this(parameters, new CheckPointHandler());
@@ -97,6 +133,15 @@ public class GeometricIndex implements DynamicIndex, Index {
     this.globalDocumentCount = 0;
     this.indexBlockCount = 0;
 
+    this.backgroundMerge = globalParameters.get("backgroundMerge", false);
+    if (backgroundMerge) {
+      int maxConcurrentMerges = (int) globalParameters.get("maxConcurrentMerges", 1L);
+      this.flushExecutor = Executors.newSingleThreadExecutor(daemonThreads("geometric-flush"));
+      this.mergeExecutor = Executors.newFixedThreadPool(maxConcurrentMerges, daemonThreads("geometric-merge"));
+      this.pendingFlushes = new Semaphore((int) globalParameters.get("maxPendingFlushes", 2L));
+      this.mergeBytesPerSecond = globalParameters.get("mergeRateLimit", 0.0) * 1024 * 1024;
+    }
+
     // checkpoint handler
     this.checkpointer = checkpointer;
     this.checkpointer.setDirectory(this.shardDirectory);
@@ -121,17 +166,42 @@ public class GeometricIndex implements DynamicIndex, Index {
 
     lastAddedDocumentIdentifier = doc.name;
     lastAddedDocumentNumber = globalDocumentCount;
+    modificationCount.incrementAndGet();
 
     if (globalDocumentCount % indexBlockSize == 0) {
-      flushCurrentIndexBlock();
-      maintainMergeLocal();
+      if (backgroundMerge) {
+        flushInBackground();
+      } else {
+        flushCurrentIndexBlock();
+        maintainMergeLocal();
+      }
     }
   }
 
+  /**
+   * The memory shard new documents go to. It is built from this index's
+   * parameters, so options such as offHeapPostings apply to it.
+   */
+  MemoryIndex getCurrentMemoryIndex() {
+    return currentMemoryIndex;
+  }
+
+  @Override
+  public long getModificationCount() {
+    return modificationCount.get();
+  }
+
   @Override
   public void close() throws IOException {
     // this will ensure that all data is on disk
-    flushCurrentIndexBlock();
+    if (backgroundMerge) {
+      flushInBackground();
+      waitForMaintenance();
+      flushExecutor.shutdown();
+      mergeExecutor.shutdown();
+    } else {
+      flushCurrentIndexBlock();
+    }
 
     // logger.info("Performing final merge");
     // try {
@@ -147,7 +217,11 @@ public class GeometricIndex implements DynamicIndex, Index {
 
   // tries to flush memory index
   public void forceFlush() throws IOException {
-    flushCurrentIndexBlock();
+    if (backgroundMerge) {
+      flushInBackground();
+    } else {
+      flushCurrentIndexBlock();
+    }
   }
 
   /**
@@ -157,18 +231,41 @@ public class GeometricIndex implements DynamicIndex, Index {
    *
    */
   public void forceMerge() throws IOException {
-    maintainMergeLocal();
+    if (backgroundMerge) {
+      scheduleMerges();
+    } else {
+      maintainMergeLocal();
+    }
+  }
+
+  /**
+   * Blocks until no background flush or merge is queued or running.
+   */
+  public void waitForMaintenance() throws IOException {
+    if (!backgroundMerge) {
+      return;
+    }
+    synchronized (maintenanceLock) {
+      while (outstandingTasks > 0) {
+        try {
+          maintenanceLock.wait();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted waiting for index maintenance.", ex);
+        }
+      }
+    }
   }
 
   // some public functions can be defered to the MemoryIndex (disk indexes are identical in structure).
   @Override
   public String getDefaultPart() {
-    return this.currentMemoryIndex.getDefaultPart();
+    return this.shards.current.getDefaultPart();
   }
 
   @Override
   public String getIndexPartName(Node node) throws IOException {
-    return this.currentMemoryIndex.getIndexPartName(node);
+    return this.shards.current.getIndexPartName(node);
   }
 
   @Override
@@ -178,22 +275,22 @@ public class GeometricIndex implements DynamicIndex, Index {
 
   @Override
   public boolean containsPart(String partName) {
-    return this.currentMemoryIndex.containsPart(partName);
+    return this.shards.current.containsPart(partName);
   }
 
   @Override
   public NodeType getNodeType(Node node) throws Exception {
-    return this.currentMemoryIndex.getNodeType(node);
+    return this.shards.current.getNodeType(node);
   }
 
   @Override
   public Set<String> getPartNames() {
-    return this.currentMemoryIndex.getPartNames();
+    return this.shards.current.getPartNames();
   }
 
   @Override
   public Map<String, NodeType> getPartNodeTypes(String partName) throws IOException {
-    return this.currentMemoryIndex.getPartNodeTypes(partName);
+    return this.shards.current.getPartNodeTypes(partName);
   }
 
   @Override
@@ -203,10 +300,13 @@ public class GeometricIndex implements DynamicIndex, Index {
 
   @Override
   public boolean containsDocumentIdentifier(long document) throws IOException {
-    if (currentMemoryIndex.containsDocumentIdentifier(document)) {
-      return true;
+    ShardSet s = this.shards;
+    for (MemoryIndex m : s.memory) {
+      if (m.containsDocumentIdentifier(document)) {
+        return true;
+      }
     }
-    for (DiskIndex i : this.geometricParts.getIndexes()) {
+    for (DiskIndex i : s.disk) {
       if (i.containsDocumentIdentifier(document)) {
         return true;
       }
@@ -216,9 +316,12 @@ public class GeometricIndex implements DynamicIndex, Index {
 
   @Override
   public BaseIterator getIterator(Node node) throws IOException {
+    ShardSet s = this.shards;
     List<BaseIterator> itrs = new ArrayList<>();
-    itrs.add(this.currentMemoryIndex.getIterator(node));
-    for (DiskIndex di : this.geometricParts.getIndexes()) {
+    for (MemoryIndex m : s.memory) {
+      itrs.add(m.getIterator(node));
+    }
+    for (DiskIndex di : s.disk) {
       BaseIterator vi = di.getIterator(node);
       if (vi != null) {
         itrs.add(di.getIterator(node));
@@ -244,8 +347,14 @@ public class GeometricIndex implements DynamicIndex, Index {
   // DO NOT CACHE THIS DATA.
   @Override
   public IndexPartStatistics getIndexPartStatistics(String part) {
-    IndexPartStatistics stats = this.currentMemoryIndex.getIndexPartStatistics(part);
-    for (DiskIndex di : this.geometricParts.getIndexes()) {
+    ShardSet s = this.shards;
+    IndexPartStatistics stats = s.current.getIndexPartStatistics(part);
+    for (MemoryIndex m : s.memory) {
+      if (m != s.current) {
+        stats.add(m.getIndexPartStatistics(part));
+      }
+    }
+    for (DiskIndex di : s.disk) {
       stats.add(di.getIndexPartStatistics(part));
     }
     // fix the part name
@@ -294,9 +403,12 @@ public class GeometricIndex implements DynamicIndex, Index {
 
   @Override
   public LengthsIterator getLengthsIterator() throws IOException {
+    ShardSet s = this.shards;
     List<LengthsIterator> itrs = new ArrayList<>();
-    itrs.add(currentMemoryIndex.getLengthsIterator());
-    for (DiskIndex di : this.geometricParts.getIndexes()) {
+    for (MemoryIndex m : s.memory) {
+      itrs.add(m.getLengthsIterator());
+    }
+    for (DiskIndex di : s.disk) {
       itrs.add(di.getLengthsIterator());
     }
     return new DisjointLengthsIterator(itrs);
@@ -304,9 +416,12 @@ public class GeometricIndex implements DynamicIndex, Index {
 
   @Override
   public DataIterator<String> getNamesIterator() throws IOException {
+    ShardSet s = this.shards;
     List<DataIterator<String>> itrs = new ArrayList<>();
-    itrs.add(currentMemoryIndex.getNamesIterator());
-    for (DiskIndex di : this.geometricParts.getIndexes()) {
+    for (MemoryIndex m : s.memory) {
+      itrs.add(m.getNamesIterator());
+    }
+    for (DiskIndex di : s.disk) {
       itrs.add(di.getNamesIterator());
     }
     return new DisjointNamesIterator(itrs);
@@ -323,6 +438,8 @@ public class GeometricIndex implements DynamicIndex, Index {
    * 
    */
   private void updateIndex() throws IOException {
+    publishShards();
+    modificationCount.incrementAndGet();
     // maintain the document store (corpus) - if there is one
     if (currentMemoryIndex.containsPart("corpus")) {
       // get all corpora + shove into document store
@@ -343,7 +460,30 @@ public class GeometricIndex implements DynamicIndex, Index {
     // by using the globalParameters, the memory index can startup counters etc.
     // we set the documentCount to ensure all documents are given a unique number.
     tupleFlowParameters.getJSON().set("documentNumberOffset", this.globalDocumentCount);
-    currentMemoryIndex = new MemoryIndex(tupleFlowParameters);
+    MemoryIndex next = new MemoryIndex(tupleFlowParameters);
+    synchronized (geometricParts) {
+      currentMemoryIndex = next;
+      publishShards();
+    }
+  }
+
+  /**
+   * Makes the current memory index read-only (but still searchable) and
+   * starts a new one.
+   */
+  private MemoryIndex retireCurrentMemoryIndex() throws IOException {
+    final MemoryIndex retired = currentMemoryIndex;
+    try {
+      // reset the current index
+      //  - this makes the flush operation thread safe while continuing to add new documents.
+      synchronized (geometricParts) {
+        flushingIndexes.add(retired);
+        resetCurrentMemoryIndex();
+      }
+    } catch (Exception ex) {
+      throw new IOException(ex);
+    }
+    return retired;
   }
 
   private void flushCurrentIndexBlock() throws IOException {
@@ -354,17 +494,49 @@ public class GeometricIndex implements DynamicIndex, Index {
 
     logger.info("Flushing current memory Index. id = " + indexBlockCount);
 
-    final MemoryIndex flushingMemoryIndex = currentMemoryIndex;
     final File shardFolder = getNextIndexShardFolder(1);
+    final MemoryIndex flushingMemoryIndex = retireCurrentMemoryIndex();
+    writeIndexBlock(flushingMemoryIndex, shardFolder, lastAddedDocumentIdentifier, lastAddedDocumentNumber);
+  }
+
+  private void flushInBackground() throws IOException {
+    if (currentMemoryIndex.documentsInIndex() < 1) {
+      return;
+    }
 
+    // blocks ingestion if the flush thread has fallen too far behind
     try {
-      // reset the current index
-      //  - this makes the flush operation thread safe while continuing to add new documents.
-      resetCurrentMemoryIndex();
-    } catch (Exception ex) {
-      throw new IOException(ex);
+      pendingFlushes.acquire();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting for a memory index flush.", ex);
+    }
+
+    logger.info("Flushing current memory Index in the background. id = " + indexBlockCount);
+
+    final File shardFolder = getNextIndexShardFolder(1);
+    final String lastIdentifier = lastAddedDocumentIdentifier;
+    final long lastNumber = lastAddedDocumentNumber;
+    final MemoryIndex flushingMemoryIndex;
+    try {
+      flushingMemoryIndex = retireCurrentMemoryIndex();
+    } catch (IOException ex) {
+      pendingFlushes.release();
+      throw ex;
     }
 
+    submit(flushExecutor, () -> {
+      try {
+        writeIndexBlock(flushingMemoryIndex, shardFolder, lastIdentifier, lastNumber);
+      } finally {
+        pendingFlushes.release();
+      }
+      scheduleMerges();
+    });
+  }
+
+  private void writeIndexBlock(MemoryIndex flushingMemoryIndex, File shardFolder,
+          String lastIdentifier, long lastNumber) {
     try {
       // first flush the index to disk
       FlushToDisk.flushMemoryIndex(flushingMemoryIndex, shardFolder.getAbsolutePath(), false);
@@ -373,11 +545,16 @@ public class GeometricIndex implements DynamicIndex, Index {
       synchronized (geometricParts) {
         // add flushed index to the set of bins -- needs to be a synconeous action
         geometricParts.add(0, shardFolder.getAbsolutePath());
+        flushingIndexes.remove(flushingMemoryIndex);
+        lastFlushedDocumentIdentifier = lastIdentifier;
+        lastFlushedDocumentNumber = lastNumber;
         updateIndex();
-        flushingMemoryIndex.close();
       }
+      // the memory index is not closed: searchers may still hold iterators
+      // over it, so it is left to the garbage collector.
 
     } catch (IOException e) {
+      // the memory index stays searchable, but is not on disk
       logger.severe(e.toString());
     }
   }
@@ -385,46 +562,141 @@ public class GeometricIndex implements DynamicIndex, Index {
   // handle the on-disk index merging operations
   private void maintainMergeLocal() {
     logger.info("Maintaining Merge Local");
+    Bin mergeBin;
+    synchronized (geometricParts) {
+      mergeBin = geometricParts.findMergeCandidates();
+      geometricParts.reserve(mergeBin);
+    }
+    if (!mergeBin.isEmpty()) {
+      mergeShards(mergeBin);
+    }
+  }
+
+  /**
+   * Queues a merge if the shards not already being merged call for one. Each
+   * merge schedules the next when it completes, so cascades still happen.
+   */
+  private void scheduleMerges() {
+    synchronized (geometricParts) {
+      final Bin mergeBin = geometricParts.findMergeCandidates();
+      if (mergeBin.isEmpty()) {
+        return;
+      }
+      geometricParts.reserve(mergeBin);
+      submit(mergeExecutor, () -> {
+        mergeShards(mergeBin);
+        scheduleMerges();
+      });
+    }
+  }
+
+  private void mergeShards(Bin mergeBin) {
     try {
-      Bin mergeBin;
-      synchronized (geometricParts) {
-        mergeBin = geometricParts.findMergeCandidates();
+      File indexShard = getNextIndexShardFolder(mergeBin.size + 1);
+      // otherwise there's something to merge
+      logger.info("Performing merge!");
+
+      if (mergeBytesPerSecond > 0) {
+        throttleMerge(mergeBin);
       }
-      if (!mergeBin.isEmpty()) {
-        File indexShard = getNextIndexShardFolder(mergeBin.size + 1);
-        // otherwise there's something to merge
-        logger.info("Performing merge!");
-
-
-        // merge the shards
-        Parameters p = this.globalParameters.clone();
-        // override each of these particular parameters
-        p.set("indexPath", indexShard.getAbsolutePath());
-        p.set("inputPath", new ArrayList<>(mergeBin.getBinPaths()));
-        p.set("renumberDocuments", false);
-
-        App.run("merge-index", p, System.out);
-
-        // should make sure that these two are uninteruppable
-        synchronized (geometricParts) {
-          geometricParts.add(mergeBin.size + 1, indexShard.getAbsolutePath());
-          geometricParts.removeShards(mergeBin);
-          updateIndex();
-        }
 
-        // now can delete the merged indexshard folders...
-        for (String file : mergeBin.getBinPaths()) {
-          FSUtil.deleteDirectory(new File(file));
-        }
+      // merge the shards
+      Parameters p = this.globalParameters.clone();
+      // override each of these particular parameters
+      p.set("indexPath", indexShard.getAbsolutePath());
+      p.set("inputPath", new ArrayList<>(mergeBin.getBinPaths()));
+      p.set("renumberDocuments", false);
+
+      App.run("merge-index", p, System.out);
+
+      // should make sure that these two are uninteruppable
+      synchronized (geometricParts) {
+        geometricParts.add(mergeBin.size + 1, indexShard.getAbsolutePath());
+        geometricParts.removeShards(mergeBin);
+        updateIndex();
+      }
 
-        logger.info("Done merging.");
+      // now can delete the merged indexshard folders...
+      for (String file : mergeBin.getBinPaths()) {
+        FSUtil.deleteDirectory(new File(file));
       }
+
+      logger.info("Done merging.");
     } catch (Exception ex) {
+      synchronized (geometricParts) {
+        geometricParts.release(mergeBin);
+      }
       Logger.getLogger(GeometricIndex.class.getName()).log(Level.SEVERE, null, ex);
     }
   }
 
-  private File getNextIndexShardFolder(int size) {
+  /**
+   * Spaces out merge starts so that, on average, merges read no more than
+   * mergeRateLimit MB of shards per second.
+   */
+  private void throttleMerge(Bin mergeBin) throws InterruptedException {
+    long bytes = 0;
+    for (String path : mergeBin.getBinPaths()) {
+      bytes += directorySize(new File(path));
+    }
+    long wait;
+    synchronized (maintenanceLock) {
+      long now = System.nanoTime();
+      long start = Math.max(now, nextMergeTime);
+      nextMergeTime = start + (long) (bytes * 1e9 / mergeBytesPerSecond);
+      wait = start - now;
+    }
+    if (wait > 0) {
+      Thread.sleep(wait / 1000000);
+    }
+  }
+
+  private static long directorySize(File file) {
+    if (file.isFile()) {
+      return file.length();
+    }
+    long size = 0;
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        size += directorySize(child);
+      }
+    }
+    return size;
+  }
+
+  private void submit(ExecutorService executor, final Runnable task) {
+    synchronized (maintenanceLock) {
+      outstandingTasks++;
+    }
+    executor.execute(() -> {
+      try {
+        task.run();
+      } catch (RuntimeException ex) {
+        logger.log(Level.SEVERE, "Index maintenance failed.", ex);
+      } finally {
+        synchronized (maintenanceLock) {
+          outstandingTasks--;
+          maintenanceLock.notifyAll();
+        }
+      }
+    });
+  }
+
+  private static ThreadFactory daemonThreads(final String name) {
+    return (Runnable r) -> {
+      Thread t = new Thread(r, name);
+      t.setDaemon(true);
+      return t;
+    };
+  }
+
+  // must hold the geometricParts lock
+  private void publishShards() {
+    shards = new ShardSet(currentMemoryIndex, flushingIndexes, geometricParts.getIndexes());
+  }
+
+  private synchronized File getNextIndexShardFolder(int size) {
     File indexFolder = new File(shardDirectory + File.separator + "galagoindex.shard." + indexBlockCount + "." + size);
     indexFolder.mkdirs();
     indexBlockCount++;
@@ -437,8 +709,8 @@ public class GeometricIndex implements DynamicIndex, Index {
   // (copied from the last flush)
   private Parameters createCheckpoint() {
     Parameters checkpoint = Parameters.create();
-    checkpoint.set("lastDoc/identifier", this.lastAddedDocumentIdentifier);
-    checkpoint.set("lastDoc/number", this.lastAddedDocumentNumber);
+    checkpoint.set("lastDoc/identifier", this.lastFlushedDocumentIdentifier);
+    checkpoint.set("lastDoc/number", this.lastFlushedDocumentNumber);
     checkpoint.set("indexBlockCount", this.indexBlockCount);
     Parameters shards = Parameters.create();
     for (Bin b : this.geometricParts.radixBins.values()) {
@@ -456,6 +728,8 @@ public class GeometricIndex implements DynamicIndex, Index {
 
     this.lastAddedDocumentIdentifier = checkpoint.getString("lastDoc/identifier");
     this.lastAddedDocumentNumber = (int) checkpoint.getLong("lastDoc/number");
+    this.lastFlushedDocumentIdentifier = this.lastAddedDocumentIdentifier;
+    this.lastFlushedDocumentNumber = this.lastAddedDocumentNumber;
     this.indexBlockCount = (int) checkpoint.getLong("indexBlockCount");
     Parameters shards = checkpoint.getMap("shards");
     for (String indexPath : shards.getKeys()) {
@@ -464,6 +738,27 @@ public class GeometricIndex implements DynamicIndex, Index {
   }
 
   // Subclasses
+
+  /**
+   * An immutable view of every index that holds documents: the current
+   * memory index first, then any being flushed, then the disk shards.
+   */
+  private static class ShardSet {
+
+    final MemoryIndex current;
+    final List<MemoryIndex> memory;
+    final List<DiskIndex> disk;
+
+    ShardSet(MemoryIndex current, List<MemoryIndex> flushing, Collection<DiskIndex> disk) {
+      this.current = current;
+      List<MemoryIndex> m = new ArrayList<>();
+      m.add(current);
+      m.addAll(flushing);
+      this.memory = Collections.unmodifiableList(m);
+      this.disk = Collections.unmodifiableList(new ArrayList<>(disk));
+    }
+  }
+
   private static class Bin {
 
     private int size;
@@ -503,6 +798,8 @@ public class GeometricIndex implements DynamicIndex, Index {
     private int radix;
     private TreeMap<Integer, Bin> radixBins = new TreeMap<>();
     private TreeMap<String, DiskIndex> activeIndexes = new TreeMap<>();
+    // shards claimed by a merge that has not finished
+    private HashSet<String> merging = new HashSet<>();
 
     public GeometricPartitions(int radix) {
       this.radix = radix;
@@ -537,15 +834,26 @@ public class GeometricIndex implements DynamicIndex, Index {
     // If cascade is true, then this will also add larger bin sizes
     // if merging the current bin size will cause the next one to
     // reach radix.
+    //
+    // Shards already claimed by a running merge are left out.
     public Bin findMergeCandidates() {
       Bin candidate;
       Bin result = new Bin(0);
       for (int i = 0; i <= getMaxSize(); i++) {
         candidate = radixBins.get(i);
-        if (candidate.count() + ((candidate.size == i) ? 0 : 1) >= radix) {
+        if (candidate == null) {
+          break;
+        }
+        Bin available = new Bin(i);
+        for (String path : candidate.getBinPaths()) {
+          if (!merging.contains(path)) {
+            available.add(path);
+          }
+        }
+        if (available.count() + ((candidate.size == i) ? 0 : 1) >= radix) {
           logger.info("Adding Merge Candidate of size: " + i);
           result.size = i;
-          result.add(candidate);
+          result.add(available);
         } else {
           break;
         }
@@ -553,6 +861,14 @@ public class GeometricIndex implements DynamicIndex, Index {
       return result;
     }
 
+    public void reserve(Bin shards) {
+      merging.addAll(shards.getBinPaths());
+    }
+
+    public void release(Bin shards) {
+      merging.removeAll(shards.getBinPaths());
+    }
+
     public Bin getAllShards() {
       Bin result = new Bin(0);
       result.add(shardDirectory);
@@ -567,6 +883,7 @@ public class GeometricIndex implements DynamicIndex, Index {
 
     // only remove merged shards
     public void removeShards(Bin shards) {
+      release(shards);
       for (String path : shards.getBinPaths()) {
         activeIndexes.remove(path);
       }
@@ -44,8 +44,9 @@ import java.util.logging.Logger;
 public class MemoryIndex implements DynamicIndex, Index {
   public static final Logger logger = Logger.getLogger(MemoryIndex.class.getName());
 
-  public boolean stemming, nonstemming, makecorpus, dirty;
+  public boolean stemming, nonstemming, makecorpus, offHeapPostings, dirty;
   protected int documentNumberOffset, documentCount;
+  private volatile long modificationCount = 0;
   protected Parameters manifest;
   protected HashMap<String, MemoryIndexPart> parts;
   protected LengthsReader lengthsReader = null;
@@ -100,14 +101,19 @@ public class MemoryIndex implements DynamicIndex, Index {
     if (makecorpus) {
       parts.put("corpus", new MemoryCorpus(partParams.clone()));
     }
+    // off-heap postings allow concurrent readers and much larger blocks
+    offHeapPostings = manifest.get("offHeapPostings", false);
+    if (offHeapPostings && manifest.isLong("slabSize")) {
+      partParams.set("slabSize", manifest.getLong("slabSize"));
+    }
     if (nonstemming) {
-      parts.put("postings", new MemoryPositionalIndex(partParams.clone()));
+      parts.put("postings", createPostingsPart(partParams.clone()));
     }
     if (stemming) {
       Parameters stemParams = partParams.clone();
       // should change this to support several stemmers...
       stemParams.set("stemmer", manifest.get("stemmer", KrovetzStemmer.class.getName()));
-      parts.put("postings.krovetz", new MemoryPositionalIndex(stemParams));
+      parts.put("postings.krovetz", createPostingsPart(stemParams));
     }
 
     // get a pointer to some special parts:
@@ -118,6 +124,13 @@ public class MemoryIndex implements DynamicIndex, Index {
     dirty = false;
   }
 
+  private MemoryIndexPart createPostingsPart(Parameters partParams) throws Exception {
+    if (offHeapPostings) {
+      return new MemoryOffHeapPositionalIndex(partParams);
+    }
+    return new MemoryPositionalIndex(partParams);
+  }
+
   public MemoryIndex() throws Exception {
     this(Parameters.create());
   }
@@ -150,6 +163,12 @@ public class MemoryIndex implements DynamicIndex, Index {
       part.addDocument(doc);
     }
     documentCount++;
+    modificationCount++;
+  }
+
+  @Override
+  public long getModificationCount() {
+    return modificationCount;
   }
 
   /* this Isn't required at the moment
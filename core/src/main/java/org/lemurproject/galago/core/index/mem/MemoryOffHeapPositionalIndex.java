@@ -0,0 +1,613 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.index.mem;
+
+import org.lemurproject.galago.core.index.KeyIterator;
+import org.lemurproject.galago.core.index.disk.PositionIndexWriter;
+import org.lemurproject.galago.core.index.stats.AggregateIndexPart;
+import org.lemurproject.galago.core.index.stats.IndexPartStatistics;
+import org.lemurproject.galago.core.index.stats.NodeStatistics;
+import org.lemurproject.galago.core.parse.Document;
+import org.lemurproject.galago.core.parse.stem.Stemmer;
+import org.lemurproject.galago.core.retrieval.iterator.BaseIterator;
+import org.lemurproject.galago.core.retrieval.iterator.ExtentIterator;
+import org.lemurproject.galago.core.retrieval.iterator.disk.DiskCountIterator;
+import org.lemurproject.galago.core.retrieval.iterator.disk.DiskExtentIterator;
+import org.lemurproject.galago.core.retrieval.iterator.disk.SourceIterator;
+import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.NodeType;
+import org.lemurproject.galago.core.util.ExtentArray;
+import org.lemurproject.galago.tupleflow.FakeParameters;
+import org.lemurproject.galago.utility.ByteUtil;
+import org.lemurproject.galago.utility.CmpUtil;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory posting index with the posting data held off-heap.
+ *
+ * A drop-in alternative to MemoryPositionalIndex (MemoryIndex uses it when
+ * "offHeapPostings" is true). Each posting list is a chain of chunks carved
+ * out of large direct buffers by a SlabAllocator, so the java heap only holds
+ * the term dictionary (a ConcurrentSkipListMap) and one small object per term.
+ *
+ * addDocument may be called from several threads at once: a document's
+ * postings are gathered locally, then appended one term at a time, each under
+ * that term's own lock. Readers never lock; every append publishes a snapshot
+ * of the list length and statistics, and a reader only decodes bytes below
+ * the snapshot it started from. The stemmer, if any, must be safe to share.
+ *
+ * Closing the part releases the slabs, but sources already handed out keep
+ * reading their snapshot: each holds its own view of the slabs, and the
+ * memory is reclaimed once the last of them is dropped. Lookups after close
+ * fail with an IOException.
+ *
+ * Parameters:
+ *   slabSize : bytes per off-heap slab [default 4MB]
+ */
+public class MemoryOffHeapPositionalIndex implements MemoryIndexPart, AggregateIndexPart {
+
+  public static final int DEFAULT_SLAB_SIZE = 4 << 20;
+
+  protected ConcurrentSkipListMap<byte[], OffHeapPostingList> postings = new ConcurrentSkipListMap<>(new CmpUtil.ByteArrComparator());
+  protected SlabAllocator slabs;
+  protected Parameters parameters;
+  protected LongAdder collectionDocumentCount = new LongAdder();
+  protected LongAdder collectionPostingsCount = new LongAdder();
+  protected AtomicLong vocabCount = new AtomicLong();
+  protected LongAccumulator highestFrequency = new LongAccumulator(Math::max, 0);
+  protected LongAccumulator highestDocumentCount = new LongAccumulator(Math::max, 0);
+  protected Stemmer stemmer = null;
+  protected volatile boolean closed = false;
+
+  public MemoryOffHeapPositionalIndex(Parameters parameters) throws Exception {
+    this.parameters = parameters;
+
+    int slabSize = (int) parameters.get("slabSize", (long) DEFAULT_SLAB_SIZE);
+    if (slabSize < OffHeapPostingList.LARGEST_CHUNK) {
+      throw new IllegalArgumentException("slabSize must be at least " + OffHeapPostingList.LARGEST_CHUNK + " bytes.");
+    }
+    slabs = new SlabAllocator(slabSize);
+
+    if (parameters.containsKey("stemmer")) {
+      stemmer = (Stemmer) Class.forName(parameters.getString("stemmer")).newInstance();
+    }
+  }
+
+  @Override
+  public void addDocument(Document doc) throws IOException {
+    // gather the positions of each term first, so each list is locked once
+    HashMap<String, PositionList> terms = new HashMap<>();
+    int position = 0;
+    for (String term : doc.terms) {
+      String stem = stemAsRequired(term);
+      if (stem != null) {
+        PositionList positions = terms.get(stem);
+        if (positions == null) {
+          positions = new PositionList();
+          terms.put(stem, positions);
+        }
+        positions.add(position);
+        position += 1;
+      }
+    }
+
+    for (Map.Entry<String, PositionList> entry : terms.entrySet()) {
+      OffHeapPostingList postingList = getOrCreate(ByteUtil.fromString(entry.getKey()));
+      PositionList positions = entry.getValue();
+      postingList.add(doc.identifier, positions.positions, positions.size);
+      updateHighest(postingList);
+    }
+
+    collectionDocumentCount.increment();
+    collectionPostingsCount.add(doc.terms.size());
+  }
+
+  @Override
+  public void addIteratorData(byte[] key, BaseIterator iterator) throws IOException {
+
+    if (postings.containsKey(key)) {
+      // do nothing - we have already cached this data
+      return;
+    }
+
+    // built aside and only then inserted, so no reader sees part of it
+    OffHeapPostingList postingList = new OffHeapPostingList(key, slabs);
+    ExtentIterator mi = (ExtentIterator) iterator;
+    ScoringContext sc = new ScoringContext();
+    int[] positions = new int[16];
+    while (!mi.isDone()) {
+      long document = mi.currentCandidate();
+      sc.document = document;
+      ExtentArray extents = mi.extents(sc);
+      if (positions.length < extents.size()) {
+        positions = new int[Math.max(extents.size(), positions.length * 2)];
+      }
+      for (int i = 0; i < extents.size(); i++) {
+        positions[i] = extents.begin(i);
+      }
+      if (extents.size() > 0) {
+        postingList.add(document, positions, extents.size());
+      }
+      mi.movePast(document);
+    }
+
+    if (postings.putIfAbsent(key, postingList) == null) {
+      vocabCount.incrementAndGet();
+      updateHighest(postingList);
+    }
+  }
+
+  @Override
+  public void removeIteratorData(byte[] key) throws IOException {
+    // the off-heap bytes are only reclaimed when the whole part is closed
+    if (postings.remove(key) != null) {
+      vocabCount.decrementAndGet();
+    }
+  }
+
+  private OffHeapPostingList getOrCreate(byte[] key) {
+    OffHeapPostingList postingList = postings.get(key);
+    if (postingList == null) {
+      OffHeapPostingList created = new OffHeapPostingList(key, slabs);
+      postingList = postings.putIfAbsent(key, created);
+      if (postingList == null) {
+        vocabCount.incrementAndGet();
+        postingList = created;
+      }
+    }
+    return postingList;
+  }
+
+  private void updateHighest(OffHeapPostingList postingList) {
+    Published snapshot = postingList.published;
+    this.highestDocumentCount.accumulate(snapshot.documentCount);
+    this.highestFrequency.accumulate(snapshot.postingsCount);
+  }
+
+  // Posting List Reader functions
+  @Override
+  public KeyIterator getIterator() throws IOException {
+    checkOpen();
+    return new KIterator();
+  }
+
+  @Override
+  public SourceIterator getIterator(Node node) throws IOException {
+    String term = stemAsRequired(node.getDefaultParameter());
+    byte[] byteWord = ByteUtil.fromString(term);
+    if (node.getOperator().equals("counts")) {
+      return getTermCounts(byteWord);
+    } else {
+      return getTermExtents(byteWord);
+    }
+  }
+
+  @Override
+  public DiskExtentIterator getIterator(byte[] key) throws IOException {
+    return getTermExtents(key);
+  }
+
+  private void checkOpen() throws IOException {
+    if (closed) {
+      throw new IOException("MemoryOffHeapPositionalIndex is closed.");
+    }
+  }
+
+  private DiskCountIterator getTermCounts(byte[] term) throws IOException {
+    checkOpen();
+    OffHeapPostingList postingList = postings.get(term);
+    if (postingList != null) {
+      return new DiskCountIterator(new MemoryOffHeapPositionalIndexSource(postingList));
+    }
+    return null;
+  }
+
+  private DiskExtentIterator getTermExtents(byte[] term) throws IOException {
+    checkOpen();
+    OffHeapPostingList postingList = postings.get(term);
+    if (postingList != null) {
+      return new DiskExtentIterator(new MemoryOffHeapPositionalIndexSource(postingList));
+    }
+    return null;
+  }
+
+  // try to free up memory; open sources keep the slabs they are reading.
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    postings.clear();
+    slabs.release();
+  }
+
+  @Override
+  public Map<String, NodeType> getNodeTypes() {
+    HashMap<String, NodeType> types = new HashMap<>();
+    types.put("counts", new NodeType(DiskCountIterator.class));
+    types.put("extents", new NodeType(DiskExtentIterator.class));
+    return types;
+  }
+
+  @Override
+  public Parameters getManifest() {
+    return parameters;
+  }
+
+  @Override
+  public long getDocumentCount() {
+    return collectionDocumentCount.sum();
+  }
+
+  @Override
+  public long getCollectionLength() {
+    return collectionPostingsCount.sum();
+  }
+
+  @Override
+  public long getKeyCount() {
+    return vocabCount.get();
+  }
+
+  /**
+   * Bytes of off-heap memory currently held by the posting lists.
+   */
+  public long getOffHeapBytes() {
+    return slabs.allocatedBytes();
+  }
+
+  @Override
+  public void flushToDisk(String path) throws IOException {
+    Parameters p = getManifest();
+    p.set("filename", path);
+    PositionIndexWriter writer = new PositionIndexWriter(new FakeParameters(p));
+
+    KIterator kiterator = new KIterator();
+    DiskExtentIterator viterator;
+    ExtentArray extents;
+    ScoringContext sc = new ScoringContext();
+    while (!kiterator.isDone()) {
+      viterator = kiterator.getValueIterator();
+      writer.processWord(kiterator.getKey());
+
+      while (!viterator.isDone()) {
+        sc.document = viterator.currentCandidate();
+        writer.processDocument(viterator.currentCandidate());
+        extents = viterator.extents(sc);
+        for (int i = 0; i < extents.size(); i++) {
+          writer.processPosition(extents.begin(i));
+          writer.processTuple();
+        }
+        viterator.movePast(viterator.currentCandidate());
+      }
+      kiterator.nextKey();
+    }
+    writer.close();
+  }
+
+  @Override
+  public IndexPartStatistics getStatistics() {
+    IndexPartStatistics is = new IndexPartStatistics();
+    is.partName = "MemoryOffHeapPositionIndex";
+    is.collectionLength = this.collectionPostingsCount.sum();
+    is.vocabCount = this.vocabCount.get();
+    is.highestDocumentCount = this.highestDocumentCount.get();
+    is.highestFrequency = this.highestFrequency.get();
+    return is;
+  }
+
+  protected String stemAsRequired(String term) {
+    if (stemmer != null) {
+      return stemmer.stem(term);
+    }
+    return term;
+  }
+
+  // sub classes:
+  private static class PositionList {
+
+    int[] positions = new int[4];
+    int size = 0;
+
+    void add(int position) {
+      if (size == positions.length) {
+        int[] grown = new int[size * 2];
+        System.arraycopy(positions, 0, grown, 0, size);
+        positions = grown;
+      }
+      positions[size++] = position;
+    }
+  }
+
+  /**
+   * What a reader may see of a posting list: the first length bytes, holding
+   * documentCount records. Replaced, never modified, on each append.
+   */
+  public static class Published {
+
+    public final long length;
+    public final long documentCount;
+    public final long postingsCount;
+    public final long maximumCount;
+    // false once a document was appended out of order
+    public final boolean sorted;
+
+    Published(long length, long documentCount, long postingsCount, long maximumCount, boolean sorted) {
+      this.length = length;
+      this.documentCount = documentCount;
+      this.postingsCount = postingsCount;
+      this.maximumCount = maximumCount;
+      this.sorted = sorted;
+    }
+  }
+
+  /**
+   * One posting list, stored as a chain of off-heap chunks.
+   *
+   * Chunk k is [next chunk address : 8 bytes][data : chunkCapacity(k) bytes];
+   * capacities double from 16 bytes up to 8KB, so rare terms stay small.
+   *
+   * The data is a sequence of document records:
+   *   [zig-zag coded document delta][count][position gaps]*count
+   * Deltas are signed so that concurrent writers may append documents out of
+   * order; such a list is marked unsorted and readers sort it when they open
+   * it.
+   */
+  public static class OffHeapPostingList {
+
+    static final int FIRST_CHUNK = 16;
+    static final int LAST_CHUNK_LEVEL = 9;
+    static final int LARGEST_CHUNK = 8 + (FIRST_CHUNK << LAST_CHUNK_LEVEL);
+
+    final byte[] key;
+    final SlabAllocator slabs;
+    final long head;
+    volatile Published published;
+    // writer state, guarded by this
+    private long tail;
+    private int level;
+    private int tailCapacity;
+    private int tailUsed;
+    private long length;
+    private long lastDocument;
+    private long documentCount;
+    private long postingsCount;
+    private long maximumCount;
+    private boolean sorted;
+
+    public OffHeapPostingList(byte[] key, SlabAllocator slabs) {
+      this.key = key;
+      this.slabs = slabs;
+      this.head = slabs.allocate(8 + chunkCapacity(0));
+      this.tail = head;
+      this.level = 0;
+      this.tailCapacity = chunkCapacity(0);
+      this.sorted = true;
+      this.published = new Published(0, 0, 0, 0, true);
+    }
+
+    static int chunkCapacity(int level) {
+      return FIRST_CHUNK << Math.min(level, LAST_CHUNK_LEVEL);
+    }
+
+    /**
+     * Appends a document with count positions. Each document may only be
+     * added once.
+     */
+    public synchronized void add(long document, int[] positions, int count) {
+      assert count > 0;
+      assert documentCount == 0 || document != lastDocument : "document added twice";
+      if (documentCount > 0 && document < lastDocument) {
+        sorted = false;
+      }
+
+      long delta = document - lastDocument;
+      writeVLong((delta << 1) ^ (delta >> 63));
+      writeVLong(count);
+      int lastPosition = 0;
+      for (int i = 0; i < count; i++) {
+        assert i == 0 || positions[i] > lastPosition;
+        writeVLong(positions[i] - lastPosition);
+        lastPosition = positions[i];
+      }
+
+      lastDocument = document;
+      documentCount += 1;
+      postingsCount += count;
+      maximumCount = Math.max(maximumCount, count);
+
+      // the volatile write makes the bytes above visible to new readers
+      published = new Published(length, documentCount, postingsCount, maximumCount, sorted);
+    }
+
+    private void writeVLong(long value) {
+      while (value >= 0x80) {
+        writeByte((int) (value & 0x7f));
+        value >>>= 7;
+      }
+      writeByte((int) value | 0x80);
+    }
+
+    private void writeByte(int b) {
+      if (tailUsed == tailCapacity) {
+        level++;
+        int capacity = chunkCapacity(level);
+        long chunk = slabs.allocate(8 + capacity);
+        slabs.putLong(tail, chunk);
+        tail = chunk;
+        tailCapacity = capacity;
+        tailUsed = 0;
+      }
+      slabs.put(tail + 8 + tailUsed, (byte) b);
+      tailUsed++;
+      length++;
+    }
+
+    public byte[] key() {
+      return key;
+    }
+
+    public NodeStatistics stats(Published snapshot) {
+      NodeStatistics stats = new NodeStatistics();
+      stats.node = ByteUtil.toString(key);
+      stats.nodeFrequency = snapshot.postingsCount;
+      stats.nodeDocumentCount = snapshot.documentCount;
+      stats.maximumCount = snapshot.maximumCount;
+      return stats;
+    }
+
+    /**
+     * Reads the bytes of one published snapshot, from the start.
+     */
+    public Reader reader() {
+      return new Reader();
+    }
+
+    public class Reader {
+
+      // the slabs holding the snapshot, kept even if the allocator is released
+      private final ByteBuffer[] view = slabs.view();
+      private long chunk = head;
+      private int level = 0;
+      private int used = 0;
+      private int capacity = chunkCapacity(0);
+
+      public int readByte() {
+        if (used == capacity) {
+          chunk = SlabAllocator.getLong(view, chunk);
+          level++;
+          capacity = chunkCapacity(level);
+          used = 0;
+        }
+        return SlabAllocator.get(view, chunk + 8 + used++) & 0xff;
+      }
+
+      public long readVLong() {
+        long result = 0;
+        for (int shift = 0; true; shift += 7) {
+          long b = readByte();
+          if ((b & 0x80) == 0x80) {
+            return result | ((b & 0x7f) << shift);
+          }
+          result |= b << shift;
+        }
+      }
+
+      public int readVInt() {
+        return (int) readVLong();
+      }
+
+      /**
+       * Reads a zig-zag coded document delta.
+       */
+      public long readDelta() {
+        long zigzag = readVLong();
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+      }
+    }
+  }
+
+  public class KIterator implements KeyIterator {
+
+    Iterator<byte[]> iterator;
+    byte[] currKey;
+    boolean done = false;
+
+    public KIterator() throws IOException {
+      iterator = postings.keySet().iterator();
+      this.nextKey();
+    }
+
+    @Override
+    public void reset() throws IOException {
+      iterator = postings.keySet().iterator();
+    }
+
+    @Override
+    public String getKeyString() throws IOException {
+      return ByteUtil.toString(currKey);
+    }
+
+    @Override
+    public byte[] getKey() {
+      return currKey;
+    }
+
+    @Override
+    public boolean nextKey() throws IOException {
+      if (iterator.hasNext()) {
+        currKey = iterator.next();
+        return true;
+      } else {
+        currKey = null;
+        done = true;
+        return false;
+      }
+    }
+
+    @Override
+    public boolean skipToKey(byte[] key) throws IOException {
+      iterator = postings.tailMap(key).keySet().iterator();
+      return nextKey();
+    }
+
+    @Override
+    public boolean findKey(byte[] key) throws IOException {
+      iterator = postings.tailMap(key).keySet().iterator();
+      return nextKey();
+    }
+
+    @Override
+    public String getValueString() throws IOException {
+      DiskExtentIterator it = getValueIterator();
+      long count = it.totalEntries();
+      StringBuilder sb = new StringBuilder();
+      sb.append(ByteUtil.toString(getKey())).append(",");
+      sb.append("list of size: ");
+      if (count > 0) {
+        sb.append(count);
+      } else {
+        sb.append("Unknown");
+      }
+      return sb.toString();
+    }
+
+    @Override
+    public byte[] getValueBytes() throws IOException {
+      throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public boolean isDone() {
+      return done;
+    }
+
+    @Override
+    public int compareTo(KeyIterator t) {
+      try {
+        return CmpUtil.compare(this.getKey(), t.getKey());
+      } catch (IOException ex) {
+        throw new RuntimeException(ex);
+      }
+    }
+
+    @Override
+    public DiskExtentIterator getValueIterator() throws IOException {
+      checkOpen();
+      OffHeapPostingList postingList = (currKey == null) ? null : postings.get(currKey);
+      if (postingList != null) {
+        return new DiskExtentIterator(new MemoryOffHeapPositionalIndexSource(postingList));
+      } else {
+        return null;
+      }
+    }
+  }
+}
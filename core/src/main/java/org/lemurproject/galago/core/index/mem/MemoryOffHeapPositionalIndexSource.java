@@ -0,0 +1,216 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.index.mem;
+
+import org.lemurproject.galago.core.index.mem.MemoryOffHeapPositionalIndex.OffHeapPostingList;
+import org.lemurproject.galago.core.index.mem.MemoryOffHeapPositionalIndex.Published;
+import org.lemurproject.galago.core.index.source.ExtentSource;
+import org.lemurproject.galago.core.index.source.MemValueSource;
+import org.lemurproject.galago.core.index.stats.NodeStatistics;
+import org.lemurproject.galago.core.util.ExtentArray;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Reads an OffHeapPostingList as it was when the source was created (or
+ * last reset); documents appended later are not seen.
+ *
+ * Positions are decoded only when extents are asked for, so the same source
+ * serves the counts operator. A list that was appended to out of order is
+ * decoded and sorted into arrays on reset.
+ */
+public class MemoryOffHeapPositionalIndexSource extends MemValueSource implements ExtentSource {
+
+  OffHeapPostingList postings;
+  OffHeapPostingList.Reader reader;
+  long iteratedDocs;
+  long currDocument;
+  int currCount;
+  boolean positionsRead;
+  ExtentArray extents;
+  ExtentArray emptyExtents;
+  boolean done;
+  // only used for unsorted lists
+  private long[] sortedDocuments;
+  private int[] sortedCounts;
+  private int[] sortedPositionStarts;
+  private int[] sortedPositions;
+  // stats
+  private NodeStatistics stats;
+
+  public MemoryOffHeapPositionalIndexSource(OffHeapPostingList data) throws IOException {
+    super(data.key());
+    this.postings = data;
+    reset();
+  }
+
+  @Override
+  public void reset() throws IOException {
+    Published snapshot = postings.published;
+    stats = postings.stats(snapshot);
+
+    try {
+      // the view must be taken after the snapshot, so it covers its bytes
+      reader = postings.reader();
+    } catch (IllegalStateException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+    iteratedDocs = 0;
+    currDocument = 0;
+    currCount = 0;
+    positionsRead = true;
+    done = false;
+    extents = new ExtentArray();
+    emptyExtents = new ExtentArray();
+
+    if (!snapshot.sorted) {
+      sortRecords();
+    }
+
+    read();
+  }
+
+  /**
+   * Decodes every record, then orders them by document.
+   */
+  private void sortRecords() {
+    int documentCount = (int) stats.nodeDocumentCount;
+    long[] documents = new long[documentCount];
+    int[] counts = new int[documentCount];
+    int[] positionStarts = new int[documentCount];
+    int[] positions = new int[(int) stats.nodeFrequency];
+
+    long document = 0;
+    int p = 0;
+    for (int i = 0; i < documentCount; i++) {
+      document += reader.readDelta();
+      documents[i] = document;
+      counts[i] = reader.readVInt();
+      positionStarts[i] = p;
+      for (int j = 0; j < counts[i]; j++) {
+        positions[p++] = reader.readVInt();
+      }
+    }
+
+    Integer[] order = new Integer[documentCount];
+    for (int i = 0; i < documentCount; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, Comparator.comparingLong(i -> documents[i]));
+
+    sortedDocuments = new long[documentCount];
+    sortedCounts = new int[documentCount];
+    sortedPositionStarts = new int[documentCount];
+    for (int i = 0; i < documentCount; i++) {
+      sortedDocuments[i] = documents[order[i]];
+      sortedCounts[i] = counts[order[i]];
+      sortedPositionStarts[i] = positionStarts[order[i]];
+    }
+    sortedPositions = positions;
+  }
+
+  @Override
+  public int count(long id) {
+    if (!done && this.currDocument == id) {
+      return currCount;
+    }
+    return 0;
+  }
+
+  @Override
+  public ExtentArray extents(long id) {
+    if (!done && this.currDocument == id) {
+      if (!positionsRead) {
+        loadExtents();
+      }
+      return extents;
+    }
+    return this.emptyExtents;
+  }
+
+  @Override
+  public boolean isDone() {
+    return done;
+  }
+
+  @Override
+  public long currentCandidate() {
+    return currDocument;
+  }
+
+  @Override
+  public boolean hasMatch(long identifier) {
+    return (!isDone() && identifier == currDocument);
+  }
+
+  @Override
+  public boolean hasAllCandidates() {
+    return false;
+  }
+
+  private void loadExtents() {
+    extents.reset();
+    extents.setDocument(currDocument);
+    int position = 0;
+    if (sortedDocuments != null) {
+      int start = sortedPositionStarts[(int) iteratedDocs - 1];
+      for (int i = 0; i < currCount; i++) {
+        position += sortedPositions[start + i];
+        extents.add(position);
+      }
+    } else {
+      for (int i = 0; i < currCount; i++) {
+        position += reader.readVInt();
+        extents.add(position);
+      }
+    }
+    positionsRead = true;
+  }
+
+  private void read() {
+    if (iteratedDocs >= stats.nodeDocumentCount) {
+      done = true;
+      return;
+    }
+
+    if (sortedDocuments != null) {
+      currDocument = sortedDocuments[(int) iteratedDocs];
+      currCount = sortedCounts[(int) iteratedDocs];
+    } else {
+      if (!positionsRead) {
+        // skip the positions of the previous document
+        for (int i = 0; i < currCount; i++) {
+          reader.readVLong();
+        }
+      }
+      currDocument += reader.readDelta();
+      currCount = reader.readVInt();
+    }
+    positionsRead = false;
+
+    iteratedDocs++;
+  }
+
+  @Override
+  public void syncTo(long identifier) throws IOException {
+    while (!isDone() && (currDocument < identifier)) {
+      read();
+    }
+  }
+
+  @Override
+  public void movePast(long identifier) throws IOException {
+    syncTo(identifier + 1);
+  }
+
+  @Override
+  public long totalEntries() {
+    return stats.nodeDocumentCount;
+  }
+
+  @Override
+  public NodeStatistics getStatistics() {
+    return stats.clone();
+  }
+}
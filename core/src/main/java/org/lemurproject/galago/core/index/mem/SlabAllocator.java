@@ -0,0 +1,135 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.index.mem;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out small regions of large off-heap (direct) ByteBuffers.
+ *
+ * An address is the slab number in the high 32 bits and the offset within the
+ * slab in the low 32 bits, so address + n stays inside a region that was
+ * allocated with at least n + 1 bytes. Allocation is a lock-free bump of the
+ * current slab's top; a lock is only taken to add a new slab.
+ *
+ * Regions are never freed individually; all of the memory goes when the
+ * allocator is released and the buffers are collected. Readers work on a
+ * view (the slabs at the time they started), which keeps those buffers alive
+ * and readable until the reader itself is dropped, even after a release.
+ *
+ * Bytes written to a region are visible to other threads once the writer has
+ * published them through some volatile write the reader then reads (see
+ * MemoryOffHeapPositionalIndex).
+ */
+public class SlabAllocator {
+
+  private final int slabSize;
+  private volatile ByteBuffer[] slabs;
+  private volatile Slab current;
+  private volatile boolean released = false;
+
+  public SlabAllocator(int slabSize) {
+    this.slabSize = slabSize;
+    this.slabs = new ByteBuffer[0];
+    this.current = null;
+  }
+
+  public int getSlabSize() {
+    return slabSize;
+  }
+
+  /**
+   * Returns the address of a new region of size bytes.
+   */
+  public long allocate(int size) {
+    assert size > 0 && size <= slabSize : "region larger than a slab";
+    while (true) {
+      Slab slab = current;
+      if (slab != null) {
+        int offset = slab.top.getAndAdd(size);
+        if (offset <= slabSize - size) {
+          return ((long) slab.number << 32) | offset;
+        }
+      }
+      addSlab(slab);
+    }
+  }
+
+  private synchronized void addSlab(Slab full) {
+    if (current != full) {
+      // another thread got here first
+      return;
+    }
+    ByteBuffer[] grown = Arrays.copyOf(slabs, slabs.length + 1);
+    grown[slabs.length] = ByteBuffer.allocateDirect(slabSize);
+    slabs = grown;
+    current = new Slab(slabs.length - 1);
+  }
+
+  /**
+   * The slabs allocated so far, for a reader to keep. It covers every region
+   * published before the call.
+   *
+   * @throws IllegalStateException if the allocator was released
+   */
+  public ByteBuffer[] view() {
+    ByteBuffer[] view = slabs;
+    if (released) {
+      throw new IllegalStateException("The off-heap slabs were released.");
+    }
+    return view;
+  }
+
+  public static byte get(ByteBuffer[] view, long address) {
+    return view[(int) (address >>> 32)].get((int) address);
+  }
+
+  public static long getLong(ByteBuffer[] view, long address) {
+    return view[(int) (address >>> 32)].getLong((int) address);
+  }
+
+  public byte get(long address) {
+    return slabs[(int) (address >>> 32)].get((int) address);
+  }
+
+  public void put(long address, byte b) {
+    slabs[(int) (address >>> 32)].put((int) address, b);
+  }
+
+  public long getLong(long address) {
+    return slabs[(int) (address >>> 32)].getLong((int) address);
+  }
+
+  public void putLong(long address, long value) {
+    slabs[(int) (address >>> 32)].putLong((int) address, value);
+  }
+
+  /**
+   * Bytes of off-heap memory held.
+   */
+  public long allocatedBytes() {
+    return (long) slabs.length * slabSize;
+  }
+
+  /**
+   * Drops every slab. Addresses handed out before are no longer valid, except
+   * through views taken earlier.
+   */
+  public synchronized void release() {
+    // set before the slabs go, so a view that misses them sees the flag
+    released = true;
+    slabs = new ByteBuffer[0];
+    current = null;
+  }
+
+  private static class Slab {
+
+    final int number;
+    final AtomicInteger top = new AtomicInteger(0);
+
+    Slab(int number) {
+      this.number = number;
+    }
+  }
+}
@@ -3,22 +3,34 @@
  */
 package org.lemurproject.galago.core.index.merge;
 
+import org.lemurproject.galago.core.index.disk.PositionIndexReader;
 import org.lemurproject.galago.core.index.disk.PositionIndexWriter;
+import org.lemurproject.galago.core.index.disk.PositionsListReader;
 import org.lemurproject.galago.core.types.NumberWordPosition;
 import org.lemurproject.galago.core.util.ExtentArray;
 import org.lemurproject.galago.tupleflow.Processor;
 import org.lemurproject.galago.tupleflow.TupleFlowParameters;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
+ * Lists whose inputs cover disjoint document ranges (always the case when
+ * documents are renumbered) are concatenated: each document's positions are
+ * copied still encoded, instead of being decoded into extents and shredded
+ * back into the writer. Overlapping lists take the generic merge.
  *
  * @author sjh
  */
 public class PositionIndexMerger extends GenericExtentValueIndexMerger<NumberWordPosition> {
 
+  private final PositionIndexWriter positionWriter;
+  private long concatenatedKeys = 0;
+
   public PositionIndexMerger(TupleFlowParameters parameters) throws Exception {
     super(parameters);
+    positionWriter = (PositionIndexWriter) ((NumberWordPosition.WordDocumentPositionOrder.TupleShredder) writer).processor;
   }
 
   @Override
@@ -32,9 +44,86 @@ public class PositionIndexMerger extends GenericExtentValueIndexMerger<NumberWor
     return new NumberWordPosition.WordDocumentPositionOrder.TupleShredder(w);
   }
 
+  @Override
+  public void performValueMerge(byte[] key, List<KeyIteratorWrapper> keyIterators) throws IOException {
+    if (concatenateLists(key, keyIterators)) {
+      concatenatedKeys++;
+    } else {
+      super.performValueMerge(key, keyIterators);
+    }
+  }
+
+  /**
+   * The number of keys whose lists were concatenated rather than merged.
+   */
+  public long getConcatenatedKeyCount() {
+    return concatenatedKeys;
+  }
+
+  /**
+   * Writes the lists one after another if their mapped document ranges do not
+   * overlap; returns false, having written nothing, otherwise.
+   */
+  private boolean concatenateLists(byte[] key, List<KeyIteratorWrapper> keyIterators) throws IOException {
+    if (!positionWriter.acceptsEncodedDocuments()) {
+      return false;
+    }
+
+    List<MappedList> lists = new ArrayList<>();
+    for (KeyIteratorWrapper w : keyIterators) {
+      if (!(w.iterator instanceof PositionIndexReader.KeyIterator)) {
+        return false;
+      }
+      PositionsListReader list = ((PositionIndexReader.KeyIterator) w.iterator).getPositionsList();
+      if (list == null) {
+        return false;
+      }
+      if (list.next()) {
+        lists.add(new MappedList(partIds.get(w), list));
+      }
+    }
+    if (lists.isEmpty()) {
+      return false;
+    }
+    if (lists.size() > 1) {
+      lists.sort((a, b) -> Long.compare(a.first, b.first));
+      for (int i = 1; i < lists.size(); i++) {
+        if (lists.get(i - 1).last() >= lists.get(i).first) {
+          return false;
+        }
+      }
+    }
+
+    positionWriter.processWord(key);
+    for (MappedList m : lists) {
+      do {
+        positionWriter.processEncodedDocument(m.offset + m.list.document, m.list);
+      } while (m.list.next());
+    }
+    return true;
+  }
+
   public void transformExtentArray(byte[] key, ExtentArray extentArray) throws IOException {
     for (int i = 0; i < extentArray.size(); i++) {
       this.writer.process( new NumberWordPosition( extentArray.getDocument(), key, extentArray.begin(i) ) );
     }
   }
+
+  private class MappedList {
+
+    final PositionsListReader list;
+    // the mapping only shifts the documents of each index
+    final long offset;
+    final long first;
+
+    MappedList(int indexId, PositionsListReader list) {
+      this.list = list;
+      this.offset = mappingReader.map(indexId, 0L);
+      this.first = offset + list.document;
+    }
+
+    long last() throws IOException {
+      return offset + list.lastDocument();
+    }
+  }
 }
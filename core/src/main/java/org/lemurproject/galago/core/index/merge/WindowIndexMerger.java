@@ -4,22 +4,33 @@
 
 package org.lemurproject.galago.core.index.merge;
 
+import org.lemurproject.galago.core.index.disk.WindowIndexReader;
 import org.lemurproject.galago.core.index.disk.WindowIndexWriter;
+import org.lemurproject.galago.core.index.disk.WindowListReader;
 import org.lemurproject.galago.core.types.NumberedExtent;
 import org.lemurproject.galago.core.util.ExtentArray;
 import org.lemurproject.galago.tupleflow.Processor;
 import org.lemurproject.galago.tupleflow.TupleFlowParameters;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
+ * Lists whose inputs cover disjoint document ranges are concatenated, copying
+ * each document's windows still encoded, as in PositionIndexMerger.
+ * Overlapping lists take the generic merge.
  *
  * @author sjh
  */
 public class WindowIndexMerger extends GenericExtentValueIndexMerger<NumberedExtent> {
 
+  private final WindowIndexWriter windowWriter;
+  private long concatenatedKeys = 0;
+
   public WindowIndexMerger(TupleFlowParameters parameters) throws Exception{
     super(parameters);
+    windowWriter = (WindowIndexWriter) ((NumberedExtent.ExtentNameNumberBeginOrder.TupleShredder) writer).processor;
   }
 
   @Override
@@ -32,10 +43,80 @@ public class WindowIndexMerger extends GenericExtentValueIndexMerger<NumberedExt
     WindowIndexWriter w = new WindowIndexWriter(parameters);
     return new NumberedExtent.ExtentNameNumberBeginOrder.TupleShredder(w);
   }
-  
+
+  @Override
+  public void performValueMerge(byte[] key, List<KeyIteratorWrapper> keyIterators) throws IOException {
+    if (concatenateLists(key, keyIterators)) {
+      concatenatedKeys++;
+    } else {
+      super.performValueMerge(key, keyIterators);
+    }
+  }
+
+  /**
+   * The number of keys whose lists were concatenated rather than merged.
+   */
+  public long getConcatenatedKeyCount() {
+    return concatenatedKeys;
+  }
+
+  /**
+   * Writes the lists one after another if their mapped document ranges do not
+   * overlap; returns false, having written nothing, otherwise.
+   */
+  private boolean concatenateLists(byte[] key, List<KeyIteratorWrapper> keyIterators) throws IOException {
+    List<MappedList> lists = new ArrayList<>();
+    for (KeyIteratorWrapper w : keyIterators) {
+      if (!(w.iterator instanceof WindowIndexReader.KeyIterator)) {
+        return false;
+      }
+      WindowListReader list = ((WindowIndexReader.KeyIterator) w.iterator).getWindowList();
+      if (list.next()) {
+        lists.add(new MappedList(partIds.get(w), list));
+      }
+    }
+    if (lists.isEmpty()) {
+      return false;
+    }
+    if (lists.size() > 1) {
+      lists.sort((a, b) -> Long.compare(a.first, b.first));
+      for (int i = 1; i < lists.size(); i++) {
+        if (lists.get(i - 1).last() >= lists.get(i).first) {
+          return false;
+        }
+      }
+    }
+
+    windowWriter.processExtentName(key);
+    for (MappedList m : lists) {
+      do {
+        windowWriter.processEncodedDocument(m.offset + m.list.document, m.list);
+      } while (m.list.next());
+    }
+    return true;
+  }
+
   public void transformExtentArray(byte[] key, ExtentArray extentArray)  throws IOException {
     for(int i=0; i <extentArray.size() ; i++){
       this.writer.process(new NumberedExtent(key, extentArray.getDocument(), extentArray.begin(i), extentArray.end(i)) );
     }
   }
+
+  private class MappedList {
+
+    final WindowListReader list;
+    // the mapping only shifts the documents of each index
+    final long offset;
+    final long first;
+
+    MappedList(int indexId, WindowListReader list) {
+      this.list = list;
+      this.offset = mappingReader.map(indexId, 0L);
+      this.first = offset + list.document;
+    }
+
+    long last() throws IOException {
+      return offset + list.lastDocument();
+    }
+  }
 }
@@ -0,0 +1,36 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.index.source;
+
+import java.io.IOException;
+
+/**
+ * A CountSource that can bound the counts (and document lengths) of whole
+ * blocks of its posting list, without decoding the postings themselves.
+ *
+ * Block queries move a separate cursor from the posting cursor, so they
+ * don't disturb syncTo/movePast.
+ *
+ * @see org.lemurproject.galago.core.index.disk.PositionIndexWriter
+ */
+public interface BlockMaxSource extends CountSource {
+  /**
+   * True if this list was written with block-max information.
+   */
+  public boolean hasBlockMax();
+
+  /**
+   * Moves the block cursor to the block containing document, and returns the
+   * last document of that block (Long.MAX_VALUE past the end of the list).
+   */
+  public long blockEnd(long document) throws IOException;
+
+  /**
+   * The largest count in the current block.
+   */
+  public int blockMaximumCount();
+
+  /**
+   * A lower bound on the length of every document in the current block.
+   */
+  public int blockMinimumLength();
+}
@@ -0,0 +1,327 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.links.pagerank;
+
+import org.lemurproject.galago.core.links.LinkDestNamer;
+import org.lemurproject.galago.core.types.DocumentUrl;
+import org.lemurproject.galago.core.types.ExtractedLink;
+import org.lemurproject.galago.core.types.PageRankScore;
+import org.lemurproject.galago.tupleflow.FakeParameters;
+import org.lemurproject.galago.tupleflow.FileUtility;
+import org.lemurproject.galago.tupleflow.OrderedCombiner;
+import org.lemurproject.galago.tupleflow.Sorter;
+import org.lemurproject.galago.tupleflow.TypeReader;
+import org.lemurproject.galago.utility.CmpUtil;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/**
+ * Computes pagerank in memory, as an alternative to the tupleflow job in
+ * PageRankFn.
+ *
+ * The harvested link data is read twice to build a compressed sparse-row
+ * graph: document names are mapped to dense ints (their rank in name order),
+ * and for each document the graph stores the sources of its in-links. The
+ * iterations then run in parallel over primitive arrays, pulling scores along
+ * the in-links, so no document is written by more than one thread.
+ *
+ * The scores follow the tupleflow job exactly: self-links are dropped, links
+ * to external pages and the walk mass of pages without links become part of
+ * the random jump, and the jump is spread over all documents. The final scores
+ * are written with FinalPageRankScoreWriter in the same two files.
+ *
+ * The edge list is the only structure that grows with the number of links.
+ * When it does not fit comfortably in the heap it is kept in a memory-mapped
+ * file instead.
+ */
+public class CSRPageRank {
+
+  private static final Logger logger = Logger.getLogger("CSRPageRank");
+
+  private final String[] names;
+  private final int[] outDegree;
+  private final int[] externalLinks;
+  // in-links of document d are edges [offsets[d], offsets[d+1])
+  private final long[] offsets;
+  private final EdgeList edges;
+
+  private CSRPageRank(String[] names, int[] outDegree, int[] externalLinks, long[] offsets, EdgeList edges) {
+    this.names = names;
+    this.outDegree = outDegree;
+    this.externalLinks = externalLinks;
+    this.offsets = offsets;
+    this.edges = edges;
+  }
+
+  /**
+   * Builds the graph from a HarvestLinksFn output folder.
+   *
+   * @param graphFile where to map the edge list, if it is mapped at all
+   * @param mapGraph "true", "false" or "auto": map when the edge list would
+   * use more than a quarter of the maximum heap
+   */
+  public static CSRPageRank build(File linkData, File graphFile, String mapGraph) throws IOException {
+    String[] names = readNames(new File(linkData, "names"));
+    int docCount = names.length;
+    logger.info("Read " + docCount + " document names.");
+
+    final int[] outDegree = new int[docCount];
+    final int[] externalLinks = new int[docCount];
+    final long[] offsets = new long[docCount + 1];
+
+    // pass 1: count the links of each document
+    File linkFolder = new File(linkData, "srcNameOrder");
+    scanLinks(linkFolder, names, (src, dest) -> {
+      outDegree[src]++;
+      if (dest >= 0) {
+        offsets[dest + 1]++;
+      }
+    }, (src) -> externalLinks[src]++);
+
+    for (int d = 0; d < docCount; d++) {
+      offsets[d + 1] += offsets[d];
+    }
+    long edgeCount = offsets[docCount];
+    logger.info("Read " + edgeCount + " internal links.");
+
+    boolean map;
+    if (mapGraph.equals("auto")) {
+      map = edgeCount * 4 > Runtime.getRuntime().maxMemory() / 4;
+    } else {
+      map = Boolean.parseBoolean(mapGraph);
+    }
+    final EdgeList edges = map ? EdgeList.mapped(graphFile, edgeCount) : EdgeList.heap(edgeCount);
+
+    // pass 2: fill in the sources, using offsets[d] as the insert position of d
+    scanLinks(linkFolder, names, (src, dest) -> {
+      if (dest >= 0) {
+        edges.set(offsets[dest]++, src);
+      }
+    }, (src) -> {
+    });
+    // each offsets[d] now holds the start of d + 1
+    System.arraycopy(offsets, 0, offsets, 1, docCount);
+    offsets[0] = 0;
+
+    return new CSRPageRank(names, outDegree, externalLinks, offsets, edges);
+  }
+
+  public int getDocumentCount() {
+    return names.length;
+  }
+
+  public long getEdgeCount() {
+    return offsets[names.length];
+  }
+
+  /**
+   * Iterates from a uniform score until no score changes by more than delta,
+   * or maxItr iterations have run.
+   */
+  public double[] run(final double lambda, double delta, int maxItr, double initialScore) {
+    final int docCount = names.length;
+    double[] scores = new double[docCount];
+    Arrays.fill(scores, initialScore);
+    double[] next = new double[docCount];
+    final double[] contribution = new double[docCount];
+
+    for (int i = 1; i <= maxItr; i++) {
+      final double[] current = scores;
+      final double[] updated = next;
+
+      double total = IntStream.range(0, docCount).parallel().mapToDouble(d -> current[d]).sum();
+
+      // walk mass per out-link; pages without links jump instead
+      double extraJump = IntStream.range(0, docCount).parallel().mapToDouble(s -> {
+        double walk = (1.0 - lambda) * current[s];
+        if (outDegree[s] == 0) {
+          contribution[s] = 0.0;
+          return walk;
+        }
+        contribution[s] = walk / outDegree[s];
+        return contribution[s] * externalLinks[s];
+      }).sum();
+
+      final double jump = (lambda * total + extraJump) / docCount;
+
+      double change = IntStream.range(0, docCount).parallel().mapToDouble(d -> {
+        double score = jump;
+        for (long e = offsets[d]; e < offsets[d + 1]; e++) {
+          score += contribution[edges.get(e)];
+        }
+        updated[d] = score;
+        return Math.abs(score - current[d]);
+      }).max().orElse(0.0);
+
+      scores = updated;
+      next = current;
+
+      logger.info("Iteration " + i + ": max change " + change);
+      if (change <= delta) {
+        logger.info("Converged at " + i);
+        break;
+      }
+    }
+    return scores;
+  }
+
+  /**
+   * Writes the scores in document name order and in descending score order.
+   */
+  public void write(double[] scores, File docNameOutput, File scoreOutput) throws IOException {
+    FinalPageRankScoreWriter nameWriter = new FinalPageRankScoreWriter(
+            new FakeParameters(Parameters.parseArray("output", docNameOutput.getAbsolutePath())));
+    FinalPageRankScoreWriter scoreWriter = new FinalPageRankScoreWriter(
+            new FakeParameters(Parameters.parseArray("output", scoreOutput.getAbsolutePath())));
+    Sorter<PageRankScore> sorter = new Sorter<>(new PageRankScore.DescScoreOrder(), null, scoreWriter);
+
+    for (int d = 0; d < names.length; d++) {
+      PageRankScore score = new PageRankScore(names[d], scores[d]);
+      nameWriter.process(score);
+      sorter.process(score);
+    }
+    nameWriter.close();
+    sorter.close();
+  }
+
+  public void close() throws IOException {
+    edges.close();
+  }
+
+  private static String[] readNames(File namesFolder) throws IOException {
+    TypeReader<DocumentUrl> reader = OrderedCombiner.combineFromFiles(listFiles(namesFolder), new DocumentUrl.IdentifierOrder());
+    List<String> names = new ArrayList<>();
+    String last = null;
+    DocumentUrl url;
+    while ((url = reader.read()) != null) {
+      if (!url.identifier.equals(last)) {
+        names.add(url.identifier);
+        last = url.identifier;
+      }
+    }
+    return names.toArray(new String[names.size()]);
+  }
+
+  private interface LinkVisitor {
+
+    /**
+     * dest is -1 for links to pages outside the collection.
+     */
+    public void link(int src, int dest);
+  }
+
+  private interface ExternalLinkVisitor {
+
+    public void external(int src);
+  }
+
+  /**
+   * Reads the links in source name order, mapping names to document numbers.
+   * Links from unknown documents and self-links are skipped, like
+   * ComputeRandomWalk does.
+   */
+  private static void scanLinks(File linkFolder, String[] names, LinkVisitor visitor, ExternalLinkVisitor externals) throws IOException {
+    TypeReader<ExtractedLink> reader = OrderedCombiner.combineFromFiles(listFiles(linkFolder), new ExtractedLink.SrcNameOrder());
+    int src = 0;
+    ExtractedLink link;
+    while ((link = reader.read()) != null) {
+      // sources arrive in name order, so they are found by merging
+      while (src < names.length && CmpUtil.compare(names[src], link.srcName) < 0) {
+        src++;
+      }
+      if (src == names.length || !names[src].equals(link.srcName)
+              || link.srcName.equals(link.destName)) {
+        continue;
+      }
+      int dest = Arrays.binarySearch(names, link.destName);
+      visitor.link(src, (dest >= 0) ? dest : -1);
+      if (link.destName.startsWith(LinkDestNamer.EXTERNAL_PREFIX)) {
+        externals.external(src);
+      }
+    }
+  }
+
+  private static List<String> listFiles(File folder) {
+    List<String> files = new ArrayList<>();
+    if (folder.isFile() && !folder.isHidden()) {
+      files.add(folder.getAbsolutePath());
+    } else {
+      for (File file : FileUtility.safeListFiles(folder)) {
+        files.addAll(listFiles(file));
+      }
+    }
+    return files;
+  }
+
+  /**
+   * A long-indexed int array, stored in chunks either on the heap or in a
+   * memory-mapped file.
+   */
+  private static class EdgeList {
+
+    private static final int CHUNK_BITS = 27;
+    private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+    private final IntBuffer[] chunks;
+    private final RandomAccessFile file;
+
+    private EdgeList(IntBuffer[] chunks, RandomAccessFile file) {
+      this.chunks = chunks;
+      this.file = file;
+    }
+
+    private static int chunkCount(long length) {
+      return (int) ((length + CHUNK_MASK) >>> CHUNK_BITS);
+    }
+
+    private static int chunkLength(long length, int chunk) {
+      return (int) Math.min(CHUNK_MASK + 1, length - ((long) chunk << CHUNK_BITS));
+    }
+
+    static EdgeList heap(long length) {
+      IntBuffer[] chunks = new IntBuffer[chunkCount(length)];
+      for (int c = 0; c < chunks.length; c++) {
+        chunks[c] = IntBuffer.wrap(new int[chunkLength(length, c)]);
+      }
+      return new EdgeList(chunks, null);
+    }
+
+    static EdgeList mapped(File graphFile, long length) throws IOException {
+      logger.info("Mapping the link graph to " + graphFile);
+      RandomAccessFile file = new RandomAccessFile(graphFile, "rw");
+      file.setLength(length * 4);
+      FileChannel channel = file.getChannel();
+      IntBuffer[] chunks = new IntBuffer[chunkCount(length)];
+      for (int c = 0; c < chunks.length; c++) {
+        chunks[c] = channel.map(FileChannel.MapMode.READ_WRITE, (long) c << (CHUNK_BITS + 2), chunkLength(length, c) * 4L)
+                .order(ByteOrder.nativeOrder()).asIntBuffer();
+      }
+      return new EdgeList(chunks, file);
+    }
+
+    int get(long index) {
+      return chunks[(int) (index >>> CHUNK_BITS)].get((int) (index & CHUNK_MASK));
+    }
+
+    void set(long index, int value) {
+      chunks[(int) (index >>> CHUNK_BITS)].put((int) (index & CHUNK_MASK), value);
+    }
+
+    void close() throws IOException {
+      if (file != null) {
+        file.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,62 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.parse;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.procedure.TObjectIntProcedure;
+import org.lemurproject.galago.core.types.KeyValuePair;
+import org.lemurproject.galago.tupleflow.InputClass;
+import org.lemurproject.galago.tupleflow.OutputClass;
+import org.lemurproject.galago.tupleflow.StandardStep;
+import org.lemurproject.galago.tupleflow.Utility;
+import org.lemurproject.galago.tupleflow.execution.Verified;
+import org.lemurproject.galago.utility.ByteUtil;
+import org.lemurproject.galago.utility.compression.VByte;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Extracts the term counts of each document, keyed by document number, for
+ * the forward index. The value is the document length, the number of
+ * distinct terms, then each term and its count; DiskForwardIndexWriter
+ * replaces the terms with term ids.
+ */
+@Verified
+@InputClass(className = "org.lemurproject.galago.core.parse.Document")
+@OutputClass(className = "org.lemurproject.galago.core.types.KeyValuePair")
+public class TermVectorExtractor extends StandardStep<Document, KeyValuePair> {
+
+  @Override
+  public void process(Document doc) throws IOException {
+    TObjectIntHashMap<String> freqs = new TObjectIntHashMap<>();
+    for (String term : doc.terms) {
+      freqs.adjustOrPutValue(term, 1, 1);
+    }
+
+    ByteArrayOutputStream array = new ByteArrayOutputStream();
+    final DataOutputStream output = new DataOutputStream(array);
+    VByte.compressInt(output, doc.terms.size());
+    VByte.compressInt(output, freqs.size());
+    boolean written = freqs.forEachEntry(new TObjectIntProcedure<String>() {
+      @Override
+      public boolean execute(String term, int count) {
+        try {
+          byte[] bytes = ByteUtil.fromString(term);
+          VByte.compressInt(output, bytes.length);
+          output.write(bytes);
+          VByte.compressInt(output, count);
+          return true;
+        } catch (IOException e) {
+          return false;
+        }
+      }
+    });
+    if (!written) {
+      throw new IOException("Failed to encode the terms of document " + doc.identifier);
+    }
+    output.close();
+
+    processor.process(new KeyValuePair(Utility.fromLong(doc.identifier), array.toByteArray()));
+  }
+}
@@ -1,6 +1,8 @@
 // BSD License (http://lemurproject.org/galago-license)
 package org.lemurproject.galago.core.parse.stem;
 
+import java.io.IOException;
+import org.lemurproject.galago.tupleflow.TupleFlowParameters;
 import org.lemurproject.galago.krovetz.KStem;
 
 public class KrovetzStemmer extends Stemmer {
@@ -10,6 +12,11 @@ public class KrovetzStemmer extends Stemmer {
     kstem = new KStem();
   }
 
+  public KrovetzStemmer(TupleFlowParameters parameters) throws IOException {
+    this();
+    configure(parameters.getJSON());
+  }
+
   @Override
   protected String stemTerm(String term) {
     return kstem.stemTerm(term);
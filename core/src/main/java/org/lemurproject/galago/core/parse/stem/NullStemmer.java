@@ -3,12 +3,22 @@
  */
 package org.lemurproject.galago.core.parse.stem;
 
+import java.io.IOException;
+import org.lemurproject.galago.tupleflow.TupleFlowParameters;
+
 /**
  *
  * @author sjh
  */
 public class NullStemmer extends Stemmer {
 
+  public NullStemmer() {
+  }
+
+  public NullStemmer(TupleFlowParameters parameters) throws IOException {
+    configure(parameters.getJSON());
+  }
+
   @Override
   protected String stemTerm(String term) {
     return term;
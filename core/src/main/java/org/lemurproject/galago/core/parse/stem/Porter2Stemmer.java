@@ -1,6 +1,8 @@
 // BSD License (http://lemurproject.org/galago-license)
 package org.lemurproject.galago.core.parse.stem;
 
+import java.io.IOException;
+import org.lemurproject.galago.tupleflow.TupleFlowParameters;
 import org.tartarus.snowball.ext.englishStemmer;
 
 /**
@@ -12,6 +14,13 @@ public class Porter2Stemmer extends Stemmer {
 
   englishStemmer stemmer = new englishStemmer();
 
+  public Porter2Stemmer() {
+  }
+
+  public Porter2Stemmer(TupleFlowParameters parameters) throws IOException {
+    configure(parameters.getJSON());
+  }
+
   @Override
   protected String stemTerm(String term) {
     String stem = term;
@@ -3,9 +3,13 @@
  */
 package org.lemurproject.galago.core.parse.stem;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.lemurproject.galago.core.index.disk.ConflationIndexReader;
 import org.lemurproject.galago.core.parse.Document;
 import org.lemurproject.galago.tupleflow.error.IncompatibleProcessorException;
 import org.lemurproject.galago.tupleflow.Linkage;
@@ -19,19 +23,71 @@ import org.lemurproject.galago.tupleflow.execution.ErrorStore;
 import org.lemurproject.galago.utility.reflection.ReflectUtil;
 
 /**
- * 
- * 
+ * Stemmed terms are cached in one bounded cache per stemmer class, shared by
+ * every instance (and so every parse thread) of that class.
+ *
+ * A stemmer may also be given the conflation part of an index (see
+ * stemmer-conflation), which is inverted into a term to stem dictionary and
+ * consulted before the cache. Dictionaries are loaded once per stemmer class
+ * and path.
+ *
  * @author sjh
  */
 public abstract class Stemmer implements Source<Document>, Processor<Document> {
 
+  public static final long DEFAULT_CACHE_SIZE = 200000;
+
+  private static final Map<Class<?>, Cache<String, String>> caches = new ConcurrentHashMap<>();
+  private static final Map<String, Map<String, String>> dictionaries = new ConcurrentHashMap<>();
+
   // each create of Stemmer should have it's own lock
   final Object lock = new Object();
   
-  long cacheLimit = 50000;
-  HashMap<String, String> cache = new HashMap<>();
+  final Cache<String, String> cache = caches.computeIfAbsent(getClass(),
+          c -> Caffeine.newBuilder().maximumSize(DEFAULT_CACHE_SIZE).build());
+  Map<String, String> dictionary = null;
   public Processor<Document> processor;
 
+  /**
+   * Reads the optional 'conflations' parameter: the path of a conflation part
+   * built with this stemmer.
+   */
+  public Stemmer configure(Parameters p) throws IOException {
+    if (p.isString("conflations")) {
+      useConflations(p.getString("conflations"));
+    }
+    return this;
+  }
+
+  /**
+   * Stems the terms of the given conflation part by lookup.
+   */
+  public Stemmer useConflations(String path) throws IOException {
+    String key = getClass().getName() + ":" + path;
+    Map<String, String> stems = dictionaries.get(key);
+    if (stems == null) {
+      synchronized (dictionaries) {
+        stems = dictionaries.get(key);
+        if (stems == null) {
+          ConflationIndexReader reader = new ConflationIndexReader(path);
+          try {
+            String stemmer = reader.getManifest().get("stemmer", getClass().getName());
+            if (!stemmer.equals(getClass().getName())) {
+              throw new IllegalArgumentException("Conflation part " + path + " was built by " + stemmer
+                      + ", not " + getClass().getName());
+            }
+            stems = reader.getStems();
+          } finally {
+            reader.close();
+          }
+          dictionaries.put(key, stems);
+        }
+      }
+    }
+    dictionary = stems;
+    return this;
+  }
+
   @Override
   public void process(Document document) throws IOException {
     processor.process(stem(document));
@@ -74,21 +130,22 @@ public abstract class Stemmer implements Source<Document>, Processor<Document> {
   }
 
   public String stem(String term) {
-    if (cache.containsKey(term)) {
-      return cache.get(term);
+    if (dictionary != null) {
+      String stemmedTerm = dictionary.get(term);
+      if (stemmedTerm != null) {
+        return stemmedTerm;
+      }
     }
-    String stemmedTerm;
-    
+    String stemmedTerm = cache.getIfPresent(term);
+    if (stemmedTerm != null) {
+      return stemmedTerm;
+    }
+
     synchronized (lock) {
       stemmedTerm = stemTerm(term);
     }
-    
-    if (!cache.containsKey(stemmedTerm)) {
-      cache.put(term, stemmedTerm);
-    }
-    if (cache.size() > cacheLimit) {
-      cache.clear();
-    }
+
+    cache.put(term, stemmedTerm);
     return stemmedTerm;
   }
   
@@ -125,9 +182,16 @@ public abstract class Stemmer implements Source<Document>, Processor<Document> {
     return create(p);
   }
   public static Stemmer create(Parameters p) throws ReflectiveOperationException {
+    Stemmer stemmer;
     if(p.containsKey("stemmer")) {
-      return ReflectUtil.instantiate(p.getString("stemmer"));
+      stemmer = ReflectUtil.instantiate(p.getString("stemmer"));
+    } else {
+      stemmer = new NullStemmer();
+    }
+    try {
+      return stemmer.configure(p);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Failed to load conflations for " + stemmer.getClass().getName(), e);
     }
-    return new NullStemmer();
   }
 }
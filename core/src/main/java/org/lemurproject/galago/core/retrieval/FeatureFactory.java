@@ -391,36 +391,33 @@ public class FeatureFactory {
     for (TraversalSpec spec : traversals) {
       Class<? extends Traversal> traversalClass =
               (Class<? extends Traversal>) Class.forName(spec.className);
-      Constructor[] constructors = traversalClass.getConstructors();
-      Traversal traversal = null;
-      
-      // try to construct a traversal with a retrieval
-      for (Constructor c : constructors) {
-        Class<?>[] argTypes = c.getParameterTypes();
-        if (argTypes.length == 1 && argTypes[0].isAssignableFrom(Retrieval.class)) {
-          traversal = (Traversal) c.newInstance(retrieval);
-          break;
-        }
-      }
-      
-      // allow a traversal with no retrieval
-      if(traversal == null) {
-        for(Constructor c : constructors) {
-          Class[] argTypes = c.getParameterTypes();
-          if (argTypes.length == 0) {
-            traversal = (Traversal) c.newInstance();
-            break;
-          }
-        }
-      }
-      
-      if(traversal == null) {
-        throw new IllegalArgumentException("Traversals should have obvious constructors, failed on: " + traversalClass);
-      }
-
+      Traversal traversal = createTraversal(traversalClass, retrieval);
       result.add(traversal);
     }
 
     return result;
   }
+
+  public static Traversal createTraversal(Class<? extends Traversal> traversalClass, Retrieval retrieval)
+          throws InstantiationException, IllegalAccessException, InvocationTargetException {
+    Constructor[] constructors = traversalClass.getConstructors();
+
+    // try to construct a traversal with a retrieval
+    for (Constructor c : constructors) {
+      Class<?>[] argTypes = c.getParameterTypes();
+      if (argTypes.length == 1 && argTypes[0].isAssignableFrom(Retrieval.class)) {
+        return (Traversal) c.newInstance(retrieval);
+      }
+    }
+
+    // allow a traversal with no retrieval
+    for (Constructor c : constructors) {
+      Class[] argTypes = c.getParameterTypes();
+      if (argTypes.length == 0) {
+        return (Traversal) c.newInstance();
+      }
+    }
+
+    throw new IllegalArgumentException("Traversals should have obvious constructors, failed on: " + traversalClass);
+  }
 }
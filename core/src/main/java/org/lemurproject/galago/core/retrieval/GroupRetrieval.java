@@ -11,6 +11,7 @@ import org.lemurproject.galago.core.parse.Document.DocumentComponents;
 import org.lemurproject.galago.core.retrieval.query.Node;
 import org.lemurproject.galago.core.retrieval.query.NodeType;
 import org.lemurproject.galago.core.retrieval.query.QueryType;
+import org.lemurproject.galago.core.retrieval.traversal.PerQuery;
 import org.lemurproject.galago.core.retrieval.traversal.Traversal;
 import org.lemurproject.galago.core.tokenize.Tokenizer;
 import org.lemurproject.galago.utility.Parameters;
@@ -55,6 +56,9 @@ public class GroupRetrieval implements Retrieval {
   @Override
   public Node transformQuery(Node queryTree, Parameters queryParams) throws Exception {
     for (Traversal traversal : defaultTraversals) {
+      if (traversal.getClass().isAnnotationPresent(PerQuery.class)) {
+        traversal = FeatureFactory.createTraversal(traversal.getClass(), this);
+      }
       queryTree = traversal.traverse(queryTree, queryParams);
     }
     return queryTree;
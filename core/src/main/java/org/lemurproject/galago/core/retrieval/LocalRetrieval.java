@@ -3,8 +3,12 @@ package org.lemurproject.galago.core.retrieval;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.lemurproject.galago.core.index.DynamicIndex;
 import org.lemurproject.galago.core.index.Index;
+import org.lemurproject.galago.core.index.IndexPartReader;
 import org.lemurproject.galago.core.index.disk.DiskIndex;
+import org.lemurproject.galago.core.index.disk.WindowStatisticsReader;
 import org.lemurproject.galago.core.index.stats.*;
 import org.lemurproject.galago.core.parse.Document;
 import org.lemurproject.galago.core.parse.Document.DocumentComponents;
@@ -15,6 +19,7 @@ import org.lemurproject.galago.core.retrieval.query.Node;
 import org.lemurproject.galago.core.retrieval.query.NodeType;
 import org.lemurproject.galago.core.retrieval.query.QueryType;
 import org.lemurproject.galago.core.retrieval.query.StructuredQuery;
+import org.lemurproject.galago.core.retrieval.traversal.PerQuery;
 import org.lemurproject.galago.core.retrieval.traversal.Traversal;
 import org.lemurproject.galago.core.tokenize.Tokenizer;
 import org.lemurproject.galago.utility.CmpUtil;
@@ -50,6 +55,23 @@ public class LocalRetrieval implements Retrieval {
     protected Cache<Long, String> nameCache;
     @Nullable
     protected Cache<Node, NodeStatistics> nodeStatisticsCache;
+    @Nullable
+    protected Cache<String, Results> resultCache;
+    @Nullable
+    protected Cache<String, TransformedQuery> transformCache;
+    // precomputed window statistics, see BuildWindowStatistics
+    protected List<WindowStatisticsReader> windowStatistics;
+    protected volatile long resultCacheVersion = 0;
+
+    /**
+     * Query parameters that change the result list for a given (transformed)
+     * query tree. Smoothing parameters set in the query parameters are copied
+     * onto the tree by the traversals, but they are listed here anyway.
+     */
+    public static final List<String> resultCacheKeys = Arrays.asList(
+            "requested", "processingModel", "working", "annotate",
+            "passageQuery", "extentQuery", "passageSize", "passageShift",
+            "weakandfactor", "mu", "lambda", "b", "k");
 
 
     /**
@@ -67,7 +89,7 @@ public class LocalRetrieval implements Retrieval {
     }
 
     public LocalRetrieval(String filename, Parameters parameters) throws IOException {
-        this(new DiskIndex(filename), parameters);
+        this(new DiskIndex(filename, parameters), parameters);
     }
 
     public LocalRetrieval(Index index, Parameters parameters) {
@@ -85,6 +107,20 @@ public class LocalRetrieval implements Retrieval {
                 .maximumSize(nodeStatsCacheSize)
                 .build();
         }
+        long resultCacheSize = globalParameters.get("resultCacheSize", 0L);
+        if(resultCacheSize > 0) {
+            resultCache = Caffeine.newBuilder()
+                .maximumSize(resultCacheSize)
+                .recordStats()
+                .build();
+        }
+        long transformCacheSize = globalParameters.get("transformCacheSize", 0L);
+        if(transformCacheSize > 0) {
+            transformCache = Caffeine.newBuilder()
+                .maximumSize(transformCacheSize)
+                .recordStats()
+                .build();
+        }
     }
 
     protected void setIndex(Index indx) {
@@ -94,6 +130,17 @@ public class LocalRetrieval implements Retrieval {
             defaultTraversals = features.getTraversals(this);
             if(nodeStatisticsCache != null) nodeStatisticsCache.invalidateAll();
             if(nameCache != null) nameCache.invalidateAll();
+            if(resultCache != null) resultCache.invalidateAll();
+            if(transformCache != null) transformCache.invalidateAll();
+            windowStatistics = new ArrayList<>();
+            if (index instanceof DiskIndex && globalParameters.get("windowStatistics", true)) {
+                for (String part : index.getPartNames()) {
+                    IndexPartReader reader = index.getIndexPart(part);
+                    if (reader instanceof WindowStatisticsReader) {
+                        windowStatistics.add((WindowStatisticsReader) reader);
+                    }
+                }
+            }
             cache = null;
             if (this.globalParameters.get("cache", false)) {
                 cache = new CachedRetrieval(this.globalParameters);
@@ -240,10 +287,78 @@ public class LocalRetrieval implements Retrieval {
     // Based on the root of the tree, that dictates how we execute.
     @Override
     public Results executeQuery(Node queryTree, Parameters queryParams) throws Exception {
-        ScoredDocument[] results;
         if (globalParameters.containsKey("processingModel")) {
             queryParams.set("processingModel", globalParameters.getString("processingModel"));
         }
+        if (resultCache == null) {
+            return runQuery(queryTree, queryParams);
+        }
+
+        // a dynamic index has changed since the last query: drop everything
+        if (index instanceof DynamicIndex) {
+            long version = ((DynamicIndex) index).getModificationCount();
+            if (version != resultCacheVersion) {
+                resultCacheVersion = version;
+                resultCache.invalidateAll();
+            }
+        }
+
+        String key = getResultCacheKey(queryTree, queryParams);
+        Results cached = resultCache.getIfPresent(key);
+        if (cached == null) {
+            cached = runQuery(queryTree, queryParams);
+            // a cancelled query stopped early; its results are incomplete
+            if (ProcessingModel.isCancelled()) {
+                return cached;
+            }
+            // callers change ranks, names and annotations, so cache a copy
+            Results snapshot = new Results(this, queryTree, copyScoredDocuments(cached.scoredDocuments));
+            snapshot.processingModel = cached.processingModel;
+            resultCache.put(key, snapshot);
+            return cached;
+        }
+
+        Results r = new Results(this, queryTree, copyScoredDocuments(cached.scoredDocuments));
+        r.processingModel = cached.processingModel;
+        return r;
+    }
+
+    private static List<ScoredDocument> copyScoredDocuments(List<ScoredDocument> documents) {
+        List<ScoredDocument> copies = new ArrayList<>(documents.size());
+        for (ScoredDocument sd : documents) {
+            copies.add(sd.clone(sd.score));
+        }
+        return copies;
+    }
+
+    /**
+     * The key of a query in the result cache: the index version (for dynamic
+     * indexes), the scoring parameters, and the transformed query tree.
+     */
+    protected String getResultCacheKey(Node queryTree, Parameters queryParams) {
+        StringBuilder key = new StringBuilder();
+        if (index instanceof DynamicIndex) {
+            key.append(((DynamicIndex) index).getModificationCount());
+        }
+        for (String param : resultCacheKeys) {
+            if (queryParams.containsKey(param)) {
+                key.append('\t').append(param).append('=').append(queryParams.getAsString(param));
+            }
+        }
+        return key.append('\t').append(queryTree.toString()).toString();
+    }
+
+    /**
+     * Hit, miss and eviction counts of the result cache, or null if it is
+     * disabled (resultCacheSize = 0).
+     */
+    @Nullable
+    public CacheStats getResultCacheStats() {
+        return (resultCache == null) ? null : resultCache.stats();
+    }
+
+    private Results runQuery(Node queryTree, Parameters queryParams) throws Exception {
+        ScoredDocument[] results;
         ProcessingModel pm = ProcessingModel.create(this, queryTree, queryParams);
 
         // get some results
@@ -313,17 +428,68 @@ public class LocalRetrieval implements Retrieval {
         return transformQuery(defaultTraversals, queryTree, queryParams);
     }
 
-    private synchronized Node transformQuery(List<Traversal> traversals, Node queryTree, Parameters queryParams) throws Exception {
+    /**
+     * Traversals run without a lock: shared traversals are stateless, and
+     * those marked PerQuery are created for each query. Transformations may
+     * nest (e.g. relevance models run their own queries).
+     */
+    private Node transformQuery(List<Traversal> traversals, Node queryTree, Parameters queryParams) throws Exception {
+        String key = null;
+        if (transformCache != null) {
+            key = getTransformCacheKey(queryTree, queryParams);
+            TransformedQuery cached = transformCache.getIfPresent(key);
+            if (cached != null) {
+                // replay the changes the traversals made to the query parameters
+                queryParams.copyFrom(cached.queryParams);
+                return cached.queryTree.clone();
+            }
+        }
+
         for (Traversal traversal : traversals) {
-      //System.out.println("Before:"+traversal.getClass());
-            //System.out.println("Before:"+queryTree);
+            if (traversal.getClass().isAnnotationPresent(PerQuery.class)) {
+                traversal = FeatureFactory.createTraversal(traversal.getClass(), this);
+            }
             queryTree = traversal.traverse(queryTree, queryParams);
-      //System.out.println("After:"+traversal.getClass());
-            //System.out.println("After:"+queryTree);
+        }
+
+        if (transformCache != null) {
+            transformCache.put(key, new TransformedQuery(queryTree.clone(), queryParams.clone()));
         }
         return queryTree;
     }
 
+    /**
+     * The key of a query in the transform cache: the index version (for
+     * dynamic indexes), all query parameters, and the untransformed tree.
+     */
+    protected String getTransformCacheKey(Node queryTree, Parameters queryParams) {
+        StringBuilder key = new StringBuilder();
+        if (index instanceof DynamicIndex) {
+            key.append(((DynamicIndex) index).getModificationCount());
+        }
+        return key.append('\t').append(queryParams.toString())
+                .append('\t').append(queryTree.toString()).toString();
+    }
+
+    /**
+     * Hit, miss and eviction counts of the transform cache, or null if it is
+     * disabled (transformCacheSize = 0).
+     */
+    @Nullable
+    public CacheStats getTransformCacheStats() {
+        return (transformCache == null) ? null : transformCache.stats();
+    }
+
+    protected static class TransformedQuery {
+        final Node queryTree;
+        final Parameters queryParams;
+
+        TransformedQuery(Node queryTree, Parameters queryParams) {
+            this.queryTree = queryTree;
+            this.queryParams = queryParams;
+        }
+    }
+
     @Override
     public FieldStatistics getCollectionStatistics(String nodeString) throws Exception {
         // first parse the node
@@ -395,6 +561,19 @@ public class LocalRetrieval implements Retrieval {
     @Override
     public NodeStatistics getNodeStatistics(Node root) throws Exception {
         // if you want passage statistics, you'll need a manual solution for now.
+        if (nodeStatisticsCache != null) {
+            NodeStatistics cached = nodeStatisticsCache.getIfPresent(root);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        for (WindowStatisticsReader stored : windowStatistics) {
+            NodeStatistics s = stored.getStatistics(root);
+            if (s != null) {
+                return s;
+            }
+        }
+
         BaseIterator structIterator = createIterator(Parameters.create(), root);
 
         if (NodeAggregateIterator.class.isInstance(structIterator)) {
@@ -7,16 +7,28 @@ import org.lemurproject.galago.core.index.stats.NodeStatistics;
 import org.lemurproject.galago.core.parse.Document;
 import org.lemurproject.galago.core.parse.Document.DocumentComponents;
 import org.lemurproject.galago.core.retrieval.iterator.*;
+import org.lemurproject.galago.core.retrieval.processing.ProcessingModel;
 import org.lemurproject.galago.core.retrieval.query.Node;
 import org.lemurproject.galago.core.retrieval.query.NodeType;
 import org.lemurproject.galago.core.retrieval.query.QueryType;
 import org.lemurproject.galago.core.retrieval.query.StructuredQuery;
+import org.lemurproject.galago.core.retrieval.traversal.PerQuery;
 import org.lemurproject.galago.core.retrieval.traversal.Traversal;
 import org.lemurproject.galago.core.tokenize.Tokenizer;
+import org.lemurproject.galago.utility.FixedSizeMinHeap;
 import org.lemurproject.galago.utility.Parameters;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This class allows searching over a set of Retrievals.
@@ -25,6 +37,12 @@ import java.util.*;
  * MultiRetrievals under a MultiRetrieval, it is not recommended, as this
  * behavior has not been tested and is currently undefined.
  *
+ * Shards are queried on a fixed pool of "shardThreads" threads [default =
+ * max(shards, cpus)], shared by all queries. If "shardTimeout" (ms) is set,
+ * a shard that takes longer fails the call. Ranked results are merged as the
+ * shards answer; once the top-k is full, local shards whose maximum score
+ * can't reach it are no longer waited for.
+ *
  * @author sjh
  */
 public class MultiRetrieval implements Retrieval {
@@ -36,10 +54,17 @@ public class MultiRetrieval implements Retrieval {
   protected Parameters retrievalParts;
   protected HashMap<String, String> defaultIndexOperators = new HashMap<>();
   protected HashSet<String> knownIndexOperators = new HashSet<>();
+  protected ExecutorService shardPool;
 
   public MultiRetrieval(ArrayList<Retrieval> indexes, Parameters p) throws Exception {
     this.retrievals = indexes;
     this.globalParameters = p;
+    int threads = (int) p.get("shardThreads", (long) Math.max(indexes.size(), Runtime.getRuntime().availableProcessors()));
+    this.shardPool = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+      Thread t = new Thread(r, "multi-retrieval-shard");
+      t.setDaemon(true);
+      return t;
+    });
     initRetrieval();
     this.features = new FeatureFactory(this.globalParameters);
     defaultTraversals = features.getTraversals(this);
@@ -47,6 +72,7 @@ public class MultiRetrieval implements Retrieval {
 
   @Override
   public void close() throws IOException {
+    shardPool.shutdownNow();
     for (Retrieval r : retrievals) {
       r.close();
     }
@@ -117,56 +143,103 @@ public class MultiRetrieval implements Retrieval {
   }
 
   private ScoredDocument[] runRankedQuery(Node root, Parameters parameters) throws Exception {
-    // Asynchronously run retrieval
-    ArrayList<Thread> threads = new ArrayList<>();
-    final List<ScoredDocument> queryResultCollector = Collections.synchronizedList(new ArrayList<ScoredDocument>());
-    final List<String> errorCollector = Collections.synchronizedList(new ArrayList<String>());
-    final Node queryTree = root;
-
-    for (Retrieval retrieval : retrievals) {
-      final Parameters shardParams = parameters.clone();
-      final Retrieval r = retrieval;
-      Thread t = new Thread() {
-        @Override
-        public void run() {
-          try {
-            List<ScoredDocument> results = r.executeQuery(queryTree, shardParams).scoredDocuments;
-            if (results != null) {
-              queryResultCollector.addAll(results);
-            }
-          } catch (Exception e) {
-            errorCollector.add(e.getMessage());
+    // get the best {requested} results
+    int requested = (int) parameters.get("requested", 1000);
+    if (requested <= 0) {
+      return new ScoredDocument[0];
+    }
+    long timeout = parameters.get("shardTimeout", globalParameters.get("shardTimeout", 0L));
+
+    CompletionService<List<ScoredDocument>> completion = new ExecutorCompletionService<>(shardPool);
+    Map<Future<List<ScoredDocument>>, Integer> pending = new HashMap<>();
+    // shards are cancelled through a flag their processing model checks, not
+    // by interrupting them: an interrupted FileChannel read closes the channel
+    final AtomicBoolean[] cancelled = new AtomicBoolean[retrievals.size()];
+    // bounds are estimated on this thread, so they get their own parameters
+    final Parameters[] boundParams = new Parameters[retrievals.size()];
+    for (int i = 0; i < retrievals.size(); i++) {
+      final Retrieval r = retrievals.get(i);
+      final Parameters sp = parameters.clone();
+      final AtomicBoolean flag = new AtomicBoolean(false);
+      cancelled[i] = flag;
+      boundParams[i] = parameters.clone();
+      pending.put(completion.submit(() -> ProcessingModel.runCancellable(flag, () -> r.executeQuery(root, sp).scoredDocuments)), i);
+    }
+
+    // merge shard lists as they arrive
+    FixedSizeMinHeap<ScoredDocument> queue = new FixedSizeMinHeap<>(ScoredDocument.class, requested, new ScoredDocument.ScoredDocumentComparator());
+    double[] bounds = null;
+    List<String> errors = new ArrayList<>();
+    long deadline = System.currentTimeMillis() + timeout;
+
+    while (!pending.isEmpty()) {
+      // once the top-k is full, shards whose best possible score can't get in
+      // are not worth waiting for
+      if (queue.size() == requested) {
+        if (bounds == null) {
+          bounds = new double[retrievals.size()];
+          for (int shard : pending.values()) {
+            bounds[shard] = getShardUpperBound(retrievals.get(shard), root, boundParams[shard]);
           }
         }
-      };
-      threads.add(t);
-      t.start();
+        double threshold = queue.peek().score;
+        Iterator<Map.Entry<Future<List<ScoredDocument>>, Integer>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+          Map.Entry<Future<List<ScoredDocument>>, Integer> shard = it.next();
+          if (bounds[shard.getValue()] < threshold) {
+            cancelled[shard.getValue()].set(true);
+            shard.getKey().cancel(false);
+            it.remove();
+          }
+        }
+        if (pending.isEmpty()) {
+          break;
+        }
+      }
+
+      Future<List<ScoredDocument>> done;
+      if (timeout > 0) {
+        done = completion.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        if (done == null) {
+          errors.add(pending.size() + " shard(s) did not respond within " + timeout + "ms");
+          break;
+        }
+      } else {
+        done = completion.take();
+      }
+      if (pending.remove(done) == null) {
+        // a cancelled shard
+        continue;
+      }
+
+      try {
+        List<ScoredDocument> results = done.get();
+        if (results != null) {
+          for (ScoredDocument sd : results) {
+            queue.offer(sd);
+          }
+        }
+      } catch (ExecutionException e) {
+        errors.add(e.getCause().getMessage());
+      }
     }
 
-    // Wait for a finished list
-    for (Thread t : threads) {
-      t.join();
+    for (Map.Entry<Future<List<ScoredDocument>>, Integer> shard : pending.entrySet()) {
+      cancelled[shard.getValue()].set(true);
+      shard.getKey().cancel(false);
     }
 
-    if (errorCollector.size() > 0) {
+    if (errors.size() > 0) {
       System.err.println("Failed to run: " + root.toString());
-      for (String e : errorCollector) {
+      for (String e : errors) {
         System.err.println(e);
       }
       // we do not want to return partial or erroneous results.
       return new ScoredDocument[0];
     }
 
-
-    // sort the results and invert (sort is inverted)
-    Collections.sort(queryResultCollector, Collections.reverseOrder());
-
-    // get the best {requested} results
-    int requested = (int) parameters.get("requested", 1000);
-
     // fix ranks
-    List<ScoredDocument> scoredDocuments = queryResultCollector.subList(0, Math.min(queryResultCollector.size(), requested));
-    ScoredDocument[] results = scoredDocuments.toArray(new ScoredDocument[scoredDocuments.size()]);
+    ScoredDocument[] results = queue.getSortedArray();
     int rank = 1;
     for (ScoredDocument r : results) {
       r.rank = rank;
@@ -176,6 +249,69 @@ public class MultiRetrieval implements Retrieval {
     return results;
   }
 
+  /**
+   * The highest score a shard could give any document for this query, as
+   * estimated by its iterator tree. Only local shards can answer; any other
+   * shard is always waited for.
+   */
+  private double getShardUpperBound(Retrieval r, Node root, Parameters shardParams) {
+    if (r instanceof LocalRetrieval) {
+      try {
+        BaseIterator iterator = ((LocalRetrieval) r).createIterator(shardParams, root);
+        if (iterator instanceof ScoreIterator) {
+          return ((ScoreIterator) iterator).maximumScore();
+        }
+      } catch (Exception e) {
+        // no bound then; wait for the shard.
+      }
+    }
+    return Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Runs one call against every shard on the shard pool, and returns the
+   * answers in shard order. Any failure or timeout fails the whole call.
+   */
+  private <T> List<T> forEachShard(final ShardCall<T> call, Node node) throws Exception {
+    long timeout = globalParameters.get("shardTimeout", 0L);
+    List<Future<T>> futures = new ArrayList<>(retrievals.size());
+    for (final Retrieval r : retrievals) {
+      futures.add(shardPool.submit(() -> call.apply(r)));
+    }
+
+    long deadline = System.currentTimeMillis() + timeout;
+    List<T> output = new ArrayList<>(retrievals.size());
+    List<String> errors = new ArrayList<>();
+    for (Future<T> f : futures) {
+      try {
+        if (timeout > 0) {
+          output.add(f.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+        } else {
+          output.add(f.get());
+        }
+      } catch (ExecutionException e) {
+        errors.add(e.getCause().getMessage());
+      } catch (TimeoutException e) {
+        // never interrupt a shard; see runRankedQuery
+        f.cancel(false);
+        errors.add("shard did not respond within " + timeout + "ms");
+      }
+    }
+
+    if (errors.size() > 0) {
+      System.err.println("Failed to count: " + node.toString());
+      for (String e : errors) {
+        System.err.println(e);
+      }
+      throw new IOException("Unable to count " + node.toString());
+    }
+    return output;
+  }
+
+  private interface ShardCall<T> {
+    T apply(Retrieval r) throws Exception;
+  }
+
   @Override
   public Node transformQuery(Node root, Parameters qp) throws Exception {
     return transformQuery(defaultTraversals, root, qp);
@@ -184,6 +320,9 @@ public class MultiRetrieval implements Retrieval {
   // private functions
   private Node transformQuery(List<Traversal> traversals, Node queryTree, Parameters queryParams) throws Exception {
     for (Traversal traversal : traversals) {
+      if (traversal.getClass().isAnnotationPresent(PerQuery.class)) {
+        traversal = FeatureFactory.createTraversal(traversal.getClass(), this);
+      }
       queryTree = traversal.traverse(queryTree, queryParams);
     }
     return queryTree;
@@ -271,41 +410,8 @@ public class MultiRetrieval implements Retrieval {
   }
 
   @Override
-  public FieldStatistics getCollectionStatistics(Node node) throws Exception {
-
-    ArrayList<Thread> threads = new ArrayList<Thread>();
-    final Node root = node;
-    final List<FieldStatistics> stats = Collections.synchronizedList(new ArrayList<FieldStatistics>());
-    final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
-
-    for (final Retrieval r : this.retrievals) {
-      Thread t = new Thread() {
-        @Override
-        public void run() {
-          try {
-            FieldStatistics ns = r.getCollectionStatistics(root);
-            stats.add(ns);
-          } catch (Exception ex) {
-            errors.add(ex.getMessage());
-          }
-        }
-      };
-      threads.add(t);
-      t.start();
-    }
-
-    for (Thread t : threads) {
-      t.join();
-    }
-
-    if (errors.size() > 0) {
-      System.err.println("Failed to count: " + root.toString());
-      for (String e : errors) {
-        System.err.println(e);
-      }
-      throw new IOException("Unable to count " + node.toString());
-    }
-
+  public FieldStatistics getCollectionStatistics(final Node node) throws Exception {
+    List<FieldStatistics> stats = forEachShard(r -> r.getCollectionStatistics(node), node);
     FieldStatistics output = stats.remove(0);
     for (FieldStatistics s : stats) {
       output.add(s);
@@ -325,41 +431,8 @@ public class MultiRetrieval implements Retrieval {
   }
 
   @Override
-  public NodeStatistics getNodeStatistics(Node node) throws Exception {
-
-    ArrayList<Thread> threads = new ArrayList<Thread>();
-    final Node root = node;
-    final List<NodeStatistics> stats = Collections.synchronizedList(new ArrayList<NodeStatistics>());
-    final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
-
-    for (final Retrieval r : this.retrievals) {
-      Thread t = new Thread() {
-        @Override
-        public void run() {
-          try {
-            NodeStatistics ns = r.getNodeStatistics(root);
-            stats.add(ns);
-          } catch (Exception ex) {
-            errors.add(ex.getMessage());
-          }
-        }
-      };
-      threads.add(t);
-      t.start();
-    }
-
-    for (Thread t : threads) {
-      t.join();
-    }
-
-    if (errors.size() > 0) {
-      System.err.println("Failed to count: " + root.toString());
-      for (String e : errors) {
-        System.err.println(e);
-      }
-      throw new IOException("Unable to count " + node.toString());
-    }
-
+  public NodeStatistics getNodeStatistics(final Node node) throws Exception {
+    List<NodeStatistics> stats = forEachShard(r -> r.getNodeStatistics(node), node);
     NodeStatistics output = stats.remove(0);
     for (NodeStatistics s : stats) {
       output.add(s);
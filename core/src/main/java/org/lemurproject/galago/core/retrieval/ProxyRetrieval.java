@@ -17,6 +17,10 @@ import java.net.URL;
  * with remote Galago servers. See org.lemurproject.galago.core.tools.StreamContextHandler
  * for additional details.
  *
+ * Every call opens a new HTTP connection; for many small calls (e.g. a
+ * MultiRetrieval over remote shards) the persistent binary protocol in
+ * org.lemurproject.galago.core.retrieval.rpc (galago://host:port) is much cheaper.
+ *
  * @author irmarc
  */
 public class ProxyRetrieval implements InvocationHandler {
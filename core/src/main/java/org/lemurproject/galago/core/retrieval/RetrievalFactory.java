@@ -1,6 +1,7 @@
 // BSD License (http://lemurproject.org/galago-license)
 package org.lemurproject.galago.core.retrieval;
 
+import org.lemurproject.galago.core.retrieval.rpc.RemoteRetrieval;
 import org.lemurproject.galago.utility.Parameters;
 
 import java.lang.reflect.Proxy;
@@ -68,12 +69,15 @@ public class RetrievalFactory {
   /* get retrieval object
    * cases:
    *  1 index path - local
-   *  1 index path - proxy
+   *  1 index path - proxy (http:// or galago://)
    *  many index paths - multi - locals
    *  many index paths - multi - proxies
    */
   public static Retrieval instance(String path, Parameters parameters) throws Exception {
-    if (path.startsWith("http://")) {
+    if (path.startsWith(RemoteRetrieval.SCHEME)) {
+      // binary protocol, see RetrievalServer
+      return new RemoteRetrieval(path, parameters);
+    } else if (path.startsWith("http://")) {
       // create a proxy, using the ProxyRetrieval as the InvocationHandler
       ProxyRetrieval ih = new ProxyRetrieval(path, parameters);
       Retrieval asRetrieval = (Retrieval) Proxy.newProxyInstance(Retrieval.class.getClassLoader(),
@@ -0,0 +1,29 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.retrieval.iterator;
+
+import java.io.IOException;
+
+/**
+ * A DeltaScoringIterator that can also bound its score over a block of
+ * documents, using the block-max information stored in the posting list.
+ *
+ * Scorers over lists without block-max information report a single block
+ * covering every document, bounded by maximumDifference.
+ *
+ * @see org.lemurproject.galago.core.retrieval.processing.BlockMaxWandDocumentModel
+ */
+public interface BlockMaxScoringIterator extends DeltaScoringIterator {
+
+  /**
+   * Moves to the block containing document, and returns the last document
+   * in that block. Does not move the iterator itself.
+   */
+  public long blockEnd(long document) throws IOException;
+
+  /**
+   * The largest amount (over the weighted minimum score) that any document
+   * in the current block can add to a running score. Like
+   * maximumDifference, but for the current block only.
+   */
+  public double blockMaximumDifference();
+}
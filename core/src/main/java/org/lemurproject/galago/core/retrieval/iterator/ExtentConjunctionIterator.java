@@ -11,6 +11,7 @@ import org.lemurproject.galago.tupleflow.Utility;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -22,10 +23,27 @@ public abstract class ExtentConjunctionIterator extends ConjunctionIterator impl
     protected ExtentArray extentCache;
     protected byte[] key;
     protected ScoringContext cachedContext = null;
+    // extents of each child at the current document, see loadChildExtents
+    protected final ExtentArray[] childExtents;
+    // children by increasing number of entries
+    private final int[] loadOrder;
 
     public ExtentConjunctionIterator(NodeParameters parameters, ExtentIterator[] iterators) throws IOException {
         super(parameters, iterators);
         this.extentCache = new ExtentArray();
+        this.childExtents = new ExtentArray[iterators.length];
+
+        final long[] entries = new long[iterators.length];
+        Integer[] order = new Integer[iterators.length];
+        for (int i = 0; i < iterators.length; i++) {
+            entries[i] = iterators[i].totalEntries();
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(entries[a], entries[b]));
+        this.loadOrder = new int[iterators.length];
+        for (int i = 0; i < iterators.length; i++) {
+            loadOrder[i] = order[i];
+        }
     }
 
     @Override
@@ -86,6 +104,28 @@ public abstract class ExtentConjunctionIterator extends ConjunctionIterator impl
         throw new RuntimeException("Not Implemented");
     }
 
+    /**
+     * Fills childExtents for the current document, without allocating.
+     * Returns false if any child has no extents here. The rarest child is
+     * loaded first, so the positions of common children are not decoded for
+     * documents the rare ones do not match.
+     */
+    protected boolean loadChildExtents(ScoringContext c) {
+        for (BaseIterator iterator : iterators) {
+            if (iterator.isDone() || !iterator.hasMatch(c)) {
+                // we can not load any extents if the iterator is done - or is at the wrong document.
+                return false;
+            }
+        }
+        for (int i : loadOrder) {
+            childExtents[i] = ((ExtentIterator) iterators[i]).extents(c);
+            if (childExtents[i].size() == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public AnnotatedNode getAnnotatedNode(ScoringContext c) throws IOException {
         // ensure extentCache are loaded
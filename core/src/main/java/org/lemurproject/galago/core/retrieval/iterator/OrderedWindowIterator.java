@@ -15,69 +15,78 @@ import java.io.IOException;
 public class OrderedWindowIterator extends ExtentConjunctionIterator {
 
     private int width;
+    // matching state, reused for every document
+    private final int[][] begins;
+    private final int[][] ends;
+    private final int[] sizes;
+    private final int[] cursors;
 
     public OrderedWindowIterator(NodeParameters parameters, ExtentIterator[] iterators) throws IOException {
         super(parameters, iterators);
         this.width = (int) parameters.get("default", -1);
+        this.begins = new int[iterators.length][];
+        this.ends = new int[iterators.length][];
+        this.sizes = new int[iterators.length];
+        this.cursors = new int[iterators.length];
         syncTo(0);
     }
 
+    private int end(int i, int cursor) {
+        return (ends[i] == null) ? begins[i][cursor] + 1 : ends[i][cursor];
+    }
+
     @Override
     public void loadExtentsCommon(ScoringContext c) {
+        if (!loadChildExtents(c)) {
+            // some child has no extents in this document
+            return;
+        }
 
-        ExtentArrayIterator[] arrayIterators;
-        arrayIterators = new ExtentArrayIterator[iterators.length];
-        for (int i = 0; i < iterators.length; i++) {
-            if (iterators[i].isDone() || !iterators[i].hasMatch(c)) {
-                // we can not load any extentCache if the iterator is done - or is at the wrong document.
-                return;
-            }
-
-            arrayIterators[i] = new ExtentArrayIterator(((ExtentIterator) iterators[i]).extents(c));
-            if (arrayIterators[i].isDone()) {
-                // if this document does not have any extentCache we can not load any extentCache
-                return;
-            }
+        final int last = childExtents.length - 1;
+        for (int i = 0; i <= last; i++) {
+            begins[i] = childExtents[i].begins();
+            ends[i] = childExtents[i].ends();
+            sizes[i] = childExtents[i].size();
+            cursors[i] = 0;
         }
 
-        boolean notDone = true;
-        while (notDone) {
+        while (true) {
             // find the start of the first word
             boolean invalid = false;
-            int begin = arrayIterators[0].currentBegin();
+            int begin = begins[0][cursors[0]];
 
             // loop over all the rest of the words
-            for (int i = 1; i < arrayIterators.length; i++) {
-                int end = arrayIterators[i - 1].currentEnd();
-
-                // try to move this iterator so that it's past the end of the previous word
-                assert (arrayIterators[i] != null);
-                assert (!arrayIterators[i].isDone());
-                while (end > arrayIterators[i].currentBegin()) {
-                    notDone = arrayIterators[i].next();
+            for (int i = 1; i <= last; i++) {
+                int end = end(i - 1, cursors[i - 1]);
 
+                // move this word past the end of the previous word
+                int cursor = cursors[i];
+                while (end > begins[i][cursor]) {
+                    cursor++;
                     // if there are no more occurrences of this word,
                     // no more ordered windows are possible
-                    if (!notDone) {
+                    if (cursor == sizes[i]) {
                         return;
                     }
                 }
+                cursors[i] = cursor;
 
-                if (arrayIterators[i].currentBegin() - end >= width) {
+                if (begins[i][cursor] - end >= width) {
                     invalid = true;
                     break;
                 }
             }
 
-            int end = arrayIterators[arrayIterators.length - 1].currentEnd();
-
             // if it's a match, record it
             if (!invalid) {
-                extentCache.add(begin, end);
+                extentCache.add(begin, end(last, cursors[last]));
             }
 
-            // move the first iterator forward - we are double dipping on all other iterators.
-            notDone = arrayIterators[0].next();
+            // move the first word forward - we are double dipping on all other words.
+            cursors[0]++;
+            if (cursors[0] == sizes[0]) {
+                return;
+            }
         }
     }
 }
@@ -1,6 +1,9 @@
 // BSD License (http://lemurproject.org/galago-license)
 package org.lemurproject.galago.core.retrieval.iterator;
 
+import org.lemurproject.galago.core.index.source.BlockMaxSource;
+import org.lemurproject.galago.core.index.source.DiskSource;
+import org.lemurproject.galago.core.retrieval.iterator.disk.SourceIterator;
 import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
 import org.lemurproject.galago.core.retrieval.query.AnnotatedNode;
 import org.lemurproject.galago.core.retrieval.query.NodeParameters;
@@ -41,6 +44,20 @@ public abstract class ScoringFunctionIterator extends TransformIterator implemen
     this.lengthsIterator.syncTo(document);
   }
   
+  /**
+   * Returns the block-max view of the counts, if the counts come straight
+   * from a posting list that has block-max information, otherwise null.
+   */
+  protected BlockMaxSource getBlockMaxSource() {
+    if (countIterator instanceof SourceIterator) {
+      DiskSource source = ((SourceIterator) countIterator).getSource();
+      if (source instanceof BlockMaxSource && ((BlockMaxSource) source).hasBlockMax()) {
+        return (BlockMaxSource) source;
+      }
+    }
+    return null;
+  }
+
   @Override
   public double maximumScore() {
     return Double.POSITIVE_INFINITY;
@@ -13,7 +13,11 @@ import java.io.IOException;
 public class UnorderedWindowIterator extends ExtentConjunctionIterator {
 
     int width;
-    private ScoringContext cachedContext = null;
+    // matching state, reused for every document
+    private final int[][] begins;
+    private final int[][] ends;
+    private final int[] sizes;
+    private final int[] cursors;
 
     /**
      * Creates a new create of UnorderedWindowIterator
@@ -21,34 +25,36 @@ public class UnorderedWindowIterator extends ExtentConjunctionIterator {
     public UnorderedWindowIterator(NodeParameters parameters, ExtentIterator[] evIterators) throws IOException {
         super(parameters, evIterators);
         this.width = (int) parameters.get("default", -1);
+        this.begins = new int[evIterators.length][];
+        this.ends = new int[evIterators.length][];
+        this.sizes = new int[evIterators.length];
+        this.cursors = new int[evIterators.length];
         syncTo(0);
     }
 
+    private int end(int i, int cursor) {
+        return (ends[i] == null) ? begins[i][cursor] + 1 : ends[i][cursor];
+    }
+
     @Override
     public void loadExtentsCommon(ScoringContext c) {
+        if (!loadChildExtents(c)) {
+            // some child has no extents in this document
+            return;
+        }
 
-        ExtentArrayIterator[] arrayIterators;
+        final int count = childExtents.length;
         int maximumPosition = 0;
         int minimumPosition = Integer.MAX_VALUE;
 
-        // someday this will be a heap/priorityQueue for the overlapping case
-        arrayIterators = new ExtentArrayIterator[iterators.length];
-
-        for (int i = 0; i < iterators.length; i++) {
-            if (iterators[i].isDone() || !iterators[i].hasMatch(c)) {
-                // we can not load any extentCache if the iterator is done - or is at the wrong document.
-                return;
-            }
-
-            arrayIterators[i] = new ExtentArrayIterator(((ExtentIterator) iterators[i]).extents(c));
-
-            if (arrayIterators[i].isDone()) {
-                // if this document does not have any extentCache we can not load any extentCache
-                return;
-            }
+        for (int i = 0; i < count; i++) {
+            begins[i] = childExtents[i].begins();
+            ends[i] = childExtents[i].ends();
+            sizes[i] = childExtents[i].size();
+            cursors[i] = 0;
 
-            minimumPosition = Math.min(arrayIterators[i].currentBegin(), minimumPosition);
-            maximumPosition = Math.max(arrayIterators[i].currentEnd(), maximumPosition);
+            minimumPosition = Math.min(begins[i][0], minimumPosition);
+            maximumPosition = Math.max(end(i, 0), maximumPosition);
         }
 
         do {
@@ -58,10 +64,11 @@ public class UnorderedWindowIterator extends ExtentConjunctionIterator {
                 extentCache.add(minimumPosition, maximumPosition);
             }
 
-            for (int i = 0; i < arrayIterators.length; i++) {
-                if (arrayIterators[i].currentBegin() == minimumPosition) {
-                    boolean result = arrayIterators[i].next();
-                    if (!result) {
+            // someday this will be a heap/priorityQueue for the overlapping case
+            for (int i = 0; i < count; i++) {
+                if (begins[i][cursors[i]] == minimumPosition) {
+                    cursors[i]++;
+                    if (cursors[i] == sizes[i]) {
                         return;
                     }
                 }
@@ -72,9 +79,9 @@ public class UnorderedWindowIterator extends ExtentConjunctionIterator {
             maximumPosition = 0;
 
             // now, reset bounds
-            for (int i = 0; i < arrayIterators.length; i++) {
-                minimumPosition = Math.min(minimumPosition, arrayIterators[i].currentBegin());
-                maximumPosition = Math.max(maximumPosition, arrayIterators[i].currentEnd());
+            for (int i = 0; i < count; i++) {
+                minimumPosition = Math.min(minimumPosition, begins[i][cursors[i]]);
+                maximumPosition = Math.max(maximumPosition, end(i, cursors[i]));
             }
         } while (true);
     }
@@ -1,10 +1,11 @@
 // BSD License (http://lemurproject.org/galago-license)
 package org.lemurproject.galago.core.retrieval.iterator.scoring;
 
+import org.lemurproject.galago.core.index.source.BlockMaxSource;
 import org.lemurproject.galago.core.retrieval.RequiredParameters;
 import org.lemurproject.galago.core.retrieval.RequiredStatistics;
+import org.lemurproject.galago.core.retrieval.iterator.BlockMaxScoringIterator;
 import org.lemurproject.galago.core.retrieval.iterator.CountIterator;
-import org.lemurproject.galago.core.retrieval.iterator.DeltaScoringIterator;
 import org.lemurproject.galago.core.retrieval.iterator.LengthsIterator;
 import org.lemurproject.galago.core.retrieval.iterator.ScoringFunctionIterator;
 import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
@@ -18,7 +19,7 @@ import java.io.IOException;
  */
 @RequiredStatistics(statistics = {"collectionLength", "documentCount", "nodeFrequency", "nodeDocumentCount", "maximumCount"})
 @RequiredParameters(parameters = {"b", "k"})
-public class BM25ScoringIterator extends ScoringFunctionIterator implements DeltaScoringIterator {
+public class BM25ScoringIterator extends ScoringFunctionIterator implements BlockMaxScoringIterator {
 
   // delta
   private final double weight;
@@ -27,6 +28,8 @@ public class BM25ScoringIterator extends ScoringFunctionIterator implements Delt
   private final double weightedMax;
   private final double weightedMin;
   private final double weightedMaxDiff;
+  // block-max
+  private final BlockMaxSource blockMax;
   // scoring
   private final double b;
   private final double k;
@@ -63,6 +66,7 @@ public class BM25ScoringIterator extends ScoringFunctionIterator implements Delt
     weightedMin = weight * min;
     weightedMax = weight * max;
     weightedMaxDiff = weightedMax - weightedMin;
+    blockMax = getBlockMaxSource();
   }
 
   @Override
@@ -101,6 +105,20 @@ public class BM25ScoringIterator extends ScoringFunctionIterator implements Delt
     return diff;
   }
 
+  @Override
+  public long blockEnd(long document) throws IOException {
+    return (blockMax == null) ? Long.MAX_VALUE : blockMax.blockEnd(document);
+  }
+
+  @Override
+  public double blockMaximumDifference() {
+    if (blockMax == null) {
+      return weightedMaxDiff;
+    }
+    double blockMaxScore = Math.min(max, score(blockMax.blockMaximumCount(), blockMax.blockMinimumLength()));
+    return Math.max(0.0, weight * blockMaxScore - weightedMin);
+  }
+
   /**
    * Scoring function interface (allows direct scoring)
    *
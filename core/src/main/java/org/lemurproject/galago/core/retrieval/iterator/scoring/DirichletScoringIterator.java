@@ -1,10 +1,11 @@
 // BSD License (http://lemurproject.org/galago-license)
 package org.lemurproject.galago.core.retrieval.iterator.scoring;
 
+import org.lemurproject.galago.core.index.source.BlockMaxSource;
 import org.lemurproject.galago.core.retrieval.RequiredParameters;
 import org.lemurproject.galago.core.retrieval.RequiredStatistics;
+import org.lemurproject.galago.core.retrieval.iterator.BlockMaxScoringIterator;
 import org.lemurproject.galago.core.retrieval.iterator.CountIterator;
-import org.lemurproject.galago.core.retrieval.iterator.DeltaScoringIterator;
 import org.lemurproject.galago.core.retrieval.iterator.LengthsIterator;
 import org.lemurproject.galago.core.retrieval.iterator.ScoringFunctionIterator;
 import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
@@ -21,7 +22,7 @@ import java.io.IOException;
 @RequiredStatistics(statistics = {"collectionLength", "nodeFrequency", "maximumCount"})
 @RequiredParameters(parameters = {"mu"})
 public class DirichletScoringIterator extends ScoringFunctionIterator
-        implements DeltaScoringIterator {
+        implements BlockMaxScoringIterator {
 
   // delta
   private final double weight;
@@ -30,6 +31,8 @@ public class DirichletScoringIterator extends ScoringFunctionIterator
   private final double weightedMin;
   private final double weightedMax;
   private final double weightedMaxDiff;
+  // block-max
+  private final BlockMaxSource blockMax;
   // stats
   private final double mu;
   private final double background;
@@ -60,6 +63,7 @@ public class DirichletScoringIterator extends ScoringFunctionIterator
     weightedMin = weight * min;
     weightedMax = weight * max;
     weightedMaxDiff = weightedMax - weightedMin;
+    blockMax = getBlockMaxSource();
   }
 
   @Override
@@ -97,6 +101,20 @@ public class DirichletScoringIterator extends ScoringFunctionIterator
     return weightedMaxDiff;
   }
 
+  @Override
+  public long blockEnd(long document) throws IOException {
+    return (blockMax == null) ? Long.MAX_VALUE : blockMax.blockEnd(document);
+  }
+
+  @Override
+  public double blockMaximumDifference() {
+    if (blockMax == null) {
+      return weightedMaxDiff;
+    }
+    double blockMaxScore = Math.min(max, dirichletScore(blockMax.blockMaximumCount(), blockMax.blockMinimumLength()));
+    return Math.max(0.0, weight * blockMaxScore - weightedMin);
+  }
+
   @Override
   public double score(ScoringContext c) {
     int count = ((CountIterator) iterator).count(c);
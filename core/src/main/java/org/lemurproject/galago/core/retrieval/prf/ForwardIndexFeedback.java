@@ -0,0 +1,115 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.retrieval.prf;
+
+import gnu.trove.map.hash.TIntDoubleHashMap;
+import org.lemurproject.galago.core.index.IndexPartReader;
+import org.lemurproject.galago.core.index.disk.DiskForwardIndexReader;
+import org.lemurproject.galago.core.index.disk.DiskForwardIndexReader.TermVector;
+import org.lemurproject.galago.core.parse.stem.Stemmer;
+import org.lemurproject.galago.core.retrieval.LocalRetrieval;
+import org.lemurproject.galago.core.retrieval.Retrieval;
+import org.lemurproject.galago.core.retrieval.ScoredDocument;
+import org.lemurproject.galago.core.retrieval.prf.RelevanceModel1.WeightedUnigram;
+import org.lemurproject.galago.core.retrieval.query.AnnotatedNode;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Relevance model term weights read from the forward index part, instead of
+ * parsing each feedback document out of the corpus. Feedback documents are
+ * read in parallel and their weights summed by term id; only the surviving
+ * term ids are turned back into strings and filtered.
+ *
+ * Used by RelevanceModel1 (and so RelevanceModel3) when the index was built
+ * with --forwardIndex=true, unless "rmForwardIndex" is false.
+ */
+public class ForwardIndexFeedback {
+
+  private static final Logger logger = Logger.getLogger("RM1");
+
+  // Cannot instantiate - just a container class
+  private ForwardIndexFeedback() {
+  }
+
+  /**
+   * The forward index part of a local retrieval, or null if there is none.
+   */
+  public static DiskForwardIndexReader getForwardIndex(Retrieval retrieval, Parameters fbParams) throws IOException {
+    if (!fbParams.get("rmForwardIndex", true) || !(retrieval instanceof LocalRetrieval)) {
+      return null;
+    }
+    IndexPartReader part = ((LocalRetrieval) retrieval).getIndex().getIndexPart(fbParams.get("forwardIndexPart", "forward"));
+    return (part instanceof DiskForwardIndexReader) ? (DiskForwardIndexReader) part : null;
+  }
+
+  public static List<WeightedTerm> extractGrams(final DiskForwardIndexReader forward, List<ScoredDocument> results,
+          final Stemmer stemmer, final Set<String> stemmedQueryTerms, final Set<String> exclusionTerms, final Set<String> inclusionTerms) {
+    // convert documentScores to posterior probs
+    final Map<ScoredDocument, Double> scores = RelevanceModel1.logstoposteriors(results);
+
+    // sum p(w|D) p(D|Q) for each term id
+    final TIntDoubleHashMap weights = results.parallelStream().collect(TIntDoubleHashMap::new,
+            (partial, sd) -> addDocument(forward, sd, scores.get(sd), partial),
+            (a, b) -> b.forEachEntry((term, weight) -> {
+              a.adjustOrPutValue(term, weight, weight);
+              return true;
+            }));
+
+    // 1 / fbDocs from the RelevanceModel source code
+    final double norm = 1.0 / scores.size();
+    final int[] terms = weights.keys();
+    List<WeightedTerm> grams = IntStream.range(0, terms.length).parallel().mapToObj(i -> {
+      String term;
+      try {
+        term = forward.getTerm(terms[i]);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      // perform stopword and query term filtering here //
+      if (term == null
+              || (inclusionTerms != null && !inclusionTerms.contains(term))
+              || stemmedQueryTerms.contains(stemmer.stem(term))
+              || exclusionTerms.contains(term)) {
+        return null;
+      }
+      return (WeightedTerm) new WeightedUnigram(term, weights.get(terms[i]) * norm);
+    }).filter(Objects::nonNull).collect(Collectors.toCollection(ArrayList::new));
+
+    // sort by weight
+    Collections.sort(grams);
+    return grams;
+  }
+
+  private static void addDocument(DiskForwardIndexReader forward, ScoredDocument sd, double posterior, TIntDoubleHashMap weights) {
+    TermVector vector;
+    try {
+      vector = forward.getTermVector(sd.document);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    if (vector == null) {
+      logger.info("Failed to retrieve document: " + sd.documentName + " -- RM skipping document.");
+      return;
+    }
+
+    sd.annotation = new AnnotatedNode();
+    sd.annotation.extraInfo = "" + vector.length;
+
+    for (int i = 0; i < vector.terms.length; i++) {
+      double weight = posterior * vector.counts[i] / vector.length;
+      weights.adjustOrPutValue(vector.terms[i], weight, weight);
+    }
+  }
+}
@@ -3,6 +3,7 @@
  */
 package org.lemurproject.galago.core.retrieval.prf;
 
+import org.lemurproject.galago.core.index.disk.DiskForwardIndexReader;
 import org.lemurproject.galago.core.parse.Document;
 import org.lemurproject.galago.core.parse.Document.DocumentComponents;
 import org.lemurproject.galago.core.parse.stem.KrovetzStemmer;
@@ -118,6 +119,12 @@ public class RelevanceModel1 implements ExpansionModel {
   }
 
   public static List<WeightedTerm> extractGrams(Retrieval retrieval, List<ScoredDocument> initialResults, Stemmer stemmer, Parameters fbParams, Set<String> queryTerms, Set<String> exclusionTerms, Set<String> inclusionTerms) throws IOException {
+    // term counts are read from the forward index part, if the index has one
+    DiskForwardIndexReader forward = ForwardIndexFeedback.getForwardIndex(retrieval, fbParams);
+    if (forward != null) {
+      return ForwardIndexFeedback.extractGrams(forward, initialResults, stemmer, queryTerms, exclusionTerms, inclusionTerms);
+    }
+
     // convert documentScores to posterior probs
     Map<ScoredDocument, Double> scores = logstoposteriors(initialResults);
 
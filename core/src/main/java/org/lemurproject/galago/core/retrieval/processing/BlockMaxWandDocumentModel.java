@@ -0,0 +1,339 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.retrieval.processing;
+
+import org.lemurproject.galago.core.retrieval.LocalRetrieval;
+import org.lemurproject.galago.core.retrieval.ScoredDocument;
+import org.lemurproject.galago.core.retrieval.iterator.BaseIterator;
+import org.lemurproject.galago.core.retrieval.iterator.BlockMaxScoringIterator;
+import org.lemurproject.galago.core.retrieval.iterator.DeltaScoringIterator;
+import org.lemurproject.galago.core.retrieval.iterator.DisjunctionIterator;
+import org.lemurproject.galago.core.retrieval.iterator.ScoreIterator;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.NodeType;
+import org.lemurproject.galago.utility.CmpUtil;
+import org.lemurproject.galago.utility.FixedSizeScoreHeap;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Implements Block-Max WAND (Ding and Suel 2011).
+ *
+ * This is Weak-And, but once a pivot is found, the per-block score bounds
+ * stored in the posting lists (see PositionIndexWriter) are checked as
+ * well. If the blocks around the pivot can't beat the current threshold,
+ * we jump to the end of the shallowest block instead of scoring or
+ * advancing to the pivot.
+ *
+ * Scorers over lists without block-max information fall back to their
+ * list-wide bounds, in which case this behaves exactly like WeakAnd.
+ *
+ * This processing model CAN NOT share nodes.
+ *
+ * @see WeakAndDocumentModel
+ */
+public class BlockMaxWandDocumentModel extends ProcessingModel {
+
+  LocalRetrieval retrieval;
+
+  public BlockMaxWandDocumentModel(LocalRetrieval lr) {
+    this.retrieval = lr;
+  }
+
+  @Override
+  public ScoredDocument[] execute(Node queryTree, Parameters queryParams) throws Exception {
+    ScoringContext context = new ScoringContext();
+    int requested = (int) queryParams.get("requested", 1000);
+
+    // 1.0 is rank-k-safe, higher values are not.
+    double factor = queryParams.get("weakandfactor", 1.0);
+
+    // step one: find the set of deltaScoringNodes in the tree
+    List<Node> scoringNodes = new ArrayList<>();
+    boolean canScore = findDeltaNodes(queryTree, scoringNodes, retrieval);
+    if (!canScore) {
+      throw new IllegalArgumentException("Query tree does not support delta scoring interface.\n" + queryTree.toPrettyString());
+    }
+
+    // step two: create an iterator for each node
+    BlockMaxIteratorWrapper[] sortedIterators = createScoringIterators(context, scoringNodes, retrieval);
+    Arrays.sort(sortedIterators);
+    FixedSizeScoreHeap queue = new FixedSizeScoreHeap(requested);
+
+    // NOTE that the min scores here are OVER-ESTIMATES of the actual minimum scores
+    double minimumPossibleScore = 0.0;
+    double maximumPossibleScore = 0.0;
+    for (BlockMaxIteratorWrapper scorer : sortedIterators) {
+      minimumPossibleScore += scorer.itr.minimumWeightedScore();
+      maximumPossibleScore += scorer.itr.maximumWeightedScore();
+    }
+
+    context.document = -1;
+    double minDocScore = Double.NEGATIVE_INFINITY;
+    int advancePosition;
+    AtomicBoolean cancelled = getCancellation();
+    while (!cancelled.get()) {
+      // if advance position is set, then an iterator has moved.
+      advancePosition = -1;
+
+      int pivotPosition = findPivot(sortedIterators, minimumPossibleScore, minDocScore);
+      if (pivotPosition == -1) {
+        break;
+      }
+
+      if (sortedIterators[pivotPosition].itr.isDone()) {
+        break;
+      }
+
+      long pivot = sortedIterators[pivotPosition].currentCandidate;
+
+      // if the pivot is less than or equal to the last scored document, move on.
+      if (pivot <= context.document) {
+        advancePosition = pickAdvancingSentinel(sortedIterators, context.document + 1);
+        sortedIterators[advancePosition].next(context.document + 1);
+
+      } else {
+        // every iterator sitting on the pivot contributes to its score
+        int lastPosition = pivotPosition;
+        while (lastPosition + 1 < sortedIterators.length
+                && !sortedIterators[lastPosition + 1].itr.isDone()
+                && sortedIterators[lastPosition + 1].currentCandidate == pivot) {
+          lastPosition++;
+        }
+
+        // check the block bounds around the pivot
+        double blockBound = minimumPossibleScore;
+        long shallowestBlockEnd = Long.MAX_VALUE;
+        for (int i = 0; i <= lastPosition; i++) {
+          BlockMaxIteratorWrapper w = sortedIterators[i];
+          if (!w.itr.isDone()) {
+            blockBound += w.blockMaximumDifference(pivot);
+            shallowestBlockEnd = Math.min(shallowestBlockEnd, w.blockEnd);
+          }
+        }
+
+        if (minDocScore == Double.NEGATIVE_INFINITY || blockBound > minDocScore) {
+          if (sortedIterators[0].currentCandidate == pivot) {
+            // score the document.
+            context.document = pivot;
+            double score = score(sortedIterators, context, maximumPossibleScore);
+
+            if (queue.size() < requested || score > queue.peekScore()) {
+              queue.offer(context.document, score);
+
+              if (queue.size() == requested) {
+                minDocScore = factor * queue.peekScore();
+              }
+            }
+          } else {
+            advancePosition = pickAdvancingSentinel(sortedIterators, pivot);
+            sortedIterators[advancePosition].next(pivot);
+          }
+        } else {
+          // nothing up to the end of the shallowest block can make it into the queue,
+          //  unless another (later) iterator joins in first.
+          long target = (shallowestBlockEnd == Long.MAX_VALUE) ? Long.MAX_VALUE : shallowestBlockEnd + 1;
+          if (lastPosition + 1 < sortedIterators.length && !sortedIterators[lastPosition + 1].itr.isDone()) {
+            target = Math.min(target, sortedIterators[lastPosition + 1].currentCandidate);
+          }
+          if (target == Long.MAX_VALUE) {
+            // the remaining blocks run to the end of every list.
+            break;
+          }
+          advancePosition = pickAdvancingSentinel(sortedIterators, pivot + 1);
+          sortedIterators[advancePosition].next(target);
+        }
+      }
+
+      // We only moved one iterator, so we only need to worry about putting that one in the right place
+      if (advancePosition != -1) {
+        shuffleDown(sortedIterators, advancePosition);
+      }
+    }
+
+    return toReversedArray(queue);
+  }
+
+  // Premise here is that the 'start' iterator is the one that moved forward, but it was already behind
+  // any other iterator at position n where 0 <= n < start. So we don't even look at those. Makes the sort
+  // linear at worst.
+  private void shuffleDown(BlockMaxIteratorWrapper[] s, int start) {
+    for (int i = start; i < s.length - 1; i++) {
+      int result = s[i].compareTo(s[i + 1]);
+      if (result <= 0) {
+        break;
+      } else {
+        BlockMaxIteratorWrapper tmp = s[i];
+        s[i] = s[i + 1];
+        s[i + 1] = tmp;
+      }
+    }
+  }
+
+  private double score(BlockMaxIteratorWrapper[] sortedIterators, ScoringContext context, double maximumPossibleScore) throws IOException {
+    double runningScore = maximumPossibleScore;
+    for (BlockMaxIteratorWrapper sortedIterator : sortedIterators) {
+      DeltaScoringIterator dsi = sortedIterator.itr;
+      dsi.syncTo(context.document);
+      runningScore -= dsi.deltaScore(context);
+    }
+    return runningScore;
+  }
+
+  private int findPivot(BlockMaxIteratorWrapper[] sortedIterators, double scoreMinimum, double threshold) {
+    if (threshold == Double.NEGATIVE_INFINITY) {
+      // score the first document
+      return 0;
+    }
+
+    double sum = scoreMinimum;
+
+    for (int i = 0; i < sortedIterators.length; i++) {
+      DeltaScoringIterator dsi = sortedIterators[i].itr;
+      if (!dsi.isDone()) {
+        sum += dsi.maximumDifference();
+      }
+
+      if (sum > threshold) {
+        return i;
+      }
+    }
+
+    return -1; // couldn't exceed threshold
+  }
+
+  /**
+   * Returns the iterator that should be advanced: the one with the lowest df
+   * among those with a current candidate before limitDoc.
+   *
+   * @see WeakAndDocumentModel
+   */
+  private int pickAdvancingSentinel(BlockMaxIteratorWrapper[] sortedIterators, long limitDoc) {
+    long minEntries = Long.MAX_VALUE;
+    int minPos = 0;
+    for (int i = 0; i < sortedIterators.length; i++) {
+      BlockMaxIteratorWrapper dsi = sortedIterators[i];
+      if (dsi.currentCandidate < limitDoc) {
+        if (dsi.entries < minEntries) {
+          minEntries = dsi.entries;
+          minPos = i;
+        }
+      } else {
+        return minPos;
+      }
+    }
+    return minPos;
+  }
+
+  private boolean findDeltaNodes(Node n, List<Node> scorers, LocalRetrieval ret) throws Exception {
+    // throw exception if we can't determine the class of each node.
+    NodeType nt = ret.getNodeType(n);
+    Class<? extends BaseIterator> iteratorClass = nt.getIteratorClass();
+
+    if (DeltaScoringIterator.class.isAssignableFrom(iteratorClass)) {
+      // we have a delta scoring class
+      scorers.add(n);
+      return true;
+
+    } else if (DisjunctionIterator.class.isAssignableFrom(iteratorClass) && ScoreIterator.class.isAssignableFrom(iteratorClass)) {
+      // we have a disjoint score combination node (e.g. #combine)
+      boolean r = true;
+      for (Node c : n.getInternalNodes()) {
+        r &= findDeltaNodes(c, scorers, ret);
+      }
+      return r;
+
+    } else {
+      return false;
+    }
+  }
+
+  private BlockMaxIteratorWrapper[] createScoringIterators(ScoringContext context, List<Node> scoringNodes, LocalRetrieval ret) throws Exception {
+    BlockMaxIteratorWrapper[] scoringIterators = new BlockMaxIteratorWrapper[scoringNodes.size()];
+
+    // NO Node sharing is permitted.
+    for (int i = 0; i < scoringNodes.size(); i++) {
+      DeltaScoringIterator scorer = (DeltaScoringIterator) ret.createNodeMergedIterator(scoringNodes.get(i), null);
+      scoringIterators[i] = new BlockMaxIteratorWrapper(context, scorer, scoringNodes.get(i));
+    }
+
+    return scoringIterators;
+  }
+
+  public static class BlockMaxIteratorWrapper implements Comparable<BlockMaxIteratorWrapper> {
+
+    private final ScoringContext ctx;
+    public DeltaScoringIterator itr;
+    public long currentCandidate;
+    private long entries;
+    // the known extent of the current block: (blockStart, blockEnd]
+    private final BlockMaxScoringIterator blockItr;
+    private long blockStart;
+    private long blockEnd;
+    private double blockMaxDiff;
+
+    private BlockMaxIteratorWrapper(ScoringContext context, DeltaScoringIterator itr, Node node) throws IOException {
+      this.itr = itr;
+      this.ctx = context.getPrototype();
+      this.blockItr = (itr instanceof BlockMaxScoringIterator) ? (BlockMaxScoringIterator) itr : null;
+      this.blockStart = Long.MAX_VALUE;
+      this.blockEnd = -1;
+
+      if (node.getNodeParameters().containsKey("nodeDocumentCount")) {
+        this.entries = node.getNodeParameters().getLong("nodeDocumentCount");
+      } else if (node.getNodeParameters().containsKey("nodeFrequency")) {
+        this.entries = node.getNodeParameters().getLong("nodeFrequency");
+      } else {
+        // otherwise all nodes are considered equal
+        this.entries = 1;
+      }
+
+      // find the first document that has a match
+      this.currentCandidate = -1;
+      next();
+    }
+
+    /**
+     * Moves the block cursor to the block containing doc, and returns the
+     * block's bound. Sets blockEnd as a side effect.
+     */
+    public double blockMaximumDifference(long doc) throws IOException {
+      if (blockItr == null) {
+        blockEnd = Long.MAX_VALUE;
+        return itr.maximumDifference();
+      }
+      if (doc <= blockStart || doc > blockEnd) {
+        blockEnd = blockItr.blockEnd(doc);
+        blockMaxDiff = blockItr.blockMaximumDifference();
+        // pivots only move forward, so [doc, blockEnd] is all we need to remember
+        blockStart = doc - 1;
+      }
+      return blockMaxDiff;
+    }
+
+    @Override
+    public int compareTo(BlockMaxIteratorWrapper t) {
+      return CmpUtil.compare(currentCandidate, t.currentCandidate);
+    }
+
+    public void next() throws IOException {
+      do {
+        itr.movePast(currentCandidate);
+        currentCandidate = itr.currentCandidate();
+        ctx.document = currentCandidate;
+      } while (!itr.isDone() && !itr.hasMatch(ctx));
+    }
+
+    public void next(long doc) throws IOException {
+      // want to move past currentCandidate, to at least doc
+      currentCandidate = (doc <= currentCandidate) ? currentCandidate : (doc - 1);
+      next();
+    }
+  }
+}
@@ -9,10 +9,11 @@ import org.lemurproject.galago.core.retrieval.iterator.DisjunctionIterator;
 import org.lemurproject.galago.core.retrieval.iterator.ScoreIterator;
 import org.lemurproject.galago.core.retrieval.query.Node;
 import org.lemurproject.galago.core.retrieval.query.NodeType;
-import org.lemurproject.galago.utility.FixedSizeMinHeap;
+import org.lemurproject.galago.utility.FixedSizeScoreHeap;
 import org.lemurproject.galago.utility.Parameters;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Assumes the use of delta functions for scoring, then prunes using Maxscore.
@@ -44,7 +45,7 @@ public class MaxScoreDocumentModel extends ProcessingModel {
     boolean shareNodes = queryParams.get("shareNodes", retrieval.getGlobalParameters().get("shareNodes", true));
     List<DeltaScoringIterator> scoringIterators = createScoringIterators(scoringNodes, retrieval, shareNodes);
 
-    FixedSizeMinHeap<ScoredDocument> queue = new FixedSizeMinHeap<ScoredDocument>(ScoredDocument.class, requested, new ScoredDocument.ScoredDocumentComparator());
+    FixedSizeScoreHeap queue = new FixedSizeScoreHeap(requested);
 
     double maximumPossibleScore = 0.0;
     for (DeltaScoringIterator scorer : scoringIterators) {
@@ -75,7 +76,8 @@ public class MaxScoreDocumentModel extends ProcessingModel {
     // 4) while (runningScore > R)
     //      move iterator to candidate
     //      score candidate w/ iterator
-    while (true) {
+    AtomicBoolean cancelled = getCancellation();
+    while (!cancelled.get()) {
       long candidate = Long.MAX_VALUE;
       for (int i = 0; i < quorumIndex; i++) {
         if (!scoringIterators.get(i).isDone()) {
@@ -119,12 +121,11 @@ public class MaxScoreDocumentModel extends ProcessingModel {
 
         // Fully scored it
         if (i == scoringIterators.size()) {
-          if (queue.size() < requested || runningScore > queue.peek().score) {
-            ScoredDocument scoredDocument = new ScoredDocument(candidate, runningScore);
-            queue.offer(scoredDocument);
+          if (queue.size() < requested || runningScore > queue.peekScore()) {
+            queue.offer(candidate, runningScore);
 
-            if (queue.size() >= requested && minHeapThresholdScore < queue.peek().score) {
-              minHeapThresholdScore = queue.peek().score;
+            if (queue.size() >= requested && minHeapThresholdScore < queue.peekScore()) {
+              minHeapThresholdScore = queue.peekScore();
               // check if this update will allow us to discard an iterator from consideration : 
               while (quorumIndex > 0 && maxScoreOfRemainingIterators[(quorumIndex - 1)] < minHeapThresholdScore) {
                 quorumIndex--;
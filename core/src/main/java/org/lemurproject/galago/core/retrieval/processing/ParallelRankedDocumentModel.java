@@ -0,0 +1,135 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.retrieval.processing;
+
+import org.lemurproject.galago.core.index.stats.FieldStatistics;
+import org.lemurproject.galago.core.retrieval.LocalRetrieval;
+import org.lemurproject.galago.core.retrieval.ScoredDocument;
+import org.lemurproject.galago.core.retrieval.iterator.ScoreIterator;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.utility.FixedSizeScoreHeap;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Document-at-a-time processing, like RankedDocumentModel, but the document
+ * id space is cut into contiguous ranges that are scored in parallel.
+ *
+ * Each range gets its own iterator tree (from createIterator) and its own
+ * top-k heap; the heaps are merged once every range is done. Results are
+ * identical to RankedDocumentModel.
+ *
+ * Query parameters:
+ *  "partitions" : number of ranges to score [default = pool parallelism, but
+ *                 no range is smaller than MIN_PARTITION_SIZE documents]
+ *
+ * Iterators from a retrieval "cache" are shared objects, so indexes opened
+ * with a node cache are always scored as a single range.
+ */
+public class ParallelRankedDocumentModel extends ProcessingModel {
+
+  /** Ranges smaller than this aren't worth a task, unless partitions is set. */
+  public static final long MIN_PARTITION_SIZE = 10000;
+
+  LocalRetrieval retrieval;
+  ForkJoinPool pool;
+
+  public ParallelRankedDocumentModel(LocalRetrieval lr) {
+    this(lr, ForkJoinPool.commonPool());
+  }
+
+  public ParallelRankedDocumentModel(LocalRetrieval lr, ForkJoinPool pool) {
+    this.retrieval = lr;
+    this.pool = pool;
+  }
+
+  @Override
+  public ScoredDocument[] execute(Node queryTree, Parameters queryParams) throws Exception {
+    FieldStatistics lengths = retrieval.getCollectionStatistics("#lengths:document:part=lengths()");
+    if (lengths.documentCount == 0) {
+      return null;
+    }
+    long firstDocument = lengths.firstDocId;
+    long lastDocument = lengths.lastDocId;
+    long documentSpan = lastDocument - firstDocument + 1;
+
+    long partitions;
+    if (retrieval.getGlobalParameters().get("cache", false)) {
+      partitions = 1;
+    } else if (queryParams.containsKey("partitions")) {
+      partitions = queryParams.getLong("partitions");
+    } else {
+      partitions = Math.min(pool.getParallelism(), documentSpan / MIN_PARTITION_SIZE);
+    }
+    partitions = Math.max(1, Math.min(partitions, documentSpan));
+
+    // ranges are [start, end)
+    long rangeSize = (documentSpan + partitions - 1) / partitions;
+    // the pool threads check the flag of the calling thread
+    final AtomicBoolean cancelled = getCancellation();
+    List<ForkJoinTask<FixedSizeScoreHeap>> tasks = new ArrayList<>();
+    for (long start = firstDocument + rangeSize; start <= lastDocument; start += rangeSize) {
+      final long rangeStart = start;
+      final long rangeEnd = Math.min(start + rangeSize, lastDocument + 1);
+      tasks.add(pool.submit(() -> scoreRange(queryTree, queryParams, rangeStart, rangeEnd, cancelled)));
+    }
+
+    // the calling thread takes the first range itself
+    FixedSizeScoreHeap queue = scoreRange(queryTree, queryParams, firstDocument, Math.min(firstDocument + rangeSize, lastDocument + 1), cancelled);
+
+    for (ForkJoinTask<FixedSizeScoreHeap> task : tasks) {
+      FixedSizeScoreHeap rangeQueue;
+      try {
+        rangeQueue = task.get();
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof Exception) {
+          throw (Exception) e.getCause();
+        }
+        throw e;
+      }
+      // ties go to the lower document id, just as in a single pass
+      for (int i = 0; i < rangeQueue.size(); i++) {
+        queue.offer(rangeQueue.getId(i), rangeQueue.getScore(i), rangeQueue.getPayload(i));
+      }
+    }
+    return toReversedArray(queue);
+  }
+
+  /**
+   * Scores every document in [start, end) with a fresh iterator tree.
+   */
+  private FixedSizeScoreHeap scoreRange(Node queryTree, Parameters queryParams, long start, long end, AtomicBoolean cancelled) throws Exception {
+    ScoringContext context = new ScoringContext();
+
+    int requested = queryParams.get("requested", 1000);
+    boolean annotate = queryParams.get("annotate", false);
+
+    FixedSizeScoreHeap queue = new FixedSizeScoreHeap(requested);
+
+    ScoreIterator iterator = (ScoreIterator) retrieval.createIterator(queryParams, queryTree);
+    iterator.syncTo(start);
+
+    while (!iterator.isDone() && !cancelled.get()) {
+      long document = iterator.currentCandidate();
+      if (document >= end) {
+        break;
+      }
+
+      context.document = document;
+      iterator.syncTo(document);
+      if (iterator.hasMatch(context)) {
+        double score = iterator.score(context);
+        if (queue.size() < requested || queue.peekScore() < score) {
+          queue.offer(document, score, annotate ? iterator.getAnnotatedNode(context) : null);
+        }
+      }
+      iterator.movePast(document);
+    }
+    return queue;
+  }
+}
@@ -3,11 +3,15 @@ package org.lemurproject.galago.core.retrieval.processing;
 
 import org.lemurproject.galago.core.retrieval.LocalRetrieval;
 import org.lemurproject.galago.core.retrieval.ScoredDocument;
+import org.lemurproject.galago.core.retrieval.query.AnnotatedNode;
 import org.lemurproject.galago.core.retrieval.query.Node;
 import org.lemurproject.galago.utility.FixedSizeMinHeap;
+import org.lemurproject.galago.utility.FixedSizeScoreHeap;
 import org.lemurproject.galago.utility.Parameters;
 
 import java.lang.reflect.Constructor;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * An interface that defines the contract for processing a query. There's one
@@ -19,6 +23,42 @@ import java.lang.reflect.Constructor;
  */
 public abstract class ProcessingModel {
 
+  // the cancellation flag of the query running on each thread, if any
+  private static final ThreadLocal<AtomicBoolean> cancellation = new ThreadLocal<>();
+  private static final AtomicBoolean NOT_CANCELLED = new AtomicBoolean(false);
+
+  /**
+   * Runs a query on this thread with a flag that, once set, makes the
+   * processing models stop scoring and return what they have so far. Callers
+   * that stop waiting for a query (MultiRetrieval) set it rather than
+   * interrupting the thread, which would close any index file it is reading.
+   */
+  public static <T> T runCancellable(AtomicBoolean cancelled, Callable<T> query) throws Exception {
+    cancellation.set(cancelled);
+    try {
+      return query.call();
+    } finally {
+      cancellation.remove();
+    }
+  }
+
+  /**
+   * True if the query running on this thread has been cancelled; its results
+   * are then incomplete.
+   */
+  public static boolean isCancelled() {
+    return getCancellation().get();
+  }
+
+  /**
+   * The cancellation flag of the query running on this thread, checked once
+   * per document by the scoring loops. Never null.
+   */
+  protected static AtomicBoolean getCancellation() {
+    AtomicBoolean cancelled = cancellation.get();
+    return (cancelled == null) ? NOT_CANCELLED : cancelled;
+  }
+
   public abstract ScoredDocument[] execute(Node queryTree, Parameters queryParams) throws Exception;
 
   public static <T extends ScoredDocument> T[] toReversedArray(FixedSizeMinHeap<T> queue) {
@@ -36,6 +76,26 @@ public abstract class ProcessingModel {
     return items;
   }
 
+  /**
+   * Builds the ranked list from a primitive heap; ScoredDocuments are only
+   * created for the final results. Payloads are taken as annotations.
+   */
+  public static ScoredDocument[] toReversedArray(FixedSizeScoreHeap queue) {
+    if (queue.size() == 0) {
+      return null;
+    }
+
+    queue.sort();
+    ScoredDocument[] items = new ScoredDocument[queue.size()];
+    for (int i = 0; i < items.length; i++) {
+      items[i] = new ScoredDocument(queue.getId(i), queue.getScore(i));
+      items[i].annotation = (AnnotatedNode) queue.getPayload(i);
+      items[i].rank = i + 1;
+    }
+
+    return items;
+  }
+
   /** @deprecated use create instead! */
   @Deprecated
   public static ProcessingModel instance(LocalRetrieval r, Node root, Parameters p) throws Exception {
@@ -49,8 +109,10 @@ public abstract class ProcessingModel {
       // these are short hand methods of getting some desired proc models:
       switch (modelName) {
         case "rankeddocument": return new RankedDocumentModel(r);
+        case "parallelrankeddocument": return new ParallelRankedDocumentModel(r);
         case "rankedpassage": return new RankedPassageModel(r);
         case "maxscore": return new MaxScoreDocumentModel(r);
+        case "blockmaxwand": return new BlockMaxWandDocumentModel(r);
         // CURRENTLY BROKEN DO NOT USE
 //      } else if (modelName.equals("wand")) {
 //        return new WANDScoreDocumentModel(r);
@@ -6,9 +6,11 @@ import org.lemurproject.galago.core.retrieval.LocalRetrieval;
 import org.lemurproject.galago.core.retrieval.ScoredDocument;
 import org.lemurproject.galago.core.retrieval.iterator.ScoreIterator;
 import org.lemurproject.galago.core.retrieval.query.Node;
-import org.lemurproject.galago.utility.FixedSizeMinHeap;
+import org.lemurproject.galago.utility.FixedSizeScoreHeap;
 import org.lemurproject.galago.utility.Parameters;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * Performs straightforward document-at-a-time (daat) processing of a fully
  * annotated query, processing scores over documents.
@@ -35,13 +37,14 @@ public class RankedDocumentModel extends ProcessingModel {
     boolean annotate = queryParams.get("annotate", false);
 
     // Maintain a queue of candidates
-    FixedSizeMinHeap<ScoredDocument> queue = new FixedSizeMinHeap<>(ScoredDocument.class, requested, new ScoredDocument.ScoredDocumentComparator());
+    FixedSizeScoreHeap queue = new FixedSizeScoreHeap(requested);
 
     // construct the iterators -- we use tree processing
     ScoreIterator iterator = (ScoreIterator) retrieval.createIterator(queryParams, queryTree);
 
     // now there should be an iterator at the root of this tree
-    while (!iterator.isDone()) {
+    AtomicBoolean cancelled = getCancellation();
+    while (!iterator.isDone() && !cancelled.get()) {
       long document = iterator.currentCandidate();
 
       // This context is shared among all scorers
@@ -49,12 +52,8 @@ public class RankedDocumentModel extends ProcessingModel {
       iterator.syncTo(document);
       if (iterator.hasMatch(context)) {
         double score = iterator.score(context);
-        if (queue.size() < requested || queue.peek().score < score) {
-          ScoredDocument scoredDocument = new ScoredDocument(document, score);
-          if (annotate) {
-            scoredDocument.annotation = iterator.getAnnotatedNode(context);
-          }
-          queue.offer(scoredDocument);
+        if (queue.size() < requested || queue.peekScore() < score) {
+          queue.offer(document, score, annotate ? iterator.getAnnotatedNode(context) : null);
         }
       }
       iterator.movePast(document);
@@ -7,9 +7,11 @@ import org.lemurproject.galago.core.retrieval.ScoredDocument;
 import org.lemurproject.galago.core.retrieval.iterator.LengthsIterator;
 import org.lemurproject.galago.core.retrieval.iterator.ScoreIterator;
 import org.lemurproject.galago.core.retrieval.query.Node;
-import org.lemurproject.galago.utility.FixedSizeMinHeap;
+import org.lemurproject.galago.utility.FixedSizeScoreHeap;
 import org.lemurproject.galago.utility.Parameters;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * Same as RankedDocumentModel except it ignores zero length documents.
  *
@@ -35,14 +37,15 @@ public class RankedNonZeroLengthDocumentModel extends ProcessingModel {
     boolean annotate = queryParams.get("annotate", false);
 
     // Maintain a queue of candidates
-    FixedSizeMinHeap<ScoredDocument> queue = new FixedSizeMinHeap<>(ScoredDocument.class, requested, new ScoredDocument.ScoredDocumentComparator());
+    FixedSizeScoreHeap queue = new FixedSizeScoreHeap(requested);
 
     // construct the iterators -- we use tree processing
     ScoreIterator iterator = (ScoreIterator) retrieval.createIterator(queryParams, queryTree);
     LengthsIterator documentLengths = retrieval.getDocumentLengthsIterator();
     // now there should be an iterator at the root of this tree
 
-    while (!iterator.isDone()) {
+    AtomicBoolean cancelled = getCancellation();
+    while (!iterator.isDone() && !cancelled.get()) {
 
       long document = iterator.currentCandidate();
 
@@ -55,13 +58,8 @@ public class RankedNonZeroLengthDocumentModel extends ProcessingModel {
       if (iterator.hasMatch(context)) {
         double score = iterator.score(context);
 
-        if (length > 0 && (queue.size() < requested || queue.peek().score < score)) {
-          ScoredDocument scoredDocument = new ScoredDocument(document, score);
-          if (annotate) {
-            scoredDocument.annotation = iterator.getAnnotatedNode(context);
-          }
-
-          queue.offer(scoredDocument);
+        if (length > 0 && (queue.size() < requested || queue.peekScore() < score)) {
+          queue.offer(document, score, annotate ? iterator.getAnnotatedNode(context) : null);
 
         }
       }
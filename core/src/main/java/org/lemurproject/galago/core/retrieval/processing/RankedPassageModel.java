@@ -11,6 +11,8 @@ import org.lemurproject.galago.core.retrieval.query.Node;
 import org.lemurproject.galago.utility.FixedSizeMinHeap;
 import org.lemurproject.galago.utility.Parameters;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * Performs passage-level retrieval scoring. Passage windows are currently
  * generated the same as Indri: if we hit the end of the document prematurely,
@@ -54,7 +56,8 @@ public class RankedPassageModel extends ProcessingModel {
         FixedSizeMinHeap<ScoredPassage> queue = new FixedSizeMinHeap(ScoredPassage.class, requested, new ScoredPassage.ScoredPassageComparator());
 
         // now there should be an iterator at the root of this tree
-        while (!iterator.isDone()) {
+        AtomicBoolean cancelled = getCancellation();
+        while (!iterator.isDone() && !cancelled.get()) {
             long document = iterator.currentCandidate();
 
             // This context is shared among all scorers
@@ -12,6 +12,7 @@ import org.lemurproject.galago.core.retrieval.query.Node;
 import org.lemurproject.galago.utility.Parameters;
 
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Implements standard boolean processing model. Results are not ranked, just
@@ -39,7 +40,8 @@ public class SetModel extends ProcessingModel {
             (IndicatorIterator) retrieval.createIterator(queryParams,
             queryTree);
     ArrayList<ScoredDocument> list = new ArrayList<ScoredDocument>();
-    while (!iterator.isDone()) {
+    AtomicBoolean cancelled = getCancellation();
+    while (!iterator.isDone() && !cancelled.get()) {
 
       // ensure we are at the document we wish to score
       // -- this function will move ALL iterators, 
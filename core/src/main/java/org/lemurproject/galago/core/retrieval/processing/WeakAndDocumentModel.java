@@ -11,7 +11,7 @@ import org.lemurproject.galago.core.retrieval.iterator.DisjunctionIterator;
 import org.lemurproject.galago.core.retrieval.iterator.ScoreIterator;
 import org.lemurproject.galago.core.retrieval.query.Node;
 import org.lemurproject.galago.core.retrieval.query.NodeType;
-import org.lemurproject.galago.utility.FixedSizeMinHeap;
+import org.lemurproject.galago.utility.FixedSizeScoreHeap;
 import org.lemurproject.galago.utility.CmpUtil;
 import org.lemurproject.galago.utility.Parameters;
 
@@ -19,6 +19,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Implements Weak-And processing model (Broder et al. 2003)
@@ -56,7 +57,7 @@ public class WeakAndDocumentModel extends ProcessingModel {
     // step two: create an iterator for each node
     DeltaScoringIteratorWrapper[] sortedIterators = createScoringIterators(context, scoringNodes, retrieval);
     Arrays.sort(sortedIterators);
-    FixedSizeMinHeap<ScoredDocument> queue = new FixedSizeMinHeap<>(ScoredDocument.class, requested, new ScoredDocument.ScoredDocumentComparator());
+    FixedSizeScoreHeap queue = new FixedSizeScoreHeap(requested);
 
     // NOTE that the min scores here are OVER-ESTIMATES of the actual minimum scores
     double minimumPossibleScore = 0.0;
@@ -69,7 +70,8 @@ public class WeakAndDocumentModel extends ProcessingModel {
     context.document = -1;
     double minDocScore = Double.NEGATIVE_INFINITY;
     int advancePosition;
-    while (true) {
+    AtomicBoolean cancelled = getCancellation();
+    while (!cancelled.get()) {
       // if advance position is set, then an iterator has moved.
       advancePosition = -1;
       
@@ -97,12 +99,11 @@ public class WeakAndDocumentModel extends ProcessingModel {
           context.document = pivot;
           double score = score(sortedIterators, context, maximumPossibleScore);
           
-          if (queue.size() < requested || score > queue.peek().score) {
-            ScoredDocument scoredDocument = new ScoredDocument(context.document, score);
-            queue.offer(scoredDocument);
+          if (queue.size() < requested || score > queue.peekScore()) {
+            queue.offer(context.document, score);
             
             if (queue.size() == requested) {
-              minDocScore = factor * queue.peek().score;
+              minDocScore = factor * queue.peekScore();
             }
           }
         } else {
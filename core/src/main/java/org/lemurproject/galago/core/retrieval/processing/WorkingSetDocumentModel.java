@@ -6,11 +6,12 @@ import org.lemurproject.galago.core.retrieval.LocalRetrieval;
 import org.lemurproject.galago.core.retrieval.ScoredDocument;
 import org.lemurproject.galago.core.retrieval.iterator.ScoreIterator;
 import org.lemurproject.galago.core.retrieval.query.Node;
-import org.lemurproject.galago.utility.FixedSizeMinHeap;
+import org.lemurproject.galago.utility.FixedSizeScoreHeap;
 import org.lemurproject.galago.utility.Parameters;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
 /**
@@ -75,9 +76,13 @@ public class WorkingSetDocumentModel extends ProcessingModel {
     boolean annotate = queryParams.get("annotate", false);
 
     // now there should be an iterator at the root of this tree
-    FixedSizeMinHeap<ScoredDocument> queue = new FixedSizeMinHeap<>(ScoredDocument.class, requested, new ScoredDocument.ScoredDocumentComparator());
+    FixedSizeScoreHeap queue = new FixedSizeScoreHeap(requested);
 
+    AtomicBoolean cancelled = getCancellation();
     for (long document : whitelist) {
+      if (cancelled.get()) {
+        break;
+      }
       if (document < 0) {
         continue;
       }
@@ -86,12 +91,8 @@ public class WorkingSetDocumentModel extends ProcessingModel {
 
       // This context is shared among all scorers
       double score = iterator.score(context);
-      if (requested < 0 || queue.size() < requested || queue.peek().score < score) {
-        ScoredDocument scoredDocument = new ScoredDocument(document, score);
-        if (annotate) {
-          scoredDocument.annotation = iterator.getAnnotatedNode(context);
-        }
-        queue.offer(scoredDocument);
+      if (requested < 0 || queue.size() < requested || queue.peekScore() < score) {
+        queue.offer(document, score, annotate ? iterator.getAnnotatedNode(context) : null);
       }
     }
     return toReversedArray(queue);
@@ -15,6 +15,7 @@ import org.lemurproject.galago.utility.Parameters;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
 /**
@@ -104,7 +105,11 @@ public class WorkingSetExtentModel extends ProcessingModel {
     FixedSizeMinHeap<ScoredPassage> queue = new FixedSizeMinHeap<ScoredPassage>(ScoredPassage.class, requested, new ScoredPassage.ScoredPassageComparator());
 
     // now there should be an iterator at the root of this tree
+    AtomicBoolean cancelled = getCancellation();
     for (long document : whitelist) {
+      if (cancelled.get()) {
+        break;
+      }
       if (document < 0) {
         continue;
       }
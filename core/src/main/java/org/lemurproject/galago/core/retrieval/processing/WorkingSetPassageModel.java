@@ -13,6 +13,7 @@ import org.lemurproject.galago.utility.Parameters;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
 /**
@@ -90,7 +91,11 @@ public class WorkingSetPassageModel extends ProcessingModel {
     FixedSizeMinHeap<ScoredPassage> queue = new FixedSizeMinHeap(ScoredPassage.class, requested, new ScoredPassage.ScoredPassageComparator());
 
     // now there should be an iterator at the root of this tree
+    AtomicBoolean cancelled = getCancellation();
     for (long document : whitelist) {
+      if (cancelled.get()) {
+        break;
+      }
       if (document < 0) {
         continue;
       }
@@ -0,0 +1,336 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.retrieval.rpc;
+
+import org.lemurproject.galago.core.index.stats.FieldStatistics;
+import org.lemurproject.galago.core.index.stats.IndexPartStatistics;
+import org.lemurproject.galago.core.index.stats.NodeStatistics;
+import org.lemurproject.galago.core.parse.Document;
+import org.lemurproject.galago.core.parse.Document.DocumentComponents;
+import org.lemurproject.galago.core.retrieval.Results;
+import org.lemurproject.galago.core.retrieval.Retrieval;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.NodeType;
+import org.lemurproject.galago.core.retrieval.query.QueryType;
+import org.lemurproject.galago.core.retrieval.query.StructuredQuery;
+import org.lemurproject.galago.core.tokenize.Tokenizer;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Client side of the binary retrieval protocol (see RetrievalServer).
+ *
+ * Unlike ProxyRetrieval, connections are persistent: up to "rpcPoolSize"
+ * idle sockets are kept for reuse, and each call is a single
+ * length-prefixed frame in each direction. executeQueries pipelines a
+ * whole batch of queries down one connection before reading any answers.
+ *
+ * Index paths of the form galago://host:port open one of these through
+ * RetrievalFactory.
+ */
+public class RemoteRetrieval implements Retrieval {
+
+  public static final String SCHEME = "galago://";
+
+  private final String host;
+  private final int port;
+  private final int timeout;
+  private final ArrayBlockingQueue<Connection> idle;
+  private volatile boolean closed = false;
+
+  public RemoteRetrieval(String url, Parameters parameters) {
+    String address = url.startsWith(SCHEME) ? url.substring(SCHEME.length()) : url;
+    if (address.endsWith("/")) {
+      address = address.substring(0, address.length() - 1);
+    }
+    int colon = address.lastIndexOf(':');
+    if (colon < 0) {
+      throw new IllegalArgumentException("Remote retrieval needs a host:port, found: " + url);
+    }
+    this.host = address.substring(0, colon);
+    this.port = Integer.parseInt(address.substring(colon + 1));
+    this.timeout = (int) parameters.get("rpcTimeout", 0L);
+    this.idle = new ArrayBlockingQueue<>((int) parameters.get("rpcPoolSize", 8L));
+  }
+
+  public RemoteRetrieval(String host, int port, Parameters parameters) {
+    this(host + ":" + port, parameters);
+  }
+
+  /** Writes the arguments of one call. */
+  private interface Request {
+    void write(DataOutputStream out) throws Exception;
+  }
+
+  /** Reads the return value of one call. */
+  private interface Response<T> {
+    T read(DataInputStream in) throws Exception;
+  }
+
+  private static final class Connection implements Closeable {
+    final Socket socket;
+    final DataInputStream in;
+    final DataOutputStream out;
+
+    Connection(String host, int port, int timeout) throws IOException {
+      socket = new Socket();
+      socket.setTcpNoDelay(true);
+      socket.setSoTimeout(timeout);
+      socket.connect(new InetSocketAddress(host, port), timeout);
+      in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+      out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+    }
+
+    @Override
+    public void close() throws IOException {
+      socket.close();
+    }
+  }
+
+  private Connection borrow() throws IOException {
+    if (closed) {
+      throw new IOException("RemoteRetrieval to " + host + ":" + port + " is closed.");
+    }
+    Connection c = idle.poll();
+    return (c != null) ? c : new Connection(host, port, timeout);
+  }
+
+  private void release(Connection c) throws IOException {
+    if (closed || !idle.offer(c)) {
+      c.close();
+    }
+  }
+
+  private static void writeFrame(DataOutputStream out, RetrievalMethod method, Request request) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream frame = new DataOutputStream(bytes);
+    frame.writeByte(method.opcode());
+    request.write(frame);
+    frame.flush();
+    out.writeInt(bytes.size());
+    bytes.writeTo(out);
+  }
+
+  private static <T> T readFrame(DataInputStream in, Response<T> response) throws Exception {
+    int length = in.readInt();
+    byte status = in.readByte();
+    if (status != RetrievalServer.STATUS_OK) {
+      String message = RetrievalCodec.readString(in);
+      throw new IOException("Remote retrieval failed: " + message);
+    }
+    assert length > 0;
+    return response.read(in);
+  }
+
+  private <T> T call(RetrievalMethod method, Request request, Response<T> response) throws Exception {
+    Connection c = borrow();
+    T result;
+    try {
+      writeFrame(c.out, method, request);
+      c.out.flush();
+      result = readFrame(c.in, response);
+    } catch (Exception e) {
+      // the stream may be out of step with the server now; don't reuse it.
+      c.close();
+      throw e;
+    }
+    release(c);
+    return result;
+  }
+
+  /**
+   * Wraps calls whose interface signature only allows IOException.
+   */
+  private <T> T callIO(RetrievalMethod method, Request request, Response<T> response) throws IOException {
+    try {
+      return call(method, request, response);
+    } catch (IOException | RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException(e);
+    }
+  }
+
+  private Results readResults(DataInputStream in, Node root) throws IOException {
+    Results results = new Results(this, root);
+    RetrievalCodec.readResults(in, results);
+    return results;
+  }
+
+  /**
+   * Executes a batch of queries over one connection. All requests are sent
+   * before the first response is read, so the batch costs about one round
+   * trip plus server time.
+   */
+  public List<Results> executeQueries(final List<Node> roots, final List<Parameters> parameters) throws Exception {
+    assert roots.size() == parameters.size();
+    Connection c = borrow();
+    List<Results> output = new ArrayList<>(roots.size());
+    try {
+      for (int i = 0; i < roots.size(); i++) {
+        final Node root = roots.get(i);
+        final Parameters p = parameters.get(i);
+        writeFrame(c.out, RetrievalMethod.EXECUTE_QUERY, out -> {
+          RetrievalCodec.writeNode(out, root);
+          RetrievalCodec.writeParameters(out, p);
+        });
+      }
+      c.out.flush();
+      for (Node root : roots) {
+        output.add(readFrame(c.in, in -> readResults(in, root)));
+      }
+    } catch (Exception e) {
+      c.close();
+      throw e;
+    }
+    release(c);
+    return output;
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    Connection c;
+    while ((c = idle.poll()) != null) {
+      c.close();
+    }
+  }
+
+  @Override
+  public Parameters getGlobalParameters() {
+    try {
+      return callIO(RetrievalMethod.GET_GLOBAL_PARAMETERS, out -> { }, RetrievalCodec::readParameters);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public Parameters getAvailableParts() throws IOException {
+    return callIO(RetrievalMethod.GET_AVAILABLE_PARTS, out -> { }, RetrievalCodec::readParameters);
+  }
+
+  @Override
+  public Document getDocument(String identifier, DocumentComponents p) throws IOException {
+    return callIO(RetrievalMethod.GET_DOCUMENT, out -> {
+      RetrievalCodec.writeString(out, identifier);
+      RetrievalCodec.writeComponents(out, p);
+    }, RetrievalCodec::readDocument);
+  }
+
+  @Override
+  public Long getDocumentId(String docname) throws IOException {
+    return callIO(RetrievalMethod.GET_DOCUMENT_ID, out -> RetrievalCodec.writeString(out, docname), RetrievalCodec::readLong);
+  }
+
+  @Override
+  public Map<String, Document> getDocuments(List<String> identifier, DocumentComponents p) throws IOException {
+    return callIO(RetrievalMethod.GET_DOCUMENTS, out -> {
+      RetrievalCodec.writeStringList(out, identifier);
+      RetrievalCodec.writeComponents(out, p);
+    }, RetrievalCodec::readDocuments);
+  }
+
+  @Override
+  public NodeType getNodeType(Node node) throws Exception {
+    return call(RetrievalMethod.GET_NODE_TYPE, out -> RetrievalCodec.writeNode(out, node), RetrievalCodec::readNodeType);
+  }
+
+  @Override
+  public QueryType getQueryType(Node node) throws Exception {
+    return call(RetrievalMethod.GET_QUERY_TYPE, out -> RetrievalCodec.writeNode(out, node), RetrievalCodec::readQueryType);
+  }
+
+  @Override
+  public Node transformQuery(Node root, Parameters queryParams) throws Exception {
+    return call(RetrievalMethod.TRANSFORM_QUERY, out -> {
+      RetrievalCodec.writeNode(out, root);
+      RetrievalCodec.writeParameters(out, queryParams);
+    }, RetrievalCodec::readNode);
+  }
+
+  @Override
+  public Results executeQuery(Node root) throws Exception {
+    return executeQuery(root, Parameters.create());
+  }
+
+  @Override
+  public Results executeQuery(Node root, Parameters parameters) throws Exception {
+    return call(RetrievalMethod.EXECUTE_QUERY, out -> {
+      RetrievalCodec.writeNode(out, root);
+      RetrievalCodec.writeParameters(out, parameters);
+    }, in -> readResults(in, root));
+  }
+
+  @Override
+  public IndexPartStatistics getIndexPartStatistics(String partName) throws IOException {
+    return callIO(RetrievalMethod.GET_INDEX_PART_STATISTICS, out -> RetrievalCodec.writeString(out, partName), RetrievalCodec::readIndexPartStatistics);
+  }
+
+  @Override
+  public FieldStatistics getCollectionStatistics(String nodeString) throws Exception {
+    return getCollectionStatistics(StructuredQuery.parse(nodeString));
+  }
+
+  @Override
+  public FieldStatistics getCollectionStatistics(Node node) throws Exception {
+    return call(RetrievalMethod.GET_COLLECTION_STATISTICS, out -> RetrievalCodec.writeNode(out, node), RetrievalCodec::readFieldStatistics);
+  }
+
+  @Override
+  public NodeStatistics getNodeStatistics(String nodeString) throws Exception {
+    return getNodeStatistics(StructuredQuery.parse(nodeString));
+  }
+
+  @Override
+  public NodeStatistics getNodeStatistics(Node node) throws Exception {
+    return call(RetrievalMethod.GET_NODE_STATISTICS, out -> RetrievalCodec.writeNode(out, node), RetrievalCodec::readNodeStatistics);
+  }
+
+  @Override
+  public Integer getDocumentLength(Long docid) throws IOException {
+    return callIO(RetrievalMethod.GET_DOCUMENT_LENGTH_BY_ID, out -> RetrievalCodec.writeLong(out, docid), RetrievalCodec::readInteger);
+  }
+
+  @Override
+  public Integer getDocumentLength(String docname) throws IOException {
+    return callIO(RetrievalMethod.GET_DOCUMENT_LENGTH_BY_NAME, out -> RetrievalCodec.writeString(out, docname), RetrievalCodec::readInteger);
+  }
+
+  @Override
+  public String getDocumentName(Long docid) throws IOException {
+    return callIO(RetrievalMethod.GET_DOCUMENT_NAME, out -> RetrievalCodec.writeLong(out, docid), RetrievalCodec::readString);
+  }
+
+  @Override
+  public void addNodeToCache(Node node) throws Exception {
+    call(RetrievalMethod.ADD_NODE_TO_CACHE, out -> RetrievalCodec.writeNode(out, node), in -> null);
+  }
+
+  @Override
+  public void addAllNodesToCache(Node node) throws Exception {
+    call(RetrievalMethod.ADD_ALL_NODES_TO_CACHE, out -> RetrievalCodec.writeNode(out, node), in -> null);
+  }
+
+  @Override
+  public Tokenizer getTokenizer() {
+    return Tokenizer.create(getGlobalParameters());
+  }
+
+  @Override
+  public String toString() {
+    return SCHEME + host + ":" + port;
+  }
+}
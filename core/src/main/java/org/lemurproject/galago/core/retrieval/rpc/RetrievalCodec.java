@@ -0,0 +1,368 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.retrieval.rpc;
+
+import org.lemurproject.galago.core.index.stats.FieldStatistics;
+import org.lemurproject.galago.core.index.stats.IndexPartStatistics;
+import org.lemurproject.galago.core.index.stats.NodeStatistics;
+import org.lemurproject.galago.core.parse.Document;
+import org.lemurproject.galago.core.parse.Document.DocumentComponents;
+import org.lemurproject.galago.core.parse.Tag;
+import org.lemurproject.galago.core.retrieval.Results;
+import org.lemurproject.galago.core.retrieval.ScoredDocument;
+import org.lemurproject.galago.core.retrieval.ScoredPassage;
+import org.lemurproject.galago.core.retrieval.iterator.BaseIterator;
+import org.lemurproject.galago.core.retrieval.processing.ProcessingModel;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.NodeType;
+import org.lemurproject.galago.core.retrieval.query.QueryType;
+import org.lemurproject.galago.core.retrieval.query.StructuredQuery;
+import org.lemurproject.galago.utility.ByteUtil;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary encodings of the arguments and return values of the Retrieval
+ * interface, as used by RemoteRetrieval and RetrievalServer.
+ *
+ * Strings are written as a length-prefixed UTF-8 byte array (length -1 is
+ * null), so there is no 64k limit as with writeUTF. Query trees and
+ * parameters travel in their usual text forms; everything else is written
+ * field by field.
+ */
+public class RetrievalCodec {
+
+  public static void writeString(DataOutputStream out, String str) throws IOException {
+    if (str == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] data = ByteUtil.fromString(str);
+    out.writeInt(data.length);
+    out.write(data);
+  }
+
+  public static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] data = new byte[length];
+    in.readFully(data);
+    return ByteUtil.toString(data);
+  }
+
+  public static void writeStringMap(DataOutputStream out, Map<String, String> map) throws IOException {
+    if (map == null) {
+      out.writeInt(-1);
+      return;
+    }
+    out.writeInt(map.size());
+    for (Map.Entry<String, String> kv : map.entrySet()) {
+      writeString(out, kv.getKey());
+      writeString(out, kv.getValue());
+    }
+  }
+
+  public static Map<String, String> readStringMap(DataInputStream in) throws IOException {
+    int size = in.readInt();
+    if (size < 0) {
+      return null;
+    }
+    Map<String, String> map = new HashMap<>(size * 2);
+    for (int i = 0; i < size; i++) {
+      String key = readString(in);
+      map.put(key, readString(in));
+    }
+    return map;
+  }
+
+  public static void writeStringList(DataOutputStream out, List<String> list) throws IOException {
+    if (list == null) {
+      out.writeInt(-1);
+      return;
+    }
+    out.writeInt(list.size());
+    for (String str : list) {
+      writeString(out, str);
+    }
+  }
+
+  public static List<String> readStringList(DataInputStream in) throws IOException {
+    int size = in.readInt();
+    if (size < 0) {
+      return null;
+    }
+    List<String> list = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      list.add(readString(in));
+    }
+    return list;
+  }
+
+  public static void writeParameters(DataOutputStream out, Parameters p) throws IOException {
+    writeString(out, (p == null) ? null : p.toString());
+  }
+
+  public static Parameters readParameters(DataInputStream in) throws IOException {
+    String json = readString(in);
+    return (json == null) ? null : Parameters.parseString(json);
+  }
+
+  public static void writeNode(DataOutputStream out, Node node) throws IOException {
+    writeString(out, (node == null) ? null : node.toString());
+  }
+
+  public static Node readNode(DataInputStream in) throws IOException {
+    String query = readString(in);
+    return (query == null) ? null : StructuredQuery.parse(query);
+  }
+
+  public static void writeLong(DataOutputStream out, Long value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeLong(value);
+    }
+  }
+
+  public static Long readLong(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readLong() : null;
+  }
+
+  public static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeInt(value);
+    }
+  }
+
+  public static Integer readInteger(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readInt() : null;
+  }
+
+  public static void writeComponents(DataOutputStream out, DocumentComponents dc) throws IOException {
+    if (dc == null) {
+      dc = new DocumentComponents();
+    }
+    out.writeBoolean(dc.text);
+    out.writeBoolean(dc.metadata);
+    out.writeBoolean(dc.tokenize);
+    out.writeInt(dc.subTextStart);
+    out.writeInt(dc.subTextLen);
+  }
+
+  public static DocumentComponents readComponents(DataInputStream in) throws IOException {
+    DocumentComponents dc = new DocumentComponents(in.readBoolean(), in.readBoolean(), in.readBoolean());
+    dc.subTextStart = in.readInt();
+    dc.subTextLen = in.readInt();
+    return dc;
+  }
+
+  public static void writeDocument(DataOutputStream out, Document doc) throws IOException {
+    out.writeBoolean(doc != null);
+    if (doc == null) {
+      return;
+    }
+    out.writeLong(doc.identifier);
+    writeString(out, doc.name);
+    writeStringMap(out, doc.metadata);
+    writeString(out, doc.text);
+    writeStringList(out, doc.terms);
+    if (doc.tags == null) {
+      out.writeInt(-1);
+    } else {
+      out.writeInt(doc.tags.size());
+      for (Tag tag : doc.tags) {
+        writeString(out, tag.name);
+        writeStringMap(out, tag.attributes);
+        out.writeInt(tag.begin);
+        out.writeInt(tag.end);
+        out.writeInt(tag.charBegin);
+        out.writeInt(tag.charEnd);
+      }
+    }
+  }
+
+  public static Document readDocument(DataInputStream in) throws IOException {
+    if (!in.readBoolean()) {
+      return null;
+    }
+    Document doc = new Document();
+    doc.identifier = in.readLong();
+    doc.name = readString(in);
+    doc.metadata = readStringMap(in);
+    doc.text = readString(in);
+    doc.terms = readStringList(in);
+    int numTags = in.readInt();
+    if (numTags >= 0) {
+      doc.tags = new ArrayList<>(numTags);
+      for (int i = 0; i < numTags; i++) {
+        String name = readString(in);
+        Map<String, String> attributes = readStringMap(in);
+        doc.tags.add(new Tag(name, attributes, in.readInt(), in.readInt(), in.readInt(), in.readInt()));
+      }
+    }
+    return doc;
+  }
+
+  public static void writeDocuments(DataOutputStream out, Map<String, Document> docs) throws IOException {
+    out.writeInt(docs.size());
+    for (Map.Entry<String, Document> kv : docs.entrySet()) {
+      writeString(out, kv.getKey());
+      writeDocument(out, kv.getValue());
+    }
+  }
+
+  public static Map<String, Document> readDocuments(DataInputStream in) throws IOException {
+    int size = in.readInt();
+    Map<String, Document> docs = new HashMap<>(size * 2);
+    for (int i = 0; i < size; i++) {
+      String key = readString(in);
+      docs.put(key, readDocument(in));
+    }
+    return docs;
+  }
+
+  /**
+   * Writes the scored documents (and passages) of a result list. Annotations
+   * are not sent.
+   */
+  public static void writeResults(DataOutputStream out, Results results) throws IOException {
+    writeString(out, (results.processingModel == null) ? null : results.processingModel.getName());
+    out.writeInt(results.scoredDocuments.size());
+    for (ScoredDocument sd : results.scoredDocuments) {
+      boolean passage = sd instanceof ScoredPassage;
+      out.writeBoolean(passage);
+      writeString(out, sd.documentName);
+      writeString(out, sd.source);
+      out.writeLong(sd.document);
+      out.writeDouble(sd.score);
+      out.writeInt(sd.rank);
+      if (passage) {
+        out.writeInt(((ScoredPassage) sd).begin);
+        out.writeInt(((ScoredPassage) sd).end);
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  public static void readResults(DataInputStream in, Results results) throws IOException {
+    String modelName = readString(in);
+    if (modelName != null) {
+      try {
+        results.processingModel = (Class<? extends ProcessingModel>) Class.forName(modelName);
+      } catch (ClassNotFoundException e) {
+        // a custom processing model on the server side; not fatal.
+        results.processingModel = null;
+      }
+    }
+    int size = in.readInt();
+    List<ScoredDocument> docs = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      ScoredDocument sd = in.readBoolean() ? new ScoredPassage() : new ScoredDocument();
+      sd.documentName = readString(in);
+      sd.source = readString(in);
+      sd.document = in.readLong();
+      sd.score = in.readDouble();
+      sd.rank = in.readInt();
+      if (sd instanceof ScoredPassage) {
+        ((ScoredPassage) sd).begin = in.readInt();
+        ((ScoredPassage) sd).end = in.readInt();
+      }
+      docs.add(sd);
+    }
+    results.scoredDocuments = docs;
+  }
+
+  public static void writeFieldStatistics(DataOutputStream out, FieldStatistics fs) throws IOException {
+    writeString(out, fs.fieldName);
+    out.writeLong(fs.collectionLength);
+    out.writeLong(fs.documentCount);
+    out.writeLong(fs.maxLength);
+    out.writeLong(fs.minLength);
+    out.writeDouble(fs.avgLength);
+    out.writeLong(fs.nonZeroLenDocCount);
+    out.writeLong(fs.firstDocId);
+    out.writeLong(fs.lastDocId);
+  }
+
+  public static FieldStatistics readFieldStatistics(DataInputStream in) throws IOException {
+    FieldStatistics fs = new FieldStatistics();
+    fs.fieldName = readString(in);
+    fs.collectionLength = in.readLong();
+    fs.documentCount = in.readLong();
+    fs.maxLength = in.readLong();
+    fs.minLength = in.readLong();
+    fs.avgLength = in.readDouble();
+    fs.nonZeroLenDocCount = in.readLong();
+    fs.firstDocId = in.readLong();
+    fs.lastDocId = in.readLong();
+    return fs;
+  }
+
+  public static void writeNodeStatistics(DataOutputStream out, NodeStatistics ns) throws IOException {
+    writeString(out, ns.node);
+    out.writeLong(ns.nodeFrequency);
+    out.writeLong(ns.nodeDocumentCount);
+    out.writeLong(ns.maximumCount);
+  }
+
+  public static NodeStatistics readNodeStatistics(DataInputStream in) throws IOException {
+    NodeStatistics ns = new NodeStatistics();
+    ns.node = readString(in);
+    ns.nodeFrequency = in.readLong();
+    ns.nodeDocumentCount = in.readLong();
+    ns.maximumCount = in.readLong();
+    return ns;
+  }
+
+  public static void writeIndexPartStatistics(DataOutputStream out, IndexPartStatistics ps) throws IOException {
+    writeString(out, ps.partName);
+    out.writeLong(ps.collectionLength);
+    out.writeLong(ps.vocabCount);
+    out.writeLong(ps.highestDocumentCount);
+    out.writeLong(ps.highestFrequency);
+  }
+
+  public static IndexPartStatistics readIndexPartStatistics(DataInputStream in) throws IOException {
+    IndexPartStatistics ps = new IndexPartStatistics();
+    ps.partName = readString(in);
+    ps.collectionLength = in.readLong();
+    ps.vocabCount = in.readLong();
+    ps.highestDocumentCount = in.readLong();
+    ps.highestFrequency = in.readLong();
+    return ps;
+  }
+
+  public static void writeNodeType(DataOutputStream out, NodeType type) throws IOException {
+    writeString(out, (type == null) ? null : type.getIteratorClass().getName());
+  }
+
+  @SuppressWarnings("unchecked")
+  public static NodeType readNodeType(DataInputStream in) throws IOException {
+    String className = readString(in);
+    if (className == null) {
+      return null;
+    }
+    try {
+      return new NodeType((Class<? extends BaseIterator>) Class.forName(className));
+    } catch (ClassNotFoundException e) {
+      throw new IOException("Unknown iterator class from remote retrieval: " + className, e);
+    }
+  }
+
+  public static void writeQueryType(DataOutputStream out, QueryType type) throws IOException {
+    writeString(out, (type == null) ? null : type.name());
+  }
+
+  public static QueryType readQueryType(DataInputStream in) throws IOException {
+    String name = readString(in);
+    return (name == null) ? null : QueryType.valueOf(name);
+  }
+}
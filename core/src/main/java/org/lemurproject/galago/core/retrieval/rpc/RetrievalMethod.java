@@ -0,0 +1,39 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.retrieval.rpc;
+
+/**
+ * The remote calls understood by RetrievalServer. The ordinal is the opcode
+ * on the wire, so new methods may only be appended.
+ */
+public enum RetrievalMethod {
+  GET_GLOBAL_PARAMETERS,
+  GET_AVAILABLE_PARTS,
+  GET_DOCUMENT,
+  GET_DOCUMENT_ID,
+  GET_DOCUMENTS,
+  GET_NODE_TYPE,
+  GET_QUERY_TYPE,
+  TRANSFORM_QUERY,
+  EXECUTE_QUERY,
+  GET_INDEX_PART_STATISTICS,
+  GET_COLLECTION_STATISTICS,
+  GET_NODE_STATISTICS,
+  GET_DOCUMENT_LENGTH_BY_ID,
+  GET_DOCUMENT_LENGTH_BY_NAME,
+  GET_DOCUMENT_NAME,
+  ADD_NODE_TO_CACHE,
+  ADD_ALL_NODES_TO_CACHE;
+
+  private static final RetrievalMethod[] byOpcode = values();
+
+  public byte opcode() {
+    return (byte) ordinal();
+  }
+
+  public static RetrievalMethod fromOpcode(int opcode) {
+    if (opcode < 0 || opcode >= byOpcode.length) {
+      throw new IllegalArgumentException("Unknown retrieval opcode: " + opcode);
+    }
+    return byOpcode[opcode];
+  }
+}
@@ -0,0 +1,245 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.retrieval.rpc;
+
+import org.lemurproject.galago.core.parse.Document.DocumentComponents;
+import org.lemurproject.galago.core.retrieval.Retrieval;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serves a Retrieval over the binary protocol used by RemoteRetrieval.
+ *
+ * Every frame is [int length][payload]. A request payload is an opcode
+ * (RetrievalMethod) followed by its arguments; a response payload is a
+ * status byte followed by the return value, or by an error message.
+ *
+ * Each connection gets its own thread, and requests on a connection are
+ * answered in order. Clients may pipeline: responses are only flushed once
+ * no further requests are waiting in the input buffer.
+ *
+ * @see RemoteRetrieval
+ * @see RetrievalCodec
+ */
+public class RetrievalServer implements Closeable {
+
+  private static final Logger logger = Logger.getLogger(RetrievalServer.class.getName());
+
+  public static final byte STATUS_OK = 0;
+  public static final byte STATUS_ERROR = 1;
+
+  private final Retrieval retrieval;
+  private final ServerSocket serverSocket;
+  private final ExecutorService connectionThreads;
+  private final Set<Socket> connections = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+  private final Thread acceptThread;
+  private volatile boolean running = true;
+
+  public RetrievalServer(Retrieval retrieval, int port) throws IOException {
+    this.retrieval = retrieval;
+    this.serverSocket = new ServerSocket();
+    this.serverSocket.setReuseAddress(true);
+    this.serverSocket.bind(new InetSocketAddress(port));
+    this.connectionThreads = Executors.newCachedThreadPool(r -> {
+      Thread t = new Thread(r, "retrieval-server-connection");
+      t.setDaemon(true);
+      return t;
+    });
+    this.acceptThread = new Thread(this::acceptLoop, "retrieval-server-accept");
+    this.acceptThread.setDaemon(true);
+  }
+
+  /**
+   * Opens a server on the given port (0 picks any free port) and starts
+   * accepting connections.
+   */
+  public static RetrievalServer start(Retrieval retrieval, int port) throws IOException {
+    RetrievalServer server = new RetrievalServer(retrieval, port);
+    server.acceptThread.start();
+    return server;
+  }
+
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  /** The index path to hand to RetrievalFactory to reach this server. */
+  public String getURL(String hostName) {
+    return RemoteRetrieval.SCHEME + hostName + ":" + getPort();
+  }
+
+  private void acceptLoop() {
+    while (running) {
+      try {
+        final Socket socket = serverSocket.accept();
+        socket.setTcpNoDelay(true);
+        connections.add(socket);
+        connectionThreads.submit(() -> serve(socket));
+      } catch (SocketException e) {
+        // thrown by accept when the server socket is closed.
+        if (running) {
+          logger.log(Level.WARNING, "Retrieval server socket failed", e);
+        }
+        return;
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Failed to accept retrieval connection", e);
+      }
+    }
+  }
+
+  private void serve(Socket socket) {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16))) {
+      byte[] buffer = new byte[1024];
+      ByteArrayOutputStream response = new ByteArrayOutputStream();
+
+      while (running) {
+        int length;
+        try {
+          length = in.readInt();
+        } catch (EOFException e) {
+          // client hung up
+          return;
+        }
+        if (buffer.length < length) {
+          buffer = new byte[Math.max(length, buffer.length * 2)];
+        }
+        in.readFully(buffer, 0, length);
+
+        response.reset();
+        DataOutputStream frame = new DataOutputStream(response);
+        try {
+          DataInputStream request = new DataInputStream(new ByteArrayInputStream(buffer, 0, length));
+          RetrievalMethod method = RetrievalMethod.fromOpcode(request.readUnsignedByte());
+          frame.writeByte(STATUS_OK);
+          dispatch(method, request, frame);
+        } catch (Exception e) {
+          logger.log(Level.INFO, "Remote retrieval call failed", e);
+          response.reset();
+          frame = new DataOutputStream(response);
+          frame.writeByte(STATUS_ERROR);
+          RetrievalCodec.writeString(frame, e.toString());
+        }
+        frame.flush();
+
+        out.writeInt(response.size());
+        response.writeTo(out);
+        // pipelined requests are answered in one write
+        if (in.available() == 0) {
+          out.flush();
+        }
+      }
+    } catch (IOException e) {
+      if (running) {
+        logger.log(Level.INFO, "Retrieval connection closed", e);
+      }
+    } finally {
+      connections.remove(socket);
+    }
+  }
+
+  private void dispatch(RetrievalMethod method, DataInputStream in, DataOutputStream out) throws Exception {
+    switch (method) {
+      case GET_GLOBAL_PARAMETERS:
+        RetrievalCodec.writeParameters(out, retrieval.getGlobalParameters());
+        break;
+      case GET_AVAILABLE_PARTS:
+        RetrievalCodec.writeParameters(out, retrieval.getAvailableParts());
+        break;
+      case GET_DOCUMENT: {
+        String identifier = RetrievalCodec.readString(in);
+        DocumentComponents dc = RetrievalCodec.readComponents(in);
+        RetrievalCodec.writeDocument(out, retrieval.getDocument(identifier, dc));
+        break;
+      }
+      case GET_DOCUMENT_ID:
+        RetrievalCodec.writeLong(out, retrieval.getDocumentId(RetrievalCodec.readString(in)));
+        break;
+      case GET_DOCUMENTS: {
+        List<String> identifiers = RetrievalCodec.readStringList(in);
+        DocumentComponents dc = RetrievalCodec.readComponents(in);
+        RetrievalCodec.writeDocuments(out, retrieval.getDocuments(identifiers, dc));
+        break;
+      }
+      case GET_NODE_TYPE:
+        RetrievalCodec.writeNodeType(out, retrieval.getNodeType(RetrievalCodec.readNode(in)));
+        break;
+      case GET_QUERY_TYPE:
+        RetrievalCodec.writeQueryType(out, retrieval.getQueryType(RetrievalCodec.readNode(in)));
+        break;
+      case TRANSFORM_QUERY: {
+        Node root = RetrievalCodec.readNode(in);
+        Parameters qp = RetrievalCodec.readParameters(in);
+        RetrievalCodec.writeNode(out, retrieval.transformQuery(root, qp));
+        break;
+      }
+      case EXECUTE_QUERY: {
+        Node root = RetrievalCodec.readNode(in);
+        Parameters qp = RetrievalCodec.readParameters(in);
+        RetrievalCodec.writeResults(out, retrieval.executeQuery(root, qp));
+        break;
+      }
+      case GET_INDEX_PART_STATISTICS:
+        RetrievalCodec.writeIndexPartStatistics(out, retrieval.getIndexPartStatistics(RetrievalCodec.readString(in)));
+        break;
+      case GET_COLLECTION_STATISTICS:
+        RetrievalCodec.writeFieldStatistics(out, retrieval.getCollectionStatistics(RetrievalCodec.readNode(in)));
+        break;
+      case GET_NODE_STATISTICS:
+        RetrievalCodec.writeNodeStatistics(out, retrieval.getNodeStatistics(RetrievalCodec.readNode(in)));
+        break;
+      case GET_DOCUMENT_LENGTH_BY_ID:
+        RetrievalCodec.writeInteger(out, retrieval.getDocumentLength(RetrievalCodec.readLong(in)));
+        break;
+      case GET_DOCUMENT_LENGTH_BY_NAME:
+        RetrievalCodec.writeInteger(out, retrieval.getDocumentLength(RetrievalCodec.readString(in)));
+        break;
+      case GET_DOCUMENT_NAME:
+        RetrievalCodec.writeString(out, retrieval.getDocumentName(RetrievalCodec.readLong(in)));
+        break;
+      case ADD_NODE_TO_CACHE:
+        retrieval.addNodeToCache(RetrievalCodec.readNode(in));
+        break;
+      case ADD_ALL_NODES_TO_CACHE:
+        retrieval.addAllNodesToCache(RetrievalCodec.readNode(in));
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported retrieval method: " + method);
+    }
+  }
+
+  /**
+   * Stops accepting connections and hangs up on open ones. The retrieval
+   * itself is left open.
+   */
+  @Override
+  public void close() throws IOException {
+    running = false;
+    serverSocket.close();
+    for (Socket socket : connections) {
+      socket.close();
+    }
+    connectionThreads.shutdownNow();
+  }
+}
@@ -0,0 +1,18 @@
+/*
+ * BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.retrieval.traversal;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Marks traversals that keep state while they traverse a query. Retrievals
+ * create a new instance of these for every query; all other traversals are
+ * shared by concurrent queries and must not keep per-query state in fields.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+public @interface PerQuery {
+}
@@ -16,43 +16,42 @@ import org.lemurproject.galago.utility.Parameters;
  */
 public class TransformRootTraversal extends Traversal {
 
-  // levels has to go away
-  int levels = 0;
-  QueryType qType;
   Retrieval retrieval;
   
   public TransformRootTraversal(Retrieval r) {
     this.retrieval = r;
   }
 
+  /**
+   * Only the root of the tree is transformed.
+   */
+  @Override
+  public Node traverse(Node tree, Parameters qp) throws Exception {
+    return afterNode(tree, qp);
+  }
+
   public void beforeNode(Node object, Parameters qp) throws Exception {
-    levels++;
   }
 
   public Node afterNode(Node original, Parameters qp) throws Exception {
-    levels--;
-    if (levels > 0) {
-      return original;
-    } else {
-      if (original.getNodeParameters().containsKey("queryType")) {
-        String type = original.getNodeParameters().getString("queryType");
-        if (type.equals("count")) {
-          return transformCountRoot(original);
-        } else if (type.equals("boolean")) {
-          return transformBooleanRoot(original);
-        } else {
-          return transformRankedRoot(original);
-        }
-      } else if (original.getOperator().equals("root")) {
-        // Not specified, and simply wrapped - have to assume ranked
-        return transformRankedRoot(original);
-      } else if (original.getOperator().equals("text")) {
-        // Need to wrap it in a combine since we're ranking
-        return transformRankedRoot(original);
+    if (original.getNodeParameters().containsKey("queryType")) {
+      String type = original.getNodeParameters().getString("queryType");
+      if (type.equals("count")) {
+        return transformCountRoot(original);
+      } else if (type.equals("boolean")) {
+        return transformBooleanRoot(original);
       } else {
-        // It's not a root node, so it's already got a query type. No more to do.
-        return original;
+        return transformRankedRoot(original);
       }
+    } else if (original.getOperator().equals("root")) {
+      // Not specified, and simply wrapped - have to assume ranked
+      return transformRankedRoot(original);
+    } else if (original.getOperator().equals("text")) {
+      // Need to wrap it in a combine since we're ranking
+      return transformRankedRoot(original);
+    } else {
+      // It's not a root node, so it's already got a query type. No more to do.
+      return original;
     }
   }
 
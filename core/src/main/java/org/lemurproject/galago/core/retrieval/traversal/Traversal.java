@@ -9,6 +9,10 @@ import org.lemurproject.galago.utility.Parameters;
  *
  * 'before's are pre-order traversals 'after's are post-order traversals
  *
+ * A retrieval shares one instance of each traversal between concurrent
+ * queries, so per-query state belongs in locals or the query parameters;
+ * traversals that need fields for it are marked with PerQuery.
+ *
  * @author trevor, sjh
  */
 public abstract class Traversal {
@@ -2,6 +2,7 @@
 package org.lemurproject.galago.core.tools;
 
 import org.lemurproject.galago.core.btree.format.SplitBTreeKeyWriter;
+import org.lemurproject.galago.core.corpus.CompactDocumentSerializer;
 import org.lemurproject.galago.core.index.corpus.*;
 import org.lemurproject.galago.core.parse.DocumentNumberer;
 import org.lemurproject.galago.core.parse.DocumentSource;
@@ -60,6 +61,7 @@ public class MakeCorpus extends AppFunction {
     stage.add(new StepInformation(KeyValuePairToDocument.class));
     p = Parameters.create();
     p.set("filename", outputCorpus);
+    p.set("documentSerializerClass", CompactDocumentSerializer.class.getName());
     if (corpusParameters.isLong("corpusBlockSize")) {
       p.set("blockSize", corpusParameters.getLong("corpusBlockSize"));
     }
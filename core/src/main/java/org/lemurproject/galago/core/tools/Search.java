@@ -14,6 +14,8 @@ import org.lemurproject.galago.core.retrieval.query.StructuredQuery;
 import org.lemurproject.galago.utility.Parameters;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -135,14 +137,21 @@ public class Search {
 
         result.transformedQuery = root;
 
-        DocumentComponents p1 = new DocumentComponents();
+        int endAt = Math.min(startAt + count, results.size());
 
-        for (int i = startAt; i < Math.min(startAt + count, results.size()); i++) {
-            String identifier = results.get(i).documentName;
-            Document document = null;
-            if (summarize) {
-                document = getDocument(identifier, p1);
+        // fetch the whole result page in one batch
+        Map<String, Document> documents = Collections.emptyMap();
+        if (summarize && startAt < endAt) {
+            List<String> identifiers = new ArrayList<String>();
+            for (int i = startAt; i < endAt; i++) {
+                identifiers.add(results.get(i).documentName);
             }
+            documents = getDocuments(identifiers, new DocumentComponents());
+        }
+
+        for (int i = startAt; i < endAt; i++) {
+            String identifier = results.get(i).documentName;
+            Document document = documents.get(identifier);
             SearchResultItem item = new SearchResultItem();
 
             item.rank = i + 1;
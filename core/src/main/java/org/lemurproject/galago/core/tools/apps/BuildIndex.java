@@ -2,14 +2,17 @@
 package org.lemurproject.galago.core.tools.apps;
 
 import org.lemurproject.galago.core.build.DocumentNameNumberExtractor;
+import org.lemurproject.galago.core.corpus.CompactDocumentSerializer;
 import org.lemurproject.galago.core.index.corpus.CorpusFolderWriter;
 import org.lemurproject.galago.core.index.corpus.CorpusReader;
 import org.lemurproject.galago.core.btree.format.SplitBTreeKeyWriter;
 import org.lemurproject.galago.core.index.disk.CountIndexWriter;
+import org.lemurproject.galago.core.index.disk.DiskForwardIndexWriter;
 import org.lemurproject.galago.core.index.disk.DiskNameReader;
 import org.lemurproject.galago.core.index.disk.PositionFieldIndexWriter;
 import org.lemurproject.galago.core.index.disk.PositionIndexWriter;
 import org.lemurproject.galago.core.index.merge.CorpusMerger;
+import org.lemurproject.galago.core.index.merge.MergeIndex;
 import org.lemurproject.galago.core.parse.*;
 import org.lemurproject.galago.core.parse.stem.KrovetzStemmer;
 import org.lemurproject.galago.core.parse.stem.NullStemmer;
@@ -18,6 +21,7 @@ import org.lemurproject.galago.core.window.ReduceNumberWordCount;
 import org.lemurproject.galago.utility.StreamUtil;
 import org.lemurproject.galago.utility.tools.AppFunction;
 import org.lemurproject.galago.core.types.*;
+import org.lemurproject.galago.tupleflow.FileUtility;
 import org.lemurproject.galago.tupleflow.Order;
 import org.lemurproject.galago.tupleflow.TupleflowAppUtil;
 import org.lemurproject.galago.utility.FSUtil;
@@ -30,7 +34,12 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.lemurproject.galago.utility.VersionInfo;
 
@@ -57,6 +66,9 @@ public class BuildIndex extends AppFunction {
     if (buildParameters.getBoolean("corpus")) {
       stage.addOutput("corpusKeys", new KeyValuePair.KeyOrder());
     }
+    if (buildParameters.getBoolean("forwardIndex")) {
+      stage.addOutput("termVectors", new KeyValuePair.KeyOrder());
+    }
     if (buildParameters.getBoolean("nonStemmedPostings")) {
       stage.addOutput("numberedPostings", new NumberWordPosition.WordDocumentPositionOrder());
     }
@@ -116,6 +128,12 @@ public class BuildIndex extends AppFunction {
               .addToGroup("corpus", Utility.getSorter(new KeyValuePair.KeyOrder()))
               .addToGroup("corpus", new OutputStepInformation("corpusKeys"));
     }
+    if (buildParameters.getBoolean("forwardIndex")) {
+      processingFork.addGroup("forwardIndex",
+              BuildStageTemplates.getExtractionSteps("termVectors",
+              TermVectorExtractor.class,
+              new KeyValuePair.KeyOrder()));
+    }
     if (buildParameters.getBoolean("nonStemmedPostings")) {
       processingFork.addGroup("postings",
               BuildStageTemplates.getExtractionSteps("numberedPostings",
@@ -140,8 +158,7 @@ public class BuildIndex extends AppFunction {
       for (String stemmer : buildParameters.getList("stemmer", String.class)) {
         String name = "counts-" + stemmer;
         processingFork.addGroup(name).addToGroup(name,
-            BuildStageTemplates.getStemmerStep(Parameters.create(),
-                Class.forName(buildParameters.getMap("stemmerClass").getString(stemmer))))
+            getStemmerStep(buildParameters, stemmer))
             .addToGroup(name, new StepInformation(UnigramCountExtractor.class))
             .addToGroup(name, Utility.getSorter(new NumberWordCount.WordDocumentOrder()))
             .addToGroup(name, new StepInformation(ReduceNumberWordCount.class))
@@ -154,8 +171,7 @@ public class BuildIndex extends AppFunction {
       for (String stemmer : buildParameters.getList("stemmer", String.class)) {
         String name = "postings-" + stemmer;
         processingFork.addGroup(name).addToGroup(name,
-            BuildStageTemplates.getStemmerStep(Parameters.create(),
-                Class.forName(buildParameters.getMap("stemmerClass").getString(stemmer))))
+            getStemmerStep(buildParameters, stemmer))
                 .addToGroup(name, new StepInformation(NumberedPostingsPositionExtractor.class))
                 .addToGroup(name, Utility.getSorter(new NumberWordPosition.WordDocumentPositionOrder()))
                 .addToGroup(name, new OutputStepInformation("numberedStemmedPostings-" + stemmer));
@@ -174,8 +190,7 @@ public class BuildIndex extends AppFunction {
         for (String stemmer : buildParameters.getMap("fieldIndexParameters").getList("stemmer", String.class)) {
           String name = "fieldIndex-" + stemmer;
           processingFork.addGroup(name).addToGroup(name,
-                  BuildStageTemplates.getStemmerStep(Parameters.create(),
-                  Class.forName(buildParameters.getMap("stemmerClass").getString(stemmer))))
+                  getStemmerStep(buildParameters, stemmer))
                   .addToGroup(name, new StepInformation(NumberedExtentPostingsExtractor.class))
                   .addToGroup(name, Utility.getSorter(new FieldNumberWordPosition.FieldWordDocumentPositionOrder()))
                   .addToGroup(name, new OutputStepInformation("numberedExtentPostings-" + stemmer));
@@ -223,6 +238,19 @@ public class BuildIndex extends AppFunction {
 //
 //    return stage;
 //  }
+
+  /**
+   * The named stemmer, reading its terms from a conflation part when one is
+   * given under 'stemmerConflations'.
+   */
+  private static StepInformation getStemmerStep(Parameters buildParameters, String stemmer) throws ClassNotFoundException {
+    Parameters stemmerParams = Parameters.create();
+    if (buildParameters.isMap("stemmerConflations") && buildParameters.getMap("stemmerConflations").isString(stemmer)) {
+      stemmerParams.set("conflations", buildParameters.getMap("stemmerConflations").getString(stemmer));
+    }
+    return new StepInformation(Class.forName(buildParameters.getMap("stemmerClass").getString(stemmer)), stemmerParams);
+  }
+
   public static Stage getWritePostingsStage(Parameters buildParameters, String stageName,
           String inputName, Order inputOrder, String indexName,
           Class indexWriter, String stemmerName) {
@@ -231,6 +259,7 @@ public class BuildIndex extends AppFunction {
     p.set("filename", buildParameters.getString("indexPath") + File.separator + indexName);
     p.set("skipping", buildParameters.getBoolean("skipping"));
     p.set("skipDistance", buildParameters.getLong("skipDistance"));
+    p.set("codec", buildParameters.get("codec", "vbyte"));
     if (stemmerName != null) {
       p.set("stemmer", buildParameters.getMap("stemmerClass").getString(stemmerName));
     }
@@ -304,6 +333,17 @@ public class BuildIndex extends AppFunction {
       globalParameters.set("skipDistance", 500);
     }
 
+    // codec selects the posting list encoding of postings and counts parts [optional]
+    // [default = vbyte]
+    if (globalParameters.containsKey("codec")) {
+      if (!globalParameters.isString("codec")
+              || !(globalParameters.getString("codec").equals("vbyte") || globalParameters.getString("codec").equals("block"))) {
+        errorLog.add("Parameter 'codec' should be either vbyte or block. Defaults to vbyte.");
+      }
+    } else {
+      globalParameters.set("codec", "vbyte");
+    }
+
 
     // corpus may be a boolean [optional parameter]
     // defaults to true
@@ -339,6 +379,8 @@ public class BuildIndex extends AppFunction {
       // we need a small block size because the stored values are small
       corpusParameters.set("blockSize", globalParameters.get("corpusBlockSize", 512));
       corpusParameters.set("filename", globalParameters.getString("indexPath") + File.separator + "corpus");
+      // stores terms and tags, so fetching tokenized documents needs no tokenizer
+      corpusParameters.set("documentSerializerClass", CompactDocumentSerializer.class.getName());
 
       // copy over the other parameters
       if (globalParameters.isMap("corpusParameters")) {
@@ -386,6 +428,26 @@ public class BuildIndex extends AppFunction {
       globalParameters.set("stemmedCounts", false);
     }
 
+    // forwardIndex may be a boolean [optional parameter]
+    // defaults to false
+    if (globalParameters.containsKey("forwardIndex")) {
+      if (!globalParameters.isBoolean("forwardIndex")) {
+        errorLog.add("Parameter 'forwardIndex' should be a boolean. Defaults to false.");
+      }
+    } else {
+      globalParameters.set("forwardIndex", false);
+    }
+
+    // shards may be a positive integer [optional parameter]
+    // defaults to 1, a single tupleflow job
+    if (globalParameters.containsKey("shards")) {
+      if (!globalParameters.isLong("shards") || globalParameters.getLong("shards") < 1) {
+        errorLog.add("Parameter 'shards' should be a positive integer. Defaults to 1.");
+      }
+    } else {
+      globalParameters.set("shards", 1);
+    }
+
     // stemmer must be a list of stemmers [optional parameter]
     //   possible values { null | porter | krovetz | <class> }
     if (globalParameters.containsKey("stemmer")) {
@@ -628,6 +690,16 @@ public class BuildIndex extends AppFunction {
       errorLog.add("One of ['nonStemmedPostings', 'stemmedPostings', 'stemmedCounts'] must be true.");
     }
 
+    // sharded builds are merged, so every part needs a merger
+    if (globalParameters.getLong("shards") > 1) {
+      if (!globalParameters.getMap("tokenizer").getMap("formats").getKeys().isEmpty()
+              || globalParameters.getBoolean("stemmedCounts")
+              || globalParameters.getBoolean("fieldIndex")
+              || globalParameters.getBoolean("forwardIndex")) {
+        errorLog.add("Parameter 'shards' can not be used with 'tokenizer/formats', 'stemmedCounts', 'fieldIndex' or 'forwardIndex': those parts can not be merged.");
+      }
+    }
+
     if (errorLog.isEmpty()) {
       return globalParameters;
     } else {
@@ -699,6 +771,13 @@ public class BuildIndex extends AppFunction {
         job.connect("parsePostings", "writeCorpusKeys", ConnectionAssignmentType.Combined);
       }
 
+      // forward index - a single writer numbers the terms
+      if (buildParameters.getBoolean("forwardIndex")) {
+        job.add(BuildStageTemplates.getGenericWriteStage("writeForwardIndex", new File(indexPath, "forward"), "termVectors",
+            DiskForwardIndexWriter.class, new KeyValuePair.KeyOrder(), Parameters.create()));
+        job.connect("parsePostings", "writeForwardIndex", ConnectionAssignmentType.Combined);
+      }
+
       // nonstemmedpostings
       if (buildParameters.getBoolean("nonStemmedPostings")) {
         job.add(getWritePostingsStage(buildParameters, "writePostings", "numberedPostings",
@@ -812,8 +891,20 @@ public class BuildIndex extends AppFunction {
             + "                           [default=[true]]\n"
             + "  --stemmer+porter|krovetz: Selects which stemmers to use.\n"
             + "                           [default=[porter]]\n"
+            + "  --stemmerConflations/{stemmer}=<path>: Stems terms found in this\n"
+            + "                           conflation part (see stemmer-conflation) by lookup.\n"
+            + "  --codec={vbyte|block}:   Selects the posting list encoding; block uses\n"
+            + "                           bit-packed blocks of 128 integers.\n"
+            + "                           [default=vbyte]\n"
             + "  --corpus={true|false}:   Selects to output a corpus folder.\n"
-            + "                           [default=true]\n\n"
+            + "                           [default=true]\n"
+            + "  --forwardIndex={true|false}: Selects to output the term counts of each\n"
+            + "                           document, used by relevance models.\n"
+            + "                           [default=false]\n"
+            + "  --shards={int > 0}:      Selects to build this many partial indexes at\n"
+            + "                           once, from contiguous groups of input files,\n"
+            + "                           then merge them into <index>.\n"
+            + "                           [default=1]\n\n"
             + "  --tokenizer/fields+{field-name}:   \n"
             + "                           Selects field parts to index.\n"
             + "                           [omitted]\n\n"
@@ -822,11 +913,14 @@ public class BuildIndex extends AppFunction {
   }
 
   public static void execute(Parameters p, PrintStream output) throws Exception {
-    Job job = getIndexJob(p);
-
     long startJobTime = System.currentTimeMillis();
-    if (job != null) {
-      TupleflowAppUtil.runTupleFlowJob(job, p, output);
+    if (p.get("shards", 1L) > 1) {
+      buildShards(p, output);
+    } else {
+      Job job = getIndexJob(p);
+      if (job != null) {
+        TupleflowAppUtil.runTupleFlowJob(job, p, output);
+      }
     }
     long endJobTime = System.currentTimeMillis();
 
@@ -847,6 +941,108 @@ public class BuildIndex extends AppFunction {
     output.println("Documents Indexed: " + namesParams.getLong("keyCount") + ".");
   }
 
+  /**
+   * Builds a partial index from each group of input files concurrently, then
+   * merges them into indexPath. The documents of each shard are numbered
+   * after those of the previous shard.
+   */
+  private static void buildShards(Parameters p, PrintStream output) throws Exception {
+    Parameters buildParameters = checkBuildIndexParameters(p.clone());
+    if (buildParameters == null) {
+      return;
+    }
+    String indexPath = buildParameters.getString("indexPath");
+    List<List<String>> groups = getShardInputs(buildParameters, (int) buildParameters.getLong("shards"));
+    if (groups.isEmpty()) {
+      throw new IOException("No input files were found to build " + indexPath + " from: " + buildParameters.getAsList("inputPath", String.class));
+    }
+
+    // galagoJobDir is shared with other builds: work in a fresh folder under it
+    File shardFolder;
+    if (p.isString("galagoJobDir")) {
+      File jobDir = new File(p.getString("galagoJobDir"));
+      jobDir.mkdirs();
+      shardFolder = File.createTempFile("shards", "", jobDir);
+      shardFolder.delete();
+      shardFolder.mkdir();
+    } else {
+      shardFolder = FileUtility.createTemporaryDirectory();
+    }
+    ExecutorService threads = Executors.newFixedThreadPool(groups.size());
+    try {
+      List<String> shardPaths = new ArrayList<>();
+      List<Future<Boolean>> builds = new ArrayList<>();
+      for (int i = 0; i < groups.size(); i++) {
+        final Parameters shard = p.clone();
+        shard.set("shards", 1);
+        shard.set("inputPath", groups.get(i));
+        shard.set("indexPath", new File(shardFolder, "shard-" + i).getAbsolutePath());
+        // each job deletes its job folder when it finishes, so none can share one
+        shard.set("galagoJobDir", new File(shardFolder, "job-" + i).getAbsolutePath());
+        shardPaths.add(shard.getString("indexPath"));
+        builds.add(threads.submit(() -> {
+          Job job = getIndexJob(shard);
+          return job != null && TupleflowAppUtil.runTupleFlowJob(job, shard, output);
+        }));
+      }
+      for (Future<Boolean> build : builds) {
+        if (!build.get()) {
+          throw new IOException("Failed to build a shard of " + indexPath);
+        }
+      }
+
+      Parameters merge = p.clone();
+      merge.set("inputPath", shardPaths);
+      merge.set("indexPath", indexPath);
+      merge.set("renumberDocuments", true);
+      merge.set("galagoJobDir", new File(shardFolder, "job-merge").getAbsolutePath());
+      if (!TupleflowAppUtil.runTupleFlowJob(new MergeIndex().getJob(merge), merge, output)) {
+        throw new IOException("Failed to merge the shards of " + indexPath);
+      }
+      BuildStageTemplates.writeManifest(indexPath, buildParameters);
+    } finally {
+      threads.shutdown();
+      if (p.get("deleteJobDir", true)) {
+        FSUtil.deleteDirectory(shardFolder);
+      }
+    }
+  }
+
+  /**
+   * Divides the input files, in the order they would be read, into at most
+   * shards contiguous groups of similar total size.
+   */
+  public static List<List<String>> getShardInputs(Parameters buildParameters, int shards) throws IOException {
+    LinkedHashMap<String, Long> files = new LinkedHashMap<>();
+    long total = 0;
+    for (String input : buildParameters.getAsList("inputPath", String.class)) {
+      for (DocumentSplit split : DocumentSource.processFile(new File(input), buildParameters)) {
+        if (!files.containsKey(split.fileName)) {
+          long length = new File(split.fileName).length();
+          files.put(split.fileName, length);
+          total += length;
+        }
+      }
+    }
+
+    List<List<String>> groups = new ArrayList<>();
+    List<String> group = new ArrayList<>();
+    long seen = 0;
+    for (Map.Entry<String, Long> file : files.entrySet()) {
+      group.add(file.getKey());
+      seen += file.getValue();
+      // close the group once it holds its share of the input
+      if (groups.size() < shards - 1 && seen * shards >= total * (groups.size() + 1)) {
+        groups.add(group);
+        group = new ArrayList<>();
+      }
+    }
+    if (!group.isEmpty()) {
+      groups.add(group);
+    }
+    return groups;
+  }
+
   @Override
   public void run(Parameters p, PrintStream output) throws Exception {
     // build index input
@@ -74,7 +74,7 @@ public class BuildStemmerConflation extends AppFunction {
     splitParameters.set("corpusPieces", p.get("distrib", 10));
     job.add(BuildStageTemplates.getSplitStage(inputPaths, DocumentSource.class, new DocumentSplit.FileIdOrder(), splitParameters));
     job.add(getParserStage(p));
-    job.add(getWriterStage(output));
+    job.add(getWriterStage(output, getStemmerClass(p.getString("stemmer"))));
 
     job.connect("inputSplit", "parsePostings", ConnectionAssignmentType.Each);
     job.connect("parsePostings", "writerStage", ConnectionAssignmentType.Combined);
@@ -105,7 +105,7 @@ public class BuildStemmerConflation extends AppFunction {
     return stage;
   }
 
-  private Stage getWriterStage(File output) {
+  private Stage getWriterStage(File output, String stemmerClass) {
     Stage stage = new Stage("writerStage");
 
     stage.addInput("conflations", new KeyValuePair.KeyValueOrder());
@@ -116,6 +116,7 @@ public class BuildStemmerConflation extends AppFunction {
 
     Parameters writerParams = Parameters.create();
     writerParams.set("filename", output.getAbsolutePath());
+    writerParams.set("stemmer", stemmerClass);
     stage.add(new StepInformation(ConflationIndexWriter.class, writerParams));
 
     return stage;
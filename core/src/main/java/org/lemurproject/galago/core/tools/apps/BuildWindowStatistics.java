@@ -0,0 +1,167 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.tools.apps;
+
+import org.lemurproject.galago.core.index.IndexPartReader;
+import org.lemurproject.galago.core.index.KeyIterator;
+import org.lemurproject.galago.core.index.disk.DiskIndex;
+import org.lemurproject.galago.core.index.disk.WindowStatisticsReader;
+import org.lemurproject.galago.core.index.stats.NodeStatistics;
+import org.lemurproject.galago.core.retrieval.LocalRetrieval;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.NodeParameters;
+import org.lemurproject.galago.tupleflow.FileUtility;
+import org.lemurproject.galago.utility.Parameters;
+import org.lemurproject.galago.utility.btree.GenericElement;
+import org.lemurproject.galago.utility.btree.disk.DiskBTreeWriter;
+import org.lemurproject.galago.utility.compression.VByte;
+import org.lemurproject.galago.utility.tools.AppFunction;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Precomputes the collection statistics of the #od and #uw windows of
+ * frequent bigrams, so that queries like #sdm do not have to run every window
+ * over the collection before scoring (see WindowStatisticsReader).
+ *
+ * The candidate bigrams are the keys of a window index built by build-window.
+ * Their statistics are computed with the window iterators themselves, so the
+ * stored values are exactly those a query would compute.
+ */
+public class BuildWindowStatistics extends AppFunction {
+
+  @Override
+  public String getName() {
+    return "build-window-stats";
+  }
+
+  @Override
+  public String getHelpString() {
+    return "galago build-window-stats --indexPath=<index> [--windowPart=<part>] [--inputPath+<input>]\n\n"
+            + "  Stores the statistics (nodeFrequency, nodeDocumentCount, maximumCount)\n"
+            + "  of #od and #uw windows over the frequent bigrams of an index in a new\n"
+            + "  index part. Retrieval reads window statistics from this part instead of\n"
+            + "  running the window over the whole collection, e.g. for #sdm queries.\n\n"
+            + "  Candidate bigrams are the keys of windowPart. If the index has no such\n"
+            + "  part, it is built first with build-window (n=2, width=1, ordered) from\n"
+            + "  the inputPath documents; the build-window flags threshold, usedocfreq,\n"
+            + "  stemming and fields apply.\n\n"
+            + "Flags:\n"
+            + "  --windowPart={part}:     Window index that lists the candidate bigrams.\n"
+            + "                           [default = od.n2.w1.h{threshold}]\n"
+            + "  --part={part}:           Postings part of the window terms; use a stemmed part\n"
+            + "                           with a stemmed window index.\n"
+            + "                           [default = postings]\n"
+            + "  --operators+{op:width}:  Windows to store for each bigram.\n"
+            + "                           [default = od:1 uw:8 (as #sdm)]\n"
+            + "  --outputIndexName={name}: Name of the new part.\n"
+            + "                           [default = windowStats]\n\n"
+            + "  Windows that are not stored are computed at query time as before, and\n"
+            + "  kept in the nodeStatisticsCache of the retrieval.\n";
+  }
+
+  @Override
+  public void run(Parameters p, PrintStream output) throws Exception {
+    if (!p.containsKey("indexPath")) {
+      output.println(getHelpString());
+      return;
+    }
+
+    File indexPath = new File(p.getString("indexPath")).getAbsoluteFile();
+    String windowPart = p.get("windowPart", "od.n2.w1.h" + p.get("threshold", 2L));
+    String part = p.get("part", "postings");
+    List<String> requested = p.containsKey("operators")
+            ? p.getAsList("operators", String.class) : Arrays.asList("od:1", "uw:8");
+    List<String> operators = new ArrayList<>();
+    for (String operator : requested) {
+      // stored under the names retrieval looks up, e.g. ordered:1 -> od:1
+      String name = WindowStatisticsReader.getOperator(createWindow(operator, Arrays.asList("a", "b"), part));
+      if (name == null) {
+        throw new IllegalArgumentException("Unknown window operator " + operator + ", expected od:<width> or uw:<width>");
+      }
+      operators.add(name);
+    }
+    File outputFile = new File(indexPath, p.get("outputIndexName", "windowStats"));
+
+    if (!new File(indexPath, windowPart).exists()) {
+      if (!p.containsKey("inputPath")) {
+        throw new IllegalArgumentException("Index " + indexPath + " has no window part " + windowPart + ", and no inputPath was given to build it.");
+      }
+      Parameters windowParameters = p.clone();
+      windowParameters.set("n", 2);
+      windowParameters.set("width", 1);
+      windowParameters.set("ordered", true);
+      windowParameters.set("positionalIndex", false);
+      windowParameters.set("outputIndexName", windowPart);
+      new BuildWindowIndex().run(windowParameters, output);
+    }
+
+    // the statistics must come from the window iterators, not from an older copy of this part
+    Parameters retrievalParameters = Parameters.create();
+    retrievalParameters.set("windowStatistics", false);
+    retrievalParameters.set("nodeStatisticsCacheSize", 0L);
+    LocalRetrieval retrieval = new LocalRetrieval(new DiskIndex(indexPath.getAbsolutePath()), retrievalParameters);
+
+    IndexPartReader windows = retrieval.getIndex().getIndexPart(windowPart);
+    if (windows == null) {
+      retrieval.close();
+      throw new IllegalArgumentException("Index " + indexPath + " has no part " + windowPart);
+    }
+
+    Parameters manifest = Parameters.create();
+    manifest.set("readerClass", WindowStatisticsReader.class.getName());
+    manifest.set("writerClass", getClass().getName());
+    manifest.set("part", part);
+    manifest.set("operators", operators);
+    manifest.set("windowPart", windowPart);
+
+    File tempFile = FileUtility.createTemporary();
+    DiskBTreeWriter writer = new DiskBTreeWriter(tempFile.getAbsolutePath(), manifest);
+    long windowCount = 0;
+    KeyIterator keys = windows.getIterator();
+    while (!keys.isDone()) {
+      List<String> terms = Arrays.asList(keys.getKeyString().split("~"));
+      if (terms.size() > 1) {
+        ByteArrayOutputStream value = new ByteArrayOutputStream();
+        DataOutputStream stream = new DataOutputStream(value);
+        for (String operator : operators) {
+          NodeStatistics s = retrieval.getNodeStatistics(createWindow(operator, terms, part));
+          VByte.compressLong(stream, s.nodeFrequency);
+          VByte.compressLong(stream, s.nodeDocumentCount);
+          VByte.compressLong(stream, s.maximumCount);
+        }
+        stream.close();
+        writer.add(new GenericElement(WindowStatisticsReader.getKey(terms), value.toByteArray()));
+        windowCount++;
+      }
+      keys.nextKey();
+    }
+    writer.close();
+    retrieval.close();
+
+    Files.move(tempFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    output.println("Stored the statistics of " + windowCount + " windows in " + outputFile);
+  }
+
+  private static Node createWindow(String operator, List<String> terms, String part) {
+    String[] fields = operator.split(":");
+    List<Node> children = new ArrayList<>();
+    for (String term : terms) {
+      NodeParameters np = new NodeParameters(term);
+      np.set("part", part);
+      children.add(new Node("extents", np));
+    }
+    long width = (fields.length > 1) ? Long.parseLong(fields[1]) : -1;
+    NodeParameters np = (width < 0) ? new NodeParameters() : new NodeParameters(width);
+    return new Node(fields[0], np, children);
+  }
+}
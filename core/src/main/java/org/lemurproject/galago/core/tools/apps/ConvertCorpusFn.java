@@ -0,0 +1,76 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.tools.apps;
+
+import org.lemurproject.galago.core.corpus.CompactDocumentSerializer;
+import org.lemurproject.galago.core.index.corpus.CorpusFileWriter;
+import org.lemurproject.galago.core.index.corpus.CorpusReader;
+import org.lemurproject.galago.core.index.corpus.DocumentReader;
+import org.lemurproject.galago.core.parse.Document.DocumentComponents;
+import org.lemurproject.galago.tupleflow.FakeParameters;
+import org.lemurproject.galago.utility.Parameters;
+import org.lemurproject.galago.utility.tools.AppFunction;
+
+import java.io.File;
+import java.io.PrintStream;
+
+/**
+ * Rewrites a corpus part with a different document serializer; by default
+ * it converts older corpora to the CompactDocumentSerializer format.
+ */
+public class ConvertCorpusFn extends AppFunction {
+
+  @Override
+  public String getName() {
+    return "convert-corpus";
+  }
+
+  @Override
+  public String getHelpString() {
+    return "galago convert-corpus --inputPath=<corpus> --outputPath=<corpus file> [--documentSerializerClass=<class>] [--tokenize=true]\n\n"
+            + "  Copies every document of a corpus part into a new corpus file written\n"
+            + "  with documentSerializerClass (default: "
+            + CompactDocumentSerializer.class.getName() + ").\n"
+            + "  With tokenize (the default) documents are tokenized with the corpus\n"
+            + "  tokenizer on the way, so formats that store terms don't have to\n"
+            + "  tokenize again when documents are fetched.\n"
+            + "  The new file can replace the corpus part of an index.\n";
+  }
+
+  @Override
+  public void run(Parameters p, PrintStream output) throws Exception {
+    String inputPath = p.getString("inputPath");
+    String outputPath = p.getString("outputPath");
+    if (new File(inputPath).getCanonicalPath().equals(new File(outputPath).getCanonicalPath())) {
+      throw new IllegalArgumentException("convert-corpus can not overwrite its input: " + inputPath);
+    }
+
+    CorpusReader reader = new CorpusReader(inputPath);
+    if (reader.getManifest().get("emptyIndexFile", false)) {
+      output.println("Empty Corpus.");
+      reader.close();
+      return;
+    }
+
+    // keep the tokenizer and other settings of the old corpus
+    Parameters writerParameters = reader.getManifest().clone();
+    writerParameters.set("filename", outputPath);
+    writerParameters.set("documentSerializerClass",
+            p.get("documentSerializerClass", CompactDocumentSerializer.class.getName()));
+    CorpusFileWriter writer = new CorpusFileWriter(new FakeParameters(writerParameters));
+
+    DocumentComponents components = new DocumentComponents(true, true, p.get("tokenize", true));
+    DocumentReader.DocumentIterator iterator = reader.getIterator();
+    long count = 0;
+    while (!iterator.isDone()) {
+      writer.process(iterator.getDocument(components));
+      count++;
+      iterator.nextKey();
+    }
+    writer.close();
+    reader.close();
+
+    output.println("Converted " + count + " documents to " + outputPath);
+  }
+}
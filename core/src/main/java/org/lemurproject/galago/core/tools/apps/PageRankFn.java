@@ -48,6 +48,11 @@ public class PageRankFn extends AppFunction {
             + "\tmaxItr=10 \n"
             + "\tdefaultScore=1/||D|| \n"
             + "\tdeleteIntData=false \n"
+            + "\tengine=[tupleflow]|csr \n"
+            + "\t  csr builds the link graph in memory and iterates there,\n"
+            + "\t  tupleflow runs a tupleflow job per iteration\n"
+            + "\tmapGraph=[auto]|true|false \n"
+            + "\t  (csr) keep the edge list in a memory-mapped file\n"
             + "\n"
             + TupleflowAppUtil.getTupleFlowParameterString();
   }
@@ -68,6 +73,11 @@ public class PageRankFn extends AppFunction {
 
     File outputFolder = new File(p.getString("outputFolder"));
 
+    if (p.get("engine", "tupleflow").equals("csr")) {
+      runInMemory(p, outputFolder);
+      return;
+    }
+
     logger.info("Initializing...");
     long docCount = initialize(p, output);
 
@@ -119,6 +129,33 @@ public class PageRankFn extends AppFunction {
     logger.info("Finished");
   }
 
+  /**
+   * Runs all iterations over an in-memory graph, see CSRPageRank. Writes the
+   * same two output files as the tupleflow job, and no intermediate data.
+   */
+  private void runInMemory(Parameters p, File outputFolder) throws IOException {
+    outputFolder.mkdirs();
+    File graphFile = new File(outputFolder, "pagerank.graph");
+
+    logger.info("Building link graph...");
+    CSRPageRank graph = CSRPageRank.build(new File(p.getString("linkdata")), graphFile, p.containsKey("mapGraph") ? p.getAsString("mapGraph") : "auto");
+    try {
+      if (graph.getDocumentCount() == 0) {
+        logger.warning("No documents found. Aborting.");
+        return;
+      }
+      double initialScore = p.get("defaultScore", 1.0 / graph.getDocumentCount());
+      double[] scores = graph.run(p.getDouble("lambda"), p.get("delta", 0.000001), (int) p.get("maxItr", 10), initialScore);
+
+      logger.info("Finalizing...");
+      graph.write(scores, new File(outputFolder, "pagerank.docNameOrder"), new File(outputFolder, "pagerank.scoreOrder"));
+      logger.info("Finished");
+    } finally {
+      graph.close();
+      graphFile.delete();
+    }
+  }
+
   /**
    * Creates initial pagerank scores for documents;
    *   1 / ||D||
@@ -0,0 +1,117 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.tools.apps;
+
+import org.lemurproject.galago.core.retrieval.Retrieval;
+import org.lemurproject.galago.core.retrieval.RetrievalFactory;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.StructuredQuery;
+import org.lemurproject.galago.core.retrieval.rpc.RemoteRetrieval;
+import org.lemurproject.galago.core.retrieval.rpc.RetrievalServer;
+import org.lemurproject.galago.core.tools.Search;
+import org.lemurproject.galago.core.tools.StreamContextHandler;
+import org.lemurproject.galago.tupleflow.web.WebServer;
+import org.lemurproject.galago.utility.Parameters;
+import org.lemurproject.galago.utility.tools.AppFunction;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Serves one index over both the /stream (ProxyRetrieval) handler and the
+ * binary RetrievalServer on localhost, and times the same calls through
+ * each client.
+ */
+public class RpcBenchmarkFn extends AppFunction {
+
+  @Override
+  public String getName() {
+    return "rpc-benchmark";
+  }
+
+  @Override
+  public String getHelpString() {
+    return "galago rpc-benchmark <args>\n\n"
+            + "  Compares the http /stream proxy protocol with the binary retrieval\n"
+            + "  protocol (galago://) over localhost.\n\n"
+            + "  Args:\n"
+            + "     --index=/path/to/index\n"
+            + "     --query=<query> [--query=<query> ...] : queries to run\n"
+            + "     --iterations=<int>                   : passes over the queries [default=100]\n"
+            + "     --requested=<int>                    : results per query [default=100]\n";
+  }
+
+  @Override
+  public void run(Parameters p, PrintStream output) throws Exception {
+    if (!p.isString("index") || !p.containsKey("query")) {
+      output.println(getHelpString());
+      return;
+    }
+
+    int iterations = (int) p.get("iterations", 100L);
+    int requested = (int) p.get("requested", 100L);
+
+    Search search = new Search(p);
+    final StreamContextHandler streamHandler = new StreamContextHandler(search);
+    WebServer web = WebServer.start(Parameters.create(), (request, response) -> {
+      if (request.getPathInfo().equals("/stream")) {
+        streamHandler.handle(request, response);
+      }
+    });
+    RetrievalServer rpc = RetrievalServer.start(search.getRetrieval(), 0);
+
+    try {
+      String host = WebServer.getHostName();
+      Retrieval proxy = RetrievalFactory.instance("http://" + host + ":" + web.getPort(), Parameters.create());
+      RemoteRetrieval remote = new RemoteRetrieval(host, rpc.getPort(), Parameters.create());
+
+      // transform once, on the server; both protocols then ship the same tree
+      List<Node> queries = new ArrayList<>();
+      List<Parameters> queryParams = new ArrayList<>();
+      for (String q : p.getAsList("query", String.class)) {
+        Parameters qp = Parameters.create();
+        qp.set("requested", requested);
+        queries.add(remote.transformQuery(StructuredQuery.parse(q), qp));
+        queryParams.add(qp);
+      }
+
+      // warm up the server and both clients
+      time(proxy, queries, queryParams, 1);
+      time(remote, queries, queryParams, 1);
+
+      long calls = 2L * iterations * queries.size();
+      long proxyTime = time(proxy, queries, queryParams, iterations);
+      long remoteTime = time(remote, queries, queryParams, iterations);
+
+      long start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        remote.executeQueries(queries, queryParams);
+      }
+      long batchTime = System.nanoTime() - start;
+
+      output.printf("calls: %d (executeQuery + getCollectionStatistics per query)\n", calls);
+      output.printf("http /stream: %.2f ms total, %.1f us/call\n", proxyTime / 1e6, proxyTime / 1e3 / calls);
+      output.printf("galago://   : %.2f ms total, %.1f us/call\n", remoteTime / 1e6, remoteTime / 1e3 / calls);
+      output.printf("galago:// batched executeQuery: %.2f ms total, %.1f us/query\n",
+              batchTime / 1e6, batchTime / 1e3 / (iterations * queries.size()));
+
+      remote.close();
+      proxy.close();
+    } finally {
+      rpc.close();
+      web.stop();
+      search.close();
+    }
+  }
+
+  private static long time(Retrieval retrieval, List<Node> queries, List<Parameters> queryParams, int iterations) throws Exception {
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      for (int q = 0; q < queries.size(); q++) {
+        retrieval.getCollectionStatistics("#lengths:document:part=lengths()");
+        retrieval.executeQuery(queries.get(q), queryParams.get(q));
+      }
+    }
+    return System.nanoTime() - start;
+  }
+}
@@ -3,6 +3,7 @@
  */
 package org.lemurproject.galago.core.tools.apps;
 
+import org.lemurproject.galago.core.retrieval.rpc.RetrievalServer;
 import org.lemurproject.galago.utility.tools.AppFunction;
 import org.lemurproject.galago.core.tools.Search;
 import org.lemurproject.galago.core.tools.SearchWebHandler;
@@ -41,7 +42,9 @@ public class SearchFn extends AppFunction {
             + "   --corpus={file path} : corpus file path\n"
             + "   --index={file path}  : index file path\n"
             + "   --index={url}        : galago search url (for distributed retrieval)\n"
-            + "   --port={int<65000}   : port number for web retrieval.\n\n"
+            + "   --port={int<65000}   : port number for web retrieval.\n"
+            + "   --rpcPort={int<65000}: also serve the binary retrieval protocol on this port\n"
+            + "                          (open it elsewhere as --index=galago://host:port).\n\n"
             + "  JSONParameters can also be input through a configuration file.\n"
             + "  For example: search.parameters\n"
             + "  {\n"
@@ -77,5 +80,10 @@ public class SearchFn extends AppFunction {
     });
 
     output.println("Server: "+server.getURL());
+
+    if (p.containsKey("rpcPort")) {
+      RetrievalServer rpcServer = RetrievalServer.start(search.getRetrieval(), (int) p.getLong("rpcPort"));
+      output.println("RPC Server: " + rpcServer.getURL(WebServer.getHostName()));
+    }
   }
 }
@@ -85,6 +85,22 @@ public class ExtentArray {
         return _position;
     }
 
+    /**
+     * The begins of the extents; the first size() entries are valid. Loops over
+     * many extents can index it directly.
+     */
+    public int[] begins() {
+        return _begins;
+    }
+
+    /**
+     * The ends of the extents, or null if every extent has length one (end =
+     * begin + 1).
+     */
+    public int[] ends() {
+        return _ends;
+    }
+
     public void reset() {
         _position = 0;
     }
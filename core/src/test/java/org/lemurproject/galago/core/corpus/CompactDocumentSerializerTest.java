@@ -0,0 +1,157 @@
+package org.lemurproject.galago.core.corpus;
+
+import org.junit.Test;
+import org.lemurproject.galago.core.index.corpus.CorpusFileWriter;
+import org.lemurproject.galago.core.index.corpus.CorpusReader;
+import org.lemurproject.galago.core.parse.Document;
+import org.lemurproject.galago.core.parse.TagTokenizer;
+import org.lemurproject.galago.core.tools.apps.BuildIndex;
+import org.lemurproject.galago.core.tools.apps.ConvertCorpusFn;
+import org.lemurproject.galago.tupleflow.FakeParameters;
+import org.lemurproject.galago.tupleflow.FileUtility;
+import org.lemurproject.galago.utility.FSUtil;
+import org.lemurproject.galago.utility.Parameters;
+import org.lemurproject.galago.utility.StreamUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CompactDocumentSerializerTest {
+
+  private static Document makeDocument() {
+    Document doc = new Document();
+    doc.identifier = 17;
+    doc.metadata.put("meta-key", "value");
+    doc.metadata.put("null-meta-key", null);
+    doc.name = "doc-name";
+    doc.text = "doc text goes here\nand <tag attr=\"x\">continues. doc text is weird</tag>";
+    TagTokenizer tokenizer = new TagTokenizer();
+    tokenizer.addField("tag");
+    tokenizer.tokenize(doc);
+    return doc;
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    Document doc = makeDocument();
+    for (boolean compressed : Arrays.asList(true, false)) {
+      DocumentSerializer cds = new CompactDocumentSerializer(Parameters.parseArray("compressed", compressed));
+      byte[] docBytes = cds.toBytes(doc);
+      assertTrue(CompactDocumentSerializer.isCompact(docBytes));
+
+      Document doc2 = cds.fromBytes(docBytes, Document.DocumentComponents.All);
+      assertEquals(doc.identifier, doc2.identifier);
+      assertEquals(doc.name, doc2.name);
+      assertEquals(doc.text, doc2.text);
+      assertEquals(doc.metadata, doc2.metadata);
+      assertEquals(doc.terms, doc2.terms);
+      assertEquals(doc.termCharBegin, doc2.termCharBegin);
+      assertEquals(doc.termCharEnd, doc2.termCharEnd);
+      assertEquals(1, doc2.tags.size());
+      assertEquals(doc.tags.get(0).toString(), doc2.tags.get(0).toString());
+      assertEquals(doc.tags.get(0).charBegin, doc2.tags.get(0).charBegin);
+      assertEquals(doc.tags.get(0).charEnd, doc2.tags.get(0).charEnd);
+    }
+  }
+
+  @Test
+  public void testSelectiveDecoding() throws IOException {
+    Document doc = makeDocument();
+    DocumentSerializer cds = new CompactDocumentSerializer(Parameters.create());
+    byte[] docBytes = cds.toBytes(doc);
+
+    Document metadata = cds.fromBytes(docBytes, Document.DocumentComponents.JustMetadata);
+    assertEquals(doc.name, metadata.name);
+    assertEquals("value", metadata.metadata.get("meta-key"));
+    assertNull(metadata.text);
+    assertNull(metadata.terms);
+    assertNull(metadata.tags);
+
+    Document terms = cds.fromBytes(docBytes, Document.DocumentComponents.JustTerms);
+    assertNull(terms.text);
+    assertTrue(terms.metadata.isEmpty());
+    assertEquals(doc.terms, terms.terms);
+
+    Document.DocumentComponents snippet = new Document.DocumentComponents(true, false, false);
+    snippet.subTextStart = 4;
+    snippet.subTextLen = 9;
+    assertEquals("text goes", cds.fromBytes(docBytes, snippet).text);
+  }
+
+  @Test
+  public void testMissingTerms() throws IOException {
+    Document doc = new Document("plain", "some plain text");
+    DocumentSerializer cds = new CompactDocumentSerializer(Parameters.create());
+    byte[] docBytes = cds.toBytes(doc);
+
+    // tokenized on the way out, like WebDocumentSerializer does
+    Document tokenized = cds.fromBytes(docBytes, Document.DocumentComponents.JustTerms);
+    assertEquals(Arrays.asList("some", "plain", "text"), tokenized.terms);
+
+    DocumentSerializer raw = new CompactDocumentSerializer(Parameters.parseArray("tokenizeMissingTerms", false));
+    assertNull(raw.fromBytes(docBytes, Document.DocumentComponents.All).terms);
+  }
+
+  @Test
+  public void testDetectedByOtherSerializers() throws IOException {
+    Document doc = makeDocument();
+    byte[] docBytes = new CompactDocumentSerializer(Parameters.create()).toBytes(doc);
+    Document doc2 = new WebDocumentSerializer(Parameters.create()).fromBytes(docBytes, Document.DocumentComponents.All);
+    assertEquals(doc.text, doc2.text);
+    assertEquals(doc.terms, doc2.terms);
+  }
+
+  @Test
+  public void testBuildAndConvert() throws Exception {
+    File tmpDir = FileUtility.createTemporaryDirectory();
+    try {
+      File inputTxt = new File(tmpDir, "input.txt");
+      File testIndex = new File(tmpDir, "test.galago");
+      StreamUtil.copyStringToFile("this is a document of some kind", inputTxt);
+      BuildIndex.execute(Parameters.parseArray("inputPath", inputTxt, "indexPath", testIndex), System.out);
+
+      // new indexes store documents in the compact format
+      CorpusReader reader = new CorpusReader(new File(testIndex, "corpus").getAbsolutePath());
+      assertEquals(CompactDocumentSerializer.class.getName(), reader.getManifest().getString("documentSerializerClass"));
+      Document document = reader.getIterator().getDocument(Document.DocumentComponents.JustTerms);
+      assertEquals(7, document.terms.size());
+      reader.close();
+
+      // an old-style corpus converts to the compact format
+      File webCorpus = new File(tmpDir, "web.corpus");
+      Parameters p = Parameters.parseArray("filename", webCorpus.getAbsolutePath(),
+              "documentSerializerClass", WebDocumentSerializer.class.getName());
+      CorpusFileWriter writer = new CorpusFileWriter(new FakeParameters(p));
+      for (int i = 0; i < 10; i++) {
+        Document doc = new Document("doc-" + i, "text of document number " + i);
+        doc.identifier = i;
+        doc.metadata.put("number", Integer.toString(i));
+        writer.process(doc);
+      }
+      writer.close();
+
+      File compactCorpus = new File(tmpDir, "compact.corpus");
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      new ConvertCorpusFn().run(Parameters.parseArray(
+              "inputPath", webCorpus.getAbsolutePath(),
+              "outputPath", compactCorpus.getAbsolutePath()), new PrintStream(out));
+      assertTrue(out.toString().startsWith("Converted 10 documents"));
+
+      reader = new CorpusReader(compactCorpus.getAbsolutePath());
+      assertEquals(CompactDocumentSerializer.class.getName(), reader.getManifest().getString("documentSerializerClass"));
+      Document converted = reader.getDocument(7, Document.DocumentComponents.All);
+      assertEquals("doc-7", converted.name);
+      assertEquals("text of document number 7", converted.text);
+      assertEquals("7", converted.metadata.get("number"));
+      assertEquals(Arrays.asList("text", "of", "document", "number", "7"), converted.terms);
+      reader.close();
+    } finally {
+      FSUtil.deleteDirectory(tmpDir);
+    }
+  }
+}
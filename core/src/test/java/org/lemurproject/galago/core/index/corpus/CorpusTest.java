@@ -4,6 +4,7 @@
 package org.lemurproject.galago.core.index.corpus;
 
 import org.junit.Test;
+import org.lemurproject.galago.core.corpus.DocumentSerializer;
 import org.lemurproject.galago.core.parse.Document;
 import org.lemurproject.galago.core.parse.Document.DocumentComponents;
 import org.lemurproject.galago.core.parse.Tag;
@@ -11,10 +12,16 @@ import org.lemurproject.galago.tupleflow.FakeParameters;
 import org.lemurproject.galago.tupleflow.FileUtility;
 import org.lemurproject.galago.utility.Parameters;
 
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -106,4 +113,112 @@ public class CorpusTest {
       }
     }
   }
+
+  @Test
+  public void testBatchedFetch() throws Exception {
+    File corpus = FileUtility.createTemporary();
+    try {
+      Parameters p = Parameters.create();
+      p.set("filename", corpus.getAbsolutePath());
+      // small blocks, so a batch spans many of them
+      p.set("blockSize", 512);
+      CorpusFileWriter writer = new CorpusFileWriter(new FakeParameters(p));
+      for (int i = 0; i < 2000; i += 2) {
+        Document d = new Document("name-" + i, "text of document " + i);
+        d.identifier = i;
+        d.metadata.put("meta", "data-" + i);
+        writer.process(d);
+      }
+      writer.close();
+
+      CorpusReader reader = new CorpusReader(corpus.getAbsolutePath());
+      Random random = new Random(42);
+      List<Long> ids = new ArrayList<Long>();
+      for (int i = 0; i < 50; i++) {
+        ids.add((long) random.nextInt(2100));
+      }
+      // duplicates, the edges and ids past the end of the corpus
+      ids.addAll(Arrays.asList(0L, 0L, 1998L, 2500L));
+      Collections.shuffle(ids, random);
+
+      Map<Long, Document> batch = reader.getDocuments(ids, DocumentComponents.All);
+      for (long id : ids) {
+        if (id % 2 == 1 || id >= 2000) {
+          assertFalse(batch.containsKey(id));
+        } else {
+          Document single = reader.getDocument(id, DocumentComponents.All);
+          Document fetched = batch.get(id);
+          assertEquals(id, fetched.identifier);
+          assertEquals(single.name, fetched.name);
+          assertEquals(single.text, fetched.text);
+          assertEquals(single.metadata, fetched.metadata);
+          assertEquals(single.terms, fetched.terms);
+        }
+      }
+      assertTrue(batch.containsKey(1998L));
+      assertFalse(batch.containsKey(2500L));
+
+      // only the requested components are decoded
+      Map<Long, Document> metadata = reader.getDocuments(ids, DocumentComponents.JustMetadata);
+      assertEquals(batch.keySet(), metadata.keySet());
+      for (Document d : metadata.values()) {
+        assertNull(d.text);
+        assertNull(d.terms);
+        assertEquals("data-" + d.identifier, d.metadata.get("meta"));
+      }
+
+      assertTrue(reader.getDocuments(Collections.<Long>emptyList(), DocumentComponents.All).isEmpty());
+      reader.close();
+    } finally {
+      assertTrue(corpus.delete());
+    }
+  }
+
+  @Test
+  public void testBatchedFetchSkipsBadDocuments() throws Exception {
+    File corpus = FileUtility.createTemporary();
+    try {
+      Parameters p = Parameters.create();
+      p.set("filename", corpus.getAbsolutePath());
+      CorpusFileWriter writer = new CorpusFileWriter(new FakeParameters(p));
+      for (int i = 0; i < 10; i++) {
+        Document d = new Document("name-" + i, "text of document " + i);
+        d.identifier = i;
+        writer.process(d);
+      }
+      writer.close();
+
+      CorpusReader reader = new CorpusReader(corpus.getAbsolutePath());
+      final DocumentSerializer serializer = reader.serializer;
+      // document 4 cannot be read
+      reader.serializer = new DocumentSerializer(serializer.opts) {
+        @Override
+        public byte[] toBytes(Document input) throws IOException {
+          return serializer.toBytes(input);
+        }
+
+        @Override
+        public Document fromStream(DataInputStream stream, DocumentComponents components) throws IOException {
+          return serializer.fromStream(stream, components);
+        }
+
+        @Override
+        public Document fromBytes(byte[] data, DocumentComponents components) throws IOException {
+          Document d = serializer.fromBytes(data, components);
+          if (d.identifier == 4) {
+            throw new IOException("corrupt document");
+          }
+          return d;
+        }
+      };
+
+      Map<Long, Document> batch = reader.getDocuments(Arrays.asList(2L, 4L, 6L), DocumentComponents.All);
+      assertEquals(2, batch.size());
+      assertEquals("name-2", batch.get(2L).name);
+      assertEquals("name-6", batch.get(6L).name);
+      reader.close();
+    } finally {
+      assertTrue(corpus.delete());
+    }
+  }
 }
@@ -2,15 +2,16 @@
 package org.lemurproject.galago.core.index.corpus;
 
 import org.junit.Test;
+import org.lemurproject.galago.core.corpus.CompactDocumentSerializer;
 import org.lemurproject.galago.core.parse.Document;
 import org.lemurproject.galago.core.types.KeyValuePair;
 import org.lemurproject.galago.tupleflow.Utility;
+import org.lemurproject.galago.utility.Parameters;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  *
@@ -41,9 +42,8 @@ public class DocumentToKeyValuePairTest {
     KeyValuePair pair = kvpProcessor.pair;
     assertEquals(Utility.toLong(pair.key), 1);
 
-    ByteArrayInputStream stream = new ByteArrayInputStream(pair.value);
-    ObjectInputStream input = new ObjectInputStream(stream);
-    Document result = (Document) input.readObject();
+    assertTrue(CompactDocumentSerializer.isCompact(pair.value));
+    Document result = new CompactDocumentSerializer(Parameters.create()).fromBytes(pair.value, Document.DocumentComponents.All);
 
     assertEquals(result.identifier, document.identifier);
     assertEquals(result.text, document.text);
@@ -0,0 +1,99 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.index.disk;
+
+import org.junit.Test;
+import org.lemurproject.galago.core.index.disk.DiskForwardIndexReader.TermVector;
+import org.lemurproject.galago.core.parse.Document;
+import org.lemurproject.galago.core.parse.TagTokenizer;
+import org.lemurproject.galago.core.parse.TermVectorExtractor;
+import org.lemurproject.galago.tupleflow.FakeParameters;
+import org.lemurproject.galago.tupleflow.FileUtility;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DiskForwardIndexWriterTest {
+
+  @Test
+  public void testTermVectors() throws Exception {
+    File tmp = FileUtility.createTemporary();
+    try {
+      Parameters p = Parameters.create();
+      p.set("filename", tmp.getAbsolutePath());
+      DiskForwardIndexWriter writer = new DiskForwardIndexWriter(new FakeParameters(p));
+      TermVectorExtractor extractor = new TermVectorExtractor();
+      extractor.setProcessor(writer);
+
+      String[] texts = {"the cat sat on the mat", "", "a dog and a cat and a bird"};
+      for (int i = 0; i < texts.length; i++) {
+        Document doc = new Document("d-" + i, texts[i]);
+        doc.identifier = i * 2;
+        new TagTokenizer().tokenize(doc);
+        extractor.process(doc);
+      }
+      extractor.close();
+
+      DiskForwardIndexReader reader = new DiskForwardIndexReader(tmp.getAbsolutePath());
+      assertEquals(3, reader.getManifest().getLong("documentCount"));
+      assertEquals(9, reader.getManifest().getLong("vocabularySize"));
+
+      assertEquals(counts("the", 2, "cat", 1, "sat", 1, "on", 1, "mat", 1), counts(reader, 0, 6));
+      assertEquals(counts(), counts(reader, 2, 0));
+      assertEquals(counts("a", 3, "dog", 1, "and", 2, "cat", 1, "bird", 1), counts(reader, 4, 8));
+      assertNull(reader.getTermVector(1));
+      assertNull(reader.getTermVector(6));
+      assertNull(reader.getTerm(9));
+
+      // documents come before the vocabulary
+      DiskForwardIndexReader.KeyIterator keys = reader.getIterator();
+      assertEquals("0", keys.getKeyString());
+      assertEquals("6,cat:1,mat:1,on:1,sat:1,the:2", sorted(keys.getValueString()));
+      int documents = 0;
+      while (!keys.isDone() && !keys.isTerm()) {
+        documents++;
+        keys.nextKey();
+      }
+      assertEquals(3, documents);
+      assertEquals("#0", keys.getKeyString());
+      reader.close();
+    } finally {
+      assertTrue(tmp.delete());
+    }
+  }
+
+  private static Map<String, Integer> counts(Object... pairs) {
+    Map<String, Integer> counts = new HashMap<>();
+    for (int i = 0; i < pairs.length; i += 2) {
+      counts.put((String) pairs[i], (Integer) pairs[i + 1]);
+    }
+    return counts;
+  }
+
+  private static Map<String, Integer> counts(DiskForwardIndexReader reader, long document, int length) throws Exception {
+    TermVector vector = reader.getTermVector(document);
+    assertEquals(length, vector.length);
+    Map<String, Integer> counts = new HashMap<>();
+    for (int i = 0; i < vector.terms.length; i++) {
+      if (i > 0) {
+        assertTrue(vector.terms[i - 1] < vector.terms[i]);
+      }
+      counts.put(reader.getTerm(vector.terms[i]), vector.counts[i]);
+    }
+    return counts;
+  }
+
+  private static String sorted(String value) {
+    String[] parts = value.split(",");
+    Arrays.sort(parts, 1, parts.length);
+    return String.join(",", parts);
+  }
+}
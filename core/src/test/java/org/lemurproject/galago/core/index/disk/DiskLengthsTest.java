@@ -5,13 +5,18 @@ package org.lemurproject.galago.core.index.disk;
 
 import org.junit.Test;
 import org.lemurproject.galago.core.index.disk.DiskLengthsReader.KeyIterator;
+import org.lemurproject.galago.core.retrieval.iterator.LengthsIterator;
 import org.lemurproject.galago.core.retrieval.iterator.disk.DiskLengthsIterator;
 import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
+import org.lemurproject.galago.core.tools.App;
+import org.lemurproject.galago.core.tools.AppTest;
 import org.lemurproject.galago.core.types.FieldLengthData;
 import org.lemurproject.galago.tupleflow.FakeParameters;
 import org.lemurproject.galago.tupleflow.FileUtility;
 import org.lemurproject.galago.utility.ByteUtil;
+import org.lemurproject.galago.utility.FSUtil;
 import org.lemurproject.galago.utility.Parameters;
+import org.lemurproject.galago.utility.StreamUtil;
 
 import java.io.File;
 import java.io.IOException;
@@ -130,4 +135,86 @@ public class DiskLengthsTest{
       assertTrue(len.delete());
     }
   }
+
+  @Test
+  public void testDenseLengths() throws IOException {
+    File len = FileUtility.createTemporary();
+    try {
+      Parameters p = Parameters.create();
+      p.set("filename", len.getAbsolutePath());
+      DiskLengthsWriter writer = new DiskLengthsWriter(new FakeParameters(p));
+
+      byte[] key = ByteUtil.fromString("document");
+      // more lengths than one read chunk
+      for (int i = 10; i <= 50000; i++) {
+        writer.process(new FieldLengthData(key, i, i + 1));
+      }
+      writer.process(new FieldLengthData(key, 50010, 7));
+      writer.close();
+
+      DiskLengthsReader disk = new DiskLengthsReader(len.getAbsolutePath());
+      DiskLengthsReader dense = new DiskLengthsReader(len.getAbsolutePath());
+      dense.loadDense();
+
+      for (long d = 0; d <= 50020; d++) {
+        assertEquals(disk.getLength(d), dense.getLength(d));
+      }
+      assertEquals(((DiskLengthsIterator) disk.getLengthsIterator()).getStatistics().toString(),
+              ((DiskLengthsIterator) dense.getLengthsIterator()).getStatistics().toString());
+
+      // iterators are independent cursors over the same array
+      LengthsIterator a = dense.getLengthsIterator();
+      LengthsIterator b = dense.getLengthsIterator();
+      ScoringContext sc = new ScoringContext();
+      a.syncTo(40000);
+      assertEquals(10, b.currentCandidate());
+      sc.document = 40000;
+      assertEquals(40001, a.length(sc));
+
+      a.syncTo(50005);
+      sc.document = 50005;
+      assertEquals(50005, a.currentCandidate());
+      assertEquals(0, a.length(sc));
+
+      a.syncTo(60000);
+      assertTrue(a.isDone());
+      assertEquals(50010, a.currentCandidate());
+
+      disk.close();
+      dense.close();
+    } finally {
+      assertTrue(len.delete());
+    }
+  }
+
+  @Test
+  public void testDenseIndexOption() throws Exception {
+    File tmpDir = FileUtility.createTemporaryDirectory();
+    try {
+      StringBuilder trec = new StringBuilder();
+      for (int i = 0; i < 100; i++) {
+        StringBuilder text = new StringBuilder();
+        for (int j = 0; j <= i % 13; j++) {
+          text.append(" word").append(j);
+        }
+        trec.append(AppTest.trecDocument("d-" + i, text.toString()));
+      }
+      File corpus = new File(tmpDir, "corpus.trectext");
+      StreamUtil.copyStringToFile(trec.toString(), corpus);
+      File index = new File(tmpDir, "index");
+      App.main(new String[]{"build", "--indexPath=" + index.getAbsolutePath(),
+                "--inputPath+" + corpus.getAbsolutePath(), "--server=false"});
+
+      DiskIndex disk = new DiskIndex(index.getAbsolutePath());
+      DiskIndex dense = new DiskIndex(index.getAbsolutePath(), Parameters.parseArray("dense", true));
+      for (long d = 0; d < 100; d++) {
+        assertEquals(disk.getLength(d), dense.getLength(d));
+        assertEquals(disk.getName(d), dense.getName(d));
+      }
+      disk.close();
+      dense.close();
+    } finally {
+      FSUtil.deleteDirectory(tmpDir);
+    }
+  }
 }
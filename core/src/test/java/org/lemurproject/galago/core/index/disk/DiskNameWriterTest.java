@@ -14,6 +14,7 @@ import org.lemurproject.galago.utility.Parameters;
 import java.io.File;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -61,4 +62,62 @@ public class DiskNameWriterTest {
       assertTrue(tmp.delete());
     }
   }
+
+  @Test
+  public void testDenseNames() throws Exception {
+    File tmp = FileUtility.createTemporary();
+    try {
+      Parameters p = Parameters.create();
+      p.set("filename", tmp.getAbsolutePath());
+      DiskNameWriter writer = new DiskNameWriter(new FakeParameters(p));
+      // a few gaps, and a name of a different length
+      for (int i = 5; i < 5000; i++) {
+        if (i % 7 != 0) {
+          writer.process(new DocumentNameId(ByteUtil.fromString("d-" + i), i));
+        }
+      }
+      writer.process(new DocumentNameId(ByteUtil.fromString("last-document"), 5002));
+      writer.close();
+
+      DiskNameReader disk = new DiskNameReader(tmp.getAbsolutePath());
+      DiskNameReader dense = new DiskNameReader(tmp.getAbsolutePath());
+      dense.loadDense();
+      for (long i = 0; i < 5010; i++) {
+        assertEquals(disk.getDocumentName(i), dense.getDocumentName(i));
+      }
+      assertNull(dense.getDocumentName(7));
+      assertEquals("d-8", dense.getDocumentName(8));
+      assertEquals("last-document", dense.getDocumentName(5002));
+      disk.close();
+      dense.close();
+    } finally {
+      assertTrue(tmp.delete());
+    }
+  }
+
+  @Test
+  public void testSparseNamesStayOnDisk() throws Exception {
+    File tmp = FileUtility.createTemporary();
+    try {
+      Parameters p = Parameters.create();
+      p.set("filename", tmp.getAbsolutePath());
+      DiskNameWriter writer = new DiskNameWriter(new FakeParameters(p));
+      for (int i = 0; i < 100; i++) {
+        writer.process(new DocumentNameId(ByteUtil.fromString("d-" + i), i));
+      }
+      for (long i = 8000000000L; i < 9000000000L; i += 10000000L) {
+        writer.process(new DocumentNameId(ByteUtil.fromString("d-" + i), i));
+      }
+      writer.close();
+
+      DiskNameReader reader = new DiskNameReader(tmp.getAbsolutePath());
+      reader.loadDense();
+      assertEquals("d-42", reader.getDocumentName(42));
+      assertEquals("d-8010000000", reader.getDocumentName(8010000000L));
+      assertNull(reader.getDocumentName(100));
+      reader.close();
+    } finally {
+      assertTrue(tmp.delete());
+    }
+  }
 }
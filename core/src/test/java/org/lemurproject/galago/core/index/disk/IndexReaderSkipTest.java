@@ -11,7 +11,9 @@ import org.lemurproject.galago.utility.ByteUtil;
 import org.lemurproject.galago.utility.Parameters;
 
 import java.io.File;
+import java.util.Map;
 import java.util.Random;
+import java.util.TreeMap;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -58,6 +60,62 @@ public class IndexReaderSkipTest {
     }
   }
 
+  @Test
+  public void testPositionIndexBlockMax() throws Exception {
+    File temp = FileUtility.createTemporary();
+
+    try {
+      Parameters parameters = Parameters.create();
+      parameters.set("filename", temp.getAbsolutePath());
+      parameters.set("skipDistance", 10);
+      parameters.set("skipResetDistance", 5);
+      PositionIndexWriter writer = new PositionIndexWriter(new FakeParameters(parameters));
+
+      writer.processWord(ByteUtil.fromString("key"));
+      for (int doc = 0; doc < 1000; doc += 3) {
+        writer.processDocument(doc);
+        for (int begin = 0; begin < (doc % 7) + 1; begin++) {
+          writer.processPosition(begin);
+        }
+      }
+      writer.close();
+
+      PositionIndexReader reader = new PositionIndexReader(parameters.getString("filename"));
+      PositionIndexCountSource source = reader.getIterator().getValueCountSource();
+      assertTrue(source.hasBlockMax());
+
+      // group the documents by the block they land in
+      Map<Long, int[]> expected = new TreeMap<>();
+      for (int doc = 0; doc < 1000; doc += 3) {
+        long blockEnd = source.blockEnd(doc);
+        assertTrue(blockEnd >= doc);
+        int count = (doc % 7) + 1;
+        int[] bounds = expected.get(blockEnd);
+        if (bounds == null) {
+          expected.put(blockEnd, new int[]{count, count});
+        } else {
+          bounds[0] = Math.max(bounds[0], count);
+          bounds[1] = Math.min(bounds[1], count);
+        }
+      }
+      int blocks = expected.size();
+
+      // the stored maxima should be exactly the per-block maxima
+      source = reader.getIterator().getValueCountSource();
+      for (Map.Entry<Long, int[]> block : expected.entrySet()) {
+        assertEquals(block.getKey().longValue(), source.blockEnd(block.getKey()));
+        assertEquals(block.getValue()[0], source.blockMaximumCount());
+        assertEquals(block.getValue()[1], source.blockMinimumLength());
+      }
+      assertTrue(blocks > 1);
+      assertEquals(Long.MAX_VALUE, source.blockEnd(1000));
+      assertEquals(0, source.blockMaximumCount());
+      reader.close();
+    } finally {
+      assertTrue(temp.delete());
+    }
+  }
+
   @Test
   public void testCountIndexSkipping() throws Exception {
     Random r = new Random();
@@ -5,14 +5,19 @@ package org.lemurproject.galago.core.index.disk;
 
 import org.junit.Test;
 import org.lemurproject.galago.core.index.disk.PositionIndexReader.KeyIterator;
+import org.lemurproject.galago.core.retrieval.iterator.disk.DiskExtentIterator;
+import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
+import org.lemurproject.galago.core.util.ExtentArray;
 import org.lemurproject.galago.tupleflow.FakeParameters;
 import org.lemurproject.galago.tupleflow.FileUtility;
 import org.lemurproject.galago.utility.ByteUtil;
 import org.lemurproject.galago.utility.Parameters;
 
 import java.io.File;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  *
@@ -88,4 +93,101 @@ public class PositionIndexWriterTest {
       tmp.delete();
     }
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testBlockCodec() throws Exception {
+    File vbyte = FileUtility.createTemporary();
+    File block = FileUtility.createTemporary();
+    try {
+      Parameters vp = Parameters.create();
+      vp.set("filename", vbyte.getAbsolutePath());
+      vp.set("skipDistance", 10);
+      Parameters bp = Parameters.create();
+      bp.set("filename", block.getAbsolutePath());
+      bp.set("codec", "block");
+      PositionIndexWriter vw = new PositionIndexWriter(new FakeParameters(vp));
+      PositionIndexWriter bw = new PositionIndexWriter(new FakeParameters(bp));
+
+      // dense, sparse with huge gaps, single document, long documents
+      String[] terms = {"a", "b", "c", "d"};
+      long[] gaps = {3, 5000000, 1, 7};
+      int[] lengths = {1000, 300, 1, 400};
+      int[] maxCounts = {4, 2, 1, 300};
+      Random r = new Random(5);
+      for (int t = 0; t < terms.length; t++) {
+        vw.processWord(ByteUtil.fromString(terms[t]));
+        bw.processWord(ByteUtil.fromString(terms[t]));
+        long doc = r.nextInt(10);
+        for (int i = 0; i < lengths[t]; i++) {
+          doc += 1 + r.nextInt((int) Math.min(gaps[t], Integer.MAX_VALUE));
+          vw.processDocument(doc);
+          bw.processDocument(doc);
+          int position = 0;
+          int count = 1 + r.nextInt(maxCounts[t]);
+          for (int c = 0; c < count; c++) {
+            position += (r.nextInt(20) == 0) ? 100000 : r.nextInt(10);
+            vw.processPosition(position);
+            bw.processPosition(position);
+          }
+        }
+      }
+      vw.close();
+      bw.close();
+
+      PositionIndexReader vr = new PositionIndexReader(vbyte.getAbsolutePath());
+      PositionIndexReader br = new PositionIndexReader(block.getAbsolutePath());
+      assertEquals("block", br.getManifest().getString("codec"));
+      assertEquals(vr.getStatistics().collectionLength, br.getStatistics().collectionLength);
+
+      ScoringContext sc = new ScoringContext();
+      for (String term : terms) {
+        DiskExtentIterator expected = vr.getTermExtents(term);
+        DiskExtentIterator actual = br.getTermExtents(term);
+        assertEquals(expected.totalEntries(), actual.totalEntries());
+        assertEquals(expected.getStatistics().toString(), actual.getStatistics().toString());
+
+        // every posting
+        while (!expected.isDone()) {
+          assertSamePosting(sc, expected, actual);
+          expected.movePast(expected.currentCandidate());
+          actual.movePast(actual.currentCandidate());
+        }
+        assertTrue(actual.isDone());
+
+        // random skips, checking counts before extents half the time
+        expected.reset();
+        actual.reset();
+        long target = 0;
+        while (!expected.isDone()) {
+          target += r.nextInt(2000) * ((term.equals("b")) ? 20000 : 1);
+          expected.syncTo(target);
+          actual.syncTo(target);
+          assertSamePosting(sc, expected, actual);
+          target = expected.currentCandidate() + 1;
+        }
+        assertTrue(actual.isDone());
+      }
+      vr.close();
+      br.close();
+    } finally {
+      vbyte.delete();
+      block.delete();
+    }
+  }
+
+  private static void assertSamePosting(ScoringContext sc, DiskExtentIterator expected, DiskExtentIterator actual) throws Exception {
+    assertEquals(expected.currentCandidate(), actual.currentCandidate());
+    assertEquals(expected.isDone(), actual.isDone());
+    if (expected.isDone()) {
+      return;
+    }
+    sc.document = expected.currentCandidate();
+    assertEquals(expected.count(sc), actual.count(sc));
+    ExtentArray e = expected.extents(sc);
+    ExtentArray a = actual.extents(sc);
+    assertEquals(e.size(), a.size());
+    for (int i = 0; i < e.size(); i++) {
+      assertEquals(e.begin(i), a.begin(i));
+    }
+  }
+}
@@ -2,6 +2,7 @@
 package org.lemurproject.galago.core.index.geometric;
 
 import org.junit.Test;
+import org.lemurproject.galago.core.index.mem.MemoryOffHeapPositionalIndex;
 import org.lemurproject.galago.core.index.stats.FieldStatistics;
 import org.lemurproject.galago.core.index.stats.IndexPartStatistics;
 import org.lemurproject.galago.core.parse.Document;
@@ -25,6 +26,7 @@ import java.io.PrintStream;
 import java.util.*;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  *
@@ -169,4 +171,90 @@ public class GeometricIndexTest {
       //System.setErr(oldErr);
     }
   }
+
+  @Test
+  public void testBackgroundMerge() throws Exception {
+    File shards = FileUtility.createTemporaryDirectory();
+    try {
+      Parameters p = Parameters.create();
+      p.set("indexBlockSize", 50);
+      p.set("shardDirectory", shards.getAbsolutePath());
+      p.set("requested", 10);
+      p.set("backgroundMerge", true);
+      p.set("maxConcurrentMerges", 2);
+      p.set("mergeRateLimit", 10.0);
+      GeometricIndex index = new GeometricIndex(new FakeParameters(p));
+      LocalRetrieval ret = new LocalRetrieval(index);
+
+      for (int i = 0; i < 255; i++) {
+        Document d = new Document();
+        d.name = "DOC-" + i;
+        d.text = "this is sample document " + i;
+        d.terms = Arrays.asList(d.text.split(" "));
+        d.tags = new ArrayList<Tag>();
+        d.metadata = new HashMap<String,String>();
+
+        index.process(d);
+
+        // every document is searchable at once, flushed or not
+        FieldStatistics cs = ret.getCollectionStatistics("#lengths:part=lengths()");
+        assertEquals(i + 1, cs.documentCount);
+        Node query = ret.transformQuery(StructuredQuery.parse("sample " + i), p);
+        List<ScoredDocument> results = ret.executeQuery(query, p).scoredDocuments;
+        assertEquals("DOC-" + i, results.get(0).documentName);
+      }
+
+      index.waitForMaintenance();
+
+      FieldStatistics cs = ret.getCollectionStatistics("#lengths:part=lengths()");
+      assertEquals(cs.collectionLength, 1275);
+      assertEquals(cs.documentCount, 255);
+
+      // the same shards as the synchronous merges produce
+      IndexPartStatistics stats = ret.getIndexPartStatistics("postings");
+      assertEquals(stats.collectionLength, 1275);
+      assertEquals(stats.vocabCount, 154);
+      assertEquals(stats.highestFrequency, 150);
+      assertEquals(stats.highestDocumentCount, 150);
+
+      index.close();
+      cs = ret.getCollectionStatistics("#lengths:part=lengths()");
+      assertEquals(cs.documentCount, 255);
+    } finally {
+      FSUtil.deleteDirectory(shards);
+    }
+  }
+
+  @Test
+  public void testOffHeapPostings() throws Exception {
+    File shards = FileUtility.createTemporaryDirectory();
+    try {
+      // the memory shards are built from the index parameters
+      Parameters p = Parameters.create();
+      p.set("indexBlockSize", 50);
+      p.set("shardDirectory", shards.getAbsolutePath());
+      p.set("offHeapPostings", true);
+      GeometricIndex index = new GeometricIndex(new FakeParameters(p));
+      LocalRetrieval ret = new LocalRetrieval(index);
+
+      for (int i = 0; i < 75; i++) {
+        Document d = new Document();
+        d.name = "DOC-" + i;
+        d.text = "this is sample document " + i;
+        d.terms = Arrays.asList(d.text.split(" "));
+        d.tags = new ArrayList<Tag>();
+        d.metadata = new HashMap<String,String>();
+        index.process(d);
+      }
+      index.waitForMaintenance();
+
+      assertTrue(index.getCurrentMemoryIndex().getIndexPart("postings") instanceof MemoryOffHeapPositionalIndex);
+      assertEquals(375, ret.getIndexPartStatistics("postings").collectionLength);
+      Node query = ret.transformQuery(StructuredQuery.parse("#combine(sample document)"), Parameters.create());
+      assertEquals(75, ret.executeQuery(query, Parameters.create()).scoredDocuments.size());
+      index.close();
+    } finally {
+      FSUtil.deleteDirectory(shards);
+    }
+  }
 }
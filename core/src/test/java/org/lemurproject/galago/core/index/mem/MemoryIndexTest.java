@@ -294,6 +294,89 @@ public class MemoryIndexTest {
 
   }
 
+  @Test
+  public void testResultCacheInvalidation() throws Exception {
+    MemoryIndex index = new MemoryIndex();
+    for (Integer i = 0; i < 10; i++) {
+      Document d = new Document();
+      d.name = "DOC-" + i;
+      d.text = "this is sample document" + i;
+      d.terms = Arrays.asList(d.text.split(" "));
+      d.tags = new ArrayList<Tag>();
+      d.metadata = new HashMap<String, String>();
+      index.process(d);
+    }
+
+    LocalRetrieval retrieval = new LocalRetrieval(index, Parameters.parseArray("resultCacheSize", 10));
+    Parameters p = Parameters.create();
+    p.set("requested", 10);
+    Node root = retrieval.transformQuery(StructuredQuery.parse("document5"), p);
+
+    assertEquals(1, retrieval.executeQuery(root, p).scoredDocuments.size());
+    assertEquals(1, retrieval.executeQuery(root, p).scoredDocuments.size());
+    assertEquals(1, retrieval.getResultCacheStats().hitCount());
+    assertEquals(1, retrieval.getResultCacheStats().missCount());
+
+    // a different number of results is a different query
+    p.set("requested", 5);
+    assertEquals(1, retrieval.executeQuery(root, p).scoredDocuments.size());
+    assertEquals(2, retrieval.getResultCacheStats().missCount());
+    p.set("requested", 10);
+
+    // adding a document must not serve stale results
+    Document d = new Document();
+    d.name = "DOC-10";
+    d.text = "another sample document5";
+    d.terms = Arrays.asList(d.text.split(" "));
+    d.tags = new ArrayList<Tag>();
+    d.metadata = new HashMap<String, String>();
+    index.process(d);
+
+    assertEquals(2, retrieval.executeQuery(root, p).scoredDocuments.size());
+    assertEquals(1, retrieval.getResultCacheStats().hitCount());
+    assertEquals(3, retrieval.getResultCacheStats().missCount());
+  }
+
+  @Test
+  public void testResultCacheReturnsCopies() throws Exception {
+    MemoryIndex index = new MemoryIndex();
+    for (Integer i = 0; i < 10; i++) {
+      Document d = new Document();
+      d.name = "DOC-" + i;
+      d.text = "this is sample document" + i;
+      d.terms = Arrays.asList(d.text.split(" "));
+      d.tags = new ArrayList<Tag>();
+      d.metadata = new HashMap<String, String>();
+      index.process(d);
+    }
+
+    LocalRetrieval retrieval = new LocalRetrieval(index, Parameters.parseArray("resultCacheSize", 10));
+    Parameters p = Parameters.create();
+    p.set("requested", 10);
+    Node root = retrieval.transformQuery(StructuredQuery.parse("sample"), p);
+
+    List<ScoredDocument> first = retrieval.executeQuery(root, p).scoredDocuments;
+    assertEquals(10, first.size());
+    String name = first.get(0).documentName;
+    int rank = first.get(0).rank;
+    double score = first.get(0).score;
+
+    // callers such as MultiRetrieval re-rank and rename what they get back
+    for (ScoredDocument sd : first) {
+      sd.rank = -1;
+      sd.score = 0;
+      sd.documentName = "changed";
+    }
+    List<ScoredDocument> second = retrieval.executeQuery(root, p).scoredDocuments;
+    assertEquals(1, retrieval.getResultCacheStats().hitCount());
+    assertEquals(name, second.get(0).documentName);
+    assertEquals(rank, second.get(0).rank);
+    assertEquals(score, second.get(0).score, 0.0);
+
+    second.get(0).rank = -1;
+    assertEquals(rank, retrieval.executeQuery(root, p).scoredDocuments.get(0).rank);
+  }
+
   @Test
   public void testDocRetrievalWithCorpus() throws Exception {
     Parameters p = Parameters.create();
@@ -0,0 +1,286 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.index.mem;
+
+import org.junit.Test;
+import org.lemurproject.galago.core.index.KeyIterator;
+import org.lemurproject.galago.core.index.disk.PositionIndexReader;
+import org.lemurproject.galago.core.parse.Document;
+import org.lemurproject.galago.core.retrieval.LocalRetrieval;
+import org.lemurproject.galago.core.retrieval.ScoredDocument;
+import org.lemurproject.galago.core.retrieval.iterator.CountIterator;
+import org.lemurproject.galago.core.retrieval.iterator.ExtentIterator;
+import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.StructuredQuery;
+import org.lemurproject.galago.core.util.ExtentArray;
+import org.lemurproject.galago.tupleflow.FileUtility;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MemoryOffHeapPositionalIndexTest {
+
+  private static List<Document> makeDocuments(int count, int vocab, long seed) {
+    Random r = new Random(seed);
+    List<Document> docs = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      Document d = new Document();
+      d.identifier = i;
+      d.name = "DOC-" + i;
+      d.terms = new ArrayList<>();
+      d.tags = new ArrayList<>();
+      d.metadata = new HashMap<>();
+      int length = 1 + r.nextInt(60);
+      for (int t = 0; t < length; t++) {
+        // skewed so that some lists span many chunks
+        d.terms.add("term" + (int) (vocab * Math.pow(r.nextDouble(), 3)));
+      }
+      docs.add(d);
+    }
+    return docs;
+  }
+
+  private static void assertSamePostings(MemoryIndexPart expected, MemoryIndexPart actual) throws Exception {
+    assertEquals(expected.getKeyCount(), actual.getKeyCount());
+    assertEquals(expected.getDocumentCount(), actual.getDocumentCount());
+    assertEquals(expected.getCollectionLength(), actual.getCollectionLength());
+
+    KeyIterator ek = expected.getIterator();
+    KeyIterator ak = actual.getIterator();
+    ScoringContext sc = new ScoringContext();
+    while (!ek.isDone()) {
+      assertEquals(ek.getKeyString(), ak.getKeyString());
+      ExtentIterator ei = (ExtentIterator) ek.getValueIterator();
+      ExtentIterator ai = (ExtentIterator) ak.getValueIterator();
+      assertEquals(ei.totalEntries(), ai.totalEntries());
+      while (!ei.isDone()) {
+        assertEquals(ei.currentCandidate(), ai.currentCandidate());
+        sc.document = ei.currentCandidate();
+        ExtentArray ee = ei.extents(sc);
+        ExtentArray ae = ai.extents(sc);
+        assertEquals(ee.size(), ae.size());
+        for (int i = 0; i < ee.size(); i++) {
+          assertEquals(ee.begin(i), ae.begin(i));
+        }
+        ei.movePast(ei.currentCandidate());
+        ai.movePast(ai.currentCandidate());
+      }
+      assertTrue(ai.isDone());
+      ek.nextKey();
+      ak.nextKey();
+    }
+    assertTrue(ak.isDone());
+  }
+
+  @Test
+  public void testSameAsHeapIndex() throws Exception {
+    MemoryPositionalIndex heap = new MemoryPositionalIndex(Parameters.create());
+    Parameters p = Parameters.create();
+    // small slabs, so lists cross slab boundaries
+    p.set("slabSize", 16 << 10);
+    MemoryOffHeapPositionalIndex offHeap = new MemoryOffHeapPositionalIndex(p);
+
+    for (Document d : makeDocuments(500, 200, 1)) {
+      heap.addDocument(d);
+      offHeap.addDocument(d);
+    }
+    assertSamePostings(heap, offHeap);
+    assertEquals(heap.getStatistics().highestFrequency, offHeap.getStatistics().highestFrequency);
+    assertEquals(heap.getStatistics().highestDocumentCount, offHeap.getStatistics().highestDocumentCount);
+    assertTrue(offHeap.getOffHeapBytes() > 16 << 10);
+
+    // counts skip over the positions
+    Node counts = StructuredQuery.parse("#counts:term0:part=postings()");
+    CountIterator hc = (CountIterator) heap.getIterator(counts);
+    CountIterator oc = (CountIterator) offHeap.getIterator(counts);
+    ScoringContext sc = new ScoringContext();
+    while (!hc.isDone()) {
+      sc.document = hc.currentCandidate();
+      assertEquals(hc.currentCandidate(), oc.currentCandidate());
+      assertEquals(hc.count(sc), oc.count(sc));
+      hc.movePast(sc.document);
+      oc.movePast(sc.document);
+    }
+    assertTrue(oc.isDone());
+
+    // iterator data, as cached by CachedRetrieval
+    MemoryOffHeapPositionalIndex cached = new MemoryOffHeapPositionalIndex(Parameters.create());
+    KeyIterator ki = heap.getIterator();
+    while (!ki.isDone()) {
+      cached.addIteratorData(ki.getKey(), ki.getValueIterator());
+      ki.nextKey();
+    }
+    KeyIterator ek = heap.getIterator();
+    KeyIterator ck = cached.getIterator();
+    assertEquals(heap.getKeyCount(), cached.getKeyCount());
+    while (!ek.isDone()) {
+      assertEquals(ek.getKeyString(), ck.getKeyString());
+      assertEquals(ek.getValueIterator().totalEntries(), ck.getValueIterator().totalEntries());
+      ek.nextKey();
+      ck.nextKey();
+    }
+
+    File flushed = FileUtility.createTemporary();
+    try {
+      offHeap.flushToDisk(flushed.getAbsolutePath());
+      PositionIndexReader reader = new PositionIndexReader(flushed.getAbsolutePath());
+      KeyIterator fk = reader.getIterator();
+      long keys = 0;
+      while (!fk.isDone()) {
+        keys++;
+        fk.nextKey();
+      }
+      assertEquals(heap.getKeyCount(), keys);
+      reader.close();
+    } finally {
+      flushed.delete();
+    }
+
+    offHeap.close();
+    cached.close();
+  }
+
+  @Test
+  public void testConcurrentIngestion() throws Exception {
+    final List<Document> docs = makeDocuments(2000, 300, 2);
+    MemoryPositionalIndex heap = new MemoryPositionalIndex(Parameters.create());
+    for (Document d : docs) {
+      heap.addDocument(d);
+    }
+
+    final MemoryOffHeapPositionalIndex offHeap = new MemoryOffHeapPositionalIndex(Parameters.create());
+    final AtomicInteger next = new AtomicInteger(0);
+    ExecutorService pool = Executors.newFixedThreadPool(5);
+    try {
+      List<Future<?>> writers = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        writers.add(pool.submit(() -> {
+          for (int i = next.getAndIncrement(); i < docs.size(); i = next.getAndIncrement()) {
+            offHeap.addDocument(docs.get(i));
+          }
+          return null;
+        }));
+      }
+
+      // a reader running alongside the writers sees a consistent prefix
+      Future<?> reader = pool.submit(() -> {
+        Node node = StructuredQuery.parse("#extents:term0:part=postings()");
+        ScoringContext sc = new ScoringContext();
+        while (next.get() < docs.size()) {
+          ExtentIterator it = (ExtentIterator) offHeap.getIterator(node);
+          if (it == null) {
+            continue;
+          }
+          long entries = 0;
+          long last = -1;
+          while (!it.isDone()) {
+            sc.document = it.currentCandidate();
+            assertTrue(sc.document > last);
+            assertTrue(it.extents(sc).size() > 0);
+            last = sc.document;
+            entries++;
+            it.movePast(sc.document);
+          }
+          assertEquals(it.totalEntries(), entries);
+        }
+        return null;
+      });
+
+      for (Future<?> f : writers) {
+        f.get();
+      }
+      reader.get();
+    } finally {
+      pool.shutdown();
+    }
+
+    assertSamePostings(heap, offHeap);
+    offHeap.close();
+  }
+
+  @Test
+  public void testMemoryIndexOption() throws Exception {
+    Parameters p = Parameters.create();
+    p.set("offHeapPostings", true);
+    p.set("stemming", false);
+    MemoryIndex index = new MemoryIndex(p);
+    assertTrue(index.getIndexPart("postings") instanceof MemoryOffHeapPositionalIndex);
+
+    for (Document d : makeDocuments(100, 50, 3)) {
+      index.process(d);
+    }
+
+    LocalRetrieval retrieval = new LocalRetrieval(index);
+    Parameters qp = Parameters.create();
+    qp.set("requested", 10);
+    Node query = retrieval.transformQuery(StructuredQuery.parse("#combine(term1 term2)"), qp);
+    List<ScoredDocument> results = retrieval.executeQuery(query, qp).scoredDocuments;
+    assertEquals(10, results.size());
+    index.close();
+  }
+
+  @Test
+  public void testCloseWithOpenReaders() throws Exception {
+    MemoryPositionalIndex heap = new MemoryPositionalIndex(Parameters.create());
+    Parameters p = Parameters.create();
+    p.set("slabSize", 16 << 10);
+    MemoryOffHeapPositionalIndex offHeap = new MemoryOffHeapPositionalIndex(p);
+    for (Document d : makeDocuments(500, 200, 4)) {
+      heap.addDocument(d);
+      offHeap.addDocument(d);
+    }
+
+    Node node = StructuredQuery.parse("#extents:term0:part=postings()");
+    ExtentIterator expected = (ExtentIterator) heap.getIterator(node);
+    ExtentIterator started = (ExtentIterator) offHeap.getIterator(node);
+    ExtentIterator unstarted = (ExtentIterator) offHeap.getIterator(node);
+    ScoringContext sc = new ScoringContext();
+    for (int i = 0; i < 10; i++) {
+      started.movePast(started.currentCandidate());
+    }
+
+    // readers already handed out finish on the slabs they hold
+    offHeap.close();
+    for (int i = 0; i < 10; i++) {
+      expected.movePast(expected.currentCandidate());
+    }
+    while (!expected.isDone()) {
+      sc.document = expected.currentCandidate();
+      assertEquals(sc.document, started.currentCandidate());
+      assertEquals(expected.extents(sc).size(), started.extents(sc).size());
+      assertEquals(expected.extents(sc).begin(0), started.extents(sc).begin(0));
+      expected.movePast(sc.document);
+      started.movePast(sc.document);
+    }
+    assertTrue(started.isDone());
+    long entries = 0;
+    while (!unstarted.isDone()) {
+      sc.document = unstarted.currentCandidate();
+      assertTrue(unstarted.extents(sc).size() > 0);
+      unstarted.movePast(sc.document);
+      entries++;
+    }
+    assertEquals(unstarted.totalEntries(), entries);
+
+    // new readers fail cleanly
+    try {
+      offHeap.getIterator(node);
+      fail("a closed part should not hand out iterators");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+}
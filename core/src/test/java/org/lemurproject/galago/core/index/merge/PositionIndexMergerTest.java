@@ -0,0 +1,188 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.index.merge;
+
+import org.junit.Test;
+import org.lemurproject.galago.core.index.IndexPartReader;
+import org.lemurproject.galago.core.index.KeyIterator;
+import org.lemurproject.galago.core.index.disk.PositionIndexReader;
+import org.lemurproject.galago.core.index.disk.PositionIndexWriter;
+import org.lemurproject.galago.tupleflow.FakeParameters;
+import org.lemurproject.galago.tupleflow.FileUtility;
+import org.lemurproject.galago.utility.ByteUtil;
+import org.lemurproject.galago.utility.FSUtil;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PositionIndexMergerTest {
+
+  // word -> document -> positions
+  private static TreeMap<String, TreeMap<Long, int[]>> makePostings(long seed, int documents) {
+    Random random = new Random(seed);
+    TreeMap<String, TreeMap<Long, int[]>> postings = new TreeMap<>();
+    for (long document = 0; document < documents; document++) {
+      for (int w = 0; w < 12; w++) {
+        if (random.nextInt(3) == 0) {
+          continue;
+        }
+        // short lists are inlined, longer ones carry a length marker
+        int[] positions = new int[1 + random.nextInt(5)];
+        int position = 0;
+        for (int i = 0; i < positions.length; i++) {
+          position += 1 + random.nextInt(300);
+          positions[i] = position;
+        }
+        String word = "w" + w;
+        if (!postings.containsKey(word)) {
+          postings.put(word, new TreeMap<Long, int[]>());
+        }
+        postings.get(word).put(document, positions);
+      }
+    }
+    // a word that only some documents have
+    postings.put("rare", new TreeMap<Long, int[]>());
+    postings.get("rare").put((long) documents - 1, new int[]{7});
+    return postings;
+  }
+
+  private static Parameters writerParameters(File file) {
+    Parameters p = Parameters.create();
+    p.set("filename", file.getAbsolutePath());
+    p.set("skipDistance", 3);
+    p.set("skipResetDistance", 2);
+    return p;
+  }
+
+  private static void write(File file, TreeMap<String, TreeMap<Long, int[]>> postings, long offset, long stride) throws Exception {
+    PositionIndexWriter writer = new PositionIndexWriter(new FakeParameters(writerParameters(file)));
+    for (String word : postings.keySet()) {
+      writer.processWord(ByteUtil.fromString(word));
+      for (long document : postings.get(word).keySet()) {
+        writer.processDocument(offset + document * stride);
+        for (int position : postings.get(word).get(document)) {
+          writer.processPosition(position);
+          writer.processTuple();
+        }
+      }
+    }
+    writer.close();
+  }
+
+  private static long merge(File output, List<File> inputs) throws Exception {
+    HashMap<IndexPartReader, Integer> readers = new HashMap<>();
+    for (int i = 0; i < inputs.size(); i++) {
+      readers.put(new PositionIndexReader(inputs.get(i).getAbsolutePath()), i);
+    }
+    PositionIndexMerger merger = new PositionIndexMerger(new FakeParameters(writerParameters(output)));
+    merger.setDocumentMapping(new DocumentMappingReader());
+    merger.setInputs(readers);
+    merger.performKeyMerge();
+    merger.close();
+    for (IndexPartReader reader : readers.keySet()) {
+      reader.close();
+    }
+    return merger.getConcatenatedKeyCount();
+  }
+
+  private static TreeMap<String, TreeMap<Long, int[]>> union(TreeMap<String, TreeMap<Long, int[]>> a, long aOffset, long aStride,
+          TreeMap<String, TreeMap<Long, int[]>> b, long bOffset, long bStride) {
+    TreeMap<String, TreeMap<Long, int[]>> all = new TreeMap<>();
+    for (Object[] input : new Object[][]{{a, aOffset, aStride}, {b, bOffset, bStride}}) {
+      @SuppressWarnings("unchecked")
+      TreeMap<String, TreeMap<Long, int[]>> postings = (TreeMap<String, TreeMap<Long, int[]>>) input[0];
+      for (String word : postings.keySet()) {
+        if (!all.containsKey(word)) {
+          all.put(word, new TreeMap<Long, int[]>());
+        }
+        for (long document : postings.get(word).keySet()) {
+          all.get(word).put((Long) input[1] + document * (Long) input[2], postings.get(word).get(document));
+        }
+      }
+    }
+    return all;
+  }
+
+  private static void assertSameLists(File expected, File actual) throws Exception {
+    PositionIndexReader e = new PositionIndexReader(expected.getAbsolutePath());
+    PositionIndexReader a = new PositionIndexReader(actual.getAbsolutePath());
+    for (String stat : new String[]{"collectionLength", "vocabCount", "highestDocumentCount", "highestFrequency"}) {
+      assertEquals(e.getManifest().getLong("statistics/" + stat), a.getManifest().getLong("statistics/" + stat));
+    }
+    KeyIterator ek = e.getIterator();
+    KeyIterator ak = a.getIterator();
+    int keys = 0;
+    while (!ek.isDone()) {
+      assertFalse(ak.isDone());
+      assertEquals(ek.getKeyString(), ak.getKeyString());
+      assertArrayEquals(ek.getKeyString(), ek.getValueBytes(), ak.getValueBytes());
+      ek.nextKey();
+      ak.nextKey();
+      keys++;
+    }
+    assertTrue(ak.isDone());
+    assertEquals(13, keys);
+    e.close();
+    a.close();
+  }
+
+  @Test
+  public void testDisjointListsAreConcatenated() throws Exception {
+    File folder = FileUtility.createTemporaryDirectory();
+    try {
+      TreeMap<String, TreeMap<Long, int[]>> first = makePostings(1, 40);
+      TreeMap<String, TreeMap<Long, int[]>> second = makePostings(2, 25);
+      File a = new File(folder, "a");
+      File b = new File(folder, "b");
+      File expected = new File(folder, "expected");
+      File merged = new File(folder, "merged");
+      write(a, first, 0, 1);
+      write(b, second, 1000, 1);
+      write(expected, union(first, 0, 1, second, 1000, 1), 0, 1);
+
+      // every list is concatenated
+      assertEquals(13, merge(merged, Arrays.asList(b, a)));
+      assertSameLists(expected, merged);
+    } finally {
+      FSUtil.deleteDirectory(folder);
+    }
+  }
+
+  @Test
+  public void testOverlappingListsAreMerged() throws Exception {
+    File folder = FileUtility.createTemporaryDirectory();
+    try {
+      TreeMap<String, TreeMap<Long, int[]>> first = makePostings(3, 30);
+      TreeMap<String, TreeMap<Long, int[]>> second = makePostings(4, 30);
+      File a = new File(folder, "a");
+      File b = new File(folder, "b");
+      File expected = new File(folder, "expected");
+      File merged = new File(folder, "merged");
+      // even and odd documents
+      write(a, first, 0, 2);
+      write(b, second, 1, 2);
+      write(expected, union(first, 0, 2, second, 1, 2), 0, 1);
+
+      List<File> inputs = new ArrayList<>();
+      inputs.add(a);
+      inputs.add(b);
+      // only the single-document "rare" lists do not interleave
+      assertEquals(1, merge(merged, inputs));
+      assertSameLists(expected, merged);
+    } finally {
+      FSUtil.deleteDirectory(folder);
+    }
+  }
+}
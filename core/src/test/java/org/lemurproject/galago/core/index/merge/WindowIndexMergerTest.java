@@ -0,0 +1,182 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.index.merge;
+
+import org.junit.Test;
+import org.lemurproject.galago.core.index.IndexPartReader;
+import org.lemurproject.galago.core.index.KeyIterator;
+import org.lemurproject.galago.core.index.disk.WindowIndexReader;
+import org.lemurproject.galago.core.index.disk.WindowIndexWriter;
+import org.lemurproject.galago.tupleflow.FakeParameters;
+import org.lemurproject.galago.tupleflow.FileUtility;
+import org.lemurproject.galago.utility.ByteUtil;
+import org.lemurproject.galago.utility.FSUtil;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WindowIndexMergerTest {
+
+  // window -> document -> {begin, end} pairs
+  private static TreeMap<String, TreeMap<Long, int[]>> makeWindows(long seed, int documents) {
+    Random random = new Random(seed);
+    TreeMap<String, TreeMap<Long, int[]>> windows = new TreeMap<>();
+    for (long document = 0; document < documents; document++) {
+      for (int w = 0; w < 8; w++) {
+        if (random.nextInt(3) == 0) {
+          continue;
+        }
+        int[] extents = new int[2 * (1 + random.nextInt(4))];
+        int begin = 0;
+        for (int i = 0; i < extents.length; i += 2) {
+          begin += 1 + random.nextInt(200);
+          extents[i] = begin;
+          extents[i + 1] = begin + 2 + random.nextInt(10);
+        }
+        String window = "od1~w" + w;
+        if (!windows.containsKey(window)) {
+          windows.put(window, new TreeMap<Long, int[]>());
+        }
+        windows.get(window).put(document, extents);
+      }
+    }
+    return windows;
+  }
+
+  private static Parameters writerParameters(File file) {
+    Parameters p = Parameters.create();
+    p.set("filename", file.getAbsolutePath());
+    p.set("skipDistance", 3);
+    p.set("skipResetDistance", 2);
+    return p;
+  }
+
+  private static void write(File file, TreeMap<String, TreeMap<Long, int[]>> windows, long offset, long stride) throws Exception {
+    WindowIndexWriter writer = new WindowIndexWriter(new FakeParameters(writerParameters(file)));
+    for (String window : windows.keySet()) {
+      writer.processExtentName(ByteUtil.fromString(window));
+      for (long document : windows.get(window).keySet()) {
+        writer.processNumber(offset + document * stride);
+        int[] extents = windows.get(window).get(document);
+        for (int i = 0; i < extents.length; i += 2) {
+          writer.processBegin(extents[i]);
+          writer.processTuple(extents[i + 1]);
+        }
+      }
+    }
+    writer.close();
+  }
+
+  private static long merge(File output, List<File> inputs) throws Exception {
+    HashMap<IndexPartReader, Integer> readers = new HashMap<>();
+    for (int i = 0; i < inputs.size(); i++) {
+      readers.put(new WindowIndexReader(inputs.get(i).getAbsolutePath()), i);
+    }
+    WindowIndexMerger merger = new WindowIndexMerger(new FakeParameters(writerParameters(output)));
+    merger.setDocumentMapping(new DocumentMappingReader());
+    merger.setInputs(readers);
+    merger.performKeyMerge();
+    merger.close();
+    for (IndexPartReader reader : readers.keySet()) {
+      reader.close();
+    }
+    return merger.getConcatenatedKeyCount();
+  }
+
+  private static void assertSameLists(File expected, File actual) throws Exception {
+    WindowIndexReader e = new WindowIndexReader(expected.getAbsolutePath());
+    WindowIndexReader a = new WindowIndexReader(actual.getAbsolutePath());
+    for (String stat : new String[]{"collectionLength", "vocabCount", "highestDocumentCount", "highestFrequency"}) {
+      assertEquals(e.getManifest().getLong("statistics/" + stat), a.getManifest().getLong("statistics/" + stat));
+    }
+    KeyIterator ek = e.getIterator();
+    KeyIterator ak = a.getIterator();
+    int keys = 0;
+    while (!ek.isDone()) {
+      assertFalse(ak.isDone());
+      assertEquals(ek.getKeyString(), ak.getKeyString());
+      assertArrayEquals(ek.getKeyString(), ek.getValueBytes(), ak.getValueBytes());
+      ek.nextKey();
+      ak.nextKey();
+      keys++;
+    }
+    assertTrue(ak.isDone());
+    assertEquals(8, keys);
+    e.close();
+    a.close();
+  }
+
+  @Test
+  public void testDisjointListsAreConcatenated() throws Exception {
+    File folder = FileUtility.createTemporaryDirectory();
+    try {
+      TreeMap<String, TreeMap<Long, int[]>> first = makeWindows(1, 40);
+      TreeMap<String, TreeMap<Long, int[]>> second = makeWindows(2, 25);
+      File a = new File(folder, "a");
+      File b = new File(folder, "b");
+      File expected = new File(folder, "expected");
+      File merged = new File(folder, "merged");
+      write(a, first, 0, 1);
+      write(b, second, 1000, 1);
+
+      TreeMap<String, TreeMap<Long, int[]>> all = new TreeMap<>();
+      for (String window : first.keySet()) {
+        all.put(window, new TreeMap<>(first.get(window)));
+        for (long document : second.get(window).keySet()) {
+          all.get(window).put(1000 + document, second.get(window).get(document));
+        }
+      }
+      write(expected, all, 0, 1);
+
+      // every list is concatenated
+      assertEquals(8, merge(merged, Arrays.asList(b, a)));
+      assertSameLists(expected, merged);
+    } finally {
+      FSUtil.deleteDirectory(folder);
+    }
+  }
+
+  @Test
+  public void testOverlappingListsAreMerged() throws Exception {
+    File folder = FileUtility.createTemporaryDirectory();
+    try {
+      TreeMap<String, TreeMap<Long, int[]>> first = makeWindows(3, 30);
+      TreeMap<String, TreeMap<Long, int[]>> second = makeWindows(4, 30);
+      File a = new File(folder, "a");
+      File b = new File(folder, "b");
+      File expected = new File(folder, "expected");
+      File merged = new File(folder, "merged");
+      // even and odd documents
+      write(a, first, 0, 2);
+      write(b, second, 1, 2);
+
+      TreeMap<String, TreeMap<Long, int[]>> all = new TreeMap<>();
+      for (String window : first.keySet()) {
+        all.put(window, new TreeMap<Long, int[]>());
+        for (long document : first.get(window).keySet()) {
+          all.get(window).put(2 * document, first.get(window).get(document));
+        }
+        for (long document : second.get(window).keySet()) {
+          all.get(window).put(2 * document + 1, second.get(window).get(document));
+        }
+      }
+      write(expected, all, 0, 1);
+
+      assertEquals(0, merge(merged, Arrays.asList(a, b)));
+      assertSameLists(expected, merged);
+    } finally {
+      FSUtil.deleteDirectory(folder);
+    }
+  }
+}
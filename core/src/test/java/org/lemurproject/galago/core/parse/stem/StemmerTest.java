@@ -0,0 +1,137 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.parse.stem;
+
+import org.junit.Test;
+import org.lemurproject.galago.core.index.KeyIterator;
+import org.lemurproject.galago.core.index.disk.DiskIndex;
+import org.lemurproject.galago.core.index.disk.PositionIndexReader;
+import org.lemurproject.galago.core.parse.Document;
+import org.lemurproject.galago.core.parse.TagTokenizer;
+import org.lemurproject.galago.core.tools.App;
+import org.lemurproject.galago.core.tools.AppTest;
+import org.lemurproject.galago.tupleflow.FileUtility;
+import org.lemurproject.galago.utility.FSUtil;
+import org.lemurproject.galago.utility.Parameters;
+import org.lemurproject.galago.utility.StreamUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class StemmerTest {
+
+  private static List<String> terms() {
+    Document test = new Document("test", KrovetzStemmerTest.text);
+    new TagTokenizer().tokenize(test);
+    return test.terms;
+  }
+
+  @Test
+  public void testSharedCache() throws Exception {
+    assertSame(new KrovetzStemmer().cache, new KrovetzStemmer().cache);
+    assertNotSame(new KrovetzStemmer().cache, new Porter2Stemmer().cache);
+
+    final List<String> terms = terms();
+    final List<String> expected = new ArrayList<>();
+    KrovetzStemmer reference = new KrovetzStemmer();
+    for (String term : terms) {
+      expected.add(reference.stemTerm(term));
+    }
+
+    ExecutorService threads = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<List<String>>> results = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        results.add(threads.submit(() -> {
+          Stemmer stemmer = new KrovetzStemmer();
+          List<String> stems = new ArrayList<>();
+          for (int i = 0; i < 20; i++) {
+            stems.clear();
+            for (String term : terms) {
+              stems.add(stemmer.stem(term));
+            }
+          }
+          return stems;
+        }));
+      }
+      for (Future<List<String>> result : results) {
+        assertEquals(expected, result.get());
+      }
+    } finally {
+      threads.shutdown();
+    }
+  }
+
+  @Test
+  public void testConflationDictionary() throws Exception {
+    File tmpDir = FileUtility.createTemporaryDirectory();
+    try {
+      File trec = new File(tmpDir, "corpus.trectext");
+      StreamUtil.copyStringToFile(AppTest.trecDocument("1", KrovetzStemmerTest.text), trec);
+      File conflations = new File(tmpDir, "conflations.krovetz");
+
+      Parameters p = Parameters.create();
+      p.set("inputPath", Collections.singletonList(trec.getAbsolutePath()));
+      p.set("outputPath", conflations.getAbsolutePath());
+      p.set("stemmer", "krovetz");
+      p.set("server", false);
+      App.run("stemmer-conflation", p, System.out);
+
+      KrovetzStemmer stemmer = new KrovetzStemmer();
+      stemmer.useConflations(conflations.getAbsolutePath());
+      assertEquals("have", stemmer.dictionary.get("having"));
+      for (String term : terms()) {
+        assertEquals(term, stemmer.stemTerm(term), stemmer.stem(term));
+      }
+      // unseen terms are still stemmed
+      assertEquals("warehouse", stemmer.stem("warehouses"));
+
+      // dictionaries are loaded once per path
+      Stemmer other = Stemmer.create(Parameters.parseArray("stemmer", KrovetzStemmer.class.getName(),
+              "conflations", conflations.getAbsolutePath()));
+      assertSame(stemmer.dictionary, other.dictionary);
+
+      try {
+        new Porter2Stemmer().useConflations(conflations.getAbsolutePath());
+        fail("a krovetz conflation part should not be used by porter");
+      } catch (IllegalArgumentException expected) {
+        // expected
+      }
+
+      // the build stems through the dictionary, to the same postings
+      File plain = new File(tmpDir, "plain");
+      File lookup = new File(tmpDir, "lookup");
+      App.main(new String[]{"build", "--indexPath=" + plain.getAbsolutePath(),
+                "--inputPath+" + trec.getAbsolutePath(), "--stemmer+krovetz", "--server=false"});
+      App.main(new String[]{"build", "--indexPath=" + lookup.getAbsolutePath(),
+                "--inputPath+" + trec.getAbsolutePath(), "--stemmer+krovetz", "--server=false",
+                "--stemmerConflations/krovetz=" + conflations.getAbsolutePath()});
+      assertEquals(keys(new File(plain, "postings.krovetz")), keys(new File(lookup, "postings.krovetz")));
+    } finally {
+      FSUtil.deleteDirectory(tmpDir);
+    }
+  }
+
+  private static List<String> keys(File part) throws Exception {
+    PositionIndexReader reader = (PositionIndexReader) DiskIndex.openIndexPart(part.getAbsolutePath());
+    List<String> keys = new ArrayList<>();
+    KeyIterator iterator = reader.getIterator();
+    while (!iterator.isDone()) {
+      keys.add(iterator.getKeyString() + ":" + iterator.getValueString());
+      iterator.nextKey();
+    }
+    reader.close();
+    return keys;
+  }
+}
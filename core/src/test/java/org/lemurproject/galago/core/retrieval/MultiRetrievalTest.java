@@ -4,6 +4,8 @@
 package org.lemurproject.galago.core.retrieval;
 
 import org.junit.Test;
+import org.lemurproject.galago.core.retrieval.processing.ProcessingModel;
+import org.lemurproject.galago.core.retrieval.processing.RankedDocumentModel;
 import org.lemurproject.galago.core.retrieval.query.Node;
 import org.lemurproject.galago.core.retrieval.query.StructuredQuery;
 import org.lemurproject.galago.core.tools.App;
@@ -16,8 +18,12 @@ import org.lemurproject.galago.utility.StreamUtil;
 import java.io.File;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  *
@@ -93,6 +99,22 @@ public class MultiRetrievalTest {
         assertEquals(expDocs[i].rank, results.get(i).rank);
         assertEquals(expDocs[i].score, results.get(i).score, 0.000001);
       }
+
+      // a truncated, time-limited merge keeps the same head of the ranking
+      Parameters topTwo = Parameters.create();
+      topTwo.set("requested", 2);
+      topTwo.set("shardTimeout", 60000L);
+      results = mr.executeQuery(queryTree, topTwo).scoredDocuments;
+      assertEquals(2, results.size());
+      for (int i = 0; i < 2; i++) {
+        assertEquals(expDocs[i].documentName, results.get(i).documentName);
+        assertEquals(expDocs[i].rank, results.get(i).rank);
+        assertEquals(expDocs[i].score, results.get(i).score, 0.000001);
+      }
+
+      assertEquals(19, mr.getCollectionStatistics("#lengths:document:part=lengths()").collectionLength);
+      assertEquals(4, mr.getNodeStatistics("#counts:sample:part=postings.krovetz()").nodeDocumentCount);
+      mr.close();
     } finally {
       if (trecCorpusFile1 != null) {
         trecCorpusFile1.delete();
@@ -108,4 +130,105 @@ public class MultiRetrievalTest {
       }
     }
   }
+
+  /**
+   * Scores nothing until its query is cancelled, then reads the index as
+   * RankedDocumentModel would.
+   */
+  public static class StallingModel extends RankedDocumentModel {
+
+    static CountDownLatch finished;
+    static volatile boolean cancelled;
+    static volatile boolean interrupted;
+
+    public StallingModel(LocalRetrieval lr) {
+      super(lr);
+    }
+
+    @Override
+    public ScoredDocument[] execute(Node queryTree, Parameters queryParams) throws Exception {
+      try {
+        long deadline = System.currentTimeMillis() + 30000;
+        while (!ProcessingModel.isCancelled() && System.currentTimeMillis() < deadline) {
+          Thread.sleep(5);
+        }
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+      cancelled = ProcessingModel.isCancelled();
+      interrupted |= Thread.currentThread().isInterrupted();
+      try {
+        return super.execute(queryTree, queryParams);
+      } finally {
+        finished.countDown();
+      }
+    }
+  }
+
+  @Test
+  public void testCancelledShardsCanBeQueriedAgain() throws Exception {
+    File trecCorpusFile = null;
+    File index1 = null;
+    File index2 = null;
+
+    try {
+      trecCorpusFile = FileUtility.createTemporary();
+      index1 = FileUtility.createTemporaryDirectory();
+      index2 = FileUtility.createTemporaryDirectory();
+      StreamUtil.copyStringToFile(AppTest.trecDocument("i1-1", "sample document one")
+              + AppTest.trecDocument("i1-2", "another sample"), trecCorpusFile);
+      App.main(new String[]{"build", "--indexPath=" + index1.getAbsolutePath(),
+                "--inputPath=" + trecCorpusFile.getAbsolutePath()});
+      StreamUtil.copyStringToFile(AppTest.trecDocument("i2-1", "sample document number two")
+              + AppTest.trecDocument("i2-2", "a longer document"), trecCorpusFile);
+      App.main(new String[]{"build", "--indexPath=" + index2.getAbsolutePath(),
+                "--inputPath=" + trecCorpusFile.getAbsolutePath()});
+
+      Parameters params = Parameters.create();
+      params.set("index", Arrays.asList(index1.getAbsolutePath(), index2.getAbsolutePath()));
+      params.set("resultCacheSize", 10L);
+      MultiRetrieval mr = (MultiRetrieval) RetrievalFactory.create(params);
+      Node queryTree = mr.transformQuery(StructuredQuery.parse("#combine( sample document )"), Parameters.create());
+      List<ScoredDocument> expected = mr.executeQuery(queryTree, Parameters.create()).scoredDocuments;
+      assertEquals(4, expected.size());
+
+      // the shards never answer in time, and are cancelled
+      StallingModel.finished = new CountDownLatch(2);
+      StallingModel.cancelled = false;
+      StallingModel.interrupted = false;
+      Parameters stalled = Parameters.create();
+      stalled.set("processingModel", StallingModel.class.getName());
+      stalled.set("shardTimeout", 100L);
+      stalled.set("requested", 3);
+      assertEquals(0, mr.executeQuery(queryTree, stalled).scoredDocuments.size());
+      assertTrue(StallingModel.finished.await(30, TimeUnit.SECONDS));
+      assertTrue(StallingModel.cancelled);
+      assertFalse(StallingModel.interrupted);
+
+      // the shards cached no partial results, and still read their indexes
+      for (Retrieval r : mr.retrievals) {
+        ((LocalRetrieval) r).resultCache.cleanUp();
+        assertEquals(1, ((LocalRetrieval) r).resultCache.estimatedSize());
+      }
+      stalled.remove("processingModel");
+      stalled.remove("shardTimeout");
+      List<ScoredDocument> results = mr.executeQuery(queryTree, stalled).scoredDocuments;
+      assertEquals(3, results.size());
+      for (int i = 0; i < results.size(); i++) {
+        assertEquals(expected.get(i).documentName, results.get(i).documentName);
+        assertEquals(expected.get(i).score, results.get(i).score, 0.000001);
+      }
+      mr.close();
+    } finally {
+      if (trecCorpusFile != null) {
+        trecCorpusFile.delete();
+      }
+      if (index1 != null) {
+        FSUtil.deleteDirectory(index1);
+      }
+      if (index2 != null) {
+        FSUtil.deleteDirectory(index2);
+      }
+    }
+  }
 }
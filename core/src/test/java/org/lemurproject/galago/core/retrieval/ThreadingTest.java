@@ -6,8 +6,11 @@ package org.lemurproject.galago.core.retrieval;
 import org.junit.Test;
 import org.lemurproject.galago.core.retrieval.query.Node;
 import org.lemurproject.galago.core.retrieval.query.StructuredQuery;
+import org.lemurproject.galago.core.retrieval.traversal.PerQuery;
+import org.lemurproject.galago.core.retrieval.traversal.Traversal;
 import org.lemurproject.galago.core.tools.App;
 import org.lemurproject.galago.core.tools.AppTest;
+import org.lemurproject.galago.core.util.IterUtils;
 import org.lemurproject.galago.tupleflow.FileUtility;
 import org.lemurproject.galago.utility.FSUtil;
 import org.lemurproject.galago.utility.Parameters;
@@ -16,6 +19,13 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  *
@@ -107,6 +117,105 @@ public class ThreadingTest {
     }
   }
 
+  @Test
+  public void testConcurrentTransformQuery() throws Exception {
+    File index = null;
+    try {
+      index = makeIndex(200, 50, 100);
+      Parameters retParams = Parameters.create();
+      retParams.set("index", index.getAbsolutePath());
+      IterUtils.addToParameters(retParams, CountingTraversal.class);
+      final LocalRetrieval plain = (LocalRetrieval) RetrievalFactory.create(retParams);
+      retParams.set("transformCacheSize", 1000L);
+      final LocalRetrieval memo = (LocalRetrieval) RetrievalFactory.create(retParams);
+
+      final Random r = new Random(7);
+      final List<String> queries = new ArrayList<>();
+      final List<String> expected = new ArrayList<>();
+      for (int qid = 0; qid < 20; qid++) {
+        String query = "#sdm( " + r.nextInt(100) + " " + r.nextInt(100) + " " + r.nextInt(100) + " )";
+        queries.add(query);
+        expected.add(plain.transformQuery(StructuredQuery.parse(query), Parameters.create()).toString());
+      }
+
+      // per-query traversals are created for every transformation
+      int created = CountingTraversal.created.get();
+      plain.transformQuery(StructuredQuery.parse(queries.get(0)), Parameters.create());
+      assertEquals(created + 1, CountingTraversal.created.get());
+
+      ExecutorService threads = Executors.newFixedThreadPool(8);
+      try {
+        List<Future<?>> results = new ArrayList<>();
+        for (final LocalRetrieval ret : Arrays.asList(plain, memo)) {
+          for (int t = 0; t < 8; t++) {
+            final Random tr = new Random(t);
+            results.add(threads.submit(() -> {
+              for (int i = 0; i < 200; i++) {
+                int qid = tr.nextInt(queries.size());
+                Node transformed = ret.transformQuery(StructuredQuery.parse(queries.get(qid)), Parameters.create());
+                assertEquals(expected.get(qid), transformed.toString());
+                // callers own the returned tree
+                transformed.setOperator("scratch");
+              }
+              return null;
+            }));
+          }
+        }
+        for (Future<?> result : results) {
+          result.get();
+        }
+      } finally {
+        threads.shutdown();
+      }
+
+      assertTrue(memo.getTransformCacheStats().hitCount() > 0);
+      assertEquals(null, plain.getTransformCacheStats());
+
+      // changes the traversals make to the query parameters are replayed on a hit
+      Parameters first = Parameters.create();
+      memo.transformQuery(StructuredQuery.parse("#sdm( 1 2 )"), first);
+      Parameters second = Parameters.create();
+      memo.transformQuery(StructuredQuery.parse("#sdm( 1 2 )"), second);
+      assertEquals(first.toString(), second.toString());
+      assertEquals(1L, second.getLong("countingTraversal"));
+
+      plain.close();
+      memo.close();
+    } finally {
+      if (index != null) {
+        FSUtil.deleteDirectory(index);
+      }
+    }
+  }
+
+  @PerQuery
+  public static class CountingTraversal extends Traversal {
+
+    static final AtomicInteger created = new AtomicInteger();
+    private int roots = 0;
+
+    public CountingTraversal() {
+      created.incrementAndGet();
+    }
+
+    @Override
+    public void beforeNode(Node original, Parameters queryParameters) throws Exception {
+    }
+
+    @Override
+    public Node afterNode(Node original, Parameters queryParameters) throws Exception {
+      return original;
+    }
+
+    @Override
+    public Node traverse(Node tree, Parameters queryParams) throws Exception {
+      // an instance shared between queries would count more than one
+      roots++;
+      queryParams.set("countingTraversal", (long) roots);
+      return tree;
+    }
+  }
+
   // index construction
   private File makeIndex(int docCount, int docLen, int vocab) throws Exception {
     File trecFile = FileUtility.createTemporary();
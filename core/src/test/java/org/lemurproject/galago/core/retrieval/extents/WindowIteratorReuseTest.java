@@ -0,0 +1,202 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.core.retrieval.extents;
+
+import org.junit.Test;
+import org.lemurproject.galago.core.retrieval.iterator.ExtentArrayIterator;
+import org.lemurproject.galago.core.retrieval.iterator.ExtentIterator;
+import org.lemurproject.galago.core.retrieval.iterator.OrderedWindowIterator;
+import org.lemurproject.galago.core.retrieval.iterator.UnorderedWindowIterator;
+import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
+import org.lemurproject.galago.core.retrieval.query.NodeParameters;
+import org.lemurproject.galago.core.util.ExtentArray;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the window iterators, which reuse their matching state across
+ * documents, find the same windows as a per-document matcher.
+ */
+public class WindowIteratorReuseTest {
+
+  private static int[][] randomPostings(Random random, int docCount, int docLength, double density) {
+    List<int[]> postings = new ArrayList<>();
+    for (int d = 0; d < docCount; d++) {
+      List<Integer> positions = new ArrayList<>();
+      for (int p = 0; p < docLength; p++) {
+        if (random.nextDouble() < density) {
+          positions.add(p);
+        }
+      }
+      if (!positions.isEmpty()) {
+        int[] posting = new int[positions.size() + 1];
+        posting[0] = d;
+        for (int i = 0; i < positions.size(); i++) {
+          posting[i + 1] = positions.get(i);
+        }
+        postings.add(posting);
+      }
+    }
+    return postings.toArray(new int[postings.size()][]);
+  }
+
+  // the matcher of the ordered window, one ExtentArrayIterator per child
+  private static ExtentArray expectedOrdered(ExtentArray[] children, int width) {
+    ExtentArray result = new ExtentArray();
+    ExtentArrayIterator[] its = new ExtentArrayIterator[children.length];
+    for (int i = 0; i < children.length; i++) {
+      its[i] = new ExtentArrayIterator(children[i]);
+      if (its[i].isDone()) {
+        return result;
+      }
+    }
+    while (true) {
+      boolean invalid = false;
+      int begin = its[0].currentBegin();
+      for (int i = 1; i < its.length; i++) {
+        int end = its[i - 1].currentEnd();
+        while (end > its[i].currentBegin()) {
+          if (!its[i].next()) {
+            return result;
+          }
+        }
+        if (its[i].currentBegin() - end >= width) {
+          invalid = true;
+          break;
+        }
+      }
+      if (!invalid) {
+        result.add(begin, its[its.length - 1].currentEnd());
+      }
+      if (!its[0].next()) {
+        return result;
+      }
+    }
+  }
+
+  // the matcher of the unordered window, one ExtentArrayIterator per child
+  private static ExtentArray expectedUnordered(ExtentArray[] children, int width) {
+    ExtentArray result = new ExtentArray();
+    ExtentArrayIterator[] its = new ExtentArrayIterator[children.length];
+    for (int i = 0; i < children.length; i++) {
+      its[i] = new ExtentArrayIterator(children[i]);
+      if (its[i].isDone()) {
+        return result;
+      }
+    }
+    while (true) {
+      int min = Integer.MAX_VALUE;
+      int max = 0;
+      for (ExtentArrayIterator it : its) {
+        min = Math.min(min, it.currentBegin());
+        max = Math.max(max, it.currentEnd());
+      }
+      if (max - min <= width || width == -1) {
+        result.add(min, max);
+      }
+      for (ExtentArrayIterator it : its) {
+        if (it.currentBegin() == min && !it.next()) {
+          return result;
+        }
+      }
+    }
+  }
+
+  private static ExtentArray copy(ExtentArray array) {
+    ExtentArray copy = new ExtentArray();
+    for (int i = 0; i < array.size(); i++) {
+      copy.add(array.begin(i), array.end(i));
+    }
+    return copy;
+  }
+
+  private static void assertSameExtents(ExtentArray expected, ExtentArray actual) {
+    assertEquals(expected.toString().replaceFirst("doc=-?\\d+", ""), actual.toString().replaceFirst("doc=-?\\d+", ""));
+  }
+
+  private static void checkWindows(int[][][] data, boolean ordered, int width) throws IOException {
+    FakeExtentIterator[] children = new FakeExtentIterator[data.length];
+    for (int i = 0; i < data.length; i++) {
+      children[i] = new FakeExtentIterator(data[i]);
+    }
+    NodeParameters np = new NodeParameters();
+    np.set("default", width);
+    ExtentIterator window = ordered ? new OrderedWindowIterator(np, children) : new UnorderedWindowIterator(np, children);
+
+    // the inputs of the reference matcher come from fresh children
+    FakeExtentIterator[] reference = new FakeExtentIterator[data.length];
+    for (int i = 0; i < data.length; i++) {
+      reference[i] = new FakeExtentIterator(data[i]);
+    }
+
+    ScoringContext sc = new ScoringContext();
+    int documents = 0;
+    while (!window.isDone()) {
+      sc.document = window.currentCandidate();
+      ExtentArray[] extents = new ExtentArray[data.length];
+      for (int i = 0; i < data.length; i++) {
+        reference[i].syncTo(sc.document);
+        extents[i] = reference[i].extents(sc);
+      }
+      ExtentArray expected = ordered ? expectedOrdered(extents, width) : expectedUnordered(extents, width);
+      assertSameExtents(expected, copy(window.extents(sc)));
+      window.movePast(sc.document);
+      documents++;
+    }
+    assert (documents > 0);
+  }
+
+  @Test
+  public void testRandomWindows() throws IOException {
+    Random random = new Random(7);
+    for (int trial = 0; trial < 20; trial++) {
+      int[][][] data = new int[2 + trial % 3][][];
+      for (int i = 0; i < data.length; i++) {
+        // a frequent child and rarer ones, so the load order is exercised
+        data[i] = randomPostings(random, 200, 60, (i == 0) ? 0.3 : 0.05 + 0.05 * i);
+      }
+      for (int width : new int[]{1, 4, 8}) {
+        checkWindows(data, true, width);
+        checkWindows(data, false, width);
+      }
+    }
+  }
+
+  @Test
+  public void testNestedWindows() throws IOException {
+    // extents with ends: #od:1( #uw:4(a b) c )
+    Random random = new Random(11);
+    int[][] a = randomPostings(random, 100, 40, 0.2);
+    int[][] b = randomPostings(random, 100, 40, 0.2);
+    int[][] c = randomPostings(random, 100, 40, 0.2);
+
+    NodeParameters four = new NodeParameters();
+    four.set("default", 4);
+    NodeParameters one = new NodeParameters();
+    one.set("default", 1);
+    UnorderedWindowIterator inner = new UnorderedWindowIterator(four, new ExtentIterator[]{new FakeExtentIterator(a), new FakeExtentIterator(b)});
+    FakeExtentIterator outerC = new FakeExtentIterator(c);
+    OrderedWindowIterator outer = new OrderedWindowIterator(one, new ExtentIterator[]{inner, outerC});
+
+    UnorderedWindowIterator referenceInner = new UnorderedWindowIterator(four, new ExtentIterator[]{new FakeExtentIterator(a), new FakeExtentIterator(b)});
+    FakeExtentIterator referenceC = new FakeExtentIterator(c);
+
+    ScoringContext sc = new ScoringContext();
+    int matches = 0;
+    while (!outer.isDone()) {
+      sc.document = outer.currentCandidate();
+      referenceInner.syncTo(sc.document);
+      referenceC.syncTo(sc.document);
+      ExtentArray expected = expectedOrdered(new ExtentArray[]{copy(referenceInner.extents(sc)), referenceC.extents(sc)}, 1);
+      ExtentArray actual = outer.extents(sc);
+      assertSameExtents(expected, copy(actual));
+      matches += actual.size();
+      outer.movePast(sc.document);
+    }
+    assert (matches > 0);
+  }
+}
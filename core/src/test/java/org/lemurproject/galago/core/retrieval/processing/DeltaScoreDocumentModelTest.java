@@ -105,7 +105,98 @@ public class DeltaScoreDocumentModelTest {
     }
   }
 
+  @Test
+  public void testBlockMaxWAND() throws Exception {
+    File corpus = FileUtility.createTemporary();
+    File index = FileUtility.createTemporaryDirectory();
+    try {
+      // short blocks, so that there is something to skip over
+      makeIndex(corpus, index, 8);
+
+      Parameters globals = Parameters.create();
+      LocalRetrieval ret = new LocalRetrieval(index.getAbsolutePath(), globals);
+
+      RankedDocumentModel safeModel = new RankedDocumentModel(ret);
+      BlockMaxWandDocumentModel deltaModel = new BlockMaxWandDocumentModel(ret);
+
+      for (String q : new String[]{"#combine( test text 0 1 2 3 4 90 )", "#combine( 95 99 100 105 )", "#bm25( 90 )"}) {
+        for (int requested : new int[]{1, 5, 10}) {
+          Parameters queryParams = Parameters.create();
+          queryParams.set("requested", requested);
+
+          Node query = ret.transformQuery(StructuredQuery.parse(q), queryParams);
+
+          ScoredDocument[] deltaResults = deltaModel.execute(query, queryParams);
+          ScoredDocument[] safeResults = safeModel.execute(query, queryParams);
+
+          assertEquals(safeResults.length, deltaResults.length);
+          for (int i = 0; i < safeResults.length; ++i) {
+            assertEquals(safeResults[i].score, deltaResults[i].score, 0.00001);
+          }
+        }
+      }
+    } finally {
+      corpus.delete();
+      FSUtil.deleteDirectory(index);
+    }
+  }
+
+  @Test
+  public void testBlockCodec() throws Exception {
+    File corpus = FileUtility.createTemporary();
+    File vbyteIndex = FileUtility.createTemporaryDirectory();
+    File blockIndex = FileUtility.createTemporaryDirectory();
+    try {
+      makeIndex(corpus, vbyteIndex);
+      makeIndex(corpus, blockIndex, 500, "block");
+
+      LocalRetrieval vbyte = new LocalRetrieval(vbyteIndex.getAbsolutePath(), Parameters.create());
+      LocalRetrieval block = new LocalRetrieval(blockIndex.getAbsolutePath(), Parameters.create());
+
+      for (String q : new String[]{"#combine( test text 0 1 2 3 4 90 )", "#combine( #od:1( 95 96 ) #uw:8( 3 99 ) )", "#bm25( 90 )"}) {
+        Parameters queryParams = Parameters.create();
+        queryParams.set("requested", 10);
+
+        Node query = vbyte.transformQuery(StructuredQuery.parse(q), queryParams);
+        ScoredDocument[] expected = new RankedDocumentModel(vbyte).execute(query, queryParams);
+        ScoredDocument[] ranked = new RankedDocumentModel(block).execute(block.transformQuery(StructuredQuery.parse(q), queryParams), queryParams);
+
+        assertEquals(expected.length, ranked.length);
+        for (int i = 0; i < expected.length; ++i) {
+          assertEquals(expected[i].document, ranked[i].document);
+          assertEquals(expected[i].score, ranked[i].score, 0.00001);
+        }
+      }
+
+      // block codec lists carry block-max information
+      Parameters queryParams = Parameters.create();
+      queryParams.set("requested", 5);
+      Node query = block.transformQuery(StructuredQuery.parse("#combine( 95 99 100 105 )"), queryParams);
+      ScoredDocument[] safeResults = new RankedDocumentModel(block).execute(query, queryParams);
+      ScoredDocument[] deltaResults = new BlockMaxWandDocumentModel(block).execute(query, queryParams);
+      assertEquals(safeResults.length, deltaResults.length);
+      for (int i = 0; i < safeResults.length; ++i) {
+        assertEquals(safeResults[i].score, deltaResults[i].score, 0.00001);
+      }
+
+      vbyte.close();
+      block.close();
+    } finally {
+      corpus.delete();
+      FSUtil.deleteDirectory(vbyteIndex);
+      FSUtil.deleteDirectory(blockIndex);
+    }
+  }
+
   private void makeIndex(File corpus, File index) throws Exception {
+    makeIndex(corpus, index, 500);
+  }
+
+  private void makeIndex(File corpus, File index, int skipDistance) throws Exception {
+    makeIndex(corpus, index, skipDistance, "vbyte");
+  }
+
+  private void makeIndex(File corpus, File index, int skipDistance, String codec) throws Exception {
     StringBuilder c = new StringBuilder();
     for (int i = 0; i < 100; i++) {
       StringBuilder data = new StringBuilder();
@@ -119,6 +210,8 @@ public class DeltaScoreDocumentModelTest {
     Parameters p = Parameters.create();
     p.set("inputPath", corpus.getAbsolutePath());
     p.set("indexPath", index.getAbsolutePath());
+    p.set("skipDistance", skipDistance);
+    p.set("codec", codec);
     App.run("build", p, System.out);
     System.out.println("build finished?");
   }
@@ -88,6 +88,35 @@ public class RankedDocumentModelTest {
     }
   }
 
+  @Test
+  public void testParallelPartitions() throws Exception {
+    Parameters globals = Parameters.create();
+    LocalRetrieval ret = new LocalRetrieval(index.getAbsolutePath(), globals);
+
+    RankedDocumentModel safeModel = new RankedDocumentModel(ret);
+    ParallelRankedDocumentModel model = new ParallelRankedDocumentModel(ret);
+
+    for (String q : new String[]{"#combine( test text 0 1 2 3 4 )", "#combine( test text 99 )", "#combine( 50 55 )"}) {
+      for (int partitions : new int[]{1, 3, 7, 100}) {
+        Parameters queryParams = Parameters.create();
+        queryParams.set("requested", 10);
+        queryParams.set("partitions", partitions);
+
+        Node query = ret.transformQuery(StructuredQuery.parse(q), queryParams);
+
+        ScoredDocument[] expected = safeModel.execute(query, queryParams);
+        ScoredDocument[] results = model.execute(query, queryParams);
+
+        assertEquals(expected.length, results.length);
+        for (int i = 0; i < expected.length; i++) {
+          assertEquals(expected[i].document, results[i].document);
+          assertEquals(expected[i].rank, results[i].rank);
+          assertEquals(expected[i].score, results[i].score, 0.00001);
+        }
+      }
+    }
+  }
+
   @Test
   public void testWhiteList() throws Exception {
     Parameters globals = Parameters.create();
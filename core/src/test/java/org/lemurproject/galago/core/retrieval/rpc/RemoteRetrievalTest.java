@@ -0,0 +1,199 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.retrieval.rpc;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.lemurproject.galago.core.index.stats.FieldStatistics;
+import org.lemurproject.galago.core.index.stats.IndexPartStatistics;
+import org.lemurproject.galago.core.index.stats.NodeStatistics;
+import org.lemurproject.galago.core.parse.Document;
+import org.lemurproject.galago.core.parse.Document.DocumentComponents;
+import org.lemurproject.galago.core.retrieval.Results;
+import org.lemurproject.galago.core.retrieval.Retrieval;
+import org.lemurproject.galago.core.retrieval.RetrievalFactory;
+import org.lemurproject.galago.core.retrieval.ScoredDocument;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.StructuredQuery;
+import org.lemurproject.galago.core.tools.App;
+import org.lemurproject.galago.core.tools.AppTest;
+import org.lemurproject.galago.tupleflow.FileUtility;
+import org.lemurproject.galago.utility.FSUtil;
+import org.lemurproject.galago.utility.Parameters;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a RemoteRetrieval answers exactly as the local retrieval it
+ * is served from.
+ */
+public class RemoteRetrievalTest {
+
+  private static File index;
+  private static Retrieval local;
+  private static RetrievalServer server;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    index = makeIndex(500, 50, 200);
+    local = RetrievalFactory.instance(index.getAbsolutePath(), Parameters.create());
+    server = RetrievalServer.start(local, 0);
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    if (server != null) {
+      server.close();
+    }
+    if (local != null) {
+      local.close();
+    }
+    if (index != null) {
+      FSUtil.deleteDirectory(index);
+    }
+  }
+
+  @Test
+  public void testRemoteCalls() throws Exception {
+    Retrieval remote = RetrievalFactory.instance(server.getURL("localhost"), Parameters.create());
+    assertTrue(remote instanceof RemoteRetrieval);
+
+    try {
+      assertEquals(local.getAvailableParts().toString(), remote.getAvailableParts().toString());
+      assertEquals(local.getGlobalParameters().toString(), remote.getGlobalParameters().toString());
+
+      FieldStatistics lfs = local.getCollectionStatistics("#lengths:document:part=lengths()");
+      FieldStatistics rfs = remote.getCollectionStatistics("#lengths:document:part=lengths()");
+      assertEquals(lfs.toString(), rfs.toString());
+
+      IndexPartStatistics lps = local.getIndexPartStatistics("postings");
+      IndexPartStatistics rps = remote.getIndexPartStatistics("postings");
+      assertEquals(lps.toString(), rps.toString());
+
+      Node counts = StructuredQuery.parse("#counts:@/1/:part=postings()");
+      NodeStatistics lns = local.getNodeStatistics(counts);
+      NodeStatistics rns = remote.getNodeStatistics("#counts:@/1/:part=postings()");
+      assertEquals(lns.toString(), rns.toString());
+      assertEquals(local.getNodeType(counts).getIteratorClass(), remote.getNodeType(counts).getIteratorClass());
+      assertEquals(local.getQueryType(counts), remote.getQueryType(counts));
+
+      Document d = remote.getDocument("doc-2", new DocumentComponents(true, false, false));
+      assertEquals(local.getDocument("doc-2", new DocumentComponents(true, false, false)).text, d.text);
+      assertNull(d.terms);
+      assertNull(d.tags);
+      assertTrue(d.metadata.isEmpty());
+
+      Document tokenized = remote.getDocument("doc-3", new DocumentComponents(true, true, true));
+      assertEquals(local.getDocument("doc-3", new DocumentComponents(true, true, true)).terms, tokenized.terms);
+
+      Map<String, Document> docs = remote.getDocuments(Arrays.asList("doc-1", "doc-2"), new DocumentComponents());
+      assertEquals(2, docs.size());
+      assertEquals("doc-1", docs.get("doc-1").name);
+
+      assertEquals(local.getDocumentId("doc-7"), remote.getDocumentId("doc-7"));
+      assertEquals(local.getDocumentLength("doc-2"), remote.getDocumentLength("doc-2"));
+      assertEquals(local.getDocumentLength(1L), remote.getDocumentLength(1L));
+      assertEquals(local.getDocumentName(1L), remote.getDocumentName(1L));
+
+      Parameters qp = Parameters.create();
+      qp.set("requested", 20);
+      Node trans = remote.transformQuery(StructuredQuery.parse("#combine(1 2 3)"), qp);
+      assertEquals(local.transformQuery(StructuredQuery.parse("#combine(1 2 3)"), qp).toString(), trans.toString());
+
+      assertSameResults(local.executeQuery(trans, qp), remote.executeQuery(trans, qp));
+    } finally {
+      remote.close();
+    }
+  }
+
+  @Test
+  public void testPipelinedQueries() throws Exception {
+    RemoteRetrieval remote = new RemoteRetrieval("localhost", server.getPort(), Parameters.create());
+    try {
+      List<Node> queries = new ArrayList<>();
+      List<Parameters> params = new ArrayList<>();
+      for (int i = 0; i < 20; i++) {
+        Parameters qp = Parameters.create();
+        qp.set("requested", 10);
+        queries.add(remote.transformQuery(StructuredQuery.parse("#combine(" + i + " " + (i + 1) + ")"), qp));
+        params.add(qp);
+      }
+
+      List<Results> batch = remote.executeQueries(queries, params);
+      assertEquals(queries.size(), batch.size());
+      for (int i = 0; i < queries.size(); i++) {
+        assertSameResults(local.executeQuery(queries.get(i), params.get(i)), batch.get(i));
+      }
+    } finally {
+      remote.close();
+    }
+  }
+
+  @Test
+  public void testRemoteError() throws Exception {
+    RemoteRetrieval remote = new RemoteRetrieval(server.getURL("localhost"), Parameters.create());
+    try {
+      try {
+        remote.getIndexPartStatistics("no-such-part");
+        fail("expected the server to report a failure");
+      } catch (IOException e) {
+        // expected
+      }
+      // the pool drops the failed connection; later calls still work.
+      assertEquals(local.getDocumentName(1L), remote.getDocumentName(1L));
+    } finally {
+      remote.close();
+    }
+  }
+
+  private static void assertSameResults(Results expected, Results actual) {
+    assertEquals(expected.scoredDocuments.size(), actual.scoredDocuments.size());
+    for (int i = 0; i < expected.scoredDocuments.size(); i++) {
+      ScoredDocument e = expected.scoredDocuments.get(i);
+      ScoredDocument a = actual.scoredDocuments.get(i);
+      assertEquals(e.document, a.document);
+      assertEquals(e.documentName, a.documentName);
+      assertEquals(e.rank, a.rank);
+      assertEquals(e.score, a.score, 0.0);
+    }
+  }
+
+  private static File makeIndex(int docCount, int docLen, int vocab) throws Exception {
+    File trecFile = FileUtility.createTemporary();
+    File indexFolder = FileUtility.createTemporaryDirectory();
+
+    Random r = new Random(7);
+    BufferedWriter writer = new BufferedWriter(new FileWriter(trecFile));
+    for (int doc = 0; doc < docCount; doc++) {
+      StringBuilder sb = new StringBuilder();
+      sb.append("document ").append(doc);
+      for (int termCount = 2; termCount < docLen; termCount++) {
+        sb.append(" ").append(r.nextInt(vocab));
+      }
+      writer.write(AppTest.trecDocument("doc-" + doc, sb.toString()));
+    }
+    writer.close();
+
+    Parameters p = Parameters.create();
+    p.set("inputPath", trecFile.getAbsolutePath());
+    p.set("indexPath", indexFolder.getAbsolutePath());
+    p.set("corpus", true);
+    p.set("stemmedPostings", false);
+    App.run("build", p, System.err);
+
+    trecFile.delete();
+    return indexFolder;
+  }
+}
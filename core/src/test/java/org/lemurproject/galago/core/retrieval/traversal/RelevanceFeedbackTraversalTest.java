@@ -4,21 +4,29 @@ package org.lemurproject.galago.core.retrieval.traversal;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.lemurproject.galago.core.index.disk.DiskForwardIndexReader;
+import org.lemurproject.galago.core.parse.stem.Stemmer;
 import org.lemurproject.galago.core.retrieval.LocalRetrieval;
 import org.lemurproject.galago.core.retrieval.LocalRetrievalTest;
 import org.lemurproject.galago.core.retrieval.RetrievalFactory;
 import org.lemurproject.galago.core.retrieval.ScoredDocument;
 import org.lemurproject.galago.core.retrieval.prf.RelevanceModel1;
 import org.lemurproject.galago.core.retrieval.prf.RelevanceModel3;
+import org.lemurproject.galago.core.retrieval.prf.WeightedTerm;
 import org.lemurproject.galago.core.retrieval.query.Node;
 import org.lemurproject.galago.core.retrieval.query.StructuredQuery;
+import org.lemurproject.galago.core.tools.App;
+import org.lemurproject.galago.core.util.WordLists;
+import org.lemurproject.galago.tupleflow.FileUtility;
 import org.lemurproject.galago.utility.FSUtil;
 import org.lemurproject.galago.utility.Parameters;
 
 import java.io.File;
 import java.util.List;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -159,6 +167,44 @@ public class RelevanceFeedbackTraversalTest {
     retrieval.close();
   }
 
+  @Test
+  public void testRelevanceModelForwardIndex() throws Exception {
+    File forwardIndex = FileUtility.createTemporaryDirectory();
+    try {
+      App.main(new String[]{"build", "--indexPath=" + forwardIndex.getAbsolutePath(),
+                "--inputPath+" + trecCorpusFile.getAbsolutePath(), "--forwardIndex=true", "--server=false"});
+
+      Parameters p = Parameters.create();
+      p.set("index", forwardIndex.getAbsolutePath());
+      LocalRetrieval retrieval = (LocalRetrieval) RetrievalFactory.create(p);
+      assertTrue(retrieval.getIndex().getIndexPart("forward") instanceof DiskForwardIndexReader);
+
+      Node query = retrieval.transformQuery(StructuredQuery.parse("#combine( jumped moon )"), Parameters.create());
+      List<ScoredDocument> initial = retrieval.executeQuery(query).scoredDocuments;
+      assertTrue(initial.size() > 1);
+
+      Stemmer stemmer = RelevanceModel1.getStemmer(p, retrieval);
+      Set<String> queryTerms = RelevanceModel1.stemTerms(stemmer, StructuredQuery.findQueryTerms(query));
+      Set<String> stopwords = WordLists.getWordList("rmstop");
+
+      // the same weights with and without the forward index
+      List<WeightedTerm> corpusTerms = RelevanceModel1.extractGrams(retrieval, initial, stemmer,
+              Parameters.parseArray("rmForwardIndex", false), queryTerms, stopwords, null);
+      List<WeightedTerm> forwardTerms = RelevanceModel1.extractGrams(retrieval, initial, stemmer,
+              Parameters.create(), queryTerms, stopwords, null);
+      assertFalse(corpusTerms.isEmpty());
+      assertEquals(corpusTerms.size(), forwardTerms.size());
+      for (int i = 0; i < corpusTerms.size(); i++) {
+        assertEquals(corpusTerms.get(i).getTerm(), forwardTerms.get(i).getTerm());
+        assertEquals(corpusTerms.get(i).getWeight(), forwardTerms.get(i).getWeight(), 1e-12);
+      }
+
+      retrieval.close();
+    } finally {
+      FSUtil.deleteDirectory(forwardIndex);
+    }
+  }
+
   @After
   public void tearDown() throws Exception {
     if (relsFile != null) {
@@ -0,0 +1,108 @@
+/*
+ *  BSD License (http://www.galagosearch.org/license)
+ */
+package org.lemurproject.galago.core.tools;
+
+import org.junit.Test;
+import org.lemurproject.galago.core.index.disk.WindowStatisticsReader;
+import org.lemurproject.galago.core.index.stats.NodeStatistics;
+import org.lemurproject.galago.core.retrieval.LocalRetrieval;
+import org.lemurproject.galago.core.retrieval.ScoredDocument;
+import org.lemurproject.galago.core.retrieval.query.Node;
+import org.lemurproject.galago.core.retrieval.query.StructuredQuery;
+import org.lemurproject.galago.tupleflow.FileUtility;
+import org.lemurproject.galago.utility.FSUtil;
+import org.lemurproject.galago.utility.Parameters;
+import org.lemurproject.galago.utility.StreamUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BuildWindowStatisticsTest {
+
+  @Test
+  public void testStoredStatisticsMatchIterators() throws Exception {
+    File tmpDir = FileUtility.createTemporaryDirectory();
+    try {
+      File trecFolder = new File(tmpDir, "trec");
+      trecFolder.mkdir();
+      File index = new File(tmpDir, "index");
+
+      StreamUtil.copyStringToFile(BuildWindowIndexTest.trecDocument("d1", "a b b b a c a c b b a a c a a c b a z"), new File(trecFolder, "one.trectext"));
+      StreamUtil.copyStringToFile(BuildWindowIndexTest.trecDocument("d2", "b a c a c b b a a c a a c b a c a a"), new File(trecFolder, "two.trectext"));
+      StreamUtil.copyStringToFile(BuildWindowIndexTest.trecDocument("d3", "a c b b a a c a a c b a c a a b a a z"), new File(trecFolder, "three.trectext"));
+      StreamUtil.copyStringToFile(BuildWindowIndexTest.trecDocument("d4", "a b"), new File(trecFolder, "four.trectext"));
+
+      Parameters indexParams = Parameters.create();
+      indexParams.set("inputPath", Collections.singletonList(trecFolder.getAbsolutePath()));
+      indexParams.set("indexPath", index.getAbsolutePath());
+      indexParams.set("stemmedPostings", false);
+      indexParams.set("server", false);
+      App.run("build", indexParams, System.out);
+
+      // builds the od.n2.w1.h2 candidates first
+      Parameters statsParams = Parameters.create();
+      statsParams.set("inputPath", trecFolder.getAbsolutePath());
+      statsParams.set("indexPath", index.getAbsolutePath());
+      statsParams.set("server", false);
+      statsParams.set("operators", Arrays.asList("od:1", "uw:8", "ordered:3"));
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      App.run("build-window-stats", statsParams, new PrintStream(out));
+      assertTrue(new File(index, "od.n2.w1.h2").exists());
+      assertTrue(out.toString(), out.toString().contains("Stored the statistics of"));
+
+      LocalRetrieval stored = new LocalRetrieval(index.getAbsolutePath(), Parameters.create());
+      LocalRetrieval computed = new LocalRetrieval(index.getAbsolutePath(), Parameters.parseArray("windowStatistics", false));
+      WindowStatisticsReader reader = (WindowStatisticsReader) stored.getIndex().getIndexPart("windowStats");
+      assertEquals(Arrays.asList("od:1", "uw:8", "od:3"), reader.getManifest().getAsList("operators"));
+
+      List<String> terms = Arrays.asList("a", "b", "c", "z");
+      for (String operator : Arrays.asList("od:1", "uw:8", "od:3", "ordered:3")) {
+        for (String first : terms) {
+          for (String second : terms) {
+            Node window = StructuredQuery.parse("#" + operator + "( #extents:" + first + ":part=postings() #extents:" + second + ":part=postings() )");
+            NodeStatistics expected = computed.getNodeStatistics(window);
+            NodeStatistics actual = stored.getNodeStatistics(window);
+            assertEquals(window.toString(), expected.nodeFrequency, actual.nodeFrequency);
+            assertEquals(window.toString(), expected.nodeDocumentCount, actual.nodeDocumentCount);
+            assertEquals(window.toString(), expected.maximumCount, actual.maximumCount);
+          }
+        }
+      }
+
+      // z b never occurs, a b is frequent
+      assertNull(reader.getStatistics(StructuredQuery.parse("#od:1( #extents:z:part=postings() #extents:b:part=postings() )")));
+      assertNotNull(reader.getStatistics(StructuredQuery.parse("#uw:8( #extents:a:part=postings() #extents:b:part=postings() )")));
+
+      // not stored: other widths, other parts, more terms
+      assertNull(reader.getStatistics(StructuredQuery.parse("#od:2( #extents:a:part=postings() #extents:b:part=postings() )")));
+      assertNull(reader.getStatistics(StructuredQuery.parse("#od:1( #extents:a:part=other() #extents:b:part=postings() )")));
+      assertNull(reader.getStatistics(StructuredQuery.parse("#od:1( #extents:a:part=postings() #extents:b:part=postings() #extents:c:part=postings() )")));
+
+      // the statistics traversal reads the stored windows of #sdm
+      Parameters qp = Parameters.create();
+      Node sdm = StructuredQuery.parse("#sdm( a c b )");
+      List<ScoredDocument> expected = computed.executeQuery(computed.transformQuery(sdm.clone(), qp), qp).scoredDocuments;
+      List<ScoredDocument> actual = stored.executeQuery(stored.transformQuery(sdm.clone(), qp), qp).scoredDocuments;
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertEquals(expected.get(i).documentName, actual.get(i).documentName);
+        assertEquals(expected.get(i).score, actual.get(i).score, 1e-10);
+      }
+
+      stored.close();
+      computed.close();
+    } finally {
+      FSUtil.deleteDirectory(tmpDir);
+    }
+  }
+}
@@ -0,0 +1,249 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.core.tools.apps;
+
+import org.junit.Test;
+import org.lemurproject.galago.core.index.disk.DiskIndex;
+import org.lemurproject.galago.core.index.disk.PositionIndexReader;
+import org.lemurproject.galago.core.retrieval.iterator.ExtentIterator;
+import org.lemurproject.galago.core.retrieval.processing.ScoringContext;
+import org.lemurproject.galago.core.tools.App;
+import org.lemurproject.galago.core.tools.AppTest;
+import org.lemurproject.galago.tupleflow.FileUtility;
+import org.lemurproject.galago.utility.FSUtil;
+import org.lemurproject.galago.utility.Parameters;
+import org.lemurproject.galago.utility.StreamUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BuildIndexShardsTest {
+
+  private static final int DOCUMENT_COUNT = 15;
+
+  @Test
+  public void testShardInputs() throws Exception {
+    File trecFolder = FileUtility.createTemporaryDirectory();
+    try {
+      writeCorpus(trecFolder);
+      Parameters p = Parameters.create();
+      p.set("inputPath", Collections.singletonList(trecFolder.getAbsolutePath()));
+
+      List<List<String>> groups = BuildIndex.getShardInputs(p, 3);
+      assertEquals(3, groups.size());
+      List<String> files = new ArrayList<>();
+      for (List<String> group : groups) {
+        assertTrue(!group.isEmpty());
+        files.addAll(group);
+      }
+      assertEquals(5, files.size());
+
+      // a group never splits a file, and is never empty
+      List<List<String>> many = BuildIndex.getShardInputs(p, 8);
+      assertTrue(many.size() <= 5);
+      for (List<String> group : many) {
+        assertTrue(!group.isEmpty());
+      }
+      assertEquals(1, BuildIndex.getShardInputs(p, 1).size());
+    } finally {
+      FSUtil.deleteDirectory(trecFolder);
+    }
+  }
+
+  @Test
+  public void testShardedBuild() throws Exception {
+    File trecFolder = FileUtility.createTemporaryDirectory();
+    File single = FileUtility.createTemporaryDirectory();
+    File sharded = FileUtility.createTemporaryDirectory();
+    try {
+      writeCorpus(trecFolder);
+
+      Parameters p = Parameters.create();
+      p.set("inputPath", Collections.singletonList(trecFolder.getAbsolutePath()));
+      p.set("indexPath", single.getAbsolutePath());
+      p.set("server", false);
+      App.run("build", p.clone(), System.out);
+
+      p.set("indexPath", sharded.getAbsolutePath());
+      p.set("shards", 3);
+      App.run("build", p.clone(), System.out);
+
+      AppTest.verifyIndexStructures(sharded);
+      checkShardedIndex(p, single, sharded);
+    } finally {
+      FSUtil.deleteDirectory(trecFolder);
+      FSUtil.deleteDirectory(single);
+      FSUtil.deleteDirectory(sharded);
+    }
+  }
+
+  @Test
+  public void testShardedBuildInJobDir() throws Exception {
+    File trecFolder = FileUtility.createTemporaryDirectory();
+    File single = FileUtility.createTemporaryDirectory();
+    File sharded = FileUtility.createTemporaryDirectory();
+    File jobDir = FileUtility.createTemporaryDirectory();
+    try {
+      writeCorpus(trecFolder);
+
+      Parameters p = Parameters.create();
+      p.set("inputPath", Collections.singletonList(trecFolder.getAbsolutePath()));
+      p.set("indexPath", single.getAbsolutePath());
+      p.set("server", false);
+      App.run("build", p.clone(), System.out);
+
+      // every shard job, and the merge, runs under the same job dir
+      p.set("indexPath", sharded.getAbsolutePath());
+      p.set("shards", 3);
+      p.set("galagoJobDir", jobDir.getAbsolutePath());
+      App.run("build", p.clone(), System.out);
+
+      AppTest.verifyIndexStructures(sharded);
+      checkShardedIndex(p, single, sharded);
+      assertTrue(jobDir.isDirectory());
+      assertEquals(0, jobDir.list().length);
+    } finally {
+      FSUtil.deleteDirectory(trecFolder);
+      FSUtil.deleteDirectory(single);
+      FSUtil.deleteDirectory(sharded);
+      FSUtil.deleteDirectory(jobDir);
+    }
+  }
+
+  @Test
+  public void testShardsRejectUnmergeableParts() throws Exception {
+    Parameters p = Parameters.create();
+    p.set("inputPath", Collections.singletonList("/does/not/matter"));
+    p.set("indexPath", "/does/not/matter");
+    p.set("shards", 2);
+    p.set("forwardIndex", true);
+    assertEquals(null, BuildIndex.checkBuildIndexParameters(p));
+  }
+
+  @Test
+  public void testShardedBuildWithoutInputFiles() throws Exception {
+    File emptyFolder = FileUtility.createTemporaryDirectory();
+    File sharded = FileUtility.createTemporaryDirectory();
+    try {
+      Parameters p = Parameters.create();
+      p.set("inputPath", Collections.singletonList(emptyFolder.getAbsolutePath()));
+      p.set("indexPath", sharded.getAbsolutePath());
+      p.set("server", false);
+      p.set("shards", 3);
+      assertTrue(BuildIndex.getShardInputs(p, 3).isEmpty());
+      try {
+        App.run("build", p.clone(), System.out);
+        fail("A sharded build without input files should fail.");
+      } catch (IOException e) {
+        assertTrue(e.getMessage(), e.getMessage().startsWith("No input files were found"));
+      }
+    } finally {
+      FSUtil.deleteDirectory(emptyFolder);
+      FSUtil.deleteDirectory(sharded);
+    }
+  }
+
+  private static void writeCorpus(File trecFolder) throws Exception {
+    for (int f = 0; f < 5; f++) {
+      StringBuilder corpus = new StringBuilder();
+      for (int d = 0; d <= f; d++) {
+        corpus.append(AppTest.trecDocument("doc-" + f + "-" + d,
+                "sample document " + f + " number " + d + " with words " + (f * d) + " running jumping"));
+      }
+      StreamUtil.copyStringToFile(corpus.toString(), new File(trecFolder, "corpus-" + f + ".trectext"));
+    }
+  }
+
+  private static void checkShardedIndex(Parameters p, File single, File sharded) throws Exception {
+    DiskIndex expected = new DiskIndex(single.getAbsolutePath());
+    DiskIndex actual = new DiskIndex(sharded.getAbsolutePath());
+
+    // each shard is numbered after the previous one, in input order, and
+    // keeps the order a single job gives its documents
+    List<String> singleOrder = namesById(expected);
+    List<String> names = new ArrayList<>();
+    for (List<String> group : BuildIndex.getShardInputs(p, 3)) {
+      for (String name : singleOrder) {
+        for (String file : group) {
+          if (new File(file).getName().equals("corpus-" + name.split("-")[1] + ".trectext")) {
+            names.add(name);
+          }
+        }
+      }
+    }
+    assertEquals(DOCUMENT_COUNT, names.size());
+    assertEquals(names, namesById(actual));
+
+    Map<String, Integer> lengths = lengthsByName(actual);
+    assertEquals(DOCUMENT_COUNT, lengths.size());
+    assertEquals(lengthsByName(expected), lengths);
+    for (String part : new String[]{"postings", "postings.krovetz"}) {
+      Parameters e = ((PositionIndexReader) expected.getIndexPart(part)).getManifest();
+      Parameters a = ((PositionIndexReader) actual.getIndexPart(part)).getManifest();
+      assertEquals(e.getLong("statistics/collectionLength"), a.getLong("statistics/collectionLength"));
+      assertEquals(e.getLong("statistics/vocabCount"), a.getLong("statistics/vocabCount"));
+      assertEquals(e.getLong("statistics/highestDocumentCount"), a.getLong("statistics/highestDocumentCount"));
+    }
+
+    // the posting lists point at the same documents, by name
+    for (String term : new String[]{"3", "4", "jumping", "sample"}) {
+      Map<String, String> postings = postingsByName(actual, term);
+      assertFalse(postings.isEmpty());
+      assertEquals(postingsByName(expected, term), postings);
+    }
+    expected.close();
+    actual.close();
+  }
+
+  private static Map<String, String> postingsByName(DiskIndex index, String term) throws Exception {
+    Map<String, String> postings = new HashMap<>();
+    ExtentIterator extents = ((PositionIndexReader) index.getIndexPart("postings")).getTermExtents(term);
+    ScoringContext sc = new ScoringContext();
+    while (!extents.isDone()) {
+      sc.document = extents.currentCandidate();
+      int[] begins = new int[extents.extents(sc).size()];
+      for (int i = 0; i < begins.length; i++) {
+        begins[i] = extents.extents(sc).begin(i);
+      }
+      postings.put(index.getName(sc.document), Arrays.toString(begins));
+      extents.movePast(sc.document);
+    }
+    return postings;
+  }
+
+  private static List<String> namesById(DiskIndex index) throws Exception {
+    // ids are not dense: the build numbers documents in stripes across files
+    List<String> names = new ArrayList<>();
+    for (long id = 0; id < 100 && names.size() < DOCUMENT_COUNT; id++) {
+      String name = index.getName(id);
+      if (name != null) {
+        names.add(name);
+      }
+    }
+    return names;
+  }
+
+  private static Map<String, Integer> lengthsByName(DiskIndex index) throws Exception {
+    // the sharded index numbers documents differently, so compare by name
+    Map<String, Integer> lengths = new HashMap<>();
+    for (long id = 0; id < 100 && lengths.size() < DOCUMENT_COUNT; id++) {
+      String name = index.getName(id);
+      if (name != null) {
+        lengths.put(name, index.getLength(id));
+      }
+    }
+    return lengths;
+  }
+}
@@ -19,29 +19,38 @@ import static org.junit.Assert.assertEquals;
  */
 public class PageRankFnTest {
 
+  // expected output (actual comparison is trucated to 6 decimal points)
+  private static final String DOC_NAME_ORDER = "test-0 0.14044514319221924\n"
+          + "test-1 0.10091959505482992\n"
+          + "test-10 0.05115981927289599\n"
+          + "test-11 0.05115981927289599\n"
+          + "test-2 0.08488240356450753\n"
+          + "test-3 0.08673666439408949\n"
+          + "test-4 0.07918772966163073\n"
+          + "test-5 0.0954103007236506\n"
+          + "test-6 0.07937310923332822\n"
+          + "test-7 0.07387799299215828\n"
+          + "test-8 0.07558165579260986\n"
+          + "test-9 0.08126576684518416\n";
+
+  private static final String SCORE_ORDER = "test-0 0.14044514319221924\n"
+          + "test-1 0.10091959505482992\n"
+          + "test-5 0.0954103007236506\n"
+          + "test-3 0.08673666439408949\n"
+          + "test-2 0.08488240356450753\n"
+          + "test-9 0.08126576684518416\n"
+          + "test-6 0.07937310923332822\n"
+          + "test-4 0.07918772966163073\n"
+          + "test-8 0.07558165579260986\n"
+          + "test-7 0.07387799299215828\n"
+          + "test-10 0.05115981927289599\n"
+          + "test-11 0.05115981927289599\n";
+
   @Test
   public void testSomeMethod() throws Exception {
     File tempDir = FileUtility.createTemporaryDirectory();
     try {
-      File input = new File(tempDir, "input.trecweb");
-      HarvestLinksFnTest.writeInput(input);
-
-      File galago = new File(tempDir, "galago");
-      File jobTmp = new File(tempDir, "jobTmp");
-
-      // run harvest links
-      Parameters p = Parameters.create();
-      p.set("inputPath", input.getAbsolutePath());
-      p.set("indri", false);
-      p.set("galago", true);
-      p.set("outputFolder", galago.getAbsolutePath());
-      p.set("galagoDist", 3); // should get 2 output files
-      p.set("distrib", 2);
-      p.set("galagoJobDir", jobTmp.getAbsolutePath());
-      p.set("server", false);
-
-      HarvestLinksFn hl = new HarvestLinksFn();
-      hl.run(p, System.out);
+      File galago = harvestLinks(tempDir);
 
       // now run pagerank
       File pagerank = new File(tempDir, "pagerank");
@@ -65,40 +74,12 @@ public class PageRankFnTest {
       File out1 = new File(pagerank, "pagerank.docNameOrder");
       String data = Utility.readFileToString(out1);
 
-      // expected output (actual comparison is trucated to 6 decimal points)
-      String exp = "test-0 0.14044514319221924\n"
-              + "test-1 0.10091959505482992\n"
-              + "test-10 0.05115981927289599\n"
-              + "test-11 0.05115981927289599\n"
-              + "test-2 0.08488240356450753\n"
-              + "test-3 0.08673666439408949\n"
-              + "test-4 0.07918772966163073\n"
-              + "test-5 0.0954103007236506\n"
-              + "test-6 0.07937310923332822\n"
-              + "test-7 0.07387799299215828\n"
-              + "test-8 0.07558165579260986\n"
-              + "test-9 0.08126576684518416\n";
-
-      checkOutput(data, exp);
+      checkOutput(data, DOC_NAME_ORDER);
 
       File out2 = new File(pagerank, "pagerank.scoreOrder");
       data = Utility.readFileToString(out2);
 
-      // expected output (actual comparison is trucated to 6 decimal points)
-      exp = "test-0 0.14044514319221924\n"
-              + "test-1 0.10091959505482992\n"
-              + "test-5 0.0954103007236506\n"
-              + "test-3 0.08673666439408949\n"
-              + "test-2 0.08488240356450753\n"
-              + "test-9 0.08126576684518416\n"
-              + "test-6 0.07937310923332822\n"
-              + "test-4 0.07918772966163073\n"
-              + "test-8 0.07558165579260986\n"
-              + "test-7 0.07387799299215828\n"
-              + "test-10 0.05115981927289599\n"
-              + "test-11 0.05115981927289599\n";
-
-      checkOutput(data, exp);
+      checkOutput(data, SCORE_ORDER);
 
     } finally {
       FSUtil.deleteDirectory(tempDir);
@@ -106,6 +87,61 @@ public class PageRankFnTest {
     }
   }
 
+  private static File harvestLinks(File tempDir) throws Exception {
+    File input = new File(tempDir, "input.trecweb");
+    HarvestLinksFnTest.writeInput(input);
+
+    File galago = new File(tempDir, "galago");
+    File jobTmp = new File(tempDir, "jobTmp");
+
+    // run harvest links
+    Parameters p = Parameters.create();
+    p.set("inputPath", input.getAbsolutePath());
+    p.set("indri", false);
+    p.set("galago", true);
+    p.set("outputFolder", galago.getAbsolutePath());
+    p.set("galagoDist", 3); // should get 2 output files
+    p.set("distrib", 2);
+    p.set("galagoJobDir", jobTmp.getAbsolutePath());
+    p.set("server", false);
+
+    HarvestLinksFn hl = new HarvestLinksFn();
+    hl.run(p, System.out);
+
+    return galago;
+  }
+
+  @Test
+  public void testInMemory() throws Exception {
+    File tempDir = FileUtility.createTemporaryDirectory();
+    try {
+      File galago = harvestLinks(tempDir);
+
+      // the heap and the memory-mapped edge list give the same scores
+      for (String mapGraph : new String[]{"false", "true"}) {
+        File pagerank = new File(tempDir, "pagerank-csr-" + mapGraph);
+
+        Parameters p = Parameters.create();
+        p.set("linkdata", galago.getAbsolutePath());
+        p.set("outputFolder", pagerank.getAbsolutePath());
+        p.set("engine", "csr");
+        p.set("mapGraph", mapGraph);
+        p.set("lambda", 0.5);
+        p.set("maxItr", 10);
+        p.set("delta", 0.000000001);
+
+        new PageRankFn().run(p, System.out);
+
+        checkOutput(Utility.readFileToString(new File(pagerank, "pagerank.docNameOrder")), DOC_NAME_ORDER);
+        checkOutput(Utility.readFileToString(new File(pagerank, "pagerank.scoreOrder")), SCORE_ORDER);
+        // nothing but the output is left behind
+        assertEquals(2, pagerank.listFiles().length);
+      }
+    } finally {
+      FSUtil.deleteDirectory(tempDir);
+    }
+  }
+
   private void checkOutput(String data, String expected) {
     String[] dataLines = data.split("\n");
     String[] expLines = expected.split("\n");
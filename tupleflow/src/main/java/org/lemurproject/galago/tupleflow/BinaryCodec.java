@@ -0,0 +1,317 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.tupleflow;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Field codecs used by the BinaryOrder code that the typebuilder generates.
+ *
+ * Records are written field by field: fixed-width fields big-endian, strings
+ * as UTF-8 and byte arrays as raw bytes, both after an int length. The
+ * compare methods read one field from each buffer and compare the values the
+ * way CmpUtil.compare does, without building objects.
+ *
+ * The prefix methods build normalized sort keys: each field is mapped to an
+ * unsigned bit string whose order matches the field order (sign bits are
+ * flipped, descending fields are inverted) and packed into a long from the
+ * most significant bit down. A generated keyPrefix starts with 64 free bits,
+ * ORs in each ordered field with prefix(value, free, ascending) and then
+ * subtracts prefixBits(value) from free; once free is used up the remaining
+ * fields contribute nothing. Strings and byte arrays always use up the rest
+ * of the key, because their length is not fixed.
+ */
+public class BinaryCodec {
+
+  // writing
+
+  public static void put(ByteBuffer out, boolean value) {
+    out.put((byte) (value ? 1 : 0));
+  }
+
+  public static void put(ByteBuffer out, byte value) {
+    out.put(value);
+  }
+
+  public static void put(ByteBuffer out, short value) {
+    out.putShort(value);
+  }
+
+  public static void put(ByteBuffer out, int value) {
+    out.putInt(value);
+  }
+
+  public static void put(ByteBuffer out, long value) {
+    out.putLong(value);
+  }
+
+  public static void put(ByteBuffer out, float value) {
+    out.putFloat(value);
+  }
+
+  public static void put(ByteBuffer out, double value) {
+    out.putDouble(value);
+  }
+
+  public static void put(ByteBuffer out, String value) {
+    put(out, value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public static void put(ByteBuffer out, byte[] value) {
+    out.putInt(value.length);
+    out.put(value);
+  }
+
+  // reading
+
+  public static boolean getBoolean(ByteBuffer in) {
+    return in.get() != 0;
+  }
+
+  public static byte getByte(ByteBuffer in) {
+    return in.get();
+  }
+
+  public static short getShort(ByteBuffer in) {
+    return in.getShort();
+  }
+
+  public static int getInt(ByteBuffer in) {
+    return in.getInt();
+  }
+
+  public static long getLong(ByteBuffer in) {
+    return in.getLong();
+  }
+
+  public static float getFloat(ByteBuffer in) {
+    return in.getFloat();
+  }
+
+  public static double getDouble(ByteBuffer in) {
+    return in.getDouble();
+  }
+
+  public static String getString(ByteBuffer in) {
+    return new String(getBytes(in), StandardCharsets.UTF_8);
+  }
+
+  public static byte[] getBytes(ByteBuffer in) {
+    byte[] value = new byte[in.getInt()];
+    in.get(value);
+    return value;
+  }
+
+  // comparing serialized fields
+
+  public static int compareBoolean(ByteBuffer a, ByteBuffer b) {
+    return Boolean.compare(getBoolean(a), getBoolean(b));
+  }
+
+  public static int compareByte(ByteBuffer a, ByteBuffer b) {
+    return Byte.compare(a.get(), b.get());
+  }
+
+  public static int compareShort(ByteBuffer a, ByteBuffer b) {
+    return Short.compare(a.getShort(), b.getShort());
+  }
+
+  public static int compareInt(ByteBuffer a, ByteBuffer b) {
+    return Integer.compare(a.getInt(), b.getInt());
+  }
+
+  public static int compareLong(ByteBuffer a, ByteBuffer b) {
+    return Long.compare(a.getLong(), b.getLong());
+  }
+
+  public static int compareFloat(ByteBuffer a, ByteBuffer b) {
+    return Float.compare(a.getFloat(), b.getFloat());
+  }
+
+  public static int compareDouble(ByteBuffer a, ByteBuffer b) {
+    return Double.compare(a.getDouble(), b.getDouble());
+  }
+
+  /**
+   * Compares two UTF-8 strings the way String.compareTo would compare them.
+   *
+   * UTF-8 bytes sort in code point order, while compareTo sorts UTF-16 code
+   * units. The two only disagree when a supplementary character (stored as
+   * surrogates, 0xD800-0xDFFF) meets a character in 0xE000-0xFFFF, so the
+   * byte order is used except in that case.
+   */
+  public static int compareString(ByteBuffer a, ByteBuffer b) {
+    int lengthA = a.getInt();
+    int lengthB = b.getInt();
+    int startA = a.position();
+    int startB = b.position();
+    a.position(startA + lengthA);
+    b.position(startB + lengthB);
+
+    int shared = Math.min(lengthA, lengthB);
+    for (int i = 0; i < shared; i++) {
+      int byteA = a.get(startA + i) & 0xff;
+      int byteB = b.get(startB + i) & 0xff;
+      if (byteA != byteB) {
+        // the bytes before i are equal, so both characters start at the
+        // same offset.
+        int start = i;
+        while (start > 0 && (a.get(startA + start) & 0xc0) == 0x80) {
+          start--;
+        }
+        int leadA = a.get(startA + start) & 0xff;
+        int leadB = b.get(startB + start) & 0xff;
+        if (leadA >= 0xf0 && (leadB == 0xee || leadB == 0xef)) {
+          return -1;
+        }
+        if (leadB >= 0xf0 && (leadA == 0xee || leadA == 0xef)) {
+          return 1;
+        }
+        return (byteA < byteB) ? -1 : 1;
+      }
+    }
+    return Integer.compare(lengthA, lengthB);
+  }
+
+  /**
+   * Compares two byte arrays like CmpUtil.compare(byte[], byte[]).
+   */
+  public static int compareBytes(ByteBuffer a, ByteBuffer b) {
+    int lengthA = a.getInt();
+    int lengthB = b.getInt();
+    int startA = a.position();
+    int startB = b.position();
+    a.position(startA + lengthA);
+    b.position(startB + lengthB);
+
+    int shared = Math.min(lengthA, lengthB);
+    for (int i = 0; i < shared; i++) {
+      int byteA = a.get(startA + i) & 0xff;
+      int byteB = b.get(startB + i) & 0xff;
+      if (byteA != byteB) {
+        return (byteA < byteB) ? -1 : 1;
+      }
+    }
+    return Integer.compare(lengthA, lengthB);
+  }
+
+  // normalized key prefixes
+
+  public static int prefixBits(boolean value) {
+    return 8;
+  }
+
+  public static int prefixBits(byte value) {
+    return 8;
+  }
+
+  public static int prefixBits(short value) {
+    return 16;
+  }
+
+  public static int prefixBits(int value) {
+    return 32;
+  }
+
+  public static int prefixBits(long value) {
+    return 64;
+  }
+
+  public static int prefixBits(float value) {
+    return 32;
+  }
+
+  public static int prefixBits(double value) {
+    return 64;
+  }
+
+  public static int prefixBits(String value) {
+    return 64;
+  }
+
+  public static int prefixBits(byte[] value) {
+    return 64;
+  }
+
+  public static long prefix(boolean value, int free, boolean ascending) {
+    return pack(value ? 1 : 0, 8, free, ascending);
+  }
+
+  public static long prefix(byte value, int free, boolean ascending) {
+    return pack((value ^ 0x80) & 0xffL, 8, free, ascending);
+  }
+
+  public static long prefix(short value, int free, boolean ascending) {
+    return pack((value ^ 0x8000) & 0xffffL, 16, free, ascending);
+  }
+
+  public static long prefix(int value, int free, boolean ascending) {
+    return pack((value ^ Integer.MIN_VALUE) & 0xffffffffL, 32, free, ascending);
+  }
+
+  public static long prefix(long value, int free, boolean ascending) {
+    return pack(value ^ Long.MIN_VALUE, 64, free, ascending);
+  }
+
+  public static long prefix(float value, int free, boolean ascending) {
+    // the same total order as Float.compare
+    int bits = Float.floatToIntBits(value);
+    bits ^= (bits >> 31) | Integer.MIN_VALUE;
+    return pack(bits & 0xffffffffL, 32, free, ascending);
+  }
+
+  public static long prefix(double value, int free, boolean ascending) {
+    long bits = Double.doubleToLongBits(value);
+    bits ^= (bits >> 63) | Long.MIN_VALUE;
+    return pack(bits, 64, free, ascending);
+  }
+
+  /**
+   * The first four UTF-16 code units, which sort like String.compareTo.
+   * Short strings are padded with the smallest unit, or the largest when
+   * descending, so a string sorts next to its extensions.
+   */
+  public static long prefix(String value, int free, boolean ascending) {
+    if (free <= 0) {
+      return 0;
+    }
+    long key = 0;
+    for (int i = 0; i < 4; i++) {
+      long unit = (i < value.length()) ? value.charAt(i) : 0;
+      key = (key << 16) | unit;
+    }
+    return pack(key, 64, free, ascending);
+  }
+
+  /**
+   * The first eight bytes, as unsigned values, padded like strings.
+   */
+  public static long prefix(byte[] value, int free, boolean ascending) {
+    if (free <= 0) {
+      return 0;
+    }
+    long key = 0;
+    for (int i = 0; i < 8; i++) {
+      long unit = (i < value.length) ? (value[i] & 0xffL) : 0;
+      key = (key << 8) | unit;
+    }
+    return pack(key, 64, free, ascending);
+  }
+
+  /**
+   * Places the top bits of a width-bit normalized value into the free low
+   * bits of a key. Descending values are inverted; inverted padding (zeros)
+   * turns into ones, which is what a descending string needs.
+   */
+  private static long pack(long normalized, int width, int free, boolean ascending) {
+    if (free <= 0) {
+      return 0;
+    }
+    long mask = (width == 64) ? -1L : ((1L << width) - 1);
+    long value = ascending ? normalized : (~normalized & mask);
+    if (free >= width) {
+      return value << (free - width);
+    }
+    return value >>> (width - free);
+  }
+}
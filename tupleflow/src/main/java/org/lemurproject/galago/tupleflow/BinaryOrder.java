@@ -0,0 +1,39 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.tupleflow;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An Order that can also work on its objects in serialized form. The Sorter
+ * uses this to keep buffered tuples as bytes (off the Java heap) and to sort
+ * them mostly by comparing long key prefixes, without building objects.
+ *
+ * @param <T> The ordered class.
+ */
+public interface BinaryOrder<T> extends Order<T> {
+
+  /**
+   * Writes object as a self-contained record at out.position(), leaving the
+   * position just past it. Throws BufferOverflowException when out is too
+   * small; the caller retries with a bigger buffer.
+   */
+  public void writeRecord(T object, ByteBuffer out);
+
+  /**
+   * Reads a record written by writeRecord, starting at in.position().
+   */
+  public T readRecord(ByteBuffer in);
+
+  /**
+   * Returns the first eight bytes of the object's normalized sort key. If
+   * Long.compareUnsigned(keyPrefix(a), keyPrefix(b)) &lt; 0, then a sorts
+   * before b in this order; equal prefixes say nothing.
+   */
+  public long keyPrefix(T object);
+
+  /**
+   * Compares the records starting at a.position() and b.position() the way
+   * lessThan() compares the objects. May move both positions.
+   */
+  public int compareRecords(ByteBuffer a, ByteBuffer b);
+}
@@ -0,0 +1,286 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.tupleflow;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Buffers tuples for the Sorter as records in large direct (off-heap)
+ * ByteBuffers, with a small index of (key prefix, record address) pairs on
+ * the heap.
+ *
+ * Sorting splits the index into one segment per processor and sorts the
+ * segments in parallel; the sorted segments are then merged with a LoserTree
+ * as the tuples are written out. Records are only compared (or decoded) when
+ * their key prefixes are equal.
+ *
+ * Records are appended in arrival order and addresses grow with it, so ties
+ * are broken by address and the sort is stable.
+ */
+class BinarySortBuffer<T> {
+
+  static final int ARENA_SIZE = 16 << 20;
+  static final int MIN_SEGMENT = 4096;
+  private final BinaryOrder<T> order;
+  private final ArrayList<ByteBuffer> arenas = new ArrayList<>();
+  private int currentArena = -1;
+  private ByteBuffer scratch = ByteBuffer.allocate(1024);
+  private long[] prefixes = new long[1024];
+  private long[] addresses = new long[1024];
+  private int count = 0;
+  private long bytes = 0;
+  // set by sort(): segment i covers [segmentStarts[i], segmentStarts[i+1])
+  private int[] segmentStarts = null;
+
+  BinarySortBuffer(BinaryOrder<T> order) {
+    this.order = order;
+  }
+
+  int size() {
+    return count;
+  }
+
+  /**
+   * Bytes of record data buffered.
+   */
+  long bytes() {
+    return bytes;
+  }
+
+  /**
+   * Bytes of off-heap memory held (buffers are reused after clear).
+   */
+  long capacity() {
+    long total = 0;
+    for (ByteBuffer arena : arenas) {
+      total += arena.capacity();
+    }
+    return total;
+  }
+
+  boolean isFull() {
+    return count == Integer.MAX_VALUE - 8;
+  }
+
+  void add(T object) {
+    int length = encode(object);
+    long address = append(length);
+
+    if (count == prefixes.length) {
+      int grown = (int) Math.min((long) count * 2, Integer.MAX_VALUE - 8);
+      prefixes = Arrays.copyOf(prefixes, grown);
+      addresses = Arrays.copyOf(addresses, grown);
+    }
+    prefixes[count] = order.keyPrefix(object);
+    addresses[count] = address;
+    count++;
+    bytes += length;
+    segmentStarts = null;
+  }
+
+  /**
+   * Serializes object into the scratch buffer, growing it as needed.
+   */
+  private int encode(T object) {
+    while (true) {
+      scratch.clear();
+      try {
+        order.writeRecord(object, scratch);
+        return scratch.position();
+      } catch (BufferOverflowException e) {
+        scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+      }
+    }
+  }
+
+  /**
+   * Copies the scratch record into an arena and returns its address.
+   */
+  private long append(int length) {
+    ByteBuffer arena = (currentArena < 0) ? null : arenas.get(currentArena);
+    if (arena == null || arena.remaining() < length) {
+      currentArena++;
+      if (currentArena == arenas.size() || arenas.get(currentArena).capacity() < length) {
+        arenas.add(currentArena, ByteBuffer.allocateDirect(Math.max(ARENA_SIZE, length)));
+      }
+      arena = arenas.get(currentArena);
+      arena.clear();
+    }
+    long address = ((long) currentArena << 32) | arena.position();
+    scratch.flip();
+    arena.put(scratch);
+    return address;
+  }
+
+  /**
+   * Forgets all buffered tuples; the arenas are kept for reuse.
+   */
+  void clear() {
+    count = 0;
+    bytes = 0;
+    currentArena = -1;
+    segmentStarts = null;
+  }
+
+  /**
+   * Drops the arenas as well.
+   */
+  void release() {
+    clear();
+    arenas.clear();
+    prefixes = new long[1024];
+    addresses = new long[1024];
+  }
+
+  /**
+   * Sorts each segment of the index, in parallel.
+   */
+  void sort() {
+    int segments = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), count / MIN_SEGMENT));
+    final int[] starts = new int[segments + 1];
+    for (int i = 0; i <= segments; i++) {
+      starts[i] = (int) ((long) count * i / segments);
+    }
+
+    final long[] auxPrefixes = new long[count];
+    final long[] auxAddresses = new long[count];
+    if (segments == 1) {
+      new Sorting(auxPrefixes, auxAddresses).sort(0, count);
+    } else {
+      IntStream.range(0, segments).parallel().forEach(s -> {
+        new Sorting(auxPrefixes, auxAddresses).sort(starts[s], starts[s + 1]);
+      });
+    }
+    segmentStarts = starts;
+  }
+
+  /**
+   * Sends the sorted tuples to output. sort() must have been called.
+   */
+  void writeSorted(Processor<T> output) throws IOException {
+    assert segmentStarts != null : "writeSorted before sort";
+    final int segments = segmentStarts.length - 1;
+    final int[] positions = Arrays.copyOf(segmentStarts, segments);
+    final View one = new View();
+    final View two = new View();
+
+    LoserTree tree = new LoserTree(segments, new LoserTree.Runs() {
+      @Override
+      public boolean isDone(int run) {
+        return positions[run] >= segmentStarts[run + 1];
+      }
+
+      @Override
+      public int compare(int a, int b) {
+        return compareEntries(positions[a], positions[b], one, two);
+      }
+    });
+
+    View reader = new View();
+    for (int run = tree.winner(); run >= 0; run = tree.winner()) {
+      int i = positions[run]++;
+      output.process(order.readRecord(reader.at(addresses[i])));
+      tree.advanced();
+    }
+  }
+
+  private int compareEntries(int i, int j, View one, View two) {
+    return compareEntries(prefixes[i], addresses[i], prefixes[j], addresses[j], one, two);
+  }
+
+  private int compareEntries(long prefixA, long addressA, long prefixB, long addressB, View one, View two) {
+    int c = Long.compareUnsigned(prefixA, prefixB);
+    if (c != 0) {
+      return c;
+    }
+    c = order.compareRecords(one.at(addressA), two.at(addressB));
+    if (c != 0) {
+      return c;
+    }
+    return Long.compare(addressA, addressB);
+  }
+
+  /**
+   * A private set of arena views, so threads don't share buffer positions.
+   */
+  private class View {
+
+    ByteBuffer[] views = new ByteBuffer[arenas.size()];
+
+    ByteBuffer at(long address) {
+      int arena = (int) (address >>> 32);
+      ByteBuffer view = views[arena];
+      if (view == null) {
+        view = views[arena] = arenas.get(arena).duplicate();
+        view.clear();
+      }
+      view.position((int) address);
+      return view;
+    }
+  }
+
+  /**
+   * A merge sort over part of the index; one per thread.
+   */
+  private class Sorting {
+
+    static final int INSERTION_SORT = 24;
+    final long[] auxPrefixes;
+    final long[] auxAddresses;
+    final View one = new View();
+    final View two = new View();
+
+    Sorting(long[] auxPrefixes, long[] auxAddresses) {
+      this.auxPrefixes = auxPrefixes;
+      this.auxAddresses = auxAddresses;
+    }
+
+    void sort(int start, int end) {
+      if (end - start <= INSERTION_SORT) {
+        insertionSort(start, end);
+        return;
+      }
+      int middle = (start + end) >>> 1;
+      sort(start, middle);
+      sort(middle, end);
+      if (compareEntries(middle - 1, middle, one, two) <= 0) {
+        // already in order, as happens with nearly sorted input
+        return;
+      }
+
+      System.arraycopy(prefixes, start, auxPrefixes, start, end - start);
+      System.arraycopy(addresses, start, auxAddresses, start, end - start);
+      int i = start;
+      int j = middle;
+      for (int k = start; k < end; k++) {
+        if (j >= end || (i < middle && compareEntries(auxPrefixes[i], auxAddresses[i],
+                auxPrefixes[j], auxAddresses[j], one, two) <= 0)) {
+          prefixes[k] = auxPrefixes[i];
+          addresses[k] = auxAddresses[i++];
+        } else {
+          prefixes[k] = auxPrefixes[j];
+          addresses[k] = auxAddresses[j++];
+        }
+      }
+    }
+
+    void insertionSort(int start, int end) {
+      for (int i = start + 1; i < end; i++) {
+        long prefix = prefixes[i];
+        long address = addresses[i];
+        int j = i - 1;
+        while (j >= start && compareEntries(prefixes[j], addresses[j], prefix, address, one, two) > 0) {
+          prefixes[j + 1] = prefixes[j];
+          addresses[j + 1] = addresses[j];
+          j--;
+        }
+        prefixes[j + 1] = prefix;
+        addresses[j + 1] = address;
+      }
+    }
+  }
+}
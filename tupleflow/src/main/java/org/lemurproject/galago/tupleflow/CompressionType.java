@@ -11,7 +11,7 @@ package org.lemurproject.galago.tupleflow;
  */
 public enum CompressionType {
 
-  UNSPECIFIED, NONE, VBYTE, GZIP;
+  UNSPECIFIED, NONE, VBYTE, GZIP, SNAPPY;
 
   public static byte toByte(CompressionType c) {
     switch (c) {
@@ -23,6 +23,8 @@ public enum CompressionType {
         return (byte) 2;
       case GZIP:
         return (byte) 3;
+      case SNAPPY:
+        return (byte) 4;
       default:
         return (byte) 0;
     }
@@ -38,6 +40,8 @@ public enum CompressionType {
         return VBYTE;
       case 3:
         return GZIP;
+      case 4:
+        return SNAPPY;
       default:
         return UNSPECIFIED;
     }
@@ -0,0 +1,96 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.tupleflow;
+
+/**
+ * A tournament tree for merging k sorted runs. Each internal node remembers
+ * the loser of the match played there, so after the winning run advances only
+ * the log(k) matches on its path to the root are replayed, with one comparison
+ * each (a binary heap needs about two per level).
+ *
+ * The tree only deals in run numbers; the caller keeps the runs and says how
+ * they compare through a Runs object. Ties go to the lower run number, so a
+ * merge of runs given in input order is stable.
+ */
+public class LoserTree {
+
+  public interface Runs {
+
+    /**
+     * True if run has no more items.
+     */
+    public boolean isDone(int run);
+
+    /**
+     * Compares the current items of two runs that are not done.
+     */
+    public int compare(int one, int two);
+  }
+
+  private final int k;
+  private final int[] tree;
+  private final Runs runs;
+
+  public LoserTree(int k, Runs runs) {
+    this.k = k;
+    this.runs = runs;
+    this.tree = new int[Math.max(1, k)];
+    rebuild();
+  }
+
+  /**
+   * Replays every match; call this if more than the winning run changed.
+   */
+  public final void rebuild() {
+    tree[0] = (k > 0) ? play(1) : -1;
+  }
+
+  /**
+   * Returns the run holding the smallest current item, or -1 if every run is
+   * done.
+   */
+  public int winner() {
+    int w = tree[0];
+    return (w < 0 || runs.isDone(w)) ? -1 : w;
+  }
+
+  /**
+   * Call after the winning run moved to its next item (or ran out).
+   */
+  public void advanced() {
+    int w = tree[0];
+    for (int node = (w + k) >> 1; node >= 1; node >>= 1) {
+      if (beats(tree[node], w)) {
+        int loser = w;
+        w = tree[node];
+        tree[node] = loser;
+      }
+    }
+    tree[0] = w;
+  }
+
+  private int play(int node) {
+    if (node >= k) {
+      return node - k;
+    }
+    int left = play(2 * node);
+    int right = play(2 * node + 1);
+    if (beats(right, left)) {
+      tree[node] = left;
+      return right;
+    } else {
+      tree[node] = right;
+      return left;
+    }
+  }
+
+  private boolean beats(int one, int two) {
+    if (runs.isDone(one)) {
+      return false;
+    }
+    if (runs.isDone(two)) {
+      return true;
+    }
+    int c = runs.compare(one, two);
+    return c < 0 || (c == 0 && one < two);
+  }
+}
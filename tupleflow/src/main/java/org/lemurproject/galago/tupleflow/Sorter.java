@@ -47,6 +47,15 @@ import java.util.logging.Logger;
  * application. Using a Reducer allows the application to buffer fewer items and
  * hopefully reduce the reliance on the disk during sorting.</p>
  *
+ * <p> If the order is a BinaryOrder and there is no Reducer, objects are not
+ * kept on the heap at all: each one is serialized into large off-heap buffers
+ * as it arrives (see BinarySortBuffer), sorted by key prefix on all
+ * processors, and merged back with a loser tree on the way out. The
+ * "binary-sort" sorter option turns this off, and "buffer-bytes" bounds the
+ * serialized bytes held before a run is written to disk. </p>
+ *
+ * <p> Runs written to disk are Snappy-compressed by default. </p>
+ *
  * @author Trevor Strohman
  * @param <T> the TupleflowType to sort
  */
@@ -57,12 +66,15 @@ public class Sorter<T> extends StandardStep<T, T> implements NotificationListene
   public static final long DEFAULT_FILE_LIMIT = 20;
   public static final long DEFAULT_REDUCE_INTERVAL = 1 * 1024 * 1024;
   public static final double DEFAULT_MEMORY_FRACTION = 0.7;
+  public static final long DEFAULT_BUFFER_BYTES = 64 * 1024 * 1024;
   //public static final boolean DEFAULT_FLUSH_PAUSE = false;
   // create limits and parameters
   private long limit;
   private int fileLimit;
   private long reduceInterval;
   private double memoryFraction;
+  private long bufferBytes;
+  private boolean binarySort;
   //private boolean pauseToFlush;
   private Order<T> order;
   private Comparator<T> lessThanCompare;
@@ -72,6 +84,8 @@ public class Sorter<T> extends StandardStep<T, T> implements NotificationListene
   private ArrayList<T> objects;
   private ArrayList<List<T>> runs;
   private ArrayList<File> temporaryFiles;
+  // serialized objects, used instead of objects/runs for a BinaryOrder
+  private BinarySortBuffer<T> binary;
   // force flush - this variable is only used when pauseToFlush = true;
   private volatile boolean forceFlush;
   // statistics + logging
@@ -99,9 +113,10 @@ public class Sorter<T> extends StandardStep<T, T> implements NotificationListene
     this.runs = new ArrayList<>();
     this.temporaryFiles = new ArrayList<>();
     this.lessThanCompare = order.lessThan();
-    this.compression = CompressionType.VBYTE;
+    this.compression = CompressionType.SNAPPY;
     
     setLimits(Parameters.create());
+    useBinaryBuffer();
 
     requestMemoryWarnings();
   }
@@ -112,10 +127,10 @@ public class Sorter<T> extends StandardStep<T, T> implements NotificationListene
           IllegalAccessException, IOException {
     String className = parameters.getJSON().getString("class");
     String[] orderSpec = parameters.getJSON().getString("order").split(" ");
-    compression = CompressionType.fromString(parameters.getJSON().get("compression", "VBYTE"));
+    compression = CompressionType.fromString(parameters.getJSON().get("compression", "SNAPPY"));
     if(compression == null){
-      logger.info("WARNING: compression is set to NULL. Defaulting to VBYTE");
-      compression = CompressionType.VBYTE;
+      logger.info("WARNING: compression is set to NULL. Defaulting to SNAPPY");
+      compression = CompressionType.SNAPPY;
     }
 
     Class clazz = Class.forName(className);
@@ -138,6 +153,7 @@ public class Sorter<T> extends StandardStep<T, T> implements NotificationListene
     this.sorterCombineSteps = parameters.getCounter("Sorter Combine Steps");
 
     setLimits(Parameters.create());
+    useBinaryBuffer();
 
     requestMemoryWarnings();
   }
@@ -149,11 +165,21 @@ public class Sorter<T> extends StandardStep<T, T> implements NotificationListene
     this.fileLimit = (int) localParameters.get("file-limit", globalParameters.get("file-limit", Sorter.DEFAULT_FILE_LIMIT));
     this.reduceInterval = localParameters.get("reduce-interval", globalParameters.get("reduce-interval", Sorter.DEFAULT_REDUCE_INTERVAL));
     this.memoryFraction = localParameters.get("mem-fraction", globalParameters.get("mem-fraction", Sorter.DEFAULT_MEMORY_FRACTION));
+    this.bufferBytes = localParameters.get("buffer-bytes", globalParameters.get("buffer-bytes", Sorter.DEFAULT_BUFFER_BYTES));
+    this.binarySort = localParameters.get("binary-sort", globalParameters.get("binary-sort", true));
     //this.pauseToFlush = localParameters.get("flush-pause", globalParameters.get("flush-pause", Sorter.DEFAULT_FLUSH_PAUSE));
 
     forceFlush = false;
   }
 
+  @SuppressWarnings("unchecked")
+  private void useBinaryBuffer() {
+    // reducers work on lists of objects, so they need the object buffers
+    if (binarySort && reducer == null && order instanceof BinaryOrder) {
+      binary = new BinarySortBuffer<>((BinaryOrder<T>) order);
+    }
+  }
+
   public final void requestMemoryWarnings() {
     List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
     long maxPoolSize = 0;
@@ -279,6 +305,13 @@ public class Sorter<T> extends StandardStep<T, T> implements NotificationListene
 
   @Override
   public synchronized void process(T object) throws IOException {
+    if (binary != null) {
+      binary.add(object);
+      if (binary.bytes() > bufferBytes || binary.isFull() || forceFlush) {
+        flush();
+      }
+      return;
+    }
     objects.add(object);
     flushIfNecessary();
   }
@@ -304,11 +337,17 @@ public class Sorter<T> extends StandardStep<T, T> implements NotificationListene
       combineBufferSize = Math.max(20, (int) (minFlushSize / 10));
 
       combine();
+    } else if (binary != null) {
+      binary.sort();
+      binary.writeSorted(processor);
     } else {
 
       reduce();
       combineRuns(processor);
     }
+    if (binary != null) {
+      binary.release();
+    }
     processor.close();
     processor = null;
   }
@@ -360,13 +399,24 @@ public class Sorter<T> extends StandardStep<T, T> implements NotificationListene
    * Returns the number of currently buffered objects.
    */
   private long size() {
-    return runsCount + objects.size();
+    return runsCount + objects.size() + ((binary == null) ? 0 : binary.size());
   }
 
   public synchronized void flush() throws IOException {
     if (size() == 0) {
       return;
     }
+    if (binary != null) {
+      binary.sort();
+      FileOrderedWriter<T> writer = getTemporaryWriter();
+      binary.writeSorted(writer);
+      writer.close();
+      binary.clear();
+      filesWritten.increment();
+
+      forceFlush = false;
+      return;
+    }
     reduce();
     assert objects.isEmpty();
 
@@ -26,7 +26,7 @@ public class Utility {
    * @return a Step object that can be added to a TupleFlow Stage.
    */
   public static StepInformation getSorter(Order sortOrder) {
-    return getSorter(sortOrder, null, CompressionType.VBYTE);
+    return getSorter(sortOrder, null, CompressionType.SNAPPY);
   }
 
   public static StepInformation getSorter(Order sortOrder, CompressionType c) {
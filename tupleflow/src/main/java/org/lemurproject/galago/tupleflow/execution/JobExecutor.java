@@ -7,6 +7,8 @@ import org.lemurproject.galago.utility.FSUtil;
 import org.lemurproject.galago.utility.Parameters;
 import org.lemurproject.galago.tupleflow.Utility;
 import org.lemurproject.galago.tupleflow.execution.StageGroupDescription.DataPipeRegion;
+import org.lemurproject.galago.tupleflow.execution.StageInstanceDescription.PipeOutput;
+import org.lemurproject.galago.tupleflow.runtime.MemoryPipe;
 import org.lemurproject.galago.tupleflow.web.WebServer;
 import org.lemurproject.galago.tupleflow.web.WebServerException;
 
@@ -56,6 +58,7 @@ public class JobExecutor {
   HashMap<String, HashSet<String>> stageChildren = new HashMap<String, HashSet<String>>();
   HashMap<String, HashSet<String>> stageParents = new HashMap<String, HashSet<String>>();
   ArrayList<DataPipe> pipes = new ArrayList<DataPipe>();
+  boolean memoryPipes = false;
 
   public JobExecutor(Job job, String temporaryStorage, ErrorStore store) {
     this.store = store;
@@ -63,6 +66,16 @@ public class JobExecutor {
     this.job = job;
   }
 
+  /**
+   * Streams each connection with a single reading stage through memory
+   * (see MemoryPipe), starting the reading stage as soon as the writing
+   * stages are launched. Only valid when every stage instance gets its own
+   * thread in this JVM, in the order the stages are submitted.
+   */
+  public void setMemoryPipes(boolean memoryPipes) {
+    this.memoryPipes = memoryPipes;
+  }
+
   /**
    * This method tries to combine stages together to reduce overhead.
    *
@@ -797,6 +810,8 @@ public class JobExecutor {
     HashSet<String> completedConnections = new HashSet<String>();
     // map from connection names to the names of stages that provide inputs to the connection
     HashMap<String, HashSet<String>> connectionDependencies = new HashMap<String, HashSet<String>>();
+    // map from streamed connection names to the memory pipe files they use
+    HashMap<String, List<String>> streamedConnections = new HashMap<String, List<String>>();
     // reference to the parent class.
     HashMap<String, StageGroupDescription> stages;
     // reference to the parent class.
@@ -836,6 +851,51 @@ public class JobExecutor {
       }
     }
 
+    /**
+     * Registers a memory pipe for every file of each connection whose files
+     * are each read by exactly one stage instance. Those connections count
+     * as ready once all of their writing stages have been launched.
+     */
+    public synchronized void streamConnections() {
+      // connection name -> file name -> number of instances reading it
+      HashMap<String, HashMap<String, Integer>> readers = new HashMap<String, HashMap<String, Integer>>();
+      for (StageGroupDescription description : stages.values()) {
+        for (StageInstanceDescription instance : description.getInstances()) {
+          for (PipeOutput reader : instance.getReaders().values()) {
+            String pipeName = reader.getPipe().getPipeName();
+            if (!readers.containsKey(pipeName)) {
+              readers.put(pipeName, new HashMap<String, Integer>());
+            }
+            HashMap<String, Integer> files = readers.get(pipeName);
+            for (String filename : reader.getFileNames()) {
+              Integer count = files.get(filename);
+              files.put(filename, (count == null) ? 1 : count + 1);
+            }
+          }
+        }
+      }
+
+      for (String pipeName : readers.keySet()) {
+        HashMap<String, Integer> files = readers.get(pipeName);
+        if (!connectionDependencies.containsKey(pipeName)
+                || Collections.max(files.values()) > 1) {
+          continue;
+        }
+        for (String filename : files.keySet()) {
+          MemoryPipe.register(filename);
+        }
+        streamedConnections.put(pipeName, new ArrayList<String>(files.keySet()));
+      }
+    }
+
+    private synchronized void releaseStreamedConnections() {
+      for (List<String> filenames : streamedConnections.values()) {
+        for (String filename : filenames) {
+          MemoryPipe.release(filename);
+        }
+      }
+    }
+
     class BlockedExecutionStatus implements StageExecutionStatus {
 
       String name;
@@ -946,6 +1006,15 @@ public class JobExecutor {
     }
 
     public void run() throws InterruptedException, ExecutionException {
+      try {
+        runStages();
+      } finally {
+        // wakes up any reader still waiting on a failed stage
+        releaseStreamedConnections();
+      }
+    }
+
+    private void runStages() throws InterruptedException, ExecutionException {
 
       // while there are incomplete stages, choose one to execute
       while (launchedStages.size() < stages.size()) {
@@ -1004,8 +1073,12 @@ public class JobExecutor {
         boolean allComplete = true;
 
         for (DataPipeRegion region : description.inputs.values()) {
-          // if this input is incomplete, we can't run this stage yet
-          if (!completedConnections.contains(region.pipe.pipeName)) {
+          // if this input is incomplete, we can't run this stage yet;
+          // a streamed input only needs its writers to be running.
+          String pipeName = region.pipe.pipeName;
+          if (!completedConnections.contains(pipeName)
+                  && !(streamedConnections.containsKey(pipeName)
+                  && launchedJobs.containsAll(connectionDependencies.get(pipeName)))) {
             allComplete = false;
             break;
           }
@@ -1086,8 +1159,16 @@ public class JobExecutor {
         // the connection pipeName is satisfied.
         HashSet<String> pipeInputStages = connectionDependencies.get(pipeName);
 
-        if (completedStages.keySet().containsAll(pipeInputStages)) {
-          completedConnections.add(pipeName);
+        if (completedStages.keySet().containsAll(pipeInputStages)
+                && completedConnections.add(pipeName)
+                && streamedConnections.containsKey(pipeName)) {
+          // a reader waiting on a file nobody wrote would wait forever
+          for (String filename : streamedConnections.get(pipeName)) {
+            MemoryPipe pipe = MemoryPipe.get(filename);
+            if (pipe != null) {
+              pipe.writersFinished();
+            }
+          }
         }
       }
     }
@@ -1095,6 +1176,9 @@ public class JobExecutor {
 
   public void runWithServer(StageExecutor executor, String command, Parameters argp) throws WebServerException, ExecutionException, InterruptedException {
     JobExecutionStatus status = new JobExecutionStatus(stages, temporaryStorage, executor, command);
+    if (memoryPipes) {
+      status.streamConnections();
+    }
     MasterWebHandler handler = new MasterWebHandler(status);
     WebServer webServer = null;
 
@@ -1113,6 +1197,9 @@ public class JobExecutor {
 
   public void runWithoutServer(StageExecutor executor) throws ExecutionException, InterruptedException {
     JobExecutionStatus status = new JobExecutionStatus(stages, temporaryStorage, executor, null);
+    if (memoryPipes) {
+      status.streamConnections();
+    }
     status.run();
   }
 
@@ -1150,6 +1237,20 @@ public class JobExecutor {
       return false;
     }
 
+    if (p.get("memoryPipes", false)) {
+      if (!mode.toLowerCase().startsWith("thread")) {
+        System.err.println("Ignoring memoryPipes: it needs --mode=threaded.");
+      } else if (new File(tempFolder, "jobs").exists()) {
+        // a restarted job skips checkpointed instances, which would never write their pipes
+        System.err.println("Ignoring memoryPipes: resuming a job from " + tempFolder);
+      } else {
+        MemoryPipe.configure(p.get("memoryPipeBytes", Runtime.getRuntime().maxMemory() / 4),
+                p.get("memoryPipeWait", 1000L),
+                (int) p.get("memoryPipeChunks", 32L));
+        jobExecutor.setMemoryPipes(true);
+      }
+    }
+
     if (p.get("server", false)) {
       try {
         jobExecutor.runWithServer(executor, command, p);
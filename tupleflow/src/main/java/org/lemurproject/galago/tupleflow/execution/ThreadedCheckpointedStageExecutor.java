@@ -141,16 +141,20 @@ public class ThreadedCheckpointedStageExecutor extends CheckpointedStageExecutor
       }
     }
 
-    @Override
-    public void run() {
-      synchronized (this) {
-        manager.start();
-      }
+    /**
+     * Queues the instances on the thread pool. This happens before submit
+     * returns, so stages get threads in the order they were submitted.
+     */
+    synchronized void queue() {
+      manager.start();
 
       for (InstanceRunnable instance : instances) {
         threadPool.execute(instance);
       }
+    }
 
+    @Override
+    public void run() {
       while (latch.getCount() > 0) {
         try {
           // wait 10 seconds
@@ -250,6 +254,7 @@ public class ThreadedCheckpointedStageExecutor extends CheckpointedStageExecutor
   @Override
   public StageExecutionStatus submit(String stageName, ArrayList<String> jobPaths, String temporary) {
     ThreadedExecutionStatus status = new ThreadedExecutionStatus(stageName, jobPaths);
+    status.queue();
     new Thread(status).start();
     return status;
   }
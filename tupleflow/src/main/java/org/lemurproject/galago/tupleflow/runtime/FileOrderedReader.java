@@ -5,6 +5,7 @@ import org.lemurproject.galago.tupleflow.*;
 import org.lemurproject.galago.tupleflow.error.IncompatibleProcessorException;
 import org.lemurproject.galago.utility.StreamCreator;
 import org.lemurproject.galago.utility.buffer.VByteInput;
+import org.xerial.snappy.SnappyInputStream;
 
 import java.io.DataInputStream;
 import java.io.IOException;
@@ -31,7 +32,12 @@ public class FileOrderedReader<T> implements ReaderSource<T> {
 
   public FileOrderedReader(String filename, int bufferSize) throws IOException {
     // set up the input stream and get its length in bytes
-    dataStream = StreamCreator.bufferedInputStream(filename);
+    MemoryPipe pipe = MemoryPipe.get(filename);
+    if (pipe != null) {
+      dataStream = pipe.openInput();
+    } else {
+      dataStream = StreamCreator.bufferedInputStream(filename);
+    }
     byte comp = (byte) dataStream.read();
     c = CompressionType.fromByte( comp );
 
@@ -44,6 +50,9 @@ public class FileOrderedReader<T> implements ReaderSource<T> {
       case GZIP:
         stream = new ArrayInput(new DataInputStream(new GZIPInputStream(dataStream)));
         break;
+      case SNAPPY:
+        stream = new ArrayInput(new VByteInput(new DataInputStream(new SnappyInputStream(dataStream))));
+        break;
       case UNSPECIFIED:
       case NONE:
       default:
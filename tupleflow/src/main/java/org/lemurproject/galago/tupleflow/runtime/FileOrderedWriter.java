@@ -7,6 +7,7 @@ import org.lemurproject.galago.tupleflow.Order;
 import org.lemurproject.galago.tupleflow.Processor;
 import org.lemurproject.galago.utility.StreamCreator;
 import org.lemurproject.galago.utility.buffer.VByteOutput;
+import org.xerial.snappy.SnappyOutputStream;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -26,13 +27,22 @@ public class FileOrderedWriter<T> implements Processor<T> {
         this.filename = filename;
         this.order = order;
 
-        DataOutputStream dataStream = StreamCreator.realOutputStream(filename);
+        DataOutputStream dataStream;
+        MemoryPipe pipe = MemoryPipe.get(filename);
+        if (pipe != null) {
+            // the reader is in this JVM; compressing would only cost time
+            dataStream = new DataOutputStream(pipe.openOutput());
+            c = CompressionType.NONE;
+        } else {
+            dataStream = StreamCreator.realOutputStream(filename);
+        }
 
         switch(c){
             // well-specified.
             case NONE:
             case VBYTE:
             case GZIP:
+            case SNAPPY:
                 break;
 
             case UNSPECIFIED:
@@ -51,6 +61,10 @@ public class FileOrderedWriter<T> implements Processor<T> {
             case GZIP:
                 stream = new ArrayOutput(new DataOutputStream(new GZIPOutputStream(dataStream)));
                 break;
+            case SNAPPY:
+                // much cheaper than GZIP, for short-lived files like sorter runs
+                stream = new ArrayOutput(new VByteOutput(new DataOutputStream(new SnappyOutputStream(dataStream))));
+                break;
             case NONE:
                 stream = new ArrayOutput(dataStream);
                 break;
@@ -0,0 +1,436 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.tupleflow.runtime;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory stand-in for one pipe file, used when the stage writing the
+ * file and the stage reading it run in the same JVM at the same time.
+ *
+ * A JobExecutor registers the file names it wants streamed; FileOrderedWriter
+ * and FileOrderedReader look the name up here before touching the disk. Bytes
+ * move from writer to reader as a FIFO of fixed-size chunks. A pipe holds at
+ * most maxChunks chunks in memory, and all pipes together hold at most the
+ * memory budget. A writer that finds no room waits a little for the reader to
+ * catch up; if it doesn't, the chunk is appended to a spill file next to where
+ * the pipe file would have been, and read back from there in its turn.
+ *
+ * A writer never waits more than waitMillis for a chunk, so a reader that has
+ * not been scheduled yet can't stall the writer for long.
+ */
+public class MemoryPipe {
+
+  public static final int CHUNK_SIZE = 64 << 10;
+  private static final ConcurrentHashMap<String, MemoryPipe> pipes = new ConcurrentHashMap<>();
+  private static final AtomicLong bufferedBytes = new AtomicLong(0);
+  private static volatile long memoryBudget = Runtime.getRuntime().maxMemory() / 4;
+  private static volatile long waitMillis = 1000;
+  private static volatile int maxChunks = 32;
+
+  private final String filename;
+  private final ArrayDeque<Chunk> chunks = new ArrayDeque<>();
+  private boolean writerOpened = false;
+  private boolean readerOpened = false;
+  private boolean writerClosed = false;
+  private boolean readerClosed = false;
+  private String abortReason = null;
+  // set when the last chunk had to be spilled; we then stop waiting for room
+  // until the reader catches up.
+  private boolean spilling = false;
+  private File spillFile = null;
+  private FileChannel spillChannel = null;
+  private long spillLength = 0;
+  private long spilledBytes = 0;
+
+  private MemoryPipe(String filename) {
+    this.filename = filename;
+  }
+
+  /**
+   * Sets the shared memory budget (in bytes), the time a writer waits for
+   * room before spilling a chunk, and the number of chunks one pipe may hold.
+   */
+  public static void configure(long budget, long wait, int chunksPerPipe) {
+    memoryBudget = budget;
+    waitMillis = wait;
+    maxChunks = chunksPerPipe;
+  }
+
+  /**
+   * Makes filename a memory pipe. Returns the existing pipe if there is one.
+   */
+  public static MemoryPipe register(String filename) {
+    MemoryPipe pipe = new MemoryPipe(filename);
+    MemoryPipe existing = pipes.putIfAbsent(filename, pipe);
+    return (existing == null) ? pipe : existing;
+  }
+
+  /**
+   * Returns the memory pipe for filename, or null if the file is a real file.
+   */
+  public static MemoryPipe get(String filename) {
+    return pipes.get(filename);
+  }
+
+  /**
+   * Forgets the pipe for filename. A reader still waiting on it gets an
+   * IOException.
+   */
+  public static void release(String filename) {
+    MemoryPipe pipe = pipes.remove(filename);
+    if (pipe != null) {
+      pipe.abort("pipe released before it was finished: " + filename);
+      pipe.deleteSpill();
+    }
+  }
+
+  /**
+   * Bytes currently held in memory by all pipes.
+   */
+  public static long getBufferedBytes() {
+    return bufferedBytes.get();
+  }
+
+  public String getFilename() {
+    return filename;
+  }
+
+  /**
+   * Bytes that did not fit in memory and went to the spill file.
+   */
+  public synchronized long getSpilledBytes() {
+    return spilledBytes;
+  }
+
+  /**
+   * Fails the pipe: readers and writers blocked on it, and any later calls,
+   * throw an IOException. Has no effect on a pipe that was read to the end.
+   */
+  public synchronized void abort(String reason) {
+    if (abortReason == null && !readerClosed) {
+      abortReason = reason;
+      releaseChunks();
+      notifyAll();
+    }
+  }
+
+  /**
+   * Called once every stage that could write this pipe has finished; a pipe
+   * the writer never opened or never closed will not see any more data.
+   */
+  public synchronized void writersFinished() {
+    if (!writerOpened) {
+      abort("nothing was written to pipe: " + filename);
+    } else if (!writerClosed) {
+      abort("the writer of pipe " + filename + " was not closed");
+    }
+  }
+
+  public synchronized OutputStream openOutput() throws IOException {
+    if (writerOpened) {
+      throw new IOException("Memory pipe " + filename + " already has a writer.");
+    }
+    checkAborted();
+    writerOpened = true;
+    return new PipeOutputStream();
+  }
+
+  public synchronized InputStream openInput() throws IOException {
+    if (readerOpened) {
+      throw new IOException("Memory pipe " + filename + " already has a reader.");
+    }
+    checkAborted();
+    readerOpened = true;
+    notifyAll();
+    return new PipeInputStream();
+  }
+
+  private void checkAborted() throws IOException {
+    if (abortReason != null) {
+      throw new IOException(abortReason);
+    }
+  }
+
+  private boolean hasRoom(int length) {
+    return chunks.size() < maxChunks
+            && bufferedBytes.get() + length <= memoryBudget;
+  }
+
+  /**
+   * Queues one chunk, either in memory or in the spill file.
+   */
+  private void put(byte[] data, int length) throws IOException {
+    synchronized (this) {
+      checkAborted();
+      if (readerClosed) {
+        // nobody is going to read this
+        return;
+      }
+      if (!hasRoom(length) && !spilling && readerOpened) {
+        long deadline = System.currentTimeMillis() + waitMillis;
+        long remaining = waitMillis;
+        while (!hasRoom(length) && remaining > 0 && abortReason == null && !readerClosed) {
+          try {
+            wait(remaining);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing to pipe " + filename, e);
+          }
+          remaining = deadline - System.currentTimeMillis();
+        }
+        checkAborted();
+      }
+      if (hasRoom(length)) {
+        bufferedBytes.addAndGet(length);
+        chunks.add(new Chunk(data, length, -1));
+        spilling = false;
+        notifyAll();
+        return;
+      }
+      spilling = true;
+    }
+
+    // only the writer appends to the spill file, so the write itself
+    // does not need the lock.
+    long offset;
+    try {
+      offset = spill(data, length);
+    } catch (IOException e) {
+      synchronized (this) {
+        if (readerClosed) {
+          // the reader stopped (and dropped the spill file) while we wrote
+          return;
+        }
+        checkAborted();
+      }
+      throw e;
+    }
+    synchronized (this) {
+      checkAborted();
+      if (readerClosed) {
+        return;
+      }
+      chunks.add(new Chunk(null, length, offset));
+      spilledBytes += length;
+      notifyAll();
+    }
+  }
+
+  private long spill(byte[] data, int length) throws IOException {
+    FileChannel channel;
+    synchronized (this) {
+      if (spillChannel == null) {
+        spillFile = new File(filename + ".spill");
+        spillFile.getParentFile().mkdirs();
+        spillChannel = new RandomAccessFile(spillFile, "rw").getChannel();
+      }
+      channel = spillChannel;
+    }
+    long offset = spillLength;
+    ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+    long position = offset;
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+    spillLength = position;
+    return offset;
+  }
+
+  private synchronized void closeOutput() {
+    writerClosed = true;
+    notifyAll();
+  }
+
+  /**
+   * Returns the next chunk, or null at the end of the stream.
+   */
+  private Chunk take() throws IOException {
+    Chunk chunk;
+    FileChannel channel;
+    synchronized (this) {
+      while (chunks.isEmpty() && !writerClosed && abortReason == null) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while reading from pipe " + filename, e);
+        }
+      }
+      checkAborted();
+      if (chunks.isEmpty()) {
+        return null;
+      }
+      chunk = chunks.poll();
+      if (chunk.data != null) {
+        bufferedBytes.addAndGet(-chunk.length);
+        notifyAll();
+        return chunk;
+      }
+      channel = spillChannel;
+    }
+
+    byte[] data = new byte[chunk.length];
+    ByteBuffer buffer = ByteBuffer.wrap(data);
+    long position = chunk.spillOffset;
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new IOException("Spill file for pipe " + filename + " is truncated.");
+      }
+      position += read;
+    }
+    return new Chunk(data, chunk.length, -1);
+  }
+
+  private void closeInput() {
+    synchronized (this) {
+      readerClosed = true;
+      releaseChunks();
+      notifyAll();
+    }
+    deleteSpill();
+  }
+
+  private void releaseChunks() {
+    for (Chunk chunk : chunks) {
+      if (chunk.data != null) {
+        bufferedBytes.addAndGet(-chunk.length);
+      }
+    }
+    chunks.clear();
+  }
+
+  private synchronized void deleteSpill() {
+    if (spillChannel != null) {
+      try {
+        spillChannel.close();
+      } catch (IOException e) {
+        // nothing more to read from it anyway
+      }
+      spillFile.delete();
+      spillChannel = null;
+    }
+  }
+
+  private static class Chunk {
+
+    final byte[] data;
+    final int length;
+    final long spillOffset;
+
+    Chunk(byte[] data, int length, long spillOffset) {
+      this.data = data;
+      this.length = length;
+      this.spillOffset = spillOffset;
+    }
+  }
+
+  private class PipeOutputStream extends OutputStream {
+
+    byte[] buffer = new byte[CHUNK_SIZE];
+    int position = 0;
+    boolean closed = false;
+
+    @Override
+    public void write(int b) throws IOException {
+      if (position == buffer.length) {
+        push();
+      }
+      buffer[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        if (position == buffer.length) {
+          push();
+        }
+        int count = Math.min(len, buffer.length - position);
+        System.arraycopy(b, off, buffer, position, count);
+        position += count;
+        off += count;
+        len -= count;
+      }
+    }
+
+    private void push() throws IOException {
+      if (position > 0) {
+        put(buffer, position);
+        buffer = new byte[CHUNK_SIZE];
+        position = 0;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!closed) {
+        closed = true;
+        push();
+        closeOutput();
+      }
+    }
+  }
+
+  private class PipeInputStream extends InputStream {
+
+    Chunk current = null;
+    int position = 0;
+    boolean done = false;
+
+    private boolean fill() throws IOException {
+      while (!done && (current == null || position == current.length)) {
+        current = take();
+        position = 0;
+        if (current == null) {
+          done = true;
+        }
+      }
+      return !done;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!fill()) {
+        return -1;
+      }
+      return current.data[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!fill()) {
+        return -1;
+      }
+      int count = Math.min(len, current.length - position);
+      System.arraycopy(current.data, position, b, off, count);
+      position += count;
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return (current == null) ? 0 : current.length - position;
+    }
+
+    @Override
+    public void close() {
+      if (!done) {
+        done = true;
+        current = null;
+      }
+      closeInput();
+    }
+  }
+}
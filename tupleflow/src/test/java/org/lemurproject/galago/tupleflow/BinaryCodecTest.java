@@ -0,0 +1,138 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.tupleflow;
+
+import org.junit.Test;
+import org.lemurproject.galago.tupleflow.types.TupleflowDouble;
+import org.lemurproject.galago.tupleflow.types.TupleflowLong;
+import org.lemurproject.galago.tupleflow.types.TupleflowString;
+import org.lemurproject.galago.utility.CmpUtil;
+
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryCodecTest {
+
+  private static final String[] pieces = {
+    "", "a", "ab", "b", "\u0000", "\u00e9", "\uE000", "\uFFFD", "\uFFFF", "\uD83D\uDE00", "zzzzzzzzzz"
+  };
+
+  private static String randomString(Random r) {
+    StringBuilder builder = new StringBuilder();
+    int count = r.nextInt(5);
+    for (int i = 0; i < count; i++) {
+      builder.append(pieces[r.nextInt(pieces.length)]);
+    }
+    return builder.toString();
+  }
+
+  private static <T> void checkOrder(BinaryOrder<T> order, T a, T b) {
+    Comparator<T> lessThan = order.lessThan();
+    int expected = Integer.signum(lessThan.compare(a, b));
+
+    ByteBuffer one = ByteBuffer.allocate(1024);
+    ByteBuffer two = ByteBuffer.allocate(1024);
+    order.writeRecord(a, one);
+    order.writeRecord(b, two);
+    one.flip();
+    two.flip();
+    assertEquals(expected, Integer.signum(order.compareRecords(one, two)));
+
+    int prefix = Long.compareUnsigned(order.keyPrefix(a), order.keyPrefix(b));
+    if (prefix != 0) {
+      assertEquals(a + " vs " + b, expected, Integer.signum(prefix));
+    }
+
+    one.rewind();
+    assertEquals(0, lessThan.compare(a, order.readRecord(one)));
+    assertEquals(one.limit(), one.position());
+  }
+
+  @Test
+  public void testStringOrder() {
+    Random r = new Random(7);
+    BinaryOrder<TupleflowString> order = new TupleflowString.ValueOrder();
+    for (int i = 0; i < 20000; i++) {
+      checkOrder(order, new TupleflowString(randomString(r)), new TupleflowString(randomString(r)));
+    }
+  }
+
+  @Test
+  public void testLongOrder() {
+    Random r = new Random(8);
+    long[] edges = {Long.MIN_VALUE, -1, 0, 1, Long.MAX_VALUE};
+    BinaryOrder<TupleflowLong> order = new TupleflowLong.ValueOrder();
+    for (int i = 0; i < 20000; i++) {
+      long a = (i % 3 == 0) ? edges[r.nextInt(edges.length)] : r.nextLong() >> r.nextInt(64);
+      long b = (i % 5 == 0) ? edges[r.nextInt(edges.length)] : r.nextLong() >> r.nextInt(64);
+      checkOrder(order, new TupleflowLong(a), new TupleflowLong(b));
+    }
+  }
+
+  @Test
+  public void testDoubleOrder() {
+    Random r = new Random(9);
+    double[] edges = {Double.NEGATIVE_INFINITY, -1.5, -0.0, 0.0, 1e-300, 2.5, Double.POSITIVE_INFINITY, Double.NaN};
+    BinaryOrder<TupleflowDouble> order = new TupleflowDouble.ValueOrder();
+    for (int i = 0; i < 20000; i++) {
+      double a = (i % 2 == 0) ? edges[r.nextInt(edges.length)] : r.nextGaussian();
+      double b = (i % 3 == 0) ? edges[r.nextInt(edges.length)] : r.nextGaussian();
+      checkOrder(order, new TupleflowDouble(a), new TupleflowDouble(b));
+    }
+  }
+
+  @Test
+  public void testDescendingPrefixes() {
+    Random r = new Random(10);
+    for (int i = 0; i < 20000; i++) {
+      int a = r.nextInt(200) - 100;
+      int b = r.nextInt(200) - 100;
+      String s = randomString(r);
+      String t = randomString(r);
+
+      // an order like (-number, +text): a descending int, then a string
+      long keyA = BinaryCodec.prefix(a, 64, false) | BinaryCodec.prefix(s, 32, true);
+      long keyB = BinaryCodec.prefix(b, 64, false) | BinaryCodec.prefix(t, 32, true);
+      int expected = -CmpUtil.compare(a, b);
+      if (expected == 0) {
+        expected = CmpUtil.compare(s, t);
+      }
+      int prefix = Long.compareUnsigned(keyA, keyB);
+      if (prefix != 0) {
+        assertEquals(Integer.signum(expected), Integer.signum(prefix));
+      }
+
+      // a descending string alone
+      prefix = Long.compareUnsigned(BinaryCodec.prefix(s, 64, false), BinaryCodec.prefix(t, 64, false));
+      if (prefix != 0) {
+        assertEquals(s + " vs " + t, -Integer.signum(CmpUtil.compare(s, t)), Integer.signum(prefix));
+      }
+    }
+  }
+
+  @Test
+  public void testBytes() {
+    byte[][] values = {{}, {0}, {1, 2}, {(byte) 0x80}, {(byte) 0xff, 0}, {1, 2, 3, 4, 5, 6, 7, 8, 9}};
+    for (byte[] a : values) {
+      for (byte[] b : values) {
+        ByteBuffer one = ByteBuffer.allocate(64);
+        ByteBuffer two = ByteBuffer.allocate(64);
+        BinaryCodec.put(one, a);
+        BinaryCodec.put(two, b);
+        one.flip();
+        two.flip();
+        int expected = Integer.signum(CmpUtil.compare(a, b));
+        assertEquals(expected, Integer.signum(BinaryCodec.compareBytes(one, two)));
+        int prefix = Long.compareUnsigned(BinaryCodec.prefix(a, 64, true), BinaryCodec.prefix(b, 64, true));
+        assertTrue(prefix == 0 || Integer.signum(prefix) == expected);
+
+        one.rewind();
+        assertArrayEquals(a, BinaryCodec.getBytes(one));
+      }
+    }
+  }
+}
@@ -0,0 +1,132 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.tupleflow;
+
+import org.junit.After;
+import org.junit.Test;
+import org.lemurproject.galago.tupleflow.runtime.FileOrderedReader;
+import org.lemurproject.galago.tupleflow.runtime.FileOrderedWriter;
+import org.lemurproject.galago.tupleflow.runtime.MemoryPipe;
+import org.lemurproject.galago.tupleflow.types.TupleflowString;
+import org.lemurproject.galago.utility.FSUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MemoryPipeTest {
+
+  @After
+  public void resetLimits() {
+    MemoryPipe.configure(Runtime.getRuntime().maxMemory() / 4, 1000, 32);
+  }
+
+  @Test
+  public void testSpillKeepsOrder() throws Exception {
+    // two chunks in memory at most, and no waiting for the reader
+    MemoryPipe.configure(2 * MemoryPipe.CHUNK_SIZE, 0, 2);
+    File temp = FileUtility.createTemporaryDirectory();
+    String filename = temp.getAbsolutePath() + File.separator + "0" + File.separator + "0";
+    try {
+      MemoryPipe pipe = MemoryPipe.register(filename);
+      OutputStream out = pipe.openOutput();
+      int total = 10 * MemoryPipe.CHUNK_SIZE + 17;
+      for (int i = 0; i < total; i++) {
+        out.write(i);
+      }
+      out.close();
+      assertTrue(pipe.getSpilledBytes() > 0);
+      assertTrue(new File(filename + ".spill").exists());
+
+      InputStream in = pipe.openInput();
+      byte[] buffer = new byte[1000];
+      int i = 0;
+      int read;
+      while ((read = in.read(buffer, 0, buffer.length)) >= 0) {
+        for (int j = 0; j < read; j++) {
+          assertEquals((byte) i++, buffer[j]);
+        }
+      }
+      assertEquals(total, i);
+      in.close();
+      assertFalse(new File(filename + ".spill").exists());
+      assertEquals(0, MemoryPipe.getBufferedBytes());
+    } finally {
+      MemoryPipe.release(filename);
+      FSUtil.deleteDirectory(temp);
+    }
+  }
+
+  @Test
+  public void testStreamsTuples() throws Exception {
+    MemoryPipe.configure(4 * MemoryPipe.CHUNK_SIZE, 1000, 4);
+    File temp = FileUtility.createTemporaryDirectory();
+    final String filename = temp.getAbsolutePath() + File.separator + "pipe";
+    final int count = 100000;
+    ExecutorService threads = Executors.newFixedThreadPool(1);
+    try {
+      MemoryPipe.register(filename);
+      Future<?> writer = threads.submit(() -> {
+        FileOrderedWriter<TupleflowString> w = new FileOrderedWriter<>(filename,
+                new TupleflowString.ValueOrder(), CompressionType.GZIP);
+        for (int i = 0; i < count; i++) {
+          w.process(new TupleflowString(String.format("%08d", i)));
+        }
+        w.close();
+        return null;
+      });
+
+      FileOrderedReader<TupleflowString> reader = new FileOrderedReader<>(filename);
+      // memory pipes don't compress
+      assertEquals(CompressionType.NONE, reader.getCompression());
+      for (int i = 0; i < count; i++) {
+        assertEquals(String.format("%08d", i), reader.read().value);
+      }
+      assertNull(reader.read());
+      writer.get();
+      // nothing reached the disk
+      assertFalse(new File(filename).exists());
+    } finally {
+      threads.shutdown();
+      MemoryPipe.release(filename);
+      FSUtil.deleteDirectory(temp);
+    }
+  }
+
+  @Test
+  public void testAbortWakesReader() throws Exception {
+    File temp = FileUtility.createTemporary();
+    String filename = temp.getAbsolutePath() + "-pipe";
+    MemoryPipe pipe = MemoryPipe.register(filename);
+    ExecutorService threads = Executors.newFixedThreadPool(1);
+    try {
+      Future<?> reader = threads.submit(() -> {
+        InputStream in = pipe.openInput();
+        in.read();
+        return null;
+      });
+      // the writer's stage finished without ever opening the pipe
+      pipe.writersFinished();
+      try {
+        reader.get();
+        fail("reader should have seen the abort");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof IOException);
+      }
+    } finally {
+      threads.shutdown();
+      MemoryPipe.release(filename);
+      temp.delete();
+    }
+  }
+}
@@ -3,9 +3,17 @@ package org.lemurproject.galago.tupleflow;
 import org.junit.Test;
 import org.lemurproject.galago.tupleflow.error.IncompatibleProcessorException;
 import org.lemurproject.galago.tupleflow.runtime.NullProcessor;
+import org.lemurproject.galago.tupleflow.types.TupleflowString;
 import org.lemurproject.galago.utility.Parameters;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  *
@@ -52,4 +60,89 @@ public class SorterTest {
     Sorter<FakeType> instance = new Sorter<FakeType>(new FakeType().getOrder("+document", "+length"));
     instance.setProcessor(new NullProcessor<FakeType>(FakeType.class));
   }
+
+  @Test
+  public void testBinarySortInMemory() throws Exception {
+    checkBinarySort(50000, Sorter.DEFAULT_BUFFER_BYTES);
+  }
+
+  @Test
+  public void testBinarySortSpills() throws Exception {
+    // a 64k buffer forces a few dozen runs to disk
+    checkBinarySort(50000, 64 * 1024);
+  }
+
+  @Test
+  public void testLoserTree() {
+    final int[][] runs = {{1, 4, 9}, {}, {2, 3, 10, 11}, {0}, {4, 5}};
+    final int[] positions = new int[runs.length];
+    LoserTree tree = new LoserTree(runs.length, new LoserTree.Runs() {
+      @Override
+      public boolean isDone(int run) {
+        return positions[run] >= runs[run].length;
+      }
+
+      @Override
+      public int compare(int one, int two) {
+        return Integer.compare(runs[one][positions[one]], runs[two][positions[two]]);
+      }
+    });
+
+    List<Integer> merged = new ArrayList<>();
+    for (int run = tree.winner(); run >= 0; run = tree.winner()) {
+      merged.add(runs[run][positions[run]++]);
+      tree.advanced();
+    }
+    assertEquals("[0, 1, 2, 3, 4, 4, 5, 9, 10, 11]", merged.toString());
+  }
+
+  private void checkBinarySort(int count, long bufferBytes) throws Exception {
+    Parameters options = GalagoConf.getSorterOptions();
+    boolean hadLimit = options.containsKey("buffer-bytes");
+    long oldLimit = options.get("buffer-bytes", 0L);
+    options.set("buffer-bytes", bufferBytes);
+    try {
+      Random r = new Random(42);
+      List<String> expected = new ArrayList<>();
+      Sorter<TupleflowString> sorter = new Sorter<>(new TupleflowString.ValueOrder());
+      final List<String> output = new ArrayList<>();
+      sorter.setProcessor(new Processor<TupleflowString>() {
+        @Override
+        public void process(TupleflowString object) {
+          output.add(object.value);
+        }
+
+        @Override
+        public void close() {
+        }
+      });
+
+      for (int i = 0; i < count; i++) {
+        // short strings share long prefixes, so both key and record compares run
+        String value = (r.nextInt(10) == 0) ? "x" + r.nextInt(100) : "shared-prefix-" + r.nextInt(count);
+        if (r.nextInt(20) == 0) {
+          // characters whose UTF-8 order differs from String order
+          value = "x" + ((r.nextBoolean()) ? "\uD83D\uDE00" : "\uFFFD") + r.nextInt(100);
+        }
+        expected.add(value);
+        sorter.process(new TupleflowString(value));
+      }
+      sorter.close();
+
+      Collections.sort(expected, new Comparator<String>() {
+        @Override
+        public int compare(String a, String b) {
+          return a.compareTo(b);
+        }
+      });
+      assertEquals(expected.size(), output.size());
+      assertTrue(expected.equals(output));
+    } finally {
+      if (hadLimit) {
+        options.set("buffer-bytes", oldLimit);
+      } else {
+        options.remove("buffer-bytes");
+      }
+    }
+  }
 }
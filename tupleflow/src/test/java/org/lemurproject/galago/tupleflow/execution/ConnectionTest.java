@@ -323,6 +323,29 @@ public class ConnectionTest {
 
   @Test
   public void testMultiMultiIntoMulti() throws Exception {
+    Job job = multiMultiIntoMultiJob();
+    ErrorStore err = new ErrorStore();
+    Verification.verify(job, err);
+
+    JobExecutor.runLocally(job, err, Parameters.parseString("{\"server\":false}"));
+    if (err.hasStatements()) {
+      throw new RuntimeException(err.toString());
+    }
+  }
+
+  @Test
+  public void testMultiMultiIntoMultiMemoryPipes() throws Exception {
+    Job job = multiMultiIntoMultiJob();
+    ErrorStore err = new ErrorStore();
+    Verification.verify(job, err);
+
+    JobExecutor.runLocally(job, err, Parameters.parseString("{\"server\":false, \"mode\":\"threaded\", \"memoryPipes\":true}"));
+    if (err.hasStatements()) {
+      throw new RuntimeException(err.toString());
+    }
+  }
+
+  private static Job multiMultiIntoMultiJob() throws Exception {
     Job job = new Job();
 
     Stage one = new Stage("one");
@@ -377,13 +400,7 @@ public class ConnectionTest {
     job.connect("four", "five", ConnectionAssignmentType.Combined);
 
     job.properties.put("hashCount", "2");
-    ErrorStore err = new ErrorStore();
-    Verification.verify(job, err);
-
-    JobExecutor.runLocally(job, err, Parameters.parseString("{\"server\":false}"));
-    if (err.hasStatements()) {
-      throw new RuntimeException(err.toString());
-    }
+    return job;
   }
 
   @Test
@@ -0,0 +1,173 @@
+/*
+ *  BSD License (http://lemurproject.org/galago-license)
+ */
+package org.lemurproject.galago.utility;
+
+/**
+ * Fixed size min-heap of (id, score) pairs, kept in parallel primitive arrays
+ * so that offering a candidate allocates nothing.
+ *
+ * Ordering matches ScoredDocument: higher scores are better, and equal scores
+ * are broken in favour of the lower id. An optional payload can ride along
+ * with each entry (e.g. an annotation).
+ *
+ * Once every candidate has been offered, sort() puts the entries into
+ * decreasing order in place; get*(i) then returns the i-th best entry.
+ */
+public class FixedSizeScoreHeap {
+
+  private final long[] _ids;
+  private final double[] _scores;
+  private Object[] _payloads;
+  private int _position;
+  private boolean _sorted;
+
+  public FixedSizeScoreHeap(int requested) {
+    assert (requested > 0);
+    this._ids = new long[requested];
+    this._scores = new double[requested];
+    this._position = 0;
+    this._sorted = false;
+  }
+
+  public int size() {
+    return _position;
+  }
+
+  public int capacity() {
+    return _ids.length;
+  }
+
+  public boolean isFull() {
+    return _position == _ids.length;
+  }
+
+  /** The score of the worst entry held. Only valid if size() > 0. */
+  public double peekScore() {
+    return _scores[0];
+  }
+
+  /** The id of the worst entry held. Only valid if size() > 0. */
+  public long peekId() {
+    return _ids[0];
+  }
+
+  /**
+   * True if offering this candidate would change the heap.
+   */
+  public boolean accepts(long id, double score) {
+    return _position < _ids.length || better(id, score, 0);
+  }
+
+  public void offer(long id, double score) {
+    offer(id, score, null);
+  }
+
+  /**
+   * Adds an entry to the heap IFF the heap is small OR the min-entry is worse
+   * than this one.
+   */
+  public void offer(long id, double score, Object payload) {
+    assert !_sorted : "offer after sort()";
+    if (_position < _ids.length) {
+      int pos = _position++;
+      set(pos, id, score, payload);
+      bubbleUp(pos);
+    } else if (better(id, score, 0)) {
+      set(0, id, score, payload);
+      bubbleDown(0, _position);
+    }
+  }
+
+  /**
+   * Reorders the entries from best to worst. The heap can't be offered to
+   * afterwards.
+   */
+  public void sort() {
+    if (_sorted) {
+      return;
+    }
+    // heapsort on a min-heap leaves the array in decreasing order
+    for (int end = _position - 1; end > 0; end--) {
+      swap(0, end);
+      bubbleDown(0, end);
+    }
+    _sorted = true;
+  }
+
+  public long getId(int i) {
+    return _ids[i];
+  }
+
+  public double getScore(int i) {
+    return _scores[i];
+  }
+
+  public Object getPayload(int i) {
+    return (_payloads == null) ? null : _payloads[i];
+  }
+
+  private void set(int pos, long id, double score, Object payload) {
+    _ids[pos] = id;
+    _scores[pos] = score;
+    if (payload != null && _payloads == null) {
+      _payloads = new Object[_ids.length];
+    }
+    if (_payloads != null) {
+      _payloads[pos] = payload;
+    }
+  }
+
+  /** is (id, score) better than the entry at pos? */
+  private boolean better(long id, double score, int pos) {
+    int cmp = Double.compare(score, _scores[pos]);
+    return cmp > 0 || (cmp == 0 && id < _ids[pos]);
+  }
+
+  /** is the entry at a worse than the entry at b? */
+  private boolean worse(int a, int b) {
+    return better(_ids[b], _scores[b], a);
+  }
+
+  private void bubbleUp(int pos) {
+    while (pos > 0) {
+      int parent = (pos - 1) / 2;
+      if (!worse(pos, parent)) {
+        return;
+      }
+      swap(pos, parent);
+      pos = parent;
+    }
+  }
+
+  private void bubbleDown(int pos, int limit) {
+    while (true) {
+      int child = (2 * pos) + 1;
+      if (child >= limit) {
+        return;
+      }
+      if (child + 1 < limit && worse(child + 1, child)) {
+        child++;
+      }
+      if (!worse(child, pos)) {
+        return;
+      }
+      swap(pos, child);
+      pos = child;
+    }
+  }
+
+  private void swap(int a, int b) {
+    long id = _ids[a];
+    _ids[a] = _ids[b];
+    _ids[b] = id;
+    double score = _scores[a];
+    _scores[a] = _scores[b];
+    _scores[b] = score;
+    if (_payloads != null) {
+      Object payload = _payloads[a];
+      _payloads[a] = _payloads[b];
+      _payloads[b] = payload;
+    }
+  }
+}
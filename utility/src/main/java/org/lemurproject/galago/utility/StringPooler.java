@@ -1,15 +1,21 @@
 // BSD License (http://lemurproject.org/galago-license)
 package org.lemurproject.galago.utility;
 
-import java.lang.ref.WeakReference;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
 import java.util.List;
-import java.util.WeakHashMap;
 
 /**
  * The point of this class is to replace strings in document objects with
  * already-used copies.  This can greatly reduce the amount of memory used
  * by the system.
  *
+ * The pool is safe to share between parse threads; once it holds maxActive
+ * strings the least useful ones are evicted, rather than the whole pool.
+ * Without a maximum, pooled strings are only weakly held, so the pool never
+ * keeps alive a string that no document uses any more.
+ *
  * @author trevor, sjh
  */
 public class StringPooler {
@@ -17,7 +23,7 @@ public class StringPooler {
   private static long DEFAULT_ACTIVE = 100000;
 
   long maxActive;
-  WeakHashMap<String, WeakReference<String>> pool = new WeakHashMap<>();
+  Cache<String, String> pool;
 
 	static StringPooler _instance = new StringPooler();
 	public static StringPooler getInstance() {
@@ -37,21 +43,22 @@ public class StringPooler {
 
   public StringPooler(long maxActive) {
     this.maxActive = maxActive;
+    Caffeine<Object, Object> builder = Caffeine.newBuilder();
+    if (maxActive > 0) {
+      builder.maximumSize(maxActive);
+    } else {
+      builder.weakValues();
+    }
+    this.pool = builder.build();
   }
 
   /**
    * Replaces the strings within this document with strings in a
    * string pool.
    *
-   * String pool is weakly referenced - it can be garbage collected
-   *
    * @param terms are the list of terms, probably from the document.
    */
   public void transform(List<String> terms) {
-    if (maxActive > 0 && pool.size() > maxActive) {
-      pool.clear();
-    }
-
     for (int i = 0; i < terms.size(); i++) {
       String term = terms.get(i);
 
@@ -59,25 +66,8 @@ public class StringPooler {
         continue;
       }
 
-      WeakReference<String> cacheRef = pool.get(term);
-      if (cacheRef != null) {
-        // if we have a response
-        String cached = cacheRef.get();
-        // first check that the string it holds has not been gc-ed between the last two lines of execution:
-        if (cached != null) {
-          // term was cached!
-          term = cached;
-          // now replace the doc reference to the cached string
-          terms.set(i, term);
-          continue;
-        }
-      }
-
-      // otherwise the pool does not contain the term - gc or new term
-      term = new String(term);
-      pool.put(term, new WeakReference<>(term));
-      // still want to set the term to the newly cached term
-      terms.set(i, term);
+      // a new term is copied, so the pool does not hold on to a larger buffer
+      terms.set(i, pool.get(term, String::new));
     }
   }
 }
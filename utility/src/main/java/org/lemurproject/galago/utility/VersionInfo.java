@@ -42,9 +42,12 @@ public class VersionInfo {
 
     Properties props = new Properties ();
 
-    Class versionClass = new Object() {}.getClass().getEnclosingClass();
-    try (InputStream propFile = versionClass.getClass().getResourceAsStream ("/version.properties")) {
-      props.load (propFile);
+    //- Look the file up from this class: java.lang.Class is loaded by the
+    //- bootstrap loader, which does not see the classpath on Java 9+.
+    try (InputStream propFile = VersionInfo.class.getResourceAsStream ("/version.properties")) {
+      if (propFile != null) {
+        props.load (propFile);
+      }
 
       if (props.containsKey ("version")) {
         galagoVersion = props.getProperty ("version");
@@ -2,7 +2,6 @@ package org.lemurproject.galago.utility.btree.disk;
 
 import org.lemurproject.galago.utility.CmpUtil;
 import org.lemurproject.galago.utility.btree.BTreeIterator;
-import org.lemurproject.galago.utility.buffer.CachedBufferDataStream;
 import org.lemurproject.galago.utility.buffer.DataStream;
 import org.lemurproject.galago.utility.buffer.ReadableBuffer;
 import org.lemurproject.galago.utility.compression.VByte;
@@ -45,7 +44,7 @@ public class DiskBTreeIterator extends BTreeIterator {
     long startFileOffset = this.blockInfo.begin;
 
     // read in a block of data here
-    blockStream = new CachedBufferDataStream(input, startFileOffset, blockInfo.headerLength + startFileOffset);
+    blockStream = input.getStream(startFileOffset, blockInfo.headerLength + startFileOffset);
 
     // now we decode everything from the stream
     this.endValueFileOffset = startFileOffset + blockInfo.length;
@@ -177,7 +176,7 @@ public class DiskBTreeIterator extends BTreeIterator {
 
   @Override
   public DataStream getValueStream() throws IOException {
-    return new CachedBufferDataStream(input, getValueStart(), getValueEnd());
+    return input.getStream(getValueStart(), getValueEnd());
   }
 
   @Override
@@ -191,7 +190,7 @@ public class DiskBTreeIterator extends BTreeIterator {
     assert absoluteStart <= absoluteEnd;
 
     // the end of the sub value is the min of fileLength, valueEnd, or (offset+length);
-    return new CachedBufferDataStream(input, absoluteStart, absoluteEnd);
+    return input.getStream(absoluteStart, absoluteEnd);
   }
 
   private void cacheKeys() throws IOException {
@@ -5,6 +5,7 @@ import org.lemurproject.galago.utility.CmpUtil;
 import org.lemurproject.galago.utility.Parameters;
 import org.lemurproject.galago.utility.buffer.CachedBufferDataStream;
 import org.lemurproject.galago.utility.buffer.FileReadableBuffer;
+import org.lemurproject.galago.utility.buffer.MappedReadableBuffer;
 import org.lemurproject.galago.utility.buffer.ReadableBuffer;
 
 import java.io.File;
@@ -116,6 +117,23 @@ public class DiskBTreeReader extends GalagoBTreeReader {
     this(pathname.toString());
   }
 
+  /**
+   * Opens an index found at pathname, optionally memory-mapping the whole
+   * file instead of reading it through positioned FileChannel reads.
+   *
+   * @see MappedReadableBuffer
+   */
+  public DiskBTreeReader(File pathname, boolean mmap) throws IOException {
+    this(mmap ? new MappedReadableBuffer(pathname.toString()) : new FileReadableBuffer(pathname.toString()));
+  }
+
+  /**
+   * Returns true if this reader is backed by a memory map.
+   */
+  public boolean isMemoryMapped() {
+    return input instanceof MappedReadableBuffer;
+  }
+
   /**
    * Returns a Parameters object that contains metadata about the contents of
    * the index. This is the place to store important data about the index
@@ -241,10 +241,12 @@ public class CachedBufferDataStream extends DataStream {
     int readLength = (int) Math.min(stopPosition - current, cacheLength);
     readLength = Math.max(readLength, length);
 
-    if(readLength != bbCache.capacity()) {
+    // reuse the cache array across refills; only grow it when necessary
+    if(readLength > bbCache.capacity()) {
       bbCache = ByteBuffer.allocate(readLength);
     }
-    bbCache.rewind();
+    bbCache.clear();
+    bbCache.limit(readLength);
     int amountRead = fileStream.read(bbCache, current);
     /*
       System.out.println("#");
@@ -267,7 +269,8 @@ public class CachedBufferDataStream extends DataStream {
     int nextPos = bbCache.position()+length;
     if(nextPos > bbCache.limit()) {
       bufferStart += nextPos;
-      bbCache = ByteBuffer.allocate(0);
+      bbCache.clear();
+      bbCache.limit(0);
       return;
     }
     bbCache.position(nextPos);
@@ -0,0 +1,227 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.utility.buffer;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A DataStream view of a range of a MappedReadableBuffer.
+ *
+ * Unlike CachedBufferDataStream, nothing is copied into a heap cache: every
+ * read is an absolute get against the mapped segment, and VBytes can be
+ * decoded in place with readVInt and readVLong.
+ *
+ * @see MappedReadableBuffer
+ */
+public class MappedDataStream extends DataStream {
+  private final MappedReadableBuffer buffer;
+  private final long startPosition;
+  private final long stopPosition;
+  private long position;
+
+  // the segment containing position, and its absolute bounds
+  private ByteBuffer segment;
+  private long segmentStart;
+  private long segmentEnd;
+
+  public MappedDataStream(MappedReadableBuffer buffer, long start, long end) {
+    assert start <= end;
+    this.buffer = buffer;
+    this.startPosition = start;
+    this.stopPosition = end;
+    this.position = start;
+    this.segmentStart = 0;
+    this.segmentEnd = 0;
+  }
+
+  @Override
+  public MappedDataStream subStream(long start, long length) throws IOException {
+    assert start <= length();
+    assert start + length <= length();
+    return new MappedDataStream(buffer, startPosition + start, startPosition + start + length);
+  }
+
+  @Override
+  public long getPosition() {
+    return position - startPosition;
+  }
+
+  @Override
+  public boolean isDone() {
+    return position >= stopPosition;
+  }
+
+  @Override
+  public long length() {
+    return stopPosition - startPosition;
+  }
+
+  /**
+   * Seeks to a byte offset relative to the start of this stream. Since the
+   * whole range is mapped, backwards seeks are allowed as well.
+   */
+  @Override
+  public void seek(long offset) {
+    position = Math.min(startPosition + offset, stopPosition);
+  }
+
+  private void checkAvailable(int length) throws IOException {
+    if (position + length > stopPosition) {
+      throw new EOFException("Tried to read off the end of the mapped stream.\n"
+          + "position: " + position + " length: " + length + " stopAt: " + stopPosition);
+    }
+  }
+
+  /** Makes sure the current segment covers [position, position+length); returns false if it straddles a boundary. */
+  private boolean inSegment(int length) {
+    if (position < segmentStart || position >= segmentEnd) {
+      segment = buffer.segmentFor(position);
+      segmentStart = position & ~buffer.segmentMask;
+      segmentEnd = segmentStart + segment.limit();
+    }
+    return position + length <= segmentEnd;
+  }
+
+  // inlining here for performance
+  @Override
+  public int readUnsignedByte() throws IOException {
+    if (position >= stopPosition) {
+      throw new EOFException("Tried to read off the end of the mapped stream.");
+    }
+    if (position < segmentStart || position >= segmentEnd) {
+      inSegment(1);
+    }
+    return segment.get((int) (position++ - segmentStart)) & 0xff;
+  }
+
+  @Override
+  public byte readByte() throws IOException {
+    return (byte) readUnsignedByte();
+  }
+
+  @Override
+  public boolean readBoolean() throws IOException {
+    return readUnsignedByte() != 0;
+  }
+
+  @Override
+  public short readShort() throws IOException {
+    checkAvailable(2);
+    if (inSegment(2)) {
+      short result = segment.getShort((int) (position - segmentStart));
+      position += 2;
+      return result;
+    }
+    int a = readUnsignedByte();
+    int b = readUnsignedByte();
+    return (short) ((a << 8) | b);
+  }
+
+  @Override
+  public int readUnsignedShort() throws IOException {
+    return readShort() & 0xffff;
+  }
+
+  @Override
+  public char readChar() throws IOException {
+    return (char) readShort();
+  }
+
+  @Override
+  public int readInt() throws IOException {
+    checkAvailable(4);
+    if (inSegment(4)) {
+      int result = segment.getInt((int) (position - segmentStart));
+      position += 4;
+      return result;
+    }
+    int result = 0;
+    for (int i = 0; i < 4; i++) {
+      result = (result << 8) | readUnsignedByte();
+    }
+    return result;
+  }
+
+  @Override
+  public long readLong() throws IOException {
+    checkAvailable(8);
+    if (inSegment(8)) {
+      long result = segment.getLong((int) (position - segmentStart));
+      position += 8;
+      return result;
+    }
+    long a = readInt();
+    long b = readInt();
+    return (a << 32) | (b & 0xFFFFFFFFL);
+  }
+
+  @Override
+  public float readFloat() throws IOException {
+    return Float.intBitsToFloat(readInt());
+  }
+
+  @Override
+  public double readDouble() throws IOException {
+    return Double.longBitsToDouble(readLong());
+  }
+
+  /**
+   * Decodes a galago VByte (see compression.VByte) straight out of the mapping.
+   */
+  public int readVInt() throws IOException {
+    int result = 0;
+    for (int shift = 0; true; shift += 7) {
+      assert shift < 35;
+      int b = readUnsignedByte();
+      if ((b & 0x80) == 0x80) {
+        return result | ((b & 0x7f) << shift);
+      }
+      result |= (b << shift);
+    }
+  }
+
+  /**
+   * Decodes a galago VByte long (see compression.VByte) straight out of the mapping.
+   */
+  public long readVLong() throws IOException {
+    long result = 0;
+    for (int shift = 0; true; shift += 7) {
+      assert shift < 70;
+      long b = readUnsignedByte();
+      if ((b & 0x80) == 0x80) {
+        return result | ((b & 0x7f) << shift);
+      }
+      result |= (b << shift);
+    }
+  }
+
+  @Override
+  public void readFully(byte[] b) throws IOException {
+    readFully(b, 0, b.length);
+  }
+
+  @Override
+  public void readFully(byte[] b, int off, int len) throws IOException {
+    checkAvailable(len);
+    ByteBuffer target = ByteBuffer.wrap(b, off, len);
+    position += buffer.read(target, position);
+  }
+
+  @Override
+  public int skipBytes(int n) throws IOException {
+    int skipped = (int) Math.min(n, stopPosition - position);
+    position += skipped;
+    return skipped;
+  }
+
+  @Override
+  public String readLine() throws IOException {
+    throw new IOException("readLine is unimplemented and deprecated");
+  }
+
+  @Override
+  public String readUTF() throws IOException {
+    throw new UnsupportedOperationException("readUTF is unimplemented");
+  }
+}
@@ -0,0 +1,97 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.utility.buffer;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A ReadableBuffer backed by read-only memory maps of a file.
+ *
+ * A single MappedByteBuffer can only address 2GB, so larger files are mapped
+ * as a sequence of fixed-size segments. Only absolute gets are used on the
+ * shared segments, so this class is safe to use from many threads.
+ *
+ * @see MappedDataStream
+ */
+public class MappedReadableBuffer implements ReadableBuffer {
+  /** 1GB segments; must be a power of two. */
+  public static final int DEFAULT_SEGMENT_BITS = 30;
+
+  private final RandomAccessFile file;
+  private final long length;
+  final int segmentBits;
+  final long segmentMask;
+  final MappedByteBuffer[] segments;
+
+  public MappedReadableBuffer(RandomAccessFile raf) throws IOException {
+    this(raf, DEFAULT_SEGMENT_BITS);
+  }
+
+  public MappedReadableBuffer(RandomAccessFile raf, int segmentBits) throws IOException {
+    assert segmentBits > 0 && segmentBits < 31;
+    this.file = raf;
+    this.length = raf.length();
+    this.segmentBits = segmentBits;
+    this.segmentMask = (1L << segmentBits) - 1;
+
+    long segmentSize = 1L << segmentBits;
+    int numSegments = (int) ((length + segmentSize - 1) >>> segmentBits);
+    this.segments = new MappedByteBuffer[numSegments];
+
+    FileChannel channel = raf.getChannel();
+    for (int i = 0; i < numSegments; i++) {
+      long start = ((long) i) << segmentBits;
+      long size = Math.min(segmentSize, length - start);
+      segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+    }
+  }
+
+  public MappedReadableBuffer(String path) throws IOException {
+    this(new RandomAccessFile(path, "r"));
+  }
+
+  /** Returns the byte at an absolute offset in this buffer. */
+  public byte get(long offset) {
+    return segments[(int) (offset >>> segmentBits)].get((int) (offset & segmentMask));
+  }
+
+  /** Returns the mapped segment containing the absolute offset. */
+  ByteBuffer segmentFor(long offset) {
+    return segments[(int) (offset >>> segmentBits)];
+  }
+
+  @Override
+  public int read(ByteBuffer buf, long offset) throws IOException {
+    int total = 0;
+    while (buf.hasRemaining() && offset < length) {
+      ByteBuffer segment = segmentFor(offset).duplicate();
+      int start = (int) (offset & segmentMask);
+      int amount = Math.min(buf.remaining(), segment.limit() - start);
+      segment.position(start);
+      segment.limit(start + amount);
+      buf.put(segment);
+      offset += amount;
+      total += amount;
+    }
+    return total;
+  }
+
+  /** Opens a zero-copy stream over [start, end) of this buffer. */
+  @Override
+  public MappedDataStream getStream(long start, long end) {
+    return new MappedDataStream(this, start, end);
+  }
+
+  @Override
+  public long length() throws IOException {
+    return length;
+  }
+
+  @Override
+  public void close() throws IOException {
+    file.close();
+  }
+}
@@ -15,4 +15,9 @@ public interface ReadableBuffer extends Closeable {
   public int read(ByteBuffer buf, long offset) throws IOException;
   /** Return the total number of bytes in this buffer. */
   public long length() throws IOException;
+
+  /** Open a forward-only stream over [start, end) of this buffer. */
+  public default DataStream getStream(long start, long end) throws IOException {
+    return new CachedBufferDataStream(this, start, end);
+  }
 }
@@ -13,9 +13,14 @@ import java.io.IOException;
  */
 public class VByteInput implements DataInput {
     DataInput input;
+    // non-null when we can decode directly out of a memory map
+    MappedDataStream mapped;
 
     public VByteInput(DataInput input) {
         this.input = input;
+        if (input instanceof MappedDataStream) {
+            this.mapped = (MappedDataStream) input;
+        }
     }
 
     @Override
@@ -78,11 +83,17 @@ public class VByteInput implements DataInput {
 
     @Override
     public int readInt() throws IOException {
+      if (mapped != null) {
+        return mapped.readVInt();
+      }
       return VByte.uncompressInt(input);
     }
 
     @Override
     public long readLong() throws IOException {
+      if (mapped != null) {
+        return mapped.readVLong();
+      }
       return VByte.uncompressLong(input);
     }
 
@@ -0,0 +1,129 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.utility.compression;
+
+import org.lemurproject.galago.utility.buffer.CompressedByteBuffer;
+
+import java.io.DataInput;
+import java.io.IOException;
+
+/**
+ * Patched frame-of-reference coding for blocks of up to BLOCK_SIZE
+ * non-negative integers (callers pass d-gaps, hence the name).
+ *
+ * A block is stored as:
+ *   [bit width b : 1 byte][exception count : vbyte]
+ *   [low b bits of every value, packed little-endian : ceil(n * b / 8) bytes]
+ *   [exception index : 1 byte][value >>> b : vbyte] for each exception
+ *
+ * b is picked per block to minimize the encoded size, so a few large values
+ * become exceptions rather than widening the whole block. Decoding unpacks
+ * the whole block into an int array in one tight loop.
+ */
+public class PForDelta {
+
+  public static final int BLOCK_SIZE = 128;
+
+  /**
+   * The largest number of bytes a block of BLOCK_SIZE values can take; a
+   * scratch array this big is enough for uncompress.
+   */
+  public static final int MAX_PACKED_BYTES = BLOCK_SIZE * 4;
+
+  /**
+   * Appends values[offset .. offset+length) to the output buffer.
+   */
+  public static void compress(int[] values, int offset, int length, CompressedByteBuffer output) {
+    assert length <= BLOCK_SIZE;
+
+    // histogram of the number of significant bits in each value
+    int[] widths = new int[33];
+    for (int i = offset; i < offset + length; i++) {
+      assert values[i] >= 0 : "PForDelta only codes non-negative values";
+      widths[32 - Integer.numberOfLeadingZeros(values[i])]++;
+    }
+
+    // exception cost is estimated as index byte + two vbyte bytes
+    int bits = 32;
+    long bestCost = Long.MAX_VALUE;
+    int exceptions = 0;
+    for (int b = 32; b >= 0; b--) {
+      long cost = (length * b + 7) / 8 + 3L * exceptions;
+      if (cost <= bestCost) {
+        bestCost = cost;
+        bits = b;
+      }
+      exceptions += widths[b];
+    }
+
+    exceptions = 0;
+    for (int w = bits + 1; w <= 32; w++) {
+      exceptions += widths[w];
+    }
+
+    output.addRaw(bits);
+    output.add(exceptions);
+
+    long mask = (1L << bits) - 1;
+    long accumulator = 0;
+    int accumulated = 0;
+    for (int i = offset; i < offset + length; i++) {
+      accumulator |= (values[i] & mask) << accumulated;
+      accumulated += bits;
+      while (accumulated >= 8) {
+        output.addRaw((int) (accumulator & 0xff));
+        accumulator >>>= 8;
+        accumulated -= 8;
+      }
+    }
+    if (accumulated > 0) {
+      output.addRaw((int) (accumulator & 0xff));
+    }
+
+    if (exceptions > 0) {
+      for (int i = offset; i < offset + length; i++) {
+        if ((values[i] >>> bits) != 0) {
+          output.addRaw(i - offset);
+          output.add(values[i] >>> bits);
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads one block of length values into output[offset .. offset+length).
+   * The length must be the one the block was written with. The scratch array
+   * must hold at least MAX_PACKED_BYTES bytes.
+   */
+  public static void uncompress(DataInput input, int[] output, int offset, int length, byte[] scratch) throws IOException {
+    int bits = input.readUnsignedByte();
+    int exceptions = (int) VByte.uncompressLong(input);
+
+    if (bits == 0) {
+      for (int i = offset; i < offset + length; i++) {
+        output[i] = 0;
+      }
+    } else {
+      int packedBytes = (length * bits + 7) / 8;
+      input.readFully(scratch, 0, packedBytes);
+
+      long mask = (1L << bits) - 1;
+      long accumulator = 0;
+      int accumulated = 0;
+      int p = 0;
+      for (int i = offset; i < offset + length; i++) {
+        while (accumulated < bits) {
+          accumulator |= (scratch[p++] & 0xffL) << accumulated;
+          accumulated += 8;
+        }
+        output[i] = (int) (accumulator & mask);
+        accumulator >>>= bits;
+        accumulated -= bits;
+      }
+    }
+
+    for (int e = 0; e < exceptions; e++) {
+      int index = input.readUnsignedByte();
+      output[offset + index] |= ((int) VByte.uncompressLong(input)) << bits;
+    }
+  }
+}
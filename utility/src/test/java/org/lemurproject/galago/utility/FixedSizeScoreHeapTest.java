@@ -0,0 +1,61 @@
+package org.lemurproject.galago.utility;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FixedSizeScoreHeapTest {
+
+  @Test
+  public void testTopK() {
+    Random r = new Random(111);
+    int count = 1000;
+    long[][] all = new long[count][];
+    FixedSizeScoreHeap heap = new FixedSizeScoreHeap(100);
+
+    for (int i = 0; i < count; i++) {
+      // few distinct scores, so plenty of ties to break on id
+      long score = r.nextInt(50);
+      long id = r.nextInt(100000);
+      all[i] = new long[]{score, id};
+      heap.offer(id, (double) score, "doc-" + id);
+    }
+    assertTrue(heap.isFull());
+
+    // best first: higher score, then lower id
+    Arrays.sort(all, (a, b) -> (a[0] != b[0]) ? Long.compare(b[0], a[0]) : Long.compare(a[1], b[1]));
+
+    assertEquals(all[99][0], heap.peekScore(), 0.0);
+    assertEquals(all[99][1], heap.peekId());
+    assertFalse(heap.accepts(all[100][1], all[100][0]));
+
+    heap.sort();
+    for (int i = 0; i < heap.size(); i++) {
+      assertEquals(all[i][0], heap.getScore(i), 0.0);
+      assertEquals(all[i][1], heap.getId(i));
+      assertEquals("doc-" + all[i][1], heap.getPayload(i));
+    }
+  }
+
+  @Test
+  public void testSmall() {
+    FixedSizeScoreHeap heap = new FixedSizeScoreHeap(10);
+    heap.offer(3, -2.5);
+    heap.offer(1, -1.0);
+    heap.offer(2, -3.0);
+    assertEquals(3, heap.size());
+    assertFalse(heap.isFull());
+    assertEquals(-3.0, heap.peekScore(), 0.0);
+
+    heap.sort();
+    assertEquals(1, heap.getId(0));
+    assertEquals(3, heap.getId(1));
+    assertEquals(2, heap.getId(2));
+    assertEquals(null, heap.getPayload(0));
+  }
+}
@@ -0,0 +1,46 @@
+// BSD License (http://lemurproject.org/galago-license)
+package org.lemurproject.galago.utility;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class StringPoolerTest {
+
+  private static List<String> terms(String... terms) {
+    List<String> copies = new ArrayList<>();
+    for (String term : terms) {
+      copies.add(term == null ? null : new String(term));
+    }
+    return copies;
+  }
+
+  private static void checkPooling(StringPooler pooler) {
+    List<String> first = terms("a", "b", null, "a");
+    List<String> second = terms("b", "a", "c");
+    pooler.transform(first);
+    pooler.transform(second);
+
+    assertEquals(Arrays.asList("a", "b", null, "a"), first);
+    assertEquals(Arrays.asList("b", "a", "c"), second);
+    assertSame(first.get(0), first.get(3));
+    assertSame(first.get(0), second.get(1));
+    assertSame(first.get(1), second.get(0));
+  }
+
+  @Test
+  public void testBoundedPool() {
+    checkPooling(new StringPooler(10));
+  }
+
+  @Test
+  public void testUnboundedPool() {
+    // weakly held, but still shared while the documents use them
+    checkPooling(new StringPooler(0));
+  }
+}
@@ -0,0 +1,79 @@
+package org.lemurproject.galago.utility.buffer;
+
+import org.junit.Test;
+import org.lemurproject.galago.utility.ByteUtil;
+import org.lemurproject.galago.utility.StreamUtil;
+import org.lemurproject.galago.utility.compression.VByte;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MappedReadableBufferTest {
+
+  @Test
+  public void testReadAcrossSegments() throws IOException {
+    File tmp = File.createTempFile("foo", ".bin");
+    try {
+      StreamUtil.copyStringToFile("abcdefghij", tmp);
+      // 4 byte segments, to force reads across boundaries.
+      MappedReadableBuffer buffer = new MappedReadableBuffer(new RandomAccessFile(tmp, "r"), 2);
+      assertEquals(10, buffer.length());
+      assertEquals('f', buffer.get(5));
+
+      ByteBuffer bb = ByteBuffer.allocate(6);
+      assertEquals(6, buffer.read(bb, 2));
+      assertEquals("cdefgh", ByteUtil.toString(bb.array()));
+
+      MappedDataStream stream = buffer.getStream(1, 10);
+      assertEquals(9, stream.length());
+      assertEquals('b', stream.readUnsignedByte());
+      assertEquals(('c' << 24) | ('d' << 16) | ('e' << 8) | 'f', stream.readInt());
+      assertEquals(('g' << 8) | 'h', stream.readChar());
+
+      DataStream sub = stream.subStream(6, 3);
+      byte[] rest = new byte[3];
+      sub.readFully(rest);
+      assertEquals("hij", ByteUtil.toString(rest));
+      assertTrue(sub.isDone());
+      buffer.close();
+    } finally {
+      assertTrue(tmp.delete());
+    }
+  }
+
+  @Test
+  public void testVByteDecoding() throws IOException {
+    File tmp = File.createTempFile("vbyte", ".bin");
+    try {
+      int[] ints = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE};
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      for (int i : ints) {
+        VByte.compressInt(out, i);
+      }
+      VByte.compressLong(out, Long.MAX_VALUE);
+      out.close();
+      try (FileOutputStream fos = new FileOutputStream(tmp)) {
+        fos.write(bytes.toByteArray());
+      }
+
+      MappedReadableBuffer buffer = new MappedReadableBuffer(new RandomAccessFile(tmp, "r"), 3);
+      VByteInput input = new VByteInput(buffer.getStream(0, buffer.length()));
+      for (int i : ints) {
+        assertEquals(i, input.readInt());
+      }
+      assertEquals(Long.MAX_VALUE, input.readLong());
+      buffer.close();
+    } finally {
+      assertTrue(tmp.delete());
+    }
+  }
+}
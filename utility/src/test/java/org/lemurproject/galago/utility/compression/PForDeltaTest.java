@@ -0,0 +1,70 @@
+package org.lemurproject.galago.utility.compression;
+
+import org.junit.Test;
+import org.lemurproject.galago.utility.buffer.CompressedByteBuffer;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PForDeltaTest {
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    Random r = new Random(42);
+    CompressedByteBuffer buffer = new CompressedByteBuffer();
+    int[][] blocks = new int[200][];
+
+    for (int b = 0; b < blocks.length; b++) {
+      int length = 1 + r.nextInt(PForDelta.BLOCK_SIZE);
+      int[] block = new int[length];
+      int kind = b % 4;
+      for (int i = 0; i < length; i++) {
+        switch (kind) {
+          case 0: block[i] = 0; break;
+          case 1: block[i] = r.nextInt(16); break;
+          // mostly small with a few large exceptions
+          case 2: block[i] = (r.nextInt(10) == 0) ? r.nextInt(Integer.MAX_VALUE) : r.nextInt(8); break;
+          default: block[i] = r.nextInt(Integer.MAX_VALUE); break;
+        }
+      }
+      blocks[b] = block;
+      // offset into a larger array
+      int[] padded = new int[length + 3];
+      System.arraycopy(block, 0, padded, 3, length);
+      PForDelta.compress(padded, 3, length, buffer);
+    }
+
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(buffer.getBytes()));
+    byte[] scratch = new byte[PForDelta.MAX_PACKED_BYTES];
+    int[] output = new int[PForDelta.BLOCK_SIZE + 5];
+    for (int[] block : blocks) {
+      PForDelta.uncompress(input, output, 5, block.length, scratch);
+      int[] decoded = new int[block.length];
+      System.arraycopy(output, 5, decoded, 0, block.length);
+      assertArrayEquals(block, decoded);
+    }
+    assertEquals(0, input.available());
+  }
+
+  @Test
+  public void testExceptionsKeepBlocksSmall() throws Exception {
+    int[] values = new int[PForDelta.BLOCK_SIZE];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i % 4;
+    }
+    values[17] = 1 << 30;
+    CompressedByteBuffer buffer = new CompressedByteBuffer();
+    PForDelta.compress(values, 0, values.length, buffer);
+    // 2 bits per value plus one exception, rather than 31 bits per value
+    assertTrue(buffer.length() < 48);
+
+    int[] output = new int[values.length];
+    PForDelta.uncompress(new DataInputStream(new ByteArrayInputStream(buffer.getBytes())), output, 0, values.length, new byte[PForDelta.MAX_PACKED_BYTES]);
+    assertArrayEquals(values, output);
+  }
+}